@@ -0,0 +1,51 @@
+package com.wu.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * benchmarks.jar 的入口：参数原样交给 org.openjdk.jmh.Main，
+ * 没有指定 -rf/-rff 时把结果以 JSON 写入 results/minispring-<版本>-<时间>.json，便于比较不同版本的结果
+ * */
+public class BenchmarkMain {
+
+    private static final String POM_PROPERTIES = "META-INF/maven/com.wu/minispring/pom.properties";
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf") && !arguments.contains("-rff")) {
+            Path results = Paths.get("results");
+            Files.createDirectories(results);
+            String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            Path file = results.resolve("minispring-" + frameworkVersion() + "-" + time + ".json");
+            arguments.add("-rf");
+            arguments.add("json");
+            arguments.add("-rff");
+            arguments.add(file.toString());
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+
+    /**
+     * 被测框架的版本，读取 jar 中 maven 生成的 pom.properties
+     */
+    public static String frameworkVersion() throws IOException {
+        try (InputStream in = BenchmarkMain.class.getClassLoader().getResourceAsStream(POM_PROPERTIES)) {
+            if (in == null) {
+                return "unknown";
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty("version", "unknown");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.wu.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/*
+ * 重新加载一份框架和合成应用的类，用于测量完整的启动：框架中的静态状态(IOC容器、路由表等)每次都是新的
+ *   - com.wu. 下的类(基准测试自身的 com.wu.bench. 除外)由这个加载器自己定义，字节码从父加载器读取
+ *   - javax.servlet、slf4j 等其他类和父加载器共用，因此可以用外层的 Servlet、ServletConfig 接口操作
+ *   - hideIndex 为 true 时隐藏 META-INF/minispring.components，框架退回到扫描 class 目录
+ * */
+public class IsolatedClassLoader extends URLClassLoader {
+
+    private static final String ISOLATED_PREFIX = "com.wu.";
+    private static final String SHARED_PREFIX = "com.wu.bench.";
+    private static final String INDEX_LOCATION = "META-INF/minispring.components";
+
+    private final boolean hideIndex;
+
+    public IsolatedClassLoader(SyntheticApp app, ClassLoader parent, boolean hideIndex) {
+        super(new URL[]{app.toURL()}, parent);
+        this.hideIndex = hideIndex;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!name.startsWith(ISOLATED_PREFIX) || name.startsWith(SHARED_PREFIX)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    // 合成应用的类
+                    c = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    // 框架的类
+                    byte[] bytes = readParentClass(name);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    private byte[] readParentClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        try (InputStream in = getParent().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in.transferTo(bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        return hideIndex && INDEX_LOCATION.equals(name) ? null : super.getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        return hideIndex && INDEX_LOCATION.equals(name) ? Collections.emptyEnumeration() : super.getResources(name);
+    }
+}
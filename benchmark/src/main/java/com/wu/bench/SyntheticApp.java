@@ -0,0 +1,212 @@
+package com.wu.bench;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * 基准测试用的合成应用：包 com.wu.synthetic 下 classes 个类，一半是 @MyService，一半是 @MyController
+ *   - Service{i} 注入 Service{i/2}，依赖图是一棵二叉树
+ *   - Controller{i} 注入 Service{i % services}，有 /c{i}/list 和 /c{i}/item/{id} 两个路由，
+ *     所以路由数等于类的个数
+ * 源码在第一次使用时用 javac 编译(需要运行在 JDK 上)，同时运行 ComponentIndexProcessor 生成组件索引，
+ * 结果缓存在 ${java.io.tmpdir}/minispring-synthetic/ 下，之后的 fork 直接复用
+ * 使用 SNAPSHOT_CONFIG 启动时，启动快照写在同一目录的 snapshot/ 下
+ * */
+public class SyntheticApp {
+
+    public static final String PACKAGE = "com.wu.synthetic";
+    // 初始化合成应用时使用的配置文件，放在编译输出目录下
+    public static final String CONFIG = "synthetic-application.properties";
+    // 同上，另外开启启动快照，快照文件是 snapshot 目录下的 startup.snapshot
+    public static final String SNAPSHOT_CONFIG = "synthetic-snapshot.properties";
+    // 生成的源码变化时修改，使旧的缓存失效
+    private static final int VERSION = 1;
+    private static final String COMPLETE = ".complete-v" + VERSION;
+
+    private final Path classesDirectory;
+    private final Path snapshotFile;
+    private final int services;
+    private final int controllers;
+
+    private SyntheticApp(Path classesDirectory, int services, int controllers) {
+        this.classesDirectory = classesDirectory;
+        this.snapshotFile = classesDirectory.resolveSibling("snapshot").resolve("startup.snapshot");
+        this.services = services;
+        this.controllers = controllers;
+    }
+
+    /**
+     * 取得(不存在时生成并编译)有 classes 个类的合成应用
+     */
+    public static synchronized SyntheticApp generate(int classes) throws IOException {
+        int services = Math.max(1, classes / 2);
+        int controllers = Math.max(1, classes - services);
+        Path root = Paths.get(System.getProperty("java.io.tmpdir"), "minispring-synthetic", Integer.toString(classes));
+        SyntheticApp app = new SyntheticApp(root.resolve("classes"), services, controllers);
+        if (!Files.exists(root.resolve(COMPLETE))) {
+            app.compile(root);
+            Files.createFile(root.resolve(COMPLETE));
+        }
+        if (!Files.exists(app.classesDirectory.resolve(SNAPSHOT_CONFIG))) {
+            app.writeConfig(SNAPSHOT_CONFIG, "startupSnapshot=" + app.snapshotFile.toString().replace('\\', '/') + "\n");
+        }
+        return app;
+    }
+
+    public Path getClassesDirectory() {
+        return classesDirectory;
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public int getControllerCount() {
+        return controllers;
+    }
+
+    public int getRouteCount() {
+        return controllers * 2;
+    }
+
+    public List<String> getClassNames() {
+        List<String> names = new ArrayList<>(services + controllers);
+        for (int i = 0; i < services; i++) {
+            names.add(PACKAGE + ".Service" + i);
+        }
+        for (int i = 0; i < controllers; i++) {
+            names.add(PACKAGE + ".Controller" + i);
+        }
+        return names;
+    }
+
+    public String listUri(int controller) {
+        return "/c" + controller + "/list";
+    }
+
+    public String itemUri(int controller, String id) {
+        return "/c" + controller + "/item/" + id;
+    }
+
+    /**
+     * 按 getClassNames 的顺序加载并初始化所有类
+     */
+    public List<Class<?>> loadClasses(ClassLoader loader) throws ClassNotFoundException {
+        List<Class<?>> classes = new ArrayList<>(services + controllers);
+        for (String name : getClassNames()) {
+            classes.add(Class.forName(name, true, loader));
+        }
+        return classes;
+    }
+
+    /**
+     * 以 parent 为父加载器加载合成的类，框架的类和 parent 共用
+     */
+    public URLClassLoader newClassLoader(ClassLoader parent) {
+        return new URLClassLoader(new URL[]{toURL()}, parent);
+    }
+
+    URL toURL() {
+        try {
+            return classesDirectory.toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void compile(Path root) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("生成合成应用需要运行在 JDK 上");
+        }
+        Path sources = root.resolve("src").resolve(PACKAGE.replace('.', '/'));
+        Files.createDirectories(sources);
+        Files.createDirectories(classesDirectory);
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-d");
+        arguments.add(classesDirectory.toString());
+        arguments.add("-cp");
+        arguments.add(System.getProperty("java.class.path"));
+        arguments.add("-encoding");
+        arguments.add("UTF-8");
+        arguments.add("-nowarn");
+        // 同时生成组件索引，StartupBenchmark 可以比较读取索引和扫描目录两种方式
+        arguments.add("-processor");
+        arguments.add("com.wu.core.index.ComponentIndexProcessor");
+        for (int i = 0; i < services; i++) {
+            arguments.add(write(sources, "Service" + i, service(i)).toString());
+        }
+        for (int i = 0; i < controllers; i++) {
+            arguments.add(write(sources, "Controller" + i, controller(i)).toString());
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        if (status != 0) {
+            throw new IllegalStateException("编译合成应用失败:\n" + errors.toString(StandardCharsets.UTF_8));
+        }
+        writeConfig(CONFIG, "");
+    }
+
+    private void writeConfig(String name, String extra) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(classesDirectory.resolve(name))) {
+            writer.write("scanPackage=" + PACKAGE + "\n" + extra);
+        }
+    }
+
+    private static Path write(Path directory, String className, String source) throws IOException {
+        Path file = directory.resolve(className + ".java");
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String service(int i) {
+        String parent = i == 0 ? ""
+                : "    @MyAutoWired\n"
+                + "    private Service" + (i / 2) + " parent;\n\n";
+        return "package " + PACKAGE + ";\n\n"
+                + "import com.wu.annotation.ioc.MyAutoWired;\n"
+                + "import com.wu.annotation.ioc.MyService;\n\n"
+                + "@MyService\n"
+                + "public class Service" + i + " {\n"
+                + parent
+                + "    public String describe(String id) {\n"
+                + "        return id;\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    private String controller(int i) {
+        int service = i % services;
+        return "package " + PACKAGE + ";\n\n"
+                + "import com.wu.annotation.ioc.MyAutoWired;\n"
+                + "import com.wu.annotation.ioc.MyController;\n"
+                + "import com.wu.annotation.mvc.MyPathVariable;\n"
+                + "import com.wu.annotation.mvc.MyRequestMapping;\n\n"
+                + "@MyController\n"
+                + "@MyRequestMapping(\"/c" + i + "\")\n"
+                + "public class Controller" + i + " {\n"
+                + "    @MyAutoWired\n"
+                + "    private Service" + service + " service;\n\n"
+                + "    @MyRequestMapping(\"/list\")\n"
+                + "    public String list() {\n"
+                + "        return \"c" + i + "\";\n"
+                + "    }\n\n"
+                + "    @MyRequestMapping(value = \"/item/{id}\", method = \"GET\")\n"
+                + "    public String item(@MyPathVariable(\"id\") String id) {\n"
+                + "        return service.describe(id);\n"
+                + "    }\n"
+                + "}\n";
+    }
+}
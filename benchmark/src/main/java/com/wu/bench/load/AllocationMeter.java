@@ -0,0 +1,114 @@
+package com.wu.bench.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * 测量阶段开始和结束时各取一次进程的资源使用，相减得到这个阶段的：
+ *   - 每个线程分配的字节数(com.sun.management.ThreadMXBean)，按是否是负载测试的连接线程分开统计，
+ *     其余线程(EventLoop、worker 等)算作服务器；阶段中结束的线程分配的字节数统计不到
+ *   - GC 次数和耗时、进程的 CPU 时间
+ * 需要 HotSpot 系的 JVM，不支持时分配字节数为 -1
+ * */
+final class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final com.sun.management.OperatingSystemMXBean OS = os();
+
+    private final long nanos;
+    private final Map<Long, Long> allocated;
+    private final long gcCount;
+    private final long gcMillis;
+    private final long cpuNanos;
+
+    private AllocationMeter(long nanos, Map<Long, Long> allocated, long gcCount, long gcMillis, long cpuNanos) {
+        this.nanos = nanos;
+        this.allocated = allocated;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.cpuNanos = cpuNanos;
+    }
+
+    static AllocationMeter sample() {
+        Map<Long, Long> allocated = new HashMap<>();
+        if (THREADS != null) {
+            long[] ids = THREADS.getAllThreadIds();
+            long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] >= 0) {
+                    allocated.put(ids[i], bytes[i]);
+                }
+            }
+        }
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        long cpuNanos = OS == null ? -1 : OS.getProcessCpuTime();
+        return new AllocationMeter(System.nanoTime(), allocated, gcCount, gcMillis, cpuNanos);
+    }
+
+    /**
+     * 从 start 到这次取样之间分配的字节数
+     *
+     * @param threadIds 要统计的线程
+     * @param include   为 true 时只统计 threadIds 中的线程，为 false 时统计其他线程
+     */
+    long allocatedSince(AllocationMeter start, Set<Long> threadIds, boolean include) {
+        if (THREADS == null) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocated.entrySet()) {
+            if (threadIds.contains(entry.getKey()) != include) {
+                continue;
+            }
+            Long before = start.allocated.get(entry.getKey());
+            total += entry.getValue() - (before == null ? 0 : before);
+        }
+        return total;
+    }
+
+    long nanosSince(AllocationMeter start) {
+        return nanos - start.nanos;
+    }
+
+    long gcCountSince(AllocationMeter start) {
+        return gcCount - start.gcCount;
+    }
+
+    long gcMillisSince(AllocationMeter start) {
+        return gcMillis - start.gcMillis;
+    }
+
+    long cpuNanosSince(AllocationMeter start) {
+        return cpuNanos < 0 ? -1 : cpuNanos - start.cpuNanos;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static com.sun.management.OperatingSystemMXBean os() {
+        try {
+            return (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.wu.bench.load;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/*
+ * 负载测试的一个 HTTP/1.1 keep-alive 连接：发送一个请求、读完响应后再发送下一个，不使用流水线
+ *   - 请求是预先编码好的字节(LoadRequest)，响应只解析状态码、Content-Length 和 Connection，响应体直接跳过
+ *   - 读缓冲在连接内复用，每个请求不分配对象，测得的分配速率基本都来自服务器
+ * 服务器返回 Connection: close、没有 Content-Length 或读写出错时关闭连接，下一个请求重新连接
+ * */
+final class LoadConnection implements Closeable {
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes();
+    private static final byte[] CONNECTION_CLOSE = "connection: close".getBytes();
+
+    private final InetSocketAddress address;
+    private final int timeout;
+    private final byte[] buffer = new byte[16 * 1024];
+    // buffer 中还没有处理的数据是 [position, limit)
+    private int position;
+    private int limit;
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    LoadConnection(InetSocketAddress address, int timeout) {
+        this.address = address;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 发送请求并读完响应
+     *
+     * @return 响应的状态码
+     * @throws IOException 连接、读写出错或超时，连接已经关闭
+     */
+    int execute(LoadRequest request) throws IOException {
+        if (socket == null) {
+            connect();
+        }
+        try {
+            out.write(request.getBytes());
+            return readResponse(request.getMethod().equals("HEAD"));
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(timeout);
+            s.connect(address, timeout);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+        in = s.getInputStream();
+        out = s.getOutputStream();
+        position = 0;
+        limit = 0;
+    }
+
+    private int readResponse(boolean head) throws IOException {
+        int headerEnd = findHeaderEnd();
+        int status = parseStatus();
+        long contentLength = -1;
+        boolean close = false;
+        // 逐行检查响应头，第一行是状态行
+        int line = indexOf((byte) '\n', position, headerEnd) + 1;
+        while (line < headerEnd) {
+            int lineEnd = indexOf((byte) '\n', line, headerEnd);
+            if (startsWithIgnoreCase(line, lineEnd, CONTENT_LENGTH)) {
+                contentLength = parseLong(line + CONTENT_LENGTH.length, lineEnd);
+            } else if (startsWithIgnoreCase(line, lineEnd, CONNECTION_CLOSE)) {
+                close = true;
+            }
+            line = lineEnd + 1;
+        }
+        position = headerEnd;
+        if (head || status == 204 || status == 304 || (status >= 100 && status < 200)) {
+            contentLength = 0;
+        }
+        if (contentLength < 0) {
+            // 没有 Content-Length 时响应体到连接关闭为止
+            skipToEnd();
+            close();
+            return status;
+        }
+        skip(contentLength);
+        if (close) {
+            close();
+        }
+        return status;
+    }
+
+    // 读到 \r\n\r\n 为止，返回响应头之后的位置
+    private int findHeaderEnd() throws IOException {
+        while (true) {
+            // fill 可能移动数据，每次都从 position 开始查找，响应头很短
+            for (int i = position; i + 3 < limit; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n') {
+                    return i + 4;
+                }
+            }
+            if (!fill()) {
+                throw new EOFException("连接在响应头结束前关闭");
+            }
+        }
+    }
+
+    // 把未处理的数据移到缓冲开头，再从连接读取；缓冲已满时说明响应头太大
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            throw new IOException("响应头超过 " + buffer.length + " 字节");
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private void skip(long length) throws IOException {
+        long remaining = length;
+        int buffered = (int) Math.min(remaining, limit - position);
+        position += buffered;
+        remaining -= buffered;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (n < 0) {
+                throw new EOFException("连接在响应体结束前关闭");
+            }
+            remaining -= n;
+        }
+        if (position == limit) {
+            position = 0;
+            limit = 0;
+        }
+    }
+
+    private void skipToEnd() throws IOException {
+        while (in.read(buffer, 0, buffer.length) >= 0) {
+            // 丢弃
+        }
+        position = 0;
+        limit = 0;
+    }
+
+    // 状态行：HTTP/1.1 200 OK
+    private int parseStatus() throws IOException {
+        int start = position + 9;
+        if (start + 3 > limit || buffer[position] != 'H') {
+            throw new IOException("无效的响应状态行");
+        }
+        return (int) parseLong(start, start + 3);
+    }
+
+    private long parseLong(int from, int to) throws IOException {
+        long value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+            } else if (b != ' ' && b != '\r') {
+                break;
+            }
+        }
+        if (!digits) {
+            throw new IOException("无效的数字");
+        }
+        return value;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // prefix 是小写的
+    private boolean startsWithIgnoreCase(int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            byte b = buffer[from + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+}
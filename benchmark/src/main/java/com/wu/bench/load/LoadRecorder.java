@@ -0,0 +1,49 @@
+package com.wu.bench.load;
+
+import com.wu.core.metrics.Histogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 一个阶段(预热或测量)的结果，所有连接线程并发记录，不加锁
+ *   - latency：修正了协调遗漏(coordinated omission)的延迟。开环从计划的发送时间算起，
+ *     服务器变慢、请求排队时等待的时间也计入；闭环配置了 expectedInterval 时按 HdrHistogram 的方式补记
+ *     被慢请求挡住、没有发出的请求，没有配置时和 serviceTime 相同
+ *   - serviceTime：从实际发送到读完响应，没有修正，只用于和 latency 对比
+ * */
+final class LoadRecorder {
+
+    final Histogram latency = new Histogram();
+    final Histogram serviceTime = new Histogram();
+    final LongAdder responses = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    // 按状态码的类别(1xx~5xx)计数，下标是状态码 / 100
+    final AtomicLongArray statuses = new AtomicLongArray(6);
+
+    /**
+     * @param intended         计划发送的时间(开环)，闭环时就是实际发送的时间
+     * @param sent             实际发送的时间
+     * @param end              读完响应的时间
+     * @param status           状态码
+     * @param expectedInterval 闭环补记的间隔(纳秒)，0 表示不补记
+     */
+    void record(long intended, long sent, long end, int status, long expectedInterval) {
+        long value = end - intended;
+        latency.record(value);
+        if (expectedInterval > 0) {
+            for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+                latency.record(missing);
+            }
+        }
+        serviceTime.record(end - sent);
+        responses.increment();
+        if (status >= 100 && status < 600) {
+            statuses.incrementAndGet(status / 100);
+        }
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+}
@@ -0,0 +1,61 @@
+package com.wu.bench.load;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/*
+ * 负载测试发送的一个请求，启动前编码成完整的 HTTP/1.1 请求字节，发送时不再拼接和编码
+ * 写法是 "/uri" 或 "METHOD /uri"，POST/PUT/PATCH 带上 body 作为 JSON 请求体
+ * */
+final class LoadRequest {
+
+    private final String method;
+    private final String uri;
+    private final byte[] bytes;
+
+    private LoadRequest(String method, String uri, byte[] bytes) {
+        this.method = method;
+        this.uri = uri;
+        this.bytes = bytes;
+    }
+
+    static LoadRequest parse(String spec, String host, String body) {
+        String trimmed = spec.trim();
+        int space = trimmed.indexOf(' ');
+        String method = space < 0 ? "GET" : trimmed.substring(0, space).toUpperCase(Locale.ROOT);
+        String uri = space < 0 ? trimmed : trimmed.substring(space + 1).trim();
+        if (!uri.startsWith("/")) {
+            throw new IllegalArgumentException("路由必须以 / 开头: " + spec);
+        }
+        boolean hasBody = body != null && !body.isEmpty()
+                && (method.equals("POST") || method.equals("PUT") || method.equals("PATCH"));
+        byte[] content = hasBody ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        StringBuilder head = new StringBuilder(128);
+        head.append(method).append(' ').append(uri).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("Accept: */*\r\n");
+        if (hasBody) {
+            head.append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ").append(content.length).append("\r\n");
+        }
+        head.append("\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(head.length() + content.length);
+        out.writeBytes(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(content);
+        return new LoadRequest(method, uri, out.toByteArray());
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri;
+    }
+}
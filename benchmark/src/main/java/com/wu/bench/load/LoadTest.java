@@ -0,0 +1,420 @@
+package com.wu.bench.load;
+
+import com.wu.bench.BenchmarkMain;
+import com.wu.bench.IsolatedClassLoader;
+import com.wu.bench.SyntheticApp;
+import com.wu.core.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 容量测试用的负载生成器：在进程内用内嵌服务器(EmbeddedServer，监听 127.0.0.1 的随机端口)启动应用，
+ * 通过 keep-alive 连接向指定的路由发送请求，预热后测量一段时间，报告吞吐、延迟分位数和分配速率
+ *   - closed(闭环)：每个连接收到响应后立即(或等待 thinkTime 后)发送下一个请求，测量服务器能达到的吞吐
+ *   - open(开环)：按固定的到达速率 rate 发送，每个连接负责 rate / connections，请求按计划的时间发出，
+ *     延迟从计划时间算起：服务器变慢时后面的请求排队等待，这段时间也计入延迟(修正协调遗漏)；
+ *     parkNanos 的唤醒误差(通常几十微秒)也会计入，低延迟时对比 service time 看
+ * 不需要网络和外部工具，结果同时写成 JSON，便于比较不同版本和配置
+ *
+ * 用法：java -cp target/benchmarks.jar com.wu.bench.load.LoadTest [参数名=值 ...]
+ *   app=synthetic            被测应用：synthetic 为 SyntheticApp 生成的合成应用，或 classpath:xxx.properties
+ *   classes=100              合成应用的类数
+ *   mode=closed              closed 或 open
+ *   connections=16           连接数(并发数)
+ *   rate=1000                开环的总请求速率(每秒)
+ *   thinkTime=0              闭环中收到响应后等待的毫秒数
+ *   expectedInterval=0       闭环补记的间隔(毫秒)，一般设为期望的请求间隔，0 表示不补记
+ *   warmup=5 duration=15     预热和测量的秒数
+ *   routes=/c0/list,GET /c0/item/42   轮流请求的路由，默认请求合成应用的几个路由
+ *   body=                    POST/PUT/PATCH 的 JSON 请求体
+ *   timeout=10000            连接和读取超时(毫秒)
+ *   out=                     结果文件，默认 results/load-<版本>-<时间>.json，none 表示不写
+ * 其他参数写入合成应用的配置(如 serverWorkerThreads=32、maxInFlight=200)；
+ * 使用 classpath 上的配置时按配置原样启动，端口以配置为准(可以配置为 0)
+ * */
+public class LoadTest {
+
+    private static final String LOAD_CONFIG = "synthetic-load.properties";
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList("app", "classes", "mode", "connections",
+            "rate", "thinkTime", "expectedInterval", "warmup", "duration", "routes", "body", "timeout", "out"));
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999, 0.9999};
+
+    private final Properties options;
+    private final Properties appConfig = new Properties();
+    private final boolean open;
+    private final int connections;
+    private final double rate;
+    private final long thinkNanos;
+    private final long expectedInterval;
+    private final int timeout;
+
+    private volatile LoadRecorder recorder = new LoadRecorder();
+    private volatile boolean running = true;
+
+    private LoadTest(Properties options) {
+        this.options = options;
+        for (String name : options.stringPropertyNames()) {
+            if (!OPTIONS.contains(name)) {
+                appConfig.setProperty(name, options.getProperty(name));
+            }
+        }
+        String mode = options.getProperty("mode", "closed");
+        if (!mode.equals("closed") && !mode.equals("open")) {
+            throw new IllegalArgumentException("mode 只能是 closed 或 open: " + mode);
+        }
+        this.open = mode.equals("open");
+        this.connections = Integer.parseInt(options.getProperty("connections", "16"));
+        this.rate = Double.parseDouble(options.getProperty("rate", "1000"));
+        this.thinkNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.getProperty("thinkTime", "0")));
+        this.expectedInterval = (long) (Double.parseDouble(options.getProperty("expectedInterval", "0")) * 1_000_000);
+        this.timeout = Integer.parseInt(options.getProperty("timeout", "10000"));
+        if (connections <= 0 || (open && rate <= 0)) {
+            throw new IllegalArgumentException("connections 和 rate 必须大于 0");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties options = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("参数的格式是 名字=值: " + arg);
+                System.exit(2);
+            }
+            options.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        String app = options.getProperty("app", "synthetic");
+        ClassLoader loader;
+        String location;
+        List<String> defaultRoutes = new ArrayList<>();
+        if (app.equals("synthetic")) {
+            // 合成应用和框架一起在隔离的类加载器中启动，框架才能找到合成应用的类和配置
+            SyntheticApp synthetic = SyntheticApp.generate(Integer.parseInt(options.getProperty("classes", "100")));
+            writeSyntheticConfig(synthetic);
+            loader = new IsolatedClassLoader(synthetic, getClass().getClassLoader(), false);
+            location = "classpath:" + LOAD_CONFIG;
+            int last = synthetic.getControllerCount() - 1;
+            defaultRoutes.add(synthetic.listUri(0));
+            defaultRoutes.add(synthetic.itemUri(0, "42"));
+            defaultRoutes.add(synthetic.listUri(last));
+            defaultRoutes.add(synthetic.itemUri(last, "7"));
+        } else {
+            if (!appConfig.isEmpty()) {
+                System.err.println("使用 classpath 上的配置时忽略这些参数: " + appConfig.stringPropertyNames());
+            }
+            loader = getClass().getClassLoader();
+            location = app;
+        }
+        String routeSpec = options.getProperty("routes");
+        List<String> specs = routeSpec == null ? defaultRoutes : Arrays.asList(routeSpec.split(","));
+        if (specs.isEmpty()) {
+            throw new IllegalArgumentException("没有指定 routes");
+        }
+
+        EmbeddedApp server = EmbeddedApp.start(loader, location);
+        try {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            List<LoadRequest> requests = new ArrayList<>();
+            for (String spec : specs) {
+                requests.add(LoadRequest.parse(spec, "localhost:" + server.getPort(), options.getProperty("body")));
+            }
+            checkRoutes(address, requests);
+            Result result = drive(address, requests.toArray(new LoadRequest[0]));
+            String report = result.format();
+            System.out.println(report);
+            writeResult(result);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void writeSyntheticConfig(SyntheticApp synthetic) throws IOException {
+        Properties config = new Properties();
+        config.setProperty("scanPackage", SyntheticApp.PACKAGE);
+        config.setProperty("serverPort", "0");
+        config.putAll(appConfig);
+        try (Writer writer = Files.newBufferedWriter(synthetic.getClassesDirectory().resolve(LOAD_CONFIG),
+                StandardCharsets.UTF_8)) {
+            config.store(writer, "written by LoadTest");
+        }
+    }
+
+    // 开始前每个路由请求一次，返回错误状态码时直接报错，不必等测量结束
+    private void checkRoutes(InetSocketAddress address, List<LoadRequest> requests) throws IOException {
+        try (LoadConnection connection = new LoadConnection(address, timeout)) {
+            for (LoadRequest request : requests) {
+                int status = connection.execute(request);
+                if (status >= 400) {
+                    throw new IllegalStateException(request + " 返回 " + status);
+                }
+            }
+        }
+    }
+
+    /*
+     * 启动所有连接线程，预热后换一个 recorder 开始测量，测量结束后停止所有线程
+     * */
+    private Result drive(InetSocketAddress address, LoadRequest[] requests) throws InterruptedException {
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getProperty("warmup", "5")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getProperty("duration", "15")));
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>(connections);
+        Set<Long> threadIds = new HashSet<>();
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> connectionLoop(address, requests, index, start), "load-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            threadIds.add(thread.getId());
+            thread.start();
+        }
+        sleepUntil(start + warmupNanos);
+        LoadRecorder measured = new LoadRecorder();
+        AllocationMeter before = AllocationMeter.sample();
+        recorder = measured;
+        sleepUntil(start + warmupNanos + durationNanos);
+        AllocationMeter after = AllocationMeter.sample();
+        // 之后完成的请求记到一个丢弃的 recorder 中
+        recorder = new LoadRecorder();
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(timeout + 1000L);
+        }
+        return new Result(measured, before, after, threadIds, requests);
+    }
+
+    private void connectionLoop(InetSocketAddress address, LoadRequest[] requests, int index, long start) {
+        // 开环：每个连接的请求间隔是 connections / rate 秒，各连接的起点错开
+        long interval = open ? (long) (connections * 1e9 / rate) : 0;
+        long next = start + (open ? interval * index / connections : 0);
+        int route = index;
+        try (LoadConnection connection = new LoadConnection(address, timeout)) {
+            while (running) {
+                if (open) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                }
+                LoadRequest request = requests[route++ % requests.length];
+                long sent = System.nanoTime();
+                long intended = open ? next : sent;
+                try {
+                    int status = connection.execute(request);
+                    recorder.record(intended, sent, System.nanoTime(), status, open ? 0 : expectedInterval);
+                } catch (IOException e) {
+                    recorder.recordError();
+                }
+                if (open) {
+                    next += interval;
+                } else if (thinkNanos > 0) {
+                    LockSupport.parkNanos(thinkNanos);
+                }
+            }
+        }
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private void writeResult(Result result) throws IOException {
+        String out = options.getProperty("out", "");
+        if (out.equals("none")) {
+            return;
+        }
+        String version = BenchmarkMain.frameworkVersion();
+        Path file;
+        if (out.isEmpty()) {
+            Path results = Paths.get("results");
+            Files.createDirectories(results);
+            String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            file = results.resolve("load-" + version + "-" + time + ".json");
+        } else {
+            file = Paths.get(out);
+        }
+        Files.write(file, result.toJson(version).getBytes(StandardCharsets.UTF_8));
+        System.out.println("result written to " + file);
+    }
+
+    /*
+     * 测量阶段的结果
+     * */
+    private class Result {
+        private final LoadRecorder recorder;
+        private final Histogram.Snapshot latency;
+        private final Histogram.Snapshot serviceTime;
+        private final long responses;
+        private final long errors;
+        private final double seconds;
+        private final long serverBytes;
+        private final long generatorBytes;
+        private final long gcCount;
+        private final long gcMillis;
+        private final long cpuNanos;
+        private final LoadRequest[] requests;
+
+        Result(LoadRecorder recorder, AllocationMeter before, AllocationMeter after, Set<Long> threadIds,
+               LoadRequest[] requests) {
+            this.recorder = recorder;
+            this.latency = recorder.latency.snapshot();
+            this.serviceTime = recorder.serviceTime.snapshot();
+            this.responses = recorder.responses.sum();
+            this.errors = recorder.errors.sum();
+            this.seconds = after.nanosSince(before) / 1e9;
+            this.serverBytes = after.allocatedSince(before, threadIds, false);
+            this.generatorBytes = after.allocatedSince(before, threadIds, true);
+            this.gcCount = after.gcCountSince(before);
+            this.gcMillis = after.gcMillisSince(before);
+            this.cpuNanos = after.cpuNanosSince(before);
+            this.requests = requests;
+        }
+
+        double throughput() {
+            return responses / seconds;
+        }
+
+        String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%n%s loop, %d connections%s, %.1f s, routes %s%n", open ? "open" : "closed",
+                    connections, open ? String.format(", target %.0f req/s", rate) : "", seconds,
+                    Arrays.toString(requests)));
+            out.append(String.format("throughput: %.1f req/s, %d responses, %d errors, status 2xx=%d 3xx=%d 4xx=%d 5xx=%d%n",
+                    throughput(), responses, errors, recorder.statuses.get(2), recorder.statuses.get(3),
+                    recorder.statuses.get(4), recorder.statuses.get(5)));
+            String latencyName = open || expectedInterval > 0 ? "latency (corrected)" : "latency (uncorrected)";
+            appendPercentiles(out, latencyName, latency);
+            appendPercentiles(out, "service time", serviceTime);
+            if (serverBytes >= 0) {
+                out.append(String.format("allocation: server %.1f MB/s (%s/request), load generator %.1f MB/s%n",
+                        serverBytes / seconds / 1e6, responses == 0 ? "-" : (serverBytes / responses) + " B",
+                        generatorBytes / seconds / 1e6));
+            }
+            out.append(String.format("gc: %d collections, %d ms", gcCount, gcMillis));
+            if (cpuNanos >= 0 && responses > 0) {
+                out.append(String.format("; process cpu %.1f us/request", cpuNanos / 1e3 / responses));
+            }
+            return out.append('\n').toString();
+        }
+
+        private void appendPercentiles(StringBuilder out, String name, Histogram.Snapshot snapshot) {
+            out.append(String.format("%-22s", name + " ms:"));
+            for (double percentile : PERCENTILES) {
+                out.append(String.format(" p%s=%.3f", label(percentile), snapshot.getValue(percentile) / 1e6));
+            }
+            out.append(String.format(" max=%.3f%n", snapshot.getMax() / 1e6));
+        }
+
+        String toJson(String version) {
+            StringBuilder json = new StringBuilder(512);
+            json.append("{\"version\":\"").append(version).append('"')
+                    .append(",\"mode\":\"").append(open ? "open" : "closed").append('"')
+                    .append(",\"connections\":").append(connections);
+            if (open) {
+                json.append(",\"rate\":").append(rate);
+            }
+            json.append(",\"seconds\":").append(seconds)
+                    .append(",\"routes\":[");
+            for (int i = 0; i < requests.length; i++) {
+                json.append(i == 0 ? "" : ",").append('"').append(requests[i].toString().replace("\"", "\\\""))
+                        .append('"');
+            }
+            json.append("],\"appConfig\":{");
+            boolean first = true;
+            for (String name : new TreeSet<>(appConfig.stringPropertyNames())) {
+                json.append(first ? "" : ",").append('"').append(name).append("\":\"")
+                        .append(appConfig.getProperty(name).replace("\"", "\\\"")).append('"');
+                first = false;
+            }
+            json.append("},\"throughput\":").append(throughput())
+                    .append(",\"responses\":").append(responses)
+                    .append(",\"errors\":").append(errors)
+                    .append(",\"status\":{");
+            for (int i = 1; i < 6; i++) {
+                json.append(i == 1 ? "" : ",").append('"').append(i).append("xx\":").append(recorder.statuses.get(i));
+            }
+            json.append("},\"latencyCorrected\":").append(open || expectedInterval > 0);
+            appendJsonPercentiles(json, "latencyMs", latency);
+            appendJsonPercentiles(json, "serviceTimeMs", serviceTime);
+            json.append(",\"serverAllocatedBytes\":").append(serverBytes)
+                    .append(",\"generatorAllocatedBytes\":").append(generatorBytes)
+                    .append(",\"gcCount\":").append(gcCount)
+                    .append(",\"gcMillis\":").append(gcMillis)
+                    .append(",\"cpuNanos\":").append(cpuNanos)
+                    .append("}\n");
+            return json.toString();
+        }
+
+        private void appendJsonPercentiles(StringBuilder json, String name, Histogram.Snapshot snapshot) {
+            json.append(",\"").append(name).append("\":{");
+            for (double percentile : PERCENTILES) {
+                json.append("\"p").append(label(percentile)).append("\":").append(snapshot.getValue(percentile) / 1e6)
+                        .append(',');
+            }
+            json.append("\"max\":").append(snapshot.getMax() / 1e6).append('}');
+        }
+
+        private String label(double percentile) {
+            String label = Double.toString(percentile * 100);
+            return label.endsWith(".0") ? label.substring(0, label.length() - 2) : label;
+        }
+    }
+
+    /*
+     * 通过反射启动的 EmbeddedServer：合成应用的服务器类由隔离的类加载器加载，不能直接引用
+     * */
+    private static class EmbeddedApp {
+        private final Object server;
+        private final int port;
+
+        private EmbeddedApp(Object server, int port) {
+            this.server = server;
+            this.port = port;
+        }
+
+        static EmbeddedApp start(ClassLoader loader, String location) throws Exception {
+            Thread current = Thread.currentThread();
+            ClassLoader previous = current.getContextClassLoader();
+            current.setContextClassLoader(loader);
+            try {
+                Class<?> type = loader.loadClass("com.wu.server.EmbeddedServer");
+                Object server = type.getConstructor(String.class).newInstance(location);
+                type.getMethod("start").invoke(server);
+                return new EmbeddedApp(server, (int) type.getMethod("getPort").invoke(server));
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                current.setContextClassLoader(previous);
+            }
+        }
+
+        int getPort() {
+            return port;
+        }
+
+        void stop() throws Exception {
+            server.getClass().getMethod("stop").invoke(server);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.wu.bench.mock;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * 只提供初始化参数的 ServletConfig，用于在容器外调用 MyDispatcherServlet.init
+ * */
+public class MockServletConfig implements ServletConfig {
+
+    private final Map<String, String> parameters = new HashMap<>();
+
+    public MockServletConfig setInitParameter(String name, String value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    @Override
+    public String getServletName() {
+        return "dispatcher";
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    @Override
+    public String getInitParameter(String name) {
+        return parameters.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getInitParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+}
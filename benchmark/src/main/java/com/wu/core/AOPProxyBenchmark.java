@@ -0,0 +1,119 @@
+package com.wu.core;
+
+import com.wu.core.aop.Advice;
+import com.wu.core.aop.AdviceChain;
+import com.wu.core.aop.PointcutExpression;
+import com.wu.core.aop.SubclassProxyFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 代理调用开销：原来的 LegacyAOPProxy vs. 预先构建通知链的 AOPProxy vs. 生成的子类代理
+ *   - advised：带一个前置和一个后置通知的方法
+ *   - unadvised：同一个代理上没有通知的方法
+ *   - methodMetrics：是否记录被代理方法的耗时(minispring_method_duration_seconds)
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AOPProxyBenchmark {
+
+    @Param({"true", "false"})
+    private boolean methodMetrics;
+
+    private SampleService direct;
+    private SampleService legacy;
+    private SampleService chained;
+    private SampleService subclass;
+
+    @Setup
+    public void setup() throws Exception {
+        AdviceChain.setTimed(methodMetrics);
+        direct = new SampleServiceImpl();
+        SampleAspect aspect = new SampleAspect();
+        Method before = SampleAspect.class.getMethod("before");
+        Method after = SampleAspect.class.getMethod("after");
+        legacy = (SampleService) new LegacyAOPProxy().createProxy(aspect, before, after,
+                new SampleServiceImpl(), "advised");
+        PointcutExpression pointcut = PointcutExpression.compile("execution(* com.wu.core.*.advised(..))");
+        List<Advice> advices = Arrays.asList(
+                new Advice(Advice.Type.BEFORE, aspect, before, 0, pointcut),
+                new Advice(Advice.Type.AFTER, aspect, after, 0, pointcut));
+        chained = (SampleService) new AOPProxy().createProxy(new SampleServiceImpl(), advices);
+        subclass = (SampleService) SubclassProxyFactory.createProxy(SampleServiceImpl.class, advices);
+    }
+
+    @Benchmark
+    public int directCall() {
+        return direct.advised();
+    }
+
+    @Benchmark
+    public int legacyAdvised() {
+        return legacy.advised();
+    }
+
+    @Benchmark
+    public int legacyUnadvised() {
+        return legacy.unadvised(1);
+    }
+
+    @Benchmark
+    public int chainAdvised() {
+        return chained.advised();
+    }
+
+    @Benchmark
+    public int chainUnadvised() {
+        return chained.unadvised(1);
+    }
+
+    @Benchmark
+    public int subclassAdvised() {
+        return subclass.advised();
+    }
+
+    @Benchmark
+    public int subclassUnadvised() {
+        return subclass.unadvised(1);
+    }
+
+    public interface SampleService {
+        int advised();
+
+        int unadvised(int value);
+    }
+
+    public static class SampleServiceImpl implements SampleService {
+        private int counter;
+
+        @Override
+        public int advised() {
+            return ++counter;
+        }
+
+        @Override
+        public int unadvised(int value) {
+            return counter + value;
+        }
+    }
+
+    public static class SampleAspect {
+        private int calls;
+
+        public void before() {
+            calls++;
+        }
+
+        public void after() {
+            calls--;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.wu.core;
+
+import com.wu.bench.SyntheticApp;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 启动后按类型获取bean：BeanFactory.getBean
+ *   - service / controller：容器中已有的bean
+ *   - missing：不是bean的类，需要再查一次懒加载的定义
+ * 依赖解析和注入的耗时见 StartupBenchmark.initBean
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BeanFactoryBenchmark {
+
+    @Param({"100", "10000"})
+    private int beans;
+
+    private Class<?> service;
+    private Class<?> controller;
+    private Class<?> missing;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticApp app = SyntheticApp.generate(beans);
+        List<Class<?>> classes = app.loadClasses(app.newClassLoader(getClass().getClassLoader()));
+        BeanFactory.initBean(classes);
+        service = classes.get(0);
+        controller = classes.get(classes.size() - 1);
+        missing = BeanFactoryBenchmark.class;
+        if (BeanFactory.getBean(service) == null || BeanFactory.getBean(controller) == null) {
+            throw new IllegalStateException("合成应用的bean没有创建");
+        }
+    }
+
+    @Benchmark
+    public Object service() {
+        return BeanFactory.getBean(service);
+    }
+
+    @Benchmark
+    public Object controller() {
+        return BeanFactory.getBean(controller);
+    }
+
+    @Benchmark
+    public Object missing() {
+        return BeanFactory.getBean(missing);
+    }
+}
@@ -0,0 +1,63 @@
+package com.wu.core.ioc;
+
+import com.wu.annotation.ioc.MyScope;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 作用域句柄的一次调用取得和归还 prototype 对象：ScopedBean.get + release
+ *   - poolSize=0：每次通过反射调用构造器创建(和 BeanFactory 创建非单例bean一样，这里没有属性要注入)，
+ *     对象带一个 16K 字符的缓冲，代表创建开销较大的bean
+ *   - poolSize=16：从对象池取出，调用 reset 后放回
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScopedBeanBenchmark {
+
+    @Param({"0", "16"})
+    private int poolSize;
+
+    private ScopedBean scopedBean;
+
+    @Setup
+    public void setup() throws Exception {
+        BeanDefinition definition = new BeanDefinition(Buffer.class);
+        definition.setScope(MyScope.PROTOTYPE, poolSize, "reset");
+        Constructor<?> constructor = definition.getConstructor();
+        scopedBean = new ScopedBean(definition, () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public int prototype() {
+        Buffer buffer = (Buffer) scopedBean.get();
+        try {
+            return buffer.append(42);
+        } finally {
+            scopedBean.release(buffer);
+        }
+    }
+
+    public static class Buffer {
+        private final StringBuilder text = new StringBuilder(16 * 1024);
+
+        public int append(int value) {
+            return text.append(value).length();
+        }
+
+        public void reset() {
+            text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.wu.core.trace;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 记录一个 span 的开销：Tracer.begin + Tracer.end
+ *   - idle：当前线程没有在追踪的请求(没有采中)
+ *   - traced：开始追踪、记录一个 span 写入环形缓冲，再取下 traceId
+ * sampleRate=0 时关闭追踪，名字 id 为 0，两者都只比较一次；每个 fork 只 configure 一次
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TracerBenchmark {
+
+    @Param({"0", "1"})
+    private double sampleRate;
+
+    private int name;
+
+    @Setup
+    public void setup() {
+        Tracer.configure(sampleRate, 100, 1024);
+        name = Tracer.register(Tracer.METHOD, "TracerBenchmark.span");
+    }
+
+    @Benchmark
+    public long idle() {
+        long start = Tracer.begin(name);
+        Tracer.end(name, start);
+        return start;
+    }
+
+    @Benchmark
+    public long traced() {
+        long traceId = Tracer.startTrace();
+        long start = Tracer.begin(name);
+        Tracer.end(name, start);
+        Tracer.detach();
+        return traceId + start;
+    }
+}
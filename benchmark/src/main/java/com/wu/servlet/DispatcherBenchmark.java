@@ -0,0 +1,75 @@
+package com.wu.servlet;
+
+import com.wu.bench.SyntheticApp;
+import com.wu.bench.mock.MockHttpServletRequest;
+import com.wu.bench.mock.MockHttpServletResponse;
+import com.wu.core.BeanFactory;
+import com.wu.servlet.handler.HandlerManager;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 完整的一次请求分发：MyDispatcherServlet.service -> doGet -> 路由查找 -> 参数绑定 -> 调用 -> 写出响应
+ * 合成应用中有 routes 个路由，请求最后一个 Controller 的路由；请求和响应对象在调用之间复用
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatcherBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int routes;
+
+    private MyDispatcherServlet servlet;
+    private MockHttpServletRequest exact;
+    private MockHttpServletRequest pathVariable;
+    private MockHttpServletRequest notFound;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticApp app = SyntheticApp.generate(routes);
+        List<Class<?>> classes = app.loadClasses(app.newClassLoader(getClass().getClassLoader()));
+        BeanFactory.initBean(classes);
+        HandlerManager.resolveMappingHandler(classes);
+        // 只测分发，不调用 init：配置、扫描都已经在上面完成
+        servlet = new MyDispatcherServlet();
+        int last = app.getControllerCount() - 1;
+        exact = new MockHttpServletRequest("GET", app.listUri(last));
+        pathVariable = new MockHttpServletRequest("GET", app.itemUri(last, "42"));
+        notFound = new MockHttpServletRequest("GET", "/missing/route");
+        response = new MockHttpServletResponse();
+        servlet.service(exact, response);
+        if (response.getBytesWritten() == 0) {
+            throw new IllegalStateException("合成应用的路由没有返回内容");
+        }
+    }
+
+    @Benchmark
+    public MockHttpServletResponse exactRoute() throws ServletException, IOException {
+        response.reset();
+        servlet.service(exact, response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse pathVariableRoute() throws ServletException, IOException {
+        response.reset();
+        servlet.service(pathVariable, response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse notFound() throws ServletException, IOException {
+        response.reset();
+        servlet.service(notFound, response);
+        return response;
+    }
+}
@@ -0,0 +1,133 @@
+package com.wu.servlet;
+
+import com.wu.bench.IsolatedClassLoader;
+import com.wu.bench.SyntheticApp;
+import com.wu.bench.mock.MockServletConfig;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.Servlet;
+import java.nio.file.Files;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 启动耗时，合成应用有 classes 个类：
+ *   - init：完整的 MyDispatcherServlet.init(读取配置、读取索引或扫描、创建bean并注入、注册路由)
+ *   - initBean：只有 BeanFactory.initBean(依赖解析、创建、代理、注入)，类已经提前加载
+ *   - index 为 false 时隐藏组件索引，init 退回到扫描 class 目录
+ *   - snapshot 为 true 时开启启动快照：准备阶段的第一次启动写入快照，测量的 init 都从快照启动
+ * 每次调用都在新的 IsolatedClassLoader 中重新加载框架，框架的静态状态不会在调用之间累积
+ * */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int classes;
+
+    @Param({"true", "false"})
+    private boolean index;
+
+    @Param({"false", "true"})
+    private boolean snapshot;
+
+    private SyntheticApp app;
+    private MockServletConfig config;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        app = SyntheticApp.generate(classes);
+        config = new MockServletConfig().setInitParameter("contextConfigLocation",
+                "classpath:" + (snapshot ? SyntheticApp.SNAPSHOT_CONFIG : SyntheticApp.CONFIG));
+        // init 捕获了所有异常，先确认一次启动确实注册了所有路由；开启快照时第一次启动写入快照，第二次确认快照可用
+        Files.deleteIfExists(app.getSnapshotFile());
+        checkRoutes();
+        if (snapshot) {
+            if (!Files.exists(app.getSnapshotFile())) {
+                throw new IllegalStateException("没有写入启动快照 " + app.getSnapshotFile());
+            }
+            checkRoutes();
+        }
+    }
+
+    private void checkRoutes() throws Exception {
+        try (IsolatedClassLoader loader = newLoader()) {
+            init(loader);
+            Class<?> handlerManager = loader.loadClass("com.wu.servlet.handler.HandlerManager");
+            List<?> handlers = (List<?>) handlerManager.getMethod("getMappingHandlers").invoke(null);
+            if (handlers.size() != app.getRouteCount()) {
+                throw new IllegalStateException("注册了 " + handlers.size() + " 个路由，应为 " + app.getRouteCount());
+            }
+        }
+    }
+
+    IsolatedClassLoader newLoader() {
+        return new IsolatedClassLoader(app, getClass().getClassLoader(), !index);
+    }
+
+    private Servlet init(ClassLoader loader) throws Exception {
+        Servlet servlet = (Servlet) loader.loadClass(MyDispatcherServlet.class.getName())
+                .getDeclaredConstructor().newInstance();
+        servlet.init(config);
+        return servlet;
+    }
+
+    @Benchmark
+    public Servlet init(FreshLoader fresh) throws Exception {
+        return init(fresh.loader);
+    }
+
+    @Benchmark
+    public void initBean(LoadedClasses loaded) throws Throwable {
+        loaded.initBean.invokeExact(loaded.classList);
+    }
+
+    /*
+     * 每次调用一个新的加载器，什么类都还没有加载
+     * */
+    @State(Scope.Thread)
+    public static class FreshLoader {
+        IsolatedClassLoader loader;
+
+        @Setup(Level.Invocation)
+        public void open(StartupBenchmark startup) {
+            loader = startup.newLoader();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Exception {
+            loader.close();
+        }
+    }
+
+    /*
+     * 每次调用一个新的加载器，合成应用的类已经加载，只剩下 initBean 的工作
+     * */
+    @State(Scope.Thread)
+    public static class LoadedClasses {
+        IsolatedClassLoader loader;
+        MethodHandle initBean;
+        List<Class<?>> classList;
+
+        @Setup(Level.Invocation)
+        public void load(StartupBenchmark startup) throws Exception {
+            loader = startup.newLoader();
+            Class<?> beanFactory = loader.loadClass("com.wu.core.BeanFactory");
+            initBean = MethodHandles.publicLookup().findStatic(beanFactory, "initBean",
+                    MethodType.methodType(void.class, List.class));
+            classList = startup.app.loadClasses(loader);
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Exception {
+            loader.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.wu.servlet.handler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 调用 Controller 方法：Method.invoke vs. 绑定实例的 MethodHandle，direct 为直接调用的基线
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerInvokerBenchmark {
+
+    private SampleController controller;
+    private HandlerInvoker reflection;
+    private HandlerInvoker methodHandle;
+    private String name;
+    private String id;
+
+    @Setup
+    public void setup() throws Exception {
+        controller = new SampleController();
+        Method method = SampleController.class.getMethod("find", String.class, String.class);
+        reflection = HandlerInvoker.create(HandlerInvoker.REFLECTION, method, controller);
+        methodHandle = HandlerInvoker.create(HandlerInvoker.METHOD_HANDLE, method, controller);
+        name = "wu";
+        id = "42";
+    }
+
+    @Benchmark
+    public Object direct() {
+        return controller.find(name, id);
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return reflection.invoke(new Object[]{name, id});
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Exception {
+        return methodHandle.invoke(new Object[]{name, id});
+    }
+
+    public static class SampleController {
+        public String find(String name, String id) {
+            return name.length() + id.length() > 0 ? name : id;
+        }
+    }
+}
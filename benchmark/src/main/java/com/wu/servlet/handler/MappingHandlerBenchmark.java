@@ -0,0 +1,62 @@
+package com.wu.servlet.handler;
+
+import com.wu.bench.SyntheticApp;
+import com.wu.bench.mock.MockHttpServletRequest;
+import com.wu.bench.mock.MockHttpServletResponse;
+import com.wu.core.BeanFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * MappingHandler.handle：已经找到路由之后的参数绑定、方法调用和写出响应，不包括路由查找
+ *   - noArgs：没有参数的方法
+ *   - pathVariable：一个 @MyPathVariable 参数，方法中再调用注入的 Service
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingHandlerBenchmark {
+
+    private MappingHandler listHandler;
+    private MappingHandler itemHandler;
+    private Map<String, String> listVariables;
+    private Map<String, String> itemVariables;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticApp app = SyntheticApp.generate(100);
+        List<Class<?>> classes = app.loadClasses(app.newClassLoader(getClass().getClassLoader()));
+        BeanFactory.initBean(classes);
+        HandlerManager.resolveMappingHandler(classes);
+        RouteMatch list = HandlerManager.lookup("GET", app.listUri(0));
+        RouteMatch item = HandlerManager.lookup("GET", app.itemUri(0, "42"));
+        listHandler = list.getHandler();
+        listVariables = list.getPathVariables();
+        itemHandler = item.getHandler();
+        itemVariables = item.getPathVariables();
+        request = new MockHttpServletRequest("GET", app.itemUri(0, "42"));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse noArgs() throws Exception {
+        response.reset();
+        listHandler.handle(request, response, listVariables);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse pathVariable() throws Exception {
+        response.reset();
+        itemHandler.handle(request, response, itemVariables);
+        return response;
+    }
+}
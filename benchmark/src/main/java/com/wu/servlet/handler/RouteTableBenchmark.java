@@ -0,0 +1,70 @@
+package com.wu.servlet.handler;
+
+import com.wu.servlet.bind.ArgumentResolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 路由查找：RouteTable 索引 vs. 原来逐个遍历 mappingHandlerList 做 uri.equals
+ * 注册 routes 个精确路由和 routes 个带路径变量的路由，请求路径固定取列表末尾的路由（原实现的最坏情况）
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteTableBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int routes;
+
+    private RouteTable routeTable;
+    private List<MappingHandler> handlerList;
+    private String lastExactUri;
+    private String lastVariableUri;
+
+    @Setup
+    public void setup() {
+        routeTable = new RouteTable();
+        handlerList = new ArrayList<>();
+        for (int i = 0; i < routes; i++) {
+            MappingHandler exact = handler("/module" + i + "/list", "GET");
+            MappingHandler variable = handler("/module" + i + "/item/{id}", "GET");
+            routeTable.register(exact);
+            routeTable.register(variable);
+            handlerList.add(exact);
+            handlerList.add(variable);
+        }
+        lastExactUri = "/module" + (routes - 1) + "/list";
+        lastVariableUri = "/module" + (routes - 1) + "/item/42";
+    }
+
+    @Benchmark
+    public RouteMatch indexedExact() {
+        return routeTable.lookup("GET", lastExactUri);
+    }
+
+    @Benchmark
+    public RouteMatch indexedPathVariable() {
+        return routeTable.lookup("GET", lastVariableUri);
+    }
+
+    // 原实现：每个 handler 都拿请求 uri 做一次 equals
+    @Benchmark
+    public MappingHandler linearScan() {
+        for (MappingHandler handler : handlerList) {
+            if (handler.getUri().equals(lastExactUri)) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    private static MappingHandler handler(String uri, String method) {
+        return new MappingHandler(uri, new String[]{method}, Object.class, null, null, new ArgumentResolver[0]);
+    }
+}
@@ -0,0 +1,14 @@
+package com.wu.annotation.aop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface MyAround {
+    // 需要织入的切入点，由 @Pointcut 定义
+    // 环绕方法形如 Object around(JoinPoint joinPoint)，通过 joinPoint.proceed() 调用被代理方法
+    String value() default "";
+}
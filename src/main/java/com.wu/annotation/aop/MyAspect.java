@@ -9,4 +9,7 @@ import java.lang.annotation.Target;
 @Target({ElementType.TYPE})
 public @interface MyAspect {
     String value() default "";
+
+    // 多个切面作用于同一个方法时的顺序，值越小越先执行(处在调用链的越外层)
+    int order() default Integer.MAX_VALUE;
 }
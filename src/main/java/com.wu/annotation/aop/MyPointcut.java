@@ -9,8 +9,9 @@ import java.lang.annotation.Target;
 @Target({ElementType.METHOD})
 public @interface MyPointcut {
     /**
-     * 定义切点的名字，spring中这里还会用到 execution() 等表达式来解析
-     * 简单起见，我们定义一个全限定类名+方法名来表示切点位置
+     * 切点表达式，例如 execution(* com.wu.demo..*Service*.find*(..))、@annotation(注解类名)，
+     * 可以用 && || ! 组合，完整语法见 PointcutExpression
+     * 也兼容原来的 全限定类名+方法名 写法，例如 com.wu.demo.UserServiceImpl.findAll()
      */
     String value() default "";
 }
@@ -0,0 +1,24 @@
+package com.wu.annotation.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 方法执行成功后从缓存中删除条目，通常用在修改数据的方法上
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MyCacheEvict {
+
+    // 缓存名
+    String value();
+
+    // 组成缓存键的参数，规则同 @MyCacheable.key，要和对应的 @MyCacheable 方法算出相同的键
+    String[] key() default {};
+
+    // 为 true 时清空整个缓存，忽略 key
+    boolean allEntries() default false;
+
+    // 为 true 时在方法执行前删除，方法抛出异常也会删除
+    boolean beforeInvocation() default false;
+}
@@ -0,0 +1,25 @@
+package com.wu.annotation.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存方法的返回值：参数相同的调用直接返回缓存的结果，不再执行方法(切面通知仍然执行)
+ * 通过代理生效，只对从容器中取得的bean的外部调用有效；返回 null 也会被缓存，抛出异常时不缓存
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MyCacheable {
+
+    // 缓存名，同名的方法共用一个缓存
+    String value();
+
+    // 组成缓存键的参数：参数名(需要 -parameters 编译)或 p0、p1 这样的下标，为空表示使用全部参数
+    String[] key() default {};
+
+    // 缓存的最大条目数，0 表示使用全局配置 cacheMaxSize；同名的缓存以第一次创建时的配置为准
+    int maxSize() default 0;
+
+    // 缓存条目的有效期(毫秒)，0 表示使用全局配置 cacheTtl
+    long ttl() default 0;
+}
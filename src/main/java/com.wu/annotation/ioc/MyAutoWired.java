@@ -2,8 +2,11 @@ package com.wu.annotation.ioc;
 
 import java.lang.annotation.*;
 
+/**
+ * 标注在属性上时创建后注入；标注在构造器上时用该构造器创建bean，参数按类型从IOC容器中获取
+ */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.FIELD)
+@Target({ElementType.FIELD, ElementType.CONSTRUCTOR})
 public @interface MyAutoWired {
 }
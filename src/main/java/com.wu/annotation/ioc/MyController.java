@@ -6,4 +6,8 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 public @interface MyController {
+    /**
+     * bean的名字，配合 @MyQualifier 使用，默认是首字母小写的类名
+     */
+    String value() default "";
 }
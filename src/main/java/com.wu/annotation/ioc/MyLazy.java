@@ -0,0 +1,14 @@
+package com.wu.annotation.ioc;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注在类上：启动时不创建该bean，第一次使用时才创建
+ * 标注在注入点上：注入一个轻量的句柄，第一次调用方法时才获取真正的bean，注入点必须是接口类型
+ * 懒加载的bean被注入到接口类型的注入点时同样注入句柄；被注入到非接口类型的注入点时只能在启动时创建
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD, ElementType.PARAMETER})
+public @interface MyLazy {
+}
@@ -0,0 +1,12 @@
+package com.wu.annotation.ioc;
+
+import java.lang.annotation.*;
+
+/**
+ * 注入点有多个候选bean且没有 @MyQualifier 时，优先注入标注了该注解的bean
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MyPrimary {
+}
@@ -0,0 +1,13 @@
+package com.wu.annotation.ioc;
+
+import java.lang.annotation.*;
+
+/**
+ * 注入点有多个候选bean时，按bean的名字指定注入哪一个
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+public @interface MyQualifier {
+    String value();
+}
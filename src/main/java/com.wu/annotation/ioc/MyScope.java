@@ -0,0 +1,28 @@
+package com.wu.annotation.ioc;
+
+import java.lang.annotation.*;
+
+/**
+ * bean的作用域，不标注时是单例，每种作用域的bean都不在启动时创建：
+ *   - prototype：每次 getBean 创建一个新的对象；注入的句柄每次调用方法都取一个对象，调用完归还
+ *   - request：每个请求一个对象，第一次使用时创建，请求结束时丢弃或放回对象池
+ *   - thread：每个线程一个对象
+ * 作用域bean只能注入到接口类型的注入点，注入的是按当前请求/线程找到真正对象的句柄；切面和 Controller 只能是单例
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MyScope {
+    String SINGLETON = "singleton";
+    String PROTOTYPE = "prototype";
+    String REQUEST = "request";
+    String THREAD = "thread";
+
+    String value();
+
+    // prototype、request 作用域用完的对象放回对象池的最大个数，0 表示不使用对象池，每次都通过反射创建
+    int poolSize() default 0;
+
+    // 对象放回对象池之前调用的无参方法名，用于清理上一次使用留下的状态，为空时不调用
+    String reset() default "";
+}
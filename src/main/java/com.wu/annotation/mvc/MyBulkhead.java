@@ -0,0 +1,20 @@
+package com.wu.annotation.mvc;
+
+import java.lang.annotation.*;
+
+/**
+ * 限制路由同时处理的请求数(包括异步处理中的请求)，超过时直接返回 503，不执行方法
+ * 慢的路由只会占满自己的并发上限，不会拖慢其他路由
+ * 标注在 Controller 上时对其中每个方法分别生效，方法上的注解优先
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface MyBulkhead {
+
+    // 同时处理的最大请求数；adaptive 为 true 时是自适应并发上限的最大值
+    int value();
+
+    // 为 true 时根据测得的处理延迟自动调整并发上限：延迟上升时降低，延迟稳定时逐渐提高
+    boolean adaptive() default false;
+}
@@ -0,0 +1,11 @@
+package com.wu.annotation.mvc;
+
+import java.lang.annotation.*;
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MyPathVariable {
+    // 请求路径中的变量名，对应 @MyRequestMapping("/user/{id}") 中的 id
+    String value();
+}
@@ -0,0 +1,19 @@
+package com.wu.annotation.mvc;
+
+import java.lang.annotation.*;
+
+/**
+ * 限制路由的请求速率(令牌桶)，超过时直接返回 429，不执行方法
+ * 标注在 Controller 上时对其中每个方法分别生效，方法上的注解优先
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface MyRateLimit {
+
+    // 每秒允许的请求数(令牌的补充速度)
+    double value();
+
+    // 允许的突发请求数(桶的容量)，0 表示等于每秒的请求数
+    int burst() default 0;
+}
@@ -0,0 +1,21 @@
+package com.wu.annotation.mvc;
+
+import java.lang.annotation.*;
+
+/**
+ * 把 JSON 请求体绑定到方法参数上：
+ * 普通类型的参数在调用方法前非阻塞地读完请求体并边读边解析；
+ * InputStream 参数直接得到请求体的输入流，Iterator 参数逐个得到 JSON 数组的元素(或 NDJSON 的每一行)，
+ * 这两种参数在方法中阻塞地读取，适合批量导入
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MyRequestBody {
+
+    // 为 true 时请求体为空返回 400
+    boolean required() default true;
+
+    // 请求体的最大字节数，超过时返回 413；0 表示使用全局配置 maxBodySize，负数表示不限制
+    long maxSize() default 0;
+}
@@ -5,6 +5,12 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.TYPE, ElementType.METHOD})
 public @interface MyRequestMapping {
-    //映射的url
+    //映射的url，支持路径变量 {id}、单段通配符 * 以及多段通配符 **（只能出现在末尾）
     String value();
+
+    //允许的请求方法，如 GET、POST；为空表示不限制请求方法
+    String[] method() default {};
+
+    //异步处理(返回 CompletionStage 或使用虚拟线程)的超时时间，单位毫秒；0 表示使用配置文件中的 asyncTimeout
+    long timeout() default 0;
 }
@@ -2,10 +2,26 @@ package com.wu.annotation.mvc;
 
 import java.lang.annotation.*;
 
+/**
+ * 把请求参数绑定到方法参数上，支持 String、基本类型及其包装类、枚举、数组和 List/Set，
+ * 其他类型按 POJO 处理：创建对象后按属性名逐个绑定请求参数
+ */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.PARAMETER)
 public @interface MyRequestParam {
-    // 提交域里的名称
-    String value();
+    // defaultValue 的默认值，表示没有默认值
+    String NO_DEFAULT = "\n\t\t\n";
+
+    // 提交域里的名称；绑定 POJO 时是属性名的前缀(如 user 对应 user.name)，为空表示没有前缀
+    String value() default "";
+
+    // 为 true 时请求中没有该参数且没有默认值返回 400
+    boolean required() default false;
+
+    // 请求中没有该参数时使用的值，按参数类型转换，集合类型用 separator 分隔(没有指定 separator 时用逗号)
+    String defaultValue() default NO_DEFAULT;
+
+    // 数组/List/Set 参数只有一个值时用它拆分成多个元素(如 "," 时 ?id=1,2 绑定为 [1, 2])；为空(默认)时不拆分，只用 ?id=1&id=2 传多个值
+    String separator() default "";
 }
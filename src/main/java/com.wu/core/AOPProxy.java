@@ -1,37 +1,48 @@
 package com.wu.core;
 
+import com.wu.core.aop.Advice;
+import com.wu.core.aop.AdviceChain;
+
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /*
-* 根据传入的具体前置、后置方法、切入对象、切入点创建切入后的代理对象
+* 根据目标对象以及作用于它的所有通知创建代理对象
+*   - 创建代理时为每个接口方法构建一次通知链(AdviceChain)，调用时直接查表
+*   - 多个切面可以叠加在同一个目标对象上，按 @MyAspect.order 排序
 * */
 public class AOPProxy implements InvocationHandler {
 
-    private Object aspect;
-    private Method before;
-    private Method after;
     private Object target;
-    private String targetMethod;
+    // 按 Method.equals 查找的通知链，包括代理类实现的所有接口方法和 equals/hashCode/toString
+    private Map<Method, AdviceChain> chains;
+    // 按 Method 对象引用查找的缓存：代理类每次传入的都是同一个 Method 对象，
+    // 第一次调用后即可跳过 Method.equals，写时复制，读取无需加锁
+    private volatile Map<Method, AdviceChain> identityChains = new IdentityHashMap<>();
 
     /**
-     * @param aspect       织面对象，也就是 before 和 after 方法的调用者
-     * @param before       具体前置方法：如果没有前置，则before对象为null
-     * @param after        具体后置方法：如果没有后置，则after对象为null
-     * @param target       被代理对象(目标对象)
-     * @param targetMethod 被代理方法(目标方法)
+     * @param target  被代理对象(目标对象)
+     * @param advices 所有候选通知，只有作用于 target 方法的通知会进入调用链
      * @return 代理对象
      */
-    public Object createProxy(Object aspect, Method before, Method after,
-                              Object target, String targetMethod) {
-        this.aspect = aspect;
-        this.before = before;
-        this.after = after;
+    public Object createProxy(Object target, List<Advice> advices) {
         this.target = target;
-        this.targetMethod = targetMethod;
-        return Proxy.newProxyInstance(target.getClass().getClassLoader(),
-                target.getClass().getInterfaces(), this);
+        this.chains = new HashMap<>();
+        Class<?> targetClass = target.getClass();
+        for (Class<?> anInterface : targetClass.getInterfaces()) {
+            for (Method method : anInterface.getMethods()) {
+                chains.put(method, AdviceChain.build(targetClass, method, advices));
+            }
+        }
+        for (Method method : Object.class.getMethods()) {
+            chains.putIfAbsent(method, AdviceChain.build(targetClass, method, advices));
+        }
+        return Proxy.newProxyInstance(targetClass.getClassLoader(), targetClass.getInterfaces(), this);
     }
 
     /**
@@ -41,24 +52,18 @@ public class AOPProxy implements InvocationHandler {
      * @param method 被代理对象的某个方法
      * @param args   方法参数
      * @return 代理对象
-     * @throws Throwable 不处理任何异常
+     * @throws Throwable 通知或目标方法抛出的异常原样抛出
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        // 我们只需要对 targetMethod 方法进行处理，其他方法直接返回原来的调用
-        if (!method.getName().equals(targetMethod)) {
-            return method.invoke(this.target, args);
-        }
-
-        Object result;
-        if (before != null) {
-            // before() 简单起见，方法没有参数
-            before.invoke(this.aspect);
-        }
-        result = method.invoke(target);
-        if (after != null) {
-            after.invoke(this.aspect);
+        AdviceChain chain = identityChains.get(method);
+        if (chain == null) {
+            chain = chains.get(method);
+            Map<Method, AdviceChain> copy = new IdentityHashMap<>(identityChains);
+            copy.put(method, chain);
+            identityChains = copy;
         }
-        return result;
+        // 没有通知的方法在 AdviceChain 内部直接调用目标方法
+        return chain.invoke(target, args);
     }
 }
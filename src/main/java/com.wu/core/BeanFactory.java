@@ -1,185 +1,865 @@
 package com.wu.core;
 
 import com.wu.annotation.aop.MyAfter;
+import com.wu.annotation.aop.MyAround;
 import com.wu.annotation.aop.MyAspect;
 import com.wu.annotation.aop.MyBefore;
 import com.wu.annotation.aop.MyPointcut;
-import com.wu.annotation.ioc.MyAutoWired;
 import com.wu.annotation.ioc.MyComponent;
 import com.wu.annotation.ioc.MyController;
+import com.wu.annotation.ioc.MyLazy;
+import com.wu.annotation.ioc.MyQualifier;
+import com.wu.annotation.ioc.MyScope;
 import com.wu.annotation.ioc.MyService;
+import com.wu.core.aop.Advice;
+import com.wu.core.aop.AdviceChain;
+import com.wu.core.aop.PointcutExpression;
+import com.wu.core.aop.SubclassProxyFactory;
+import com.wu.core.ioc.BeanDefinition;
+import com.wu.core.ioc.BeanInitReport;
+import com.wu.core.ioc.LazyBeanHandler;
+import com.wu.core.ioc.RequestScope;
+import com.wu.core.ioc.ScopedBean;
+import com.wu.core.ioc.ScopedBeanHandler;
+import com.wu.core.ioc.TypeIndex;
+import com.wu.core.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * BeanFactory负责的是IOC的核心功能：
  *   - 将扫描到的类中使用指定注解的都做初始化，并将实例保存到IOC容器中
+ *   - 根据 @MyAutoWired 属性和构造器参数构建依赖图，互不依赖的bean在线程池中并行创建，
+ *     一个bean的依赖都就绪后立即创建和注入，不必等待其他bean
+ *   - 标注了 @MyScope 的非单例bean不放入IOC容器，由 ScopedBean 按作用域创建，注入到单例中的是作用域句柄
  * */
 public class BeanFactory {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(BeanFactory.class);
+
     //IOC容器：key/value=指定类的Class对象/指定类的实例
     private static Map<Class<?>, Object> ioc = new ConcurrentHashMap<>();
-    /**
-     * set存放带有 @AutoWired 注解修饰的属性的类（将set转成线程安全的set）：避免重复遍历整个classList
-     */
-    private static Set<Class<?>> beansHasAutoWiredField = Collections.synchronizedSet(new HashSet<>());
+    // 未经代理的原始对象：IOC容器里的对象被代理后，依赖注入仍然要注入到原始对象上
+    private static Map<Class<?>, Object> rawBeans = new ConcurrentHashMap<>();
+
+    // AOP代理方式，见 useSubclassProxy
+    public static final String PROXY_AUTO = "auto";
+    public static final String PROXY_JDK = "jdk";
+    private static String proxyMode = PROXY_AUTO;
+    // 初始化bean的线程数，小于等于0时使用CPU核数
+    private static int initThreads = 0;
+    // 最近一次初始化的耗时记录
+    private static BeanInitReport initReport;
+    // 最近一次初始化使用的所有创建计划
+    private static volatile List<BeanDefinition> beanDefinitions = Collections.emptyList();
+    // 启动时没有创建的懒加载bean：key/value=bean类/创建计划，第一次 getBean 时创建
+    private static Map<Class<?>, BeanDefinition> lazyDefinitions = new ConcurrentHashMap<>();
+    // 所有切面编译出的通知，懒加载的bean创建时也要用到
+    private static volatile List<Advice> compiledAdvices = Collections.emptyList();
+    // 正在调用构造器的懒加载bean，用于发现构造器的循环依赖
+    private static Set<Class<?>> constructingLazyBeans = new HashSet<>();
+    // 已创建、正在注入属性的懒加载bean，属性之间循环依赖时直接使用
+    private static Map<Class<?>, Object> injectingLazyBeans = new HashMap<>();
+    // 非单例的bean：key/value=bean类/按作用域创建对象的 ScopedBean
+    private static Map<Class<?>, ScopedBean> scopedBeans = new ConcurrentHashMap<>();
+
+    // 开启追踪时每个类的 getBean span 名字
+    private static final ClassValue<Integer> beanTraceNames = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return Tracer.register(Tracer.BEAN, type.getName());
+        }
+    };
 
     /*
-     * getBean：通过类的Class对象获取对应的实例
+     * getBean：通过类的Class对象获取对应的实例，懒加载的bean在第一次获取时创建，
+     * 非单例的bean按作用域返回新的对象、当前请求或当前线程的对象
+     * 开启追踪时在请求中的调用记录为 span
      * */
     public static Object getBean(Class<?> clazz) {
-        return ioc.get(clazz);
+        if (!Tracer.isEnabled()) {
+            return lookupBean(clazz);
+        }
+        int traceName = beanTraceNames.get(clazz);
+        long traceStart = Tracer.begin(traceName);
+        try {
+            return lookupBean(clazz);
+        } finally {
+            Tracer.end(traceName, traceStart);
+        }
+    }
+
+    private static Object lookupBean(Class<?> clazz) {
+        Object bean = ioc.get(clazz);
+        if (bean == null) {
+            ScopedBean scopedBean = scopedBeans.get(clazz);
+            if (scopedBean != null) {
+                return scopedBean.get();
+            }
+            if (lazyDefinitions.containsKey(clazz)) {
+                bean = createLazyBean(clazz);
+            }
+        }
+        return bean;
+    }
+
+    public static void setProxyMode(String mode) {
+        proxyMode = mode;
+    }
+
+    public static void setInitThreads(int threads) {
+        initThreads = threads;
+    }
+
+    public static BeanInitReport getInitReport() {
+        return initReport;
     }
 
     /**
-     * 1、遍历classList中的所有类，创建实例加入IOC容器
-     * 2、处理AOP注解的bean对象，更新IOC容器中的被代理对象
-     * 3、遍历set存放的所有标注了@AutoWired的Class对象，做注入处理
+     * 解析创建计划后按计划初始化所有bean，见 resolveDefinitions 和 createBeans
      */
     public static void initBean(List<Class<?>> classList) throws Exception {
-        // 因为"类定义"在后续处理 类中的 @RequestMapping 注解，生成处理器时还要使用，
-        // 因此这里要创建新容器，不能修改原引用
-        List<Class<?>> classesToCreate = new ArrayList<>(classList);
-        // 保存被 @Aspect 注解的切面类：避免重复遍历整个classList
-        List<Class<?>> aspectClasses = new ArrayList<>();
+        createBeans(resolveDefinitions(classList));
+    }
 
-        //1、遍历扫描到的所有类，都创建实例加入IOC容器
-        for (Class<?> clazz : classesToCreate) {
-            createBean(clazz);
-            if(clazz.isAnnotationPresent(MyAspect.class))
-                aspectClasses.add(clazz);
+    /**
+     * 为classList中带容器注解的类生成创建计划(BeanDefinition)，通过类型索引解析出每个依赖对应的bean类，
+     * 标注了 @MyLazy 的类不在启动时创建，注入到接口类型注入点时注入懒加载句柄；
+     * 标注了 @MyScope 的非单例bean也不在启动时创建，只能注入到接口类型的注入点，注入作用域句柄
+     */
+    public static List<BeanDefinition> resolveDefinitions(List<Class<?>> classList) {
+        // 只处理 @MyComponent / @MyController / @MyService注解的类
+        Map<Class<?>, BeanDefinition> definitions = new LinkedHashMap<>();
+        for (Class<?> clazz : classList) {
+            if (!clazz.isAnnotationPresent(MyComponent.class)
+                    && !clazz.isAnnotationPresent(MyController.class)
+                    && !clazz.isAnnotationPresent(MyService.class)) {
+                continue;
+            }
+            BeanDefinition definition = new BeanDefinition(clazz);
+            if (!definition.isSingleton() && (clazz.isAnnotationPresent(MyAspect.class)
+                    || clazz.isAnnotationPresent(MyController.class))) {
+                throw new IllegalStateException("切面和 Controller 只能是单例: " + clazz.getName());
+            }
+            definitions.put(clazz, definition);
         }
+        TypeIndex typeIndex = new TypeIndex(definitions.keySet());
+        for (BeanDefinition definition : definitions.values()) {
+            resolveDependencies(definition, typeIndex);
+        }
+        // 懒加载的bean：切面总是在启动时创建；非单例的bean
+        Set<Class<?>> lazyBeans = new HashSet<>();
+        Set<Class<?>> scoped = new HashSet<>();
+        for (BeanDefinition definition : definitions.values()) {
+            if (!definition.isSingleton()) {
+                scoped.add(definition.getBeanClass());
+            } else if (definition.isLazy() && !definition.getBeanClass().isAnnotationPresent(MyAspect.class)) {
+                lazyBeans.add(definition.getBeanClass());
+            }
+        }
+        // 懒加载的bean被启动时创建的bean注入到非接口类型的注入点时，只能在启动时创建，直到不再有新的这类bean
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BeanDefinition definition : definitions.values()) {
+                Class<?> beanClass = definition.getBeanClass();
+                if (!lazyBeans.contains(beanClass) && !scoped.contains(beanClass)) {
+                    changed |= markLazyDependencies(definition, lazyBeans, scoped, true);
+                }
+            }
+        }
+        for (BeanDefinition definition : definitions.values()) {
+            Class<?> beanClass = definition.getBeanClass();
+            boolean lazy = lazyBeans.contains(beanClass);
+            if (lazy || scoped.contains(beanClass)) {
+                markLazyDependencies(definition, lazyBeans, scoped, false);
+            }
+            definition.setLazy(lazy);
+        }
+        return new ArrayList<>(definitions.values());
+    }
+
+    /**
+     * 按创建计划初始化bean，计划来自 resolveDefinitions 或启动快照：
+     * 1、按依赖图在线程池中并行初始化：
+     *    - 创建：构造器依赖的bean注入完成、所有切面创建完成后，调用构造器并按需创建AOP代理
+     *    - 注入：自己和属性依赖的bean都创建完成后，注入 @MyAutoWired 属性
+     *   属性依赖只需要对方创建完成，因此属性之间的循环依赖仍然允许；构造器参数之间的循环依赖会报错
+     * 2、打印每个bean的耗时和启动的关键路径
+     * 非单例的bean不参与初始化，只注册对应的 ScopedBean
+     */
+    public static void createBeans(List<BeanDefinition> definitions) throws Exception {
+        // 保存被 @Aspect 注解的切面类：避免重复遍历所有的bean
+        Set<Class<?>> aspectClasses = new LinkedHashSet<>();
+        Map<Class<?>, BeanDefinition> eagerDefinitions = new LinkedHashMap<>();
+        for (BeanDefinition definition : definitions) {
+            Class<?> beanClass = definition.getBeanClass();
+            if (beanClass.isAnnotationPresent(MyAspect.class)) {
+                aspectClasses.add(beanClass);
+            }
+            if (!definition.isSingleton()) {
+                registerScopedBean(definition);
+            } else if (definition.isLazy()) {
+                lazyDefinitions.put(beanClass, definition);
+            } else {
+                eagerDefinitions.put(beanClass, definition);
+            }
+        }
+        beanDefinitions = Collections.unmodifiableList(new ArrayList<>(definitions));
 
-        // 2、处理AOP注解的bean对象，更新IOC容器中的被代理对象
-        resolveAOP(aspectClasses);
+        // 1、按依赖图并行初始化
+        int threads = initThreads > 0 ? initThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "bean-init-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        BeanInitReport report = new BeanInitReport();
+        try {
+            new Initialization(eagerDefinitions, aspectClasses, pool, report).start().join();
+        } catch (CompletionException e) {
+            // 抛出某个bean初始化失败的原始异常
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            pool.shutdown();
+        }
 
-        // 3、遍历set存放的所有标注了@AutoWired的Class对象，做注入处理
-        for (Class<?> clazz : beansHasAutoWiredField) {
-            resolveAutowired(clazz);
+        // 2、打印耗时
+        report.finish();
+        initReport = report;
+        report.log(logger);
+        if (!lazyDefinitions.isEmpty()) {
+            logger.info("{} lazy beans will be created on first use", lazyDefinitions.size());
+        }
+        if (!scopedBeans.isEmpty()) {
+            logger.info("{} scoped beans will be created per use, request or thread", scopedBeans.size());
         }
     }
 
+    /*
+     * 注册一个非单例bean，有 request 作用域的bean时请求才创建 RequestScope
+     * */
+    private static void registerScopedBean(BeanDefinition definition) {
+        scopedBeans.put(definition.getBeanClass(), new ScopedBean(definition, () -> createScopedBean(definition)));
+        if (MyScope.REQUEST.equals(definition.getScope())) {
+            RequestScope.enable();
+        }
+    }
 
     /**
-     * 通过 Class 对象创建实例，加入IOC容器
-     *  - 将属性标注了@Autowired的Class对象加入set：beansHasAutoWiredField
-     * @param clazz 需要创建实例的 Class 对象
+     * 最近一次 createBeans 使用的创建计划，包括懒加载的bean；通知方法在bean创建后才确定
      */
-    private static void createBean(Class<?> clazz) throws IllegalAccessException, InstantiationException {
-        // 只处理 @MyComponent / @MyController / @MyService注解的类
-        if (!clazz.isAnnotationPresent(MyComponent.class)
-                && !clazz.isAnnotationPresent(MyController.class)
-                && !clazz.isAnnotationPresent(MyService.class)) {
-            return;
+    public static List<BeanDefinition> getBeanDefinitions() {
+        return beanDefinitions;
+    }
+
+    /**
+     * 运行时刷新的第一步：为重新加载的类创建新的bean，依赖按当前容器中的bean解析，
+     * 创建(包括AOP代理)并注入完成后返回，还没有放入IOC容器，见 commitBeans
+     *
+     * @param classes  新加载的类
+     * @param replaced 将被替换或删除的bean类，不能有其他bean依赖它们，否则要重启才能生效
+     * @return key/value=创建计划/IOC容器中的对象(可能是代理)
+     */
+    public static synchronized Map<BeanDefinition, Object> prepareBeans(List<Class<?>> classes,
+                                                                        Collection<Class<?>> replaced) {
+        List<BeanDefinition> current = beanDefinitions;
+        Set<Class<?>> beanClasses = new LinkedHashSet<>();
+        for (BeanDefinition definition : current) {
+            Class<?> beanClass = definition.getBeanClass();
+            if (replaced.contains(beanClass)) {
+                continue;
+            }
+            beanClasses.add(beanClass);
+            for (Class<?> dependency : dependencies(definition)) {
+                if (replaced.contains(dependency)) {
+                    throw new IllegalStateException(dependency.getName() + " 被 " + beanClass.getName()
+                            + " 依赖，不能在运行时替换");
+                }
+            }
         }
-        //将所有属性标注了@Autowired的Class对象加入set
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(MyAutoWired.class)) {
-                beansHasAutoWiredField.add(clazz);
+        beanClasses.addAll(classes);
+        TypeIndex typeIndex = new TypeIndex(beanClasses);
+        Set<Class<?>> lazyBeans = new HashSet<>(lazyDefinitions.keySet());
+        Map<BeanDefinition, Object> prepared = new LinkedHashMap<>();
+        try {
+            for (Class<?> beanClass : classes) {
+                BeanDefinition definition = new BeanDefinition(beanClass);
+                if (!definition.isSingleton()) {
+                    throw new IllegalStateException(beanClass.getName() + " 不是单例，需要重启");
+                }
+                resolveDependencies(definition, typeIndex);
+                markLazyDependencies(definition, lazyBeans, scopedBeans.keySet(), false);
+                for (Class<?> dependency : dependencies(definition)) {
+                    if (classes.contains(dependency)) {
+                        throw new IllegalStateException(beanClass.getName() + " 依赖同时刷新的 "
+                                + dependency.getName() + "，需要重启");
+                    }
+                }
+                definition.setLazy(false);
+                Object bean = createBean(definition, bindAdvices(definition, compiledAdvices));
+                injectBean(definition);
+                prepared.put(definition, bean);
             }
+        } catch (RuntimeException e) {
+            discardBeans(prepared);
+            for (Class<?> beanClass : classes) {
+                rawBeans.remove(beanClass);
+            }
+            throw e;
         }
-        // 初始化对象
-        Object bean = clazz.newInstance();
-        //加入IOC容器
-        ioc.put(clazz, bean);
+        return prepared;
+    }
 
+    /**
+     * 运行时刷新的第二步：把 prepareBeans 创建的bean放入IOC容器，移除被替换的bean
+     * 已经拿到旧bean引用的请求不受影响
+     */
+    public static synchronized void commitBeans(Map<BeanDefinition, Object> prepared, Collection<Class<?>> replaced) {
+        List<BeanDefinition> definitions = new ArrayList<>(beanDefinitions.size() + prepared.size());
+        for (BeanDefinition definition : beanDefinitions) {
+            if (!replaced.contains(definition.getBeanClass())) {
+                definitions.add(definition);
+            }
+        }
+        for (Map.Entry<BeanDefinition, Object> entry : prepared.entrySet()) {
+            ioc.put(entry.getKey().getBeanClass(), entry.getValue());
+            definitions.add(entry.getKey());
+        }
+        for (Class<?> beanClass : replaced) {
+            ioc.remove(beanClass);
+            rawBeans.remove(beanClass);
+            lazyDefinitions.remove(beanClass);
+            scopedBeans.remove(beanClass);
+        }
+        beanDefinitions = Collections.unmodifiableList(definitions);
     }
 
     /**
-     * 对于所有被 @Aspect 注解修饰的类：
-     * 遍历他们定义的方法，处理 @Pointcut、@Before 以及 @After 注解
-     * 创建被切入对象的代理对象，更新到IOC容器中
+     * 放弃 prepareBeans 创建的bean(刷新在后续步骤失败时)
      */
-    private static void resolveAOP(List<Class<?>> aspectClasses)
-            throws ClassNotFoundException, IllegalAccessException, InstantiationException {
-        if (aspectClasses.size() == 0) {
-            return;
+    public static synchronized void discardBeans(Map<BeanDefinition, Object> prepared) {
+        for (BeanDefinition definition : prepared.keySet()) {
+            rawBeans.remove(definition.getBeanClass());
+        }
+    }
+
+    // 构造器参数和属性依赖的所有bean类
+    private static List<Class<?>> dependencies(BeanDefinition definition) {
+        List<Class<?>> dependencies = new ArrayList<>();
+        for (Class<?> dependency : definition.getConstructorDependencies()) {
+            if (dependency != null) {
+                dependencies.add(dependency);
+            }
+        }
+        for (Class<?> dependency : definition.getFieldDependencies()) {
+            if (dependency != null) {
+                dependencies.add(dependency);
+            }
+        }
+        return dependencies;
+    }
+
+    /*
+     * 通过类型索引把构造器参数和 @MyAutoWired 属性的类型解析成具体的bean类，见 TypeIndex.resolve
+     * */
+    private static void resolveDependencies(BeanDefinition definition, TypeIndex typeIndex) {
+        Class<?> beanClass = definition.getBeanClass();
+        Parameter[] parameters = definition.getConstructor().getParameters();
+        Class<?>[] constructorDependencies = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            MyQualifier qualifier = parameters[i].getAnnotation(MyQualifier.class);
+            constructorDependencies[i] = typeIndex.resolve(parameters[i].getType(),
+                    qualifier == null ? null : qualifier.value(), beanClass.getName() + " 的构造器第" + (i + 1) + "个参数");
+        }
+        List<Field> fields = definition.getAutowiredFields();
+        Class<?>[] fieldDependencies = new Class<?>[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            MyQualifier qualifier = fields.get(i).getAnnotation(MyQualifier.class);
+            fieldDependencies[i] = typeIndex.resolve(fields.get(i).getType(),
+                    qualifier == null ? null : qualifier.value(), beanClass.getName() + "." + fields.get(i).getName());
+        }
+        definition.setConstructorDependencies(constructorDependencies);
+        definition.setFieldDependencies(fieldDependencies);
+    }
+
+    /*
+     * 决定每个注入点是否注入句柄：注入点标注了 @MyLazy，或依赖的是懒加载的bean且注入点是接口类型，或依赖的是非单例的bean
+     * promote 为 true 时，懒加载的bean被注入到非接口类型的注入点，就把它从 lazyBeans 中移除，返回是否有移除
+     * */
+    private static boolean markLazyDependencies(BeanDefinition definition, Set<Class<?>> lazyBeans,
+                                                Set<Class<?>> scoped, boolean promote) {
+        Parameter[] parameters = definition.getConstructor().getParameters();
+        List<Field> fields = definition.getAutowiredFields();
+        boolean[] lazyConstructorDependencies = new boolean[parameters.length];
+        boolean[] lazyFieldDependencies = new boolean[fields.size()];
+        boolean changed = false;
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            lazyConstructorDependencies[i] = isLazyDependency(parameter.getType(), parameter.isAnnotationPresent(MyLazy.class),
+                    definition.getConstructorDependencies()[i], lazyBeans, scoped, definition.getBeanClass().getName() + " 的构造器");
+            changed |= promote && promoteLazyBean(definition.getConstructorDependencies()[i],
+                    lazyConstructorDependencies[i], lazyBeans);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            lazyFieldDependencies[i] = isLazyDependency(field.getType(), field.isAnnotationPresent(MyLazy.class),
+                    definition.getFieldDependencies()[i], lazyBeans, scoped, definition.getBeanClass().getName() + "." + field.getName());
+            changed |= promote && promoteLazyBean(definition.getFieldDependencies()[i],
+                    lazyFieldDependencies[i], lazyBeans);
+        }
+        definition.setLazyConstructorDependencies(lazyConstructorDependencies);
+        definition.setLazyFieldDependencies(lazyFieldDependencies);
+        return changed;
+    }
+
+    private static boolean isLazyDependency(Class<?> type, boolean annotated, Class<?> dependency,
+                                            Set<Class<?>> lazyBeans, Set<Class<?>> scoped, String injectionPoint) {
+        if (annotated && !type.isInterface()) {
+            throw new IllegalStateException("@MyLazy 注入点必须是接口类型: " + injectionPoint);
+        }
+        if (dependency != null && scoped.contains(dependency)) {
+            if (!type.isInterface()) {
+                throw new IllegalStateException("非单例的bean " + dependency.getName() + " 只能注入到接口类型的注入点: "
+                        + injectionPoint);
+            }
+            return true;
+        }
+        return dependency != null && (annotated || (lazyBeans.contains(dependency) && type.isInterface()));
+    }
+
+    private static boolean promoteLazyBean(Class<?> dependency, boolean lazy, Set<Class<?>> lazyBeans) {
+        if (dependency == null || lazy || !lazyBeans.remove(dependency)) {
+            return false;
+        }
+        logger.info("lazy bean {} is injected by class type, created at startup", dependency.getName());
+        return true;
+    }
+
+    /*
+     * 注入点要注入的对象：单例、懒加载句柄或作用域句柄
+     * */
+    private static Object dependencyValue(Class<?> type, Class<?> dependency, boolean lazy) {
+        if (dependency == null) {
+            return null;
+        }
+        if (!lazy) {
+            return getBean(dependency);
+        }
+        ScopedBean scopedBean = scopedBeans.get(dependency);
+        return scopedBean != null ? ScopedBeanHandler.create(type, scopedBean) : LazyBeanHandler.create(type, dependency);
+    }
+
+    /*
+     * 创建非单例bean的一个对象：和懒加载的bean一样创建、注入，但不放入IOC容器，原始对象也只在这里使用
+     * */
+    private static Object createScopedBean(BeanDefinition definition) {
+        List<Advice> advices;
+        synchronized (definition) {
+            advices = bindAdvices(definition, compiledAdvices);
         }
-        // 初始化每个@Aspect标注的类，为简单起见，这里先假定每一个代理类都做如下处理
-        // 并且每个切面类最多只有一个切点，一个前置以及一个后置处理器，
+        Map<Class<?>, Object> raw = new HashMap<>(2);
+        Object bean = createBean(definition, advices, raw);
+        injectFields(definition, raw.get(definition.getBeanClass()));
+        return bean;
+    }
+
+    /*
+     * 创建懒加载的bean：创建、注入完成后才放入IOC容器，其他线程不会拿到注入了一半的对象
+     * */
+    private static synchronized Object createLazyBean(Class<?> beanClass) {
+        Object bean = ioc.get(beanClass);
+        if (bean == null) {
+            bean = injectingLazyBeans.get(beanClass);
+        }
+        if (bean != null) {
+            return bean;
+        }
+        BeanDefinition definition = lazyDefinitions.get(beanClass);
+        if (!constructingLazyBeans.add(beanClass)) {
+            throw new IllegalStateException("存在循环依赖: " + constructingLazyBeans + " -> " + beanClass.getName());
+        }
+        try {
+            bean = createBean(definition, bindAdvices(definition, compiledAdvices));
+        } finally {
+            constructingLazyBeans.remove(beanClass);
+        }
+        injectingLazyBeans.put(beanClass, bean);
+        try {
+            injectBean(definition);
+        } finally {
+            injectingLazyBeans.remove(beanClass);
+        }
+        ioc.put(beanClass, bean);
+        lazyDefinitions.remove(beanClass);
+        logger.info("created lazy bean {}", beanClass.getName());
+        return bean;
+    }
+
+    /*
+     * 一次初始化过程：为每个bean的"创建"和"注入"两个阶段各生成一个 CompletableFuture，
+     * 前置阶段都完成后才提交到线程池执行，线程池中的任务不会阻塞等待其他bean
+     * 生成 future 的过程就是对依赖图的深度优先遍历，同时检查循环依赖
+     * */
+    private static class Initialization {
+        private final Map<Class<?>, BeanDefinition> definitions;
+        private final Set<Class<?>> aspectClasses;
+        private final Executor pool;
+        private final BeanInitReport report;
+        // key/value=bean类/创建完成(已创建代理)时得到IOC容器中的对象
+        private final Map<Class<?>, CompletableFuture<Object>> created = new HashMap<>();
+        // key/value=bean类/属性注入完成
+        private final Map<Class<?>, CompletableFuture<Object>> injected = new HashMap<>();
+        // 所有切面创建完成后编译出的通知，所有非切面bean的创建都要等待它
+        private CompletableFuture<List<Advice>> advices;
+        // 深度优先遍历的当前路径，用于发现和报告循环依赖
+        private final LinkedHashSet<String> path = new LinkedHashSet<>();
+
+        Initialization(Map<Class<?>, BeanDefinition> definitions, Set<Class<?>> aspectClasses,
+                       Executor pool, BeanInitReport report) {
+            this.definitions = definitions;
+            this.aspectClasses = aspectClasses;
+            this.pool = pool;
+            this.report = report;
+        }
+
+        CompletableFuture<Void> start() {
+            List<CompletableFuture<Object>> all = new ArrayList<>();
+            for (Class<?> beanClass : definitions.keySet()) {
+                all.add(injected(beanClass));
+            }
+            return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]));
+        }
+
+        private CompletableFuture<Object> created(Class<?> beanClass) {
+            CompletableFuture<Object> future = created.get(beanClass);
+            if (future != null) {
+                return future;
+            }
+            String node = beanClass.getName() + " 的创建";
+            enter(node);
+            BeanDefinition definition = definitions.get(beanClass);
+            List<CompletableFuture<?>> dependencies = new ArrayList<>();
+            List<BeanInitReport.Phase> prerequisites = new ArrayList<>();
+            // 构造器参数要等依赖的bean注入完成，避免构造器里使用到还没注入的属性；注入懒加载句柄的不需要等待
+            Class<?>[] constructorDependencies = definition.getConstructorDependencies();
+            for (int i = 0; i < constructorDependencies.length; i++) {
+                Class<?> dependency = constructorDependencies[i];
+                if (dependency != null && !definition.getLazyConstructorDependencies()[i]) {
+                    dependencies.add(injected(dependency));
+                    prerequisites.add(report.injected(dependency));
+                }
+            }
+            CompletableFuture<List<Advice>> beanAdvices;
+            if (aspectClasses.isEmpty() || aspectClasses.contains(beanClass)) {
+                beanAdvices = CompletableFuture.completedFuture(Collections.emptyList());
+            } else {
+                beanAdvices = advices();
+                for (Class<?> aspectClass : aspectClasses) {
+                    prerequisites.add(report.created(aspectClass));
+                }
+            }
+            future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .thenCombine(beanAdvices, (v, candidates) -> candidates)
+                    .thenApplyAsync(candidates -> createBean(definition, candidates, prerequisites), pool);
+            leave(node);
+            created.put(beanClass, future);
+            return future;
+        }
+
+        private CompletableFuture<Object> injected(Class<?> beanClass) {
+            CompletableFuture<Object> future = injected.get(beanClass);
+            if (future != null) {
+                return future;
+            }
+            String node = beanClass.getName() + " 的属性注入";
+            enter(node);
+            BeanDefinition definition = definitions.get(beanClass);
+            List<CompletableFuture<?>> dependencies = new ArrayList<>();
+            List<BeanInitReport.Phase> prerequisites = new ArrayList<>();
+            dependencies.add(created(beanClass));
+            prerequisites.add(report.created(beanClass));
+            // 属性只需要依赖的bean创建完成(拿到最终的引用)，不需要等它注入完成
+            Class<?>[] fieldDependencies = definition.getFieldDependencies();
+            for (int i = 0; i < fieldDependencies.length; i++) {
+                Class<?> dependency = fieldDependencies[i];
+                if (dependency != null && !definition.getLazyFieldDependencies()[i]) {
+                    dependencies.add(created(dependency));
+                    prerequisites.add(report.created(dependency));
+                }
+            }
+            future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(v -> injectBean(definition, prerequisites), pool);
+            leave(node);
+            injected.put(beanClass, future);
+            return future;
+        }
+
+        private CompletableFuture<List<Advice>> advices() {
+            if (advices == null) {
+                List<CompletableFuture<Object>> aspects = new ArrayList<>();
+                for (Class<?> aspectClass : aspectClasses) {
+                    aspects.add(created(aspectClass));
+                }
+                advices = CompletableFuture.allOf(aspects.toArray(new CompletableFuture<?>[0]))
+                        .thenApply(v -> compiledAdvices = compileAdvices(aspectClasses));
+            }
+            return advices;
+        }
+
+        private void enter(String node) {
+            if (!path.add(node)) {
+                StringBuilder cycle = new StringBuilder();
+                boolean inCycle = false;
+                for (String n : path) {
+                    inCycle |= n.equals(node);
+                    if (inCycle) {
+                        cycle.append(n).append(" -> ");
+                    }
+                }
+                throw new IllegalStateException("存在循环依赖: " + cycle + node);
+            }
+        }
+
+        private void leave(String node) {
+            path.remove(node);
+        }
+
+        private Object createBean(BeanDefinition definition, List<Advice> advices,
+                                  List<BeanInitReport.Phase> prerequisites) {
+            Class<?> beanClass = definition.getBeanClass();
+            BeanInitReport.Phase phase = report.created(beanClass);
+            report.begin(phase, prerequisites);
+            try {
+                Object bean = BeanFactory.createBean(definition, bindAdvices(definition, advices));
+                //加入IOC容器
+                ioc.put(beanClass, bean);
+                return bean;
+            } finally {
+                report.end(phase);
+            }
+        }
+
+        private Object injectBean(BeanDefinition definition, List<BeanInitReport.Phase> prerequisites) {
+            Class<?> beanClass = definition.getBeanClass();
+            BeanInitReport.Phase phase = report.injected(beanClass);
+            report.begin(phase, prerequisites);
+            BeanFactory.injectBean(definition);
+            report.end(phase);
+            return ioc.get(beanClass);
+        }
+    }
+
+    /*
+     * 创建阶段：调用构造器，被切入的bean同时创建代理，返回要放入IOC容器的对象
+     * */
+    private static Object createBean(BeanDefinition definition, List<Advice> candidates) {
+        return createBean(definition, candidates, rawBeans);
+    }
+
+    /*
+     * 原始对象放入 raw，依赖注入时使用
+     * */
+    private static Object createBean(BeanDefinition definition, List<Advice> candidates, Map<Class<?>, Object> raw) {
+        Class<?> beanClass = definition.getBeanClass();
+        try {
+            boolean defaultConstructor = definition.getConstructor().getParameterCount() == 0;
+            Object bean;
+            Object proxy;
+            // 有方法使用缓存注解的bean即使没有被切入也需要代理
+            boolean proxied = !candidates.isEmpty() || AdviceChain.isCached(beanClass);
+            if (proxied && useSubclassProxy(beanClass, defaultConstructor)) {
+                // 子类代理：直接创建生成的子类作为bean，不再额外创建一个原始对象，依赖注入也注入到它上面
+                bean = SubclassProxyFactory.createProxy(beanClass, candidates);
+                proxy = bean;
+            } else {
+                Class<?>[] parameterTypes = definition.getConstructor().getParameterTypes();
+                Class<?>[] dependencies = definition.getConstructorDependencies();
+                boolean[] lazy = definition.getLazyConstructorDependencies();
+                Object[] args = new Object[dependencies.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = dependencyValue(parameterTypes[i], dependencies[i], lazy[i]);
+                }
+                bean = definition.getConstructor().newInstance(args);
+                // JDK动态代理：包装原始对象
+                proxy = proxied ? new AOPProxy().createProxy(bean, candidates) : bean;
+            }
+            raw.put(beanClass, bean);
+            return proxy;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("创建bean失败: " + beanClass.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建bean失败: " + beanClass.getName(), e);
+        }
+    }
+
+    /*
+     * 注入阶段：处理一个bean对象中的所有@Autowired属性，注入到原始对象上，ioc中的对象可能已经是代理对象
+     * */
+    private static void injectBean(BeanDefinition definition) {
+        injectFields(definition, rawBeans.get(definition.getBeanClass()));
+    }
+
+    private static void injectFields(BeanDefinition definition, Object bean) {
+        List<Field> fields = definition.getAutowiredFields();
+        Class<?>[] dependencies = definition.getFieldDependencies();
+        boolean[] lazy = definition.getLazyFieldDependencies();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            try {
+                //依赖注入的关键，提取IOC容器里的最新的bean做注入
+                field.set(bean, dependencyValue(field.getType(), dependencies[i], lazy[i]));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 对于所有被 @Aspect 注解修饰的类：
+     * 遍历他们定义的方法，处理 @Pointcut、@Before、@After 以及 @Around 注解，把切点表达式编译成通知(Advice)
+     * 之后每个bean创建时用这些通知去匹配，被切入的bean只创建一个代理对象
+     */
+    private static List<Advice> compileAdvices(Set<Class<?>> aspectClasses) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<Advice> advices = new ArrayList<>();
         for (Class<?> aClass : aspectClasses) {
-            Method before = null;
-            Method after = null;
-            String methodName = null;//被切入的方法的方法名
-            Object target = null;
-            String pointcutName = null;//切入点的别名
+            int order = aClass.getAnnotation(MyAspect.class).order();
+            // 切面对象直接使用IOC容器里的实例
+            Object aspect = ioc.get(aClass);
 
             //处理@MyPointcut：该注解用于方法上
-            //注解中指定的value是要切入的具体位置，例如：com.example.service.impl.UserServiceImpl.findAll()
-            //从value我们可以得到被切入类的全限定名、方法名
+            //注解中指定的value是切点表达式，例如：execution(* com.example.service..*Service.find*(..))，
+            //也兼容原来的写法 com.example.service.impl.UserServiceImpl.findAll()
             //从使用该注解的方法上可以得到该pointcut的方法名，可以作为该切入点的唯一标识pointcutName
-            Object bean = aClass.newInstance();
-            for (Method m : bean.getClass().getDeclaredMethods()) {
+            //一个切面类可以定义多个切点，key/value=pointcutName/切点的值
+            Map<String, String> pointcuts = new HashMap<>();
+            for (Method m : aClass.getDeclaredMethods()) {
                 if (m.isAnnotationPresent(MyPointcut.class)) {
-                    // pointcut:指定要切入的全限定类名.方法名，例如：com.example.service.impl.UserServiceImpl.findAll()
-                    String pointcut = m.getAnnotation(MyPointcut.class).value();
-                    String classStr = pointcut.substring(0, pointcut.lastIndexOf("."));
-                    target = Thread.currentThread().getContextClassLoader().loadClass(classStr).newInstance();
-                    methodName = pointcut.substring(pointcut.lastIndexOf(".") + 1);
-                    pointcutName = m.getName();
+                    pointcuts.put(m.getName(), m.getAnnotation(MyPointcut.class).value());
                 }
             }
-            for (Method m : bean.getClass().getDeclaredMethods()) {
-                //处理@MyBefore：该注解用在方法上，希望在切点对象之前执行
-                //注解中指定的value是切入点的唯一标识pointcutName，这样就能实现前置方法和切入点的绑定
+            //处理@MyBefore、@MyAfter、@MyAround：注解中指定的value可以是切入点的唯一标识 pointcutName()，
+            //也可以直接写切点表达式，或用 && || ! 组合多个切点，一个切点上可以有任意多个通知
+            for (Method m : aClass.getDeclaredMethods()) {
+                Advice.Type type;
+                String value;
                 if (m.isAnnotationPresent(MyBefore.class)) {
-                    String value = m.getAnnotation(MyBefore.class).value();
-                    value = value.substring(0, value.indexOf("("));
-                    if (value.equals(pointcutName)) {
-                        before = m;
-                    }
+                    type = Advice.Type.BEFORE;
+                    value = m.getAnnotation(MyBefore.class).value();
+                } else if (m.isAnnotationPresent(MyAfter.class)) {
+                    type = Advice.Type.AFTER;
+                    value = m.getAnnotation(MyAfter.class).value();
+                } else if (m.isAnnotationPresent(MyAround.class)) {
+                    type = Advice.Type.AROUND;
+                    value = m.getAnnotation(MyAround.class).value();
+                } else {
+                    continue;
                 }
-                //处理@MyAfter：该注解用在方法上，希望在切点对象之后执行
-                //注解中指定的value是切入点的唯一标识pointcutName，这样就能实现后置方法和切入点的绑定
-                else if (m.isAnnotationPresent(MyAfter.class)) {
-                    String value = m.getAnnotation(MyAfter.class).value();
-                    value = value.substring(0, value.indexOf("("));
-                    if (value.equals(pointcutName)) {
-                        after = m;
-                    }
+                PointcutExpression pointcut;
+                try {
+                    // 启动时编译一次，之后只在创建代理时对每个方法求值
+                    pointcut = PointcutExpression.compile(value, pointcuts, classLoader);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException(e.getMessage() + "，位于 " + m, e);
                 }
+                advices.add(new Advice(type, aspect, m, order, pointcut));
             }
-            // 获取代理对象：这里用到了动态代理
-            Object proxy = new AOPProxy().createProxy(bean, before, after,
-                    target, methodName.substring(0, methodName.indexOf("(")));
-            // 更新IOC容器
-            ioc.put(target.getClass(), proxy);
         }
+
+        return advices;
     }
 
     /*
-     * 依赖注入，处理一个bean对象中的所有@Autowired属性，完成注入
+     * 取出作用于这个bean的通知：第一次匹配后把通知方法记录到创建计划中；
+     * 从启动快照恢复的计划已经有记录，直接按通知方法取出，不再对bean的每个方法求值切点表达式
      * */
-    private static void resolveAutowired(Class<?> clazz) {
-        //从IOC容器中获取clazz对应的bean
-        Object bean = ioc.get(clazz);
+    private static List<Advice> bindAdvices(BeanDefinition definition, List<Advice> advices) {
+        List<Method> adviceMethods = definition.getAdviceMethods();
+        if (adviceMethods == null) {
+            List<Advice> matched = matchAdvices(definition.getBeanClass(), advices);
+            List<Method> methods = new ArrayList<>(matched.size());
+            for (Advice advice : matched) {
+                methods.add(advice.getMethod());
+            }
+            definition.setAdviceMethods(methods);
+            return matched;
+        }
+        List<Advice> bound = new ArrayList<>(adviceMethods.size());
+        for (Advice advice : advices) {
+            if (adviceMethods.contains(advice.getMethod())) {
+                bound.add(advice);
+            }
+        }
+        if (bound.size() != adviceMethods.size()) {
+            throw new IllegalStateException("创建计划中的通知方法已经不存在: " + definition.getBeanClass().getName());
+        }
+        return bound;
+    }
 
-        // 遍历类中所有定义的属性，如果属性带有 @AutoWired 注解，则需要注入对应依赖
-        for (Field field : bean.getClass().getDeclaredFields()) {
-            if (!field.isAnnotationPresent(MyAutoWired.class)) {
+    /*
+     * 从所有通知中挑出可能作用于 targetClass 的通知，targetClass 没有方法被切入时返回空列表
+     * */
+    private static List<Advice> matchAdvices(Class<?> targetClass, List<Advice> advices) {
+        List<Advice> candidates = new ArrayList<>();
+        for (Advice advice : advices) {
+            if (advice.matchesClass(targetClass)) {
+                candidates.add(advice);
+            }
+        }
+        return isAdvised(targetClass, candidates) ? candidates : Collections.emptyList();
+    }
+
+    /*
+     * targetClass 是否有方法被通知切入，Object 上的方法不算，避免宽泛的表达式让每个bean都被代理
+     * */
+    private static boolean isAdvised(Class<?> targetClass, List<Advice> candidates) {
+        if (candidates.isEmpty()) {
+            return false;
+        }
+        Set<Method> methods = new LinkedHashSet<>(Arrays.asList(targetClass.getMethods()));
+        methods.addAll(Arrays.asList(targetClass.getDeclaredMethods()));
+        for (Method method : methods) {
+            if (method.getDeclaringClass() == Object.class || Modifier.isPrivate(method.getModifiers())) {
                 continue;
             }
-            Class<?> fieldType = field.getType();
-            field.setAccessible(true);
-            if (fieldType.isInterface()) {
-                // 如果依赖的类型是接口，则查询其实现类,
-                // class1.isAssignableFrom(class2) = true 代表class2是class1类型，可分配class2对象给class1
-                for (Class<?> key : ioc.keySet()) {
-                    if (fieldType.isAssignableFrom(key)) {
-                        fieldType = key;
-                        break;
-                    }
+            for (Advice advice : candidates) {
+                if (advice.matches(targetClass, method)) {
+                    return true;
                 }
             }
-            try {
-                //依赖注入的关键，提取IOC容器里的最新的bean做注入
-                field.set(bean, BeanFactory.getBean(fieldType));
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
+        }
+        return false;
+    }
+
+    /*
+     * 为被切入的类选择代理方式：
+     *   - auto(默认)：能生成子类时使用子类代理，调用不经过反射；否则使用JDK动态代理
+     *   - jdk：有接口时使用JDK动态代理，没有接口时只能使用子类代理
+     * 子类代理通过无参构造器创建，使用构造器注入的bean只能使用JDK动态代理
+     * */
+    private static boolean useSubclassProxy(Class<?> targetClass, boolean defaultConstructor) {
+        boolean hasInterfaces = targetClass.getInterfaces().length > 0;
+        if (PROXY_JDK.equals(proxyMode) && hasInterfaces) {
+            return false;
+        }
+        if (!defaultConstructor || !SubclassProxyFactory.canProxy(targetClass)) {
+            if (!hasInterfaces) {
+                throw new IllegalStateException("既没有接口也无法生成子类，不能创建代理: " + targetClass.getName());
             }
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,101 @@
+package com.wu.core.aop;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/*
+ * 一个通知：切面实例上的 @MyBefore / @MyAfter / @MyAround 方法，以及编译好的切点表达式
+ * 通知方法在创建时就检查好参数，统一按 (JoinPoint) 的形式调用
+ * */
+public class Advice {
+
+    // 同一切面内的执行顺序：环绕 > 前置 > 后置
+    public enum Type {
+        AROUND, BEFORE, AFTER
+    }
+
+    private final Type type;
+    private final Object aspect;
+    private final Method method;
+    private final int order;
+    // 决定通知作用于哪些方法
+    private final PointcutExpression pointcut;
+    // 通知方法是否声明了 JoinPoint 参数
+    private final boolean withJoinPoint;
+
+    /**
+     * @param type         通知类型
+     * @param aspect       切面对象，也就是通知方法的调用者
+     * @param method       通知方法，没有参数或只有一个 JoinPoint 参数，环绕通知必须有 JoinPoint 参数
+     * @param order        切面的顺序，见 @MyAspect.order
+     * @param pointcut     切点表达式
+     */
+    public Advice(Type type, Object aspect, Method method, int order, PointcutExpression pointcut) {
+        this.type = type;
+        this.aspect = aspect;
+        this.method = method;
+        this.order = order;
+        this.pointcut = pointcut;
+        this.withJoinPoint = checkParameters(type, method);
+    }
+
+    private static boolean checkParameters(Type type, Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length > 1
+                || (parameterTypes.length == 1 && !parameterTypes[0].isAssignableFrom(JoinPoint.class))) {
+            throw new IllegalArgumentException("通知方法只能没有参数或只有一个 JoinPoint 参数: " + method);
+        }
+        // 环绕通知要通过 JoinPoint.proceed() 调用目标方法，否则目标方法永远不会执行
+        if (type == Type.AROUND && parameterTypes.length == 0) {
+            throw new IllegalStateException("环绕通知必须声明 JoinPoint 参数并调用 proceed(): " + method);
+        }
+        method.setAccessible(true);
+        return parameterTypes.length == 1;
+    }
+
+    /**
+     * 该通知是否可能作用于 targetClass 上的某个方法，用于在创建代理前筛选 bean
+     */
+    public boolean matchesClass(Class<?> targetClass) {
+        return pointcut.matchesClass(targetClass);
+    }
+
+    /**
+     * 该通知是否作用于 targetClass 上的 method
+     */
+    public boolean matches(Class<?> targetClass, Method method) {
+        return pointcut.matches(targetClass, method);
+    }
+
+    Object invoke(JoinPoint joinPoint) throws Throwable {
+        try {
+            return withJoinPoint ? method.invoke(aspect, joinPoint) : method.invoke(aspect);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    boolean isWithJoinPoint() {
+        return withJoinPoint;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Object getAspect() {
+        return aspect;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public PointcutExpression getPointcut() {
+        return pointcut;
+    }
+}
@@ -0,0 +1,267 @@
+package com.wu.core.aop;
+
+import com.wu.core.metrics.Histogram;
+import com.wu.core.metrics.Metrics;
+import com.wu.core.trace.Tracer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * 一个被代理方法的通知链，在创建代理对象时按方法构建一次：
+ *   - 按切面 order、通知类型(环绕 > 前置 > 后置)排序
+ *   - 没有通知的方法直接调用目标方法，不创建 JoinPoint
+ *   - 没有环绕通知时按顺序执行前置通知、目标方法、后置通知，只有通知方法需要 JoinPoint 时才创建它
+ *   - 方法上有 @MyCacheable / @MyCacheEvict 时，调用目标方法前后经过 CacheOperation
+ *   - 开启方法指标时，有通知或缓存的方法记录整个通知链的耗时
+ *   - 开启追踪时，有通知或缓存的方法把每个通知和目标方法记录为 span
+ * 目标方法保存在非 static final 字段里，JIT 无法把 MethodHandle 当常量内联，
+ * 这种情况下 Method.invoke 生成的访问器反而更快，因此目标方法仍然用反射调用
+ * */
+public class AdviceChain {
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final Comparator<Advice> ORDER = Comparator.comparingInt(Advice::getOrder)
+            .thenComparing(Advice::getType);
+    // 是否记录被代理方法的耗时，默认关闭，让前置/后置通知的方法由子类代理直接调用
+    private static volatile boolean timed = false;
+
+    private final Method method;
+    // 实际调用的目标方法：JDK 动态代理下就是 method，子类代理下是生成的调用 super 的桥接方法
+    private final Method invokeMethod;
+    private final Advice[] advices;
+    // 没有环绕通知时使用的快速路径
+    private final boolean hasAround;
+    private final boolean needsJoinPoint;
+    // 方法上的缓存注解，没有时为null
+    private final CacheOperation cache;
+    // 方法的耗时，不记录时为null
+    private final Histogram timer;
+    // 每个通知和目标方法的 span 名字，不追踪时为null和0
+    private final int[] adviceTraceNames;
+    private final int methodTraceName;
+
+    private AdviceChain(Class<?> targetClass, Method method, Method invokeMethod, Advice[] advices,
+                        CacheOperation cache, Histogram timer) {
+        this.method = method;
+        this.invokeMethod = invokeMethod;
+        this.advices = advices;
+        this.cache = cache;
+        this.timer = timer;
+        if (Tracer.isEnabled() && (advices.length > 0 || cache != null)) {
+            String target = targetClass.getName() + "." + method.getName();
+            adviceTraceNames = new int[advices.length];
+            for (int i = 0; i < advices.length; i++) {
+                Method adviceMethod = advices[i].getMethod();
+                adviceTraceNames[i] = Tracer.register(Tracer.ADVICE,
+                        adviceMethod.getDeclaringClass().getSimpleName() + "." + adviceMethod.getName() + " -> " + target);
+            }
+            methodTraceName = Tracer.register(Tracer.METHOD, target);
+        } else {
+            adviceTraceNames = null;
+            methodTraceName = 0;
+        }
+        boolean around = false;
+        boolean joinPoint = false;
+        for (Advice advice : advices) {
+            around |= advice.getType() == Advice.Type.AROUND;
+            joinPoint |= advice.isWithJoinPoint();
+        }
+        this.hasAround = around;
+        this.needsJoinPoint = joinPoint;
+    }
+
+    /**
+     * 从所有通知中挑出作用于 targetClass 上 method 的通知，构建通知链
+     */
+    public static AdviceChain build(Class<?> targetClass, Method method, List<Advice> candidates) {
+        return build(targetClass, method, candidates, method);
+    }
+
+    /**
+     * @param invokeMethod 通知执行完后实际调用的方法，参数和返回值与 method 一致
+     */
+    public static AdviceChain build(Class<?> targetClass, Method method, List<Advice> candidates,
+                                    Method invokeMethod) {
+        List<Advice> matched = new ArrayList<>();
+        for (Advice advice : candidates) {
+            if (advice.matches(targetClass, method)) {
+                matched.add(advice);
+            }
+        }
+        // List.sort 是稳定排序，同一切面同一类型的通知保持声明顺序
+        matched.sort(ORDER);
+        invokeMethod.setAccessible(true);
+        CacheOperation cache = CacheOperation.forMethod(targetClass, method);
+        Histogram timer = null;
+        if (timed && (!matched.isEmpty() || cache != null)) {
+            timer = Metrics.histogram(Metrics.METHOD_DURATION, "Time spent in proxied methods, including advices",
+                    "method", targetClass.getName() + "." + method.getName());
+        }
+        return new AdviceChain(targetClass, method, invokeMethod, matched.toArray(new Advice[matched.size()]), cache,
+                timer);
+    }
+
+    /**
+     * 是否记录被代理方法的耗时，需要在创建代理之前设置。
+     * 记录耗时的方法总是经过通知链调用，子类代理不再为它们生成直接调用通知的代码
+     */
+    public static void setTimed(boolean enabled) {
+        timed = enabled;
+    }
+
+    /**
+     * targetClass 上是否有使用缓存注解的方法，这样的bean即使没有切面也需要代理
+     */
+    public static boolean isCached(Class<?> targetClass) {
+        return CacheOperation.isCached(targetClass);
+    }
+
+    public boolean isAdvised() {
+        return advices.length > 0 || cache != null;
+    }
+
+    boolean hasCache() {
+        return cache != null;
+    }
+
+    boolean isTimed() {
+        return timer != null;
+    }
+
+    boolean isTraced() {
+        return methodTraceName != 0;
+    }
+
+    Advice[] getAdvices() {
+        return advices;
+    }
+
+    boolean hasAround() {
+        return hasAround;
+    }
+
+    boolean needsJoinPoint() {
+        return needsJoinPoint;
+    }
+
+    /**
+     * 在 target 上执行通知链和目标方法
+     */
+    public Object invoke(Object target, Object[] args) throws Throwable {
+        if (timer == null) {
+            return invokeAdvices(target, args);
+        }
+        long start = System.nanoTime();
+        try {
+            return invokeAdvices(target, args);
+        } finally {
+            timer.record(System.nanoTime() - start);
+        }
+    }
+
+    private Object invokeAdvices(Object target, Object[] args) throws Throwable {
+        if (advices.length == 0) {
+            return invokeTarget(target, args);
+        }
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        if (hasAround) {
+            return new Invocation(target, args).proceed();
+        }
+        // 和 Invocation.proceed 的嵌套顺序一致：前置通知正序执行，后置通知倒序执行
+        JoinPoint joinPoint = needsJoinPoint ? new Invocation(target, args) : null;
+        for (int i = 0; i < advices.length; i++) {
+            if (advices[i].getType() == Advice.Type.BEFORE) {
+                invokeAdvice(i, joinPoint);
+            }
+        }
+        Object result = invokeTarget(target, args);
+        for (int i = advices.length - 1; i >= 0; i--) {
+            if (advices[i].getType() == Advice.Type.AFTER) {
+                invokeAdvice(i, joinPoint);
+            }
+        }
+        return result;
+    }
+
+    private Object invokeAdvice(int index, JoinPoint joinPoint) throws Throwable {
+        long traceStart = adviceTraceNames == null ? 0 : Tracer.begin(adviceTraceNames[index]);
+        if (traceStart == 0) {
+            return advices[index].invoke(joinPoint);
+        }
+        try {
+            return advices[index].invoke(joinPoint);
+        } finally {
+            Tracer.end(adviceTraceNames[index], traceStart);
+        }
+    }
+
+    private Object invokeTarget(Object target, Object[] args) throws Throwable {
+        return cache == null ? invokeMethod(target, args) : cache.invoke(this, target, args);
+    }
+
+    Object invokeMethod(Object target, Object[] args) throws Throwable {
+        long traceStart = Tracer.begin(methodTraceName);
+        try {
+            return invokeMethod.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            // 目标方法抛出的异常原样抛给调用者
+            throw e.getCause();
+        } finally {
+            Tracer.end(methodTraceName, traceStart);
+        }
+    }
+
+    /*
+     * 一次调用在通知链上的执行状态
+     * */
+    private class Invocation implements JoinPoint {
+        private final Object target;
+        private final Object[] args;
+        private int index;
+
+        Invocation(Object target, Object[] args) {
+            this.target = target;
+            this.args = args;
+        }
+
+        @Override
+        public Object proceed() throws Throwable {
+            if (index == advices.length) {
+                return invokeTarget(target, args);
+            }
+            int current = index++;
+            switch (advices[current].getType()) {
+                case BEFORE:
+                    invokeAdvice(current, this);
+                    return proceed();
+                case AFTER:
+                    Object result = proceed();
+                    invokeAdvice(current, this);
+                    return result;
+                default:
+                    return invokeAdvice(current, this);
+            }
+        }
+
+        @Override
+        public Object getTarget() {
+            return target;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object[] getArgs() {
+            return args;
+        }
+    }
+}
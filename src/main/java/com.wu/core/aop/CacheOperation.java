@@ -0,0 +1,133 @@
+package com.wu.core.aop;
+
+import com.wu.annotation.cache.MyCacheEvict;
+import com.wu.annotation.cache.MyCacheable;
+import com.wu.core.cache.CacheManager;
+import com.wu.core.cache.KeyGenerator;
+import com.wu.core.cache.LruCache;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/*
+ * 一个方法上的 @MyCacheable / @MyCacheEvict，在构建通知链时创建，缓存和缓存键的生成方式都在创建时确定
+ * 处在通知链的最内层：切面通知照常执行，命中缓存时只跳过目标方法
+ * */
+class CacheOperation {
+
+    // 缓存中代表 null 返回值
+    private static final Object NULL_VALUE = new Object();
+
+    private final LruCache<Object, Object> cache;
+    private final KeyGenerator key;
+    // 要删除条目的缓存名，调用时再查找缓存，避免在 @MyCacheable 之前以默认配置创建它
+    private final String evictCache;
+    private final KeyGenerator evictKey;
+    private final boolean evictAll;
+    private final boolean evictBefore;
+
+    private CacheOperation(MyCacheable cacheable, MyCacheEvict evict, Method method) {
+        if (cacheable != null) {
+            if (method.getReturnType() == void.class) {
+                throw new IllegalStateException("@MyCacheable 不能用在没有返回值的方法上: " + method);
+            }
+            cache = CacheManager.getCache(cacheable.value(), cacheable.maxSize(), cacheable.ttl());
+            key = KeyGenerator.create(method, cacheable.key());
+        } else {
+            cache = null;
+            key = null;
+        }
+        if (evict != null) {
+            evictCache = evict.value();
+            evictAll = evict.allEntries();
+            evictKey = evictAll ? null : KeyGenerator.create(method, evict.key());
+            evictBefore = evict.beforeInvocation();
+        } else {
+            evictCache = null;
+            evictKey = null;
+            evictAll = false;
+            evictBefore = false;
+        }
+    }
+
+    /**
+     * @return method 上没有缓存注解时返回 null
+     */
+    static CacheOperation forMethod(Class<?> targetClass, Method method) {
+        Method annotated = implementation(targetClass, method);
+        MyCacheable cacheable = annotated.getAnnotation(MyCacheable.class);
+        MyCacheEvict evict = annotated.getAnnotation(MyCacheEvict.class);
+        if (cacheable == null && evict == null) {
+            return null;
+        }
+        return new CacheOperation(cacheable, evict, annotated);
+    }
+
+    /**
+     * targetClass 上是否有使用缓存注解的方法，这样的bean即使没有切面也需要代理
+     */
+    static boolean isCached(Class<?> targetClass) {
+        for (Class<?> c = targetClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (!Modifier.isPrivate(method.getModifiers()) && (method.isAnnotationPresent(MyCacheable.class)
+                        || method.isAnnotationPresent(MyCacheEvict.class))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // JDK 动态代理传入的是接口方法，注解通常写在实现类的方法上
+    private static Method implementation(Class<?> targetClass, Method method) {
+        if (!method.getDeclaringClass().isInterface()) {
+            return method;
+        }
+        try {
+            Method implementation = targetClass.getMethod(method.getName(), method.getParameterTypes());
+            if (implementation.isAnnotationPresent(MyCacheable.class)
+                    || implementation.isAnnotationPresent(MyCacheEvict.class)) {
+                return implementation;
+            }
+        } catch (NoSuchMethodException e) {
+            // 接口方法没有公开的实现，使用接口上的注解
+        }
+        return method;
+    }
+
+    Object invoke(AdviceChain chain, Object target, Object[] args) throws Throwable {
+        if (evictBefore) {
+            evict(args);
+        }
+        Object result;
+        if (cache != null) {
+            Object k = key.generate(args);
+            Object cached = cache.get(k);
+            if (cached != null) {
+                result = cached == NULL_VALUE ? null : cached;
+            } else {
+                result = chain.invokeMethod(target, args);
+                cache.put(k, result == null ? NULL_VALUE : result);
+            }
+        } else {
+            result = chain.invokeMethod(target, args);
+        }
+        if (evictCache != null && !evictBefore) {
+            evict(args);
+        }
+        return result;
+    }
+
+    private void evict(Object[] args) {
+        LruCache<Object, Object> cache = CacheManager.getCache(evictCache);
+        if (cache == null) {
+            // 还没有方法使用过这个缓存
+            return;
+        }
+        if (evictAll) {
+            cache.clear();
+        } else {
+            cache.remove(evictKey.generate(args));
+        }
+    }
+}
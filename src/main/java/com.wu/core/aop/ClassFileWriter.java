@@ -0,0 +1,229 @@
+package com.wu.core.aop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 最小化的 class 文件生成器，只提供生成代理子类所需的功能：常量池、字段、方法及其 Code 属性
+ * 生成的方法体都是不含跳转的直线代码，因此不需要 StackMapTable，版本号使用 52(Java 8)
+ * class 文件结构参考 JVM 规范第 4 章
+ * */
+class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int VERSION = 52;
+
+    private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(constantPool);
+    // 常量池去重：key 为常量的类型和内容
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int codeAttribute;
+
+    /**
+     * @param className      生成类的内部名，如 com/wu/demo/UserServiceImpl$$MyProxy$1
+     * @param superClassName 父类的内部名
+     */
+    ClassFileWriter(String className, String superClassName) {
+        this.thisClass = classRef(className);
+        this.superClass = classRef(superClassName);
+        this.codeAttribute = utf8("Code");
+    }
+
+    int utf8(String value) {
+        String key = "U" + value;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    int classRef(String internalName) {
+        return reference("C", 7, utf8(internalName), -1);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return reference("F", 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return reference("M", 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return reference("N", 12, utf8(name), utf8(descriptor));
+    }
+
+    // 由一个或两个 u2 索引构成的常量
+    private int reference(String kind, int tag, int first, int second) {
+        String key = kind + first + ":" + second;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0) {
+                pool.writeShort(second);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key);
+    }
+
+    private int register(String key) {
+        int index = constantCount++;
+        constants.put(key, index);
+        return index;
+    }
+
+    void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] instructions = code.toByteArray();
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1); // attributes_count：只有 Code
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + instructions.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(instructions.length);
+            out.write(instructions);
+            out.writeShort(0); // exception_table_length
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            out.write(constantPool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces_count
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+     * 一个方法的字节码，只包含生成代理所需的指令
+     * */
+    static class Code {
+        static final int SIPUSH = 0x11;
+        static final int ILOAD = 0x15;
+        static final int LLOAD = 0x16;
+        static final int FLOAD = 0x17;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int ISTORE = 0x36;
+        static final int LSTORE = 0x37;
+        static final int FSTORE = 0x38;
+        static final int DSTORE = 0x39;
+        static final int ASTORE = 0x3a;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int POP = 0x57;
+        static final int POP2 = 0x58;
+        static final int DUP = 0x59;
+        static final int IRETURN = 0xac;
+        static final int LRETURN = 0xad;
+        static final int FRETURN = 0xae;
+        static final int DRETURN = 0xaf;
+        static final int ARETURN = 0xb0;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int ANEWARRAY = 0xbd;
+        static final int CHECKCAST = 0xc0;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int maxStack;
+        int maxLocals;
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        // 带一个 u1 操作数的指令，如 iload n
+        Code op(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand);
+            return this;
+        }
+
+        // 带一个 u2 操作数的指令，如 invokevirtual、getfield、sipush
+        Code op2(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand >> 8);
+            bytes.write(operand);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
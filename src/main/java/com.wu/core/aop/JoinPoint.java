@@ -0,0 +1,25 @@
+package com.wu.core.aop;
+
+import java.lang.reflect.Method;
+
+/*
+ * 连接点：一次被代理方法的调用，@MyBefore / @MyAfter / @MyAround 方法可以声明一个该类型的参数
+ * */
+public interface JoinPoint {
+
+    // 被代理对象(目标对象)
+    Object getTarget();
+
+    // 被代理方法
+    Method getMethod();
+
+    // 方法参数，没有参数时为空数组
+    Object[] getArgs();
+
+    /**
+     * 继续执行调用链上的下一个通知，最后执行被代理方法，只应在 @MyAround 方法中调用
+     *
+     * @return 被代理方法的返回值
+     */
+    Object proceed() throws Throwable;
+}
@@ -0,0 +1,521 @@
+package com.wu.core.aop;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/*
+ * 切点表达式，启动时编译成匹配器，创建代理时对每个 bean 的每个方法求值一次，调用时不再参与
+ * 支持的写法：
+ *   execution([修饰符] 返回值 [类型.]方法名(参数))
+ *       execution(* com.wu.demo.UserServiceImpl.findAll())
+ *       execution(public * com.wu..*Service.find*(..))
+ *       execution(* com.wu.demo.*.get*(String, int, ..))
+ *   within(类型)                 目标类匹配，如 within(com.wu.demo..*)
+ *   @annotation(注解类名)        方法上有指定注解
+ *   @within(注解类名)            目标类上有指定注解
+ *   name()                      引用同一切面中 @MyPointcut 定义的切点
+ *   a && b、a || b、!a、(a)      组合
+ * 通配符：* 匹配名字中的任意字符(不跨越 .)；类型中的 .. 匹配任意层包；参数中的 .. 匹配任意个参数；
+ * 类型后加 + 表示该类型及其子类型
+ * execution 的类型按 AspectJ 的方式匹配：方法本身或它覆盖的方法声明在匹配的类型中，
+ * 因此 execution(* Base.*(..)) 只匹配 Base 中声明的方法(包括子类中的覆盖)，不匹配子类新增的方法
+ * 兼容原来的写法 com.wu.demo.UserServiceImpl.findAll()，等价于 execution(* com.wu.demo.UserServiceImpl.findAll(..))
+ * */
+public class PointcutExpression {
+
+    private final String expression;
+    private final Matcher matcher;
+
+    private PointcutExpression(String expression, Matcher matcher) {
+        this.expression = expression;
+        this.matcher = matcher;
+    }
+
+    /**
+     * @param expression      切点表达式
+     * @param namedPointcuts  可以按名字引用的切点，key/value=切点方法名/切点表达式
+     * @param classLoader     加载注解类
+     */
+    public static PointcutExpression compile(String expression, Map<String, String> namedPointcuts,
+                                             ClassLoader classLoader) {
+        Parser parser = new Parser(expression, namedPointcuts, classLoader, new HashSet<>());
+        return new PointcutExpression(expression, parser.parse());
+    }
+
+    public static PointcutExpression compile(String expression) {
+        return compile(expression, Collections.emptyMap(), Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * 粗筛：targetClass 上是否可能有方法匹配，返回 false 时无需再逐个方法判断
+     */
+    public boolean matchesClass(Class<?> targetClass) {
+        return matcher.matchesClass(targetClass);
+    }
+
+    /**
+     * targetClass 上的 method 是否匹配，method 可以是 targetClass 自己的方法，也可以是它实现的接口方法
+     */
+    public boolean matches(Class<?> targetClass, Method method) {
+        return matcher.matches(targetClass, method);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /*
+     * 编译后的匹配器
+     * */
+    private interface Matcher {
+        boolean matchesClass(Class<?> targetClass);
+
+        boolean matches(Class<?> targetClass, Method method);
+    }
+
+    /*
+     * 递归下降解析：or := and ('||' and)*，and := not ('&&' not)*，not := '!' not | '(' or ')' | 切点
+     * */
+    private static class Parser {
+        private final String text;
+        private final Map<String, String> namedPointcuts;
+        private final ClassLoader classLoader;
+        // 正在解析的命名切点，用于发现循环引用
+        private final Set<String> resolving;
+        private int pos;
+
+        Parser(String text, Map<String, String> namedPointcuts, ClassLoader classLoader, Set<String> resolving) {
+            this.text = text;
+            this.namedPointcuts = namedPointcuts;
+            this.classLoader = classLoader;
+            this.resolving = resolving;
+        }
+
+        Matcher parse() {
+            Matcher matcher = parseOr();
+            skipSpaces();
+            if (pos != text.length()) {
+                throw error("多余的内容");
+            }
+            return matcher;
+        }
+
+        private Matcher parseOr() {
+            Matcher left = parseAnd();
+            while (consume("||")) {
+                Matcher l = left;
+                Matcher r = parseAnd();
+                left = new Matcher() {
+                    public boolean matchesClass(Class<?> c) {
+                        return l.matchesClass(c) || r.matchesClass(c);
+                    }
+
+                    public boolean matches(Class<?> c, Method m) {
+                        return l.matches(c, m) || r.matches(c, m);
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Matcher parseAnd() {
+            Matcher left = parseNot();
+            while (consume("&&")) {
+                Matcher l = left;
+                Matcher r = parseNot();
+                left = new Matcher() {
+                    public boolean matchesClass(Class<?> c) {
+                        return l.matchesClass(c) && r.matchesClass(c);
+                    }
+
+                    public boolean matches(Class<?> c, Method m) {
+                        return l.matches(c, m) && r.matches(c, m);
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Matcher parseNot() {
+            if (consume("!")) {
+                Matcher inner = parseNot();
+                return new Matcher() {
+                    // 取反后无法粗筛
+                    public boolean matchesClass(Class<?> c) {
+                        return true;
+                    }
+
+                    public boolean matches(Class<?> c, Method m) {
+                        return !inner.matches(c, m);
+                    }
+                };
+            }
+            if (consume("(")) {
+                Matcher inner = parseOr();
+                if (!consume(")")) {
+                    throw error("缺少 )");
+                }
+                return inner;
+            }
+            return parseDesignator();
+        }
+
+        private Matcher parseDesignator() {
+            skipSpaces();
+            int start = pos;
+            while (pos < text.length() && text.charAt(pos) != '(' && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            skipSpaces();
+            if (name.isEmpty() || pos >= text.length() || text.charAt(pos) != '(') {
+                throw error("需要切点");
+            }
+            String body = readBalanced().trim();
+            switch (name) {
+                case "execution":
+                    return execution(body);
+                case "within":
+                    return within(TypePattern.compile(body));
+                case "@annotation":
+                    return methodAnnotation(loadAnnotation(body));
+                case "@within":
+                    return classAnnotation(loadAnnotation(body));
+                default:
+                    if (name.indexOf('.') < 0) {
+                        return reference(name, body);
+                    }
+                    // 原来的写法：全限定类名.方法名()，不限制参数
+                    return execution("* " + name + "(" + (body.isEmpty() ? ".." : body) + ")");
+            }
+        }
+
+        // 读取从当前位置的 ( 开始到与之匹配的 ) 之间的内容
+        private String readBalanced() {
+            int depth = 0;
+            int start = pos + 1;
+            for (; pos < text.length(); pos++) {
+                char c = text.charAt(pos);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    pos++;
+                    return text.substring(start, pos - 1);
+                }
+            }
+            throw error("括号不匹配");
+        }
+
+        private Matcher reference(String name, String body) {
+            String referenced = namedPointcuts.get(name);
+            if (referenced == null || !body.isEmpty()) {
+                throw error("找不到切点 " + name + "()");
+            }
+            if (!resolving.add(name)) {
+                throw error("切点循环引用 " + name + "()");
+            }
+            Matcher matcher = new Parser(referenced, namedPointcuts, classLoader, resolving).parse();
+            resolving.remove(name);
+            return matcher;
+        }
+
+        private Matcher execution(String body) {
+            int open = body.indexOf('(');
+            if (open < 0 || !body.endsWith(")")) {
+                throw error("execution 缺少参数列表: " + body);
+            }
+            String[] head = body.substring(0, open).trim().split("\\s+");
+            if (head.length < 2) {
+                throw error("execution 需要返回值和方法名: " + body);
+            }
+            // 修饰符
+            int modifiers = 0;
+            for (int i = 0; i < head.length - 2; i++) {
+                modifiers |= modifier(head[i]);
+            }
+            TypePattern returnType = TypePattern.compile(head[head.length - 2]);
+            String qualifiedName = head[head.length - 1];
+            int dot = qualifiedName.lastIndexOf('.');
+            TypePattern declaringType = dot < 0 ? TypePattern.ANY : TypePattern.compile(qualifiedName.substring(0, dot));
+            Pattern methodName = NamePattern.compile(qualifiedName.substring(dot + 1));
+            List<TypePattern> parameters = parameterPatterns(body.substring(open + 1, body.length() - 1));
+            int requiredModifiers = modifiers;
+
+            return new Matcher() {
+                public boolean matchesClass(Class<?> c) {
+                    return declaringType.matchesHierarchy(c);
+                }
+
+                public boolean matches(Class<?> c, Method m) {
+                    return (m.getModifiers() & requiredModifiers) == requiredModifiers
+                            && methodName.matcher(m.getName()).matches()
+                            && returnType.matches(m.getReturnType())
+                            && matchParameters(parameters, 0, m.getParameterTypes(), 0)
+                            && declaringType.matchesDeclaration(c, m);
+                }
+            };
+        }
+
+        private Matcher within(TypePattern type) {
+            return new Matcher() {
+                public boolean matchesClass(Class<?> c) {
+                    return type.matches(c);
+                }
+
+                public boolean matches(Class<?> c, Method m) {
+                    return type.matches(c);
+                }
+            };
+        }
+
+        private Matcher methodAnnotation(Class<? extends Annotation> annotation) {
+            return new Matcher() {
+                public boolean matchesClass(Class<?> c) {
+                    return true;
+                }
+
+                public boolean matches(Class<?> c, Method m) {
+                    if (m.isAnnotationPresent(annotation)) {
+                        return true;
+                    }
+                    // m 可能是接口方法，注解写在实现类的方法上
+                    try {
+                        return c.getMethod(m.getName(), m.getParameterTypes()).isAnnotationPresent(annotation);
+                    } catch (NoSuchMethodException e) {
+                        return false;
+                    }
+                }
+            };
+        }
+
+        private Matcher classAnnotation(Class<? extends Annotation> annotation) {
+            return new Matcher() {
+                public boolean matchesClass(Class<?> c) {
+                    return c.isAnnotationPresent(annotation);
+                }
+
+                public boolean matches(Class<?> c, Method m) {
+                    return c.isAnnotationPresent(annotation);
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private Class<? extends Annotation> loadAnnotation(String className) {
+            try {
+                Class<?> clazz = Class.forName(className, false, classLoader);
+                if (!clazz.isAnnotation()) {
+                    throw error(className + " 不是注解");
+                }
+                return (Class<? extends Annotation>) clazz;
+            } catch (ClassNotFoundException e) {
+                throw error("找不到注解 " + className);
+            }
+        }
+
+        private List<TypePattern> parameterPatterns(String text) {
+            List<TypePattern> parameters = new ArrayList<>();
+            if (text.trim().isEmpty()) {
+                return parameters;
+            }
+            for (String parameter : text.split(",")) {
+                parameters.add(TypePattern.compile(parameter.trim()));
+            }
+            return parameters;
+        }
+
+        private int modifier(String name) {
+            switch (name) {
+                case "public":
+                    return Modifier.PUBLIC;
+                case "protected":
+                    return Modifier.PROTECTED;
+                case "private":
+                    return Modifier.PRIVATE;
+                case "static":
+                    return Modifier.STATIC;
+                case "final":
+                    return Modifier.FINAL;
+                case "synchronized":
+                    return Modifier.SYNCHRONIZED;
+                default:
+                    throw error("不支持的修饰符 " + name);
+            }
+        }
+
+        private boolean consume(String token) {
+            skipSpaces();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("切点表达式错误(" + message + "): " + text);
+        }
+    }
+
+    // 参数匹配，.. 可以匹配任意个参数，需要回溯
+    private static boolean matchParameters(List<TypePattern> patterns, int p, Class<?>[] types, int t) {
+        if (p == patterns.size()) {
+            return t == types.length;
+        }
+        TypePattern pattern = patterns.get(p);
+        if (pattern == TypePattern.ANY_SEQUENCE) {
+            for (int skip = t; skip <= types.length; skip++) {
+                if (matchParameters(patterns, p + 1, types, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return t < types.length && pattern.matches(types[t]) && matchParameters(patterns, p + 1, types, t + 1);
+    }
+
+    /*
+     * 名字中的 * 通配符
+     * */
+    private static class NamePattern {
+        static Pattern compile(String name) {
+            StringBuilder regex = new StringBuilder();
+            for (String part : name.split("\\*", -1)) {
+                if (regex.length() > 0 || name.startsWith("*")) {
+                    regex.append("[^.]*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            return Pattern.compile(name.equals("*") ? "[^.]*" : regex.toString());
+        }
+    }
+
+    /*
+     * 类型模式：*、全限定名、简单类名、带 * 和 .. 的通配、结尾 + 表示包括子类型
+     * */
+    private static class TypePattern {
+        static final TypePattern ANY = new TypePattern(null, false, false);
+        // 参数列表中的 ..
+        static final TypePattern ANY_SEQUENCE = new TypePattern(null, false, false);
+
+        private final Pattern pattern;
+        // 模式中没有 .，同时按简单类名匹配
+        private final boolean simpleName;
+        private final boolean includeSubtypes;
+
+        private TypePattern(Pattern pattern, boolean simpleName, boolean includeSubtypes) {
+            this.pattern = pattern;
+            this.simpleName = simpleName;
+            this.includeSubtypes = includeSubtypes;
+        }
+
+        static TypePattern compile(String text) {
+            if (text.equals("*")) {
+                return ANY;
+            }
+            if (text.equals("..")) {
+                return ANY_SEQUENCE;
+            }
+            boolean includeSubtypes = text.endsWith("+");
+            if (includeSubtypes) {
+                text = text.substring(0, text.length() - 1);
+            }
+            StringBuilder regex = new StringBuilder();
+            int i = 0;
+            if (text.startsWith("*..")) {
+                // *..X：任意包下的 X，包括默认包
+                regex.append("(?:.*\\.)?");
+                i = 3;
+            }
+            for (; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '.' && text.startsWith("..", i)) {
+                    // com.wu..*：中间可以有任意层包
+                    regex.append("\\.(?:.*\\.)?");
+                    i++;
+                } else if (c == '*') {
+                    regex.append("[^.]*");
+                } else if (c == '.' || c == '[' || c == ']' || c == '$') {
+                    regex.append('\\').append(c);
+                } else {
+                    regex.append(c);
+                }
+            }
+            return new TypePattern(Pattern.compile(regex.toString()), text.indexOf('.') < 0, includeSubtypes);
+        }
+
+        boolean matches(Class<?> type) {
+            if (pattern == null) {
+                return true;
+            }
+            if (includeSubtypes) {
+                return matchesHierarchy(type);
+            }
+            return matchesName(type);
+        }
+
+        private boolean matchesName(Class<?> type) {
+            return pattern.matcher(type.getTypeName()).matches()
+                    || (simpleName && pattern.matcher(type.getSimpleName()).matches());
+        }
+
+        // method 或它覆盖的方法声明在 targetClass 继承体系中一个匹配的类型里
+        boolean matchesDeclaration(Class<?> targetClass, Method method) {
+            if (pattern == null || matches(method.getDeclaringClass())) {
+                return true;
+            }
+            Deque<Class<?>> queue = new ArrayDeque<>();
+            queue.add(targetClass);
+            while (!queue.isEmpty()) {
+                Class<?> current = queue.poll();
+                if (matches(current) && declares(current, method)) {
+                    return true;
+                }
+                if (current.getSuperclass() != null) {
+                    queue.add(current.getSuperclass());
+                }
+                queue.addAll(Arrays.asList(current.getInterfaces()));
+            }
+            return false;
+        }
+
+        private static boolean declares(Class<?> type, Method method) {
+            try {
+                Method declared = type.getDeclaredMethod(method.getName(), method.getParameterTypes());
+                return !Modifier.isPrivate(declared.getModifiers()) && !Modifier.isStatic(declared.getModifiers());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        // type 本身或它的任意父类、接口匹配
+        boolean matchesHierarchy(Class<?> type) {
+            if (pattern == null) {
+                return true;
+            }
+            Deque<Class<?>> queue = new ArrayDeque<>();
+            queue.add(type);
+            while (!queue.isEmpty()) {
+                Class<?> current = queue.poll();
+                if (matchesName(current)) {
+                    return true;
+                }
+                if (current.getSuperclass() != null) {
+                    queue.add(current.getSuperclass());
+                }
+                queue.addAll(Arrays.asList(current.getInterfaces()));
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.wu.core.aop;
+
+import com.wu.annotation.cache.MyCacheEvict;
+import com.wu.annotation.cache.MyCacheable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 子类代理：运行时为目标类生成一个子类，只覆盖有通知的方法，其余方法原样继承
+ * 覆盖方法有两种形式：
+ *   - 直接调用：只有前置/后置通知、通知方法没有 JoinPoint 参数且可以公开访问时，
+ *     生成的代码依次 invokevirtual 各个前置通知、invokespecial 父类方法、invokevirtual 各个后置通知，
+ *     和手写的子类完全一样，JIT 可以整体内联
+ *   - 通知链调用：含环绕通知或需要 JoinPoint 时，交给 AdviceChain 执行，
+ *     通知链最后通过生成的桥接方法 $$super$N 调用父类方法
+ * 子类定义在目标类所在的包中(Lookup.defineClass)，生成的实例本身就是 bean，不再包装另一个目标对象
+ * final 方法和其他包中的包访问权限方法无法覆盖，切点匹配到它们时通知不会生效，创建代理时输出警告
+ * */
+public class SubclassProxyFactory {
+    private static Logger logger = LoggerFactory.getLogger(SubclassProxyFactory.class);
+
+    private static final String SUFFIX = "$$MyProxy$";
+    private static final String CHAINS_FIELD = "$$chains";
+    private static final String ASPECT_FIELD = "$$aspect";
+    private static final String SUPER_METHOD = "$$super$";
+    private static final String CHAIN_TYPE = "com/wu/core/aop/AdviceChain";
+    private static final String CHAINS_DESCRIPTOR = "[L" + CHAIN_TYPE + ";";
+    private static final String CHAIN_INVOKE_DESCRIPTOR = "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    // 保证每次生成的类名不同，同一个类可以被多次代理(例如容器重新初始化)
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * 目标类能否生成子类代理：不是 final 类、不是接口，并且有非 private 的无参构造方法
+     */
+    public static boolean canProxy(Class<?> targetClass) {
+        int modifiers = targetClass.getModifiers();
+        if (Modifier.isFinal(modifiers) || targetClass.isInterface() || targetClass.isArray()
+                || targetClass.isPrimitive() || targetClass.isAnonymousClass()) {
+            return false;
+        }
+        try {
+            Constructor<?> constructor = targetClass.getDeclaredConstructor();
+            return !Modifier.isPrivate(constructor.getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 生成目标类的子类并创建实例
+     *
+     * @param targetClass 被代理的类
+     * @param advices     所有候选通知，只有作用于 targetClass 方法的通知会生效
+     * @return 代理子类的实例，属性都是默认值，依赖注入需要在它上面进行
+     */
+    public static Object createProxy(Class<?> targetClass, List<Advice> advices) throws ReflectiveOperationException {
+        // 1、找出所有有通知的可覆盖方法，并决定每个方法的生成方式
+        List<Method> methods = new ArrayList<>();
+        List<AdviceChain> chains = new ArrayList<>();
+        for (Method method : overridableMethods(targetClass)) {
+            AdviceChain chain = AdviceChain.build(targetClass, method, advices);
+            if (chain.isAdvised()) {
+                methods.add(method);
+                chains.add(chain);
+            }
+        }
+        warnUnadvisable(targetClass, advices);
+
+        // 2、生成并定义子类
+        String className = targetClass.getName() + SUFFIX + COUNTER.incrementAndGet();
+        String internalName = className.replace('.', '/');
+        String superName = Type.internalName(targetClass);
+        ClassFileWriter writer = new ClassFileWriter(internalName, superName);
+        writeConstructor(writer, superName);
+        writer.addField(ClassFileWriter.ACC_PUBLIC, CHAINS_FIELD, CHAINS_DESCRIPTOR);
+        // 直接调用的方法用到的切面对象，每个切面对应一个字段
+        Map<Object, Integer> aspectFields = new IdentityHashMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            AdviceChain chain = chains.get(i);
+            if (isDirectCallable(chain)) {
+                writeDirectMethod(writer, internalName, superName, method, chain, aspectFields);
+            } else {
+                writeChainMethod(writer, internalName, method, i);
+                writeSuperMethod(writer, superName, method, i);
+            }
+        }
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(targetClass, MethodHandles.lookup());
+        Class<?> proxyClass = lookup.defineClass(writer.toByteArray());
+
+        // 3、创建实例，注入通知链和切面对象
+        Object proxy = proxyClass.getDeclaredConstructor().newInstance();
+        AdviceChain[] chainArray = new AdviceChain[methods.size()];
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            if (!isDirectCallable(chains.get(i))) {
+                Method superMethod = proxyClass.getMethod(SUPER_METHOD + i, method.getParameterTypes());
+                chainArray[i] = AdviceChain.build(targetClass, method, advices, superMethod);
+            }
+        }
+        proxyClass.getField(CHAINS_FIELD).set(proxy, chainArray);
+        for (Map.Entry<Object, Integer> entry : aspectFields.entrySet()) {
+            proxyClass.getField(ASPECT_FIELD + entry.getValue()).set(proxy, entry.getKey());
+        }
+        return proxy;
+    }
+
+    // 所有可以在子类中覆盖的方法：public/protected 或同一个包中的包访问权限方法、非 static、非 final，子类中的方法优先
+    private static Collection<Method> overridableMethods(Class<?> targetClass) {
+        List<Method> result = new ArrayList<>();
+        for (Method method : instanceMethods(targetClass)) {
+            if (isOverridable(targetClass, method)) {
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
+    // 非 private、非 static 的实例方法，按签名去重，子类中的方法优先
+    private static Collection<Method> instanceMethods(Class<?> targetClass) {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Class<?> c = targetClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                int modifiers = method.getModifiers();
+                if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)
+                        || method.isBridge() || method.isSynthetic()) {
+                    continue;
+                }
+                methods.putIfAbsent(method.getName() + Type.methodDescriptor(method), method);
+            }
+        }
+        return methods.values();
+    }
+
+    private static boolean isOverridable(Class<?> targetClass, Method method) {
+        int modifiers = method.getModifiers();
+        if (Modifier.isFinal(modifiers)) {
+            return false;
+        }
+        if (Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers)) {
+            return true;
+        }
+        // 包访问权限：代理子类和目标类在同一个运行时包中，只能覆盖这个包里声明的方法
+        Class<?> declaring = method.getDeclaringClass();
+        return declaring.getPackageName().equals(targetClass.getPackageName())
+                && declaring.getClassLoader() == targetClass.getClassLoader();
+    }
+
+    // 切点或缓存注解作用于无法覆盖的方法时，通知不会生效，输出警告
+    private static void warnUnadvisable(Class<?> targetClass, List<Advice> advices) {
+        for (Method method : instanceMethods(targetClass)) {
+            if (isOverridable(targetClass, method)) {
+                continue;
+            }
+            if (isAdvised(targetClass, method, advices)) {
+                logger.warn("{} is final or package-private in another package, advices and caching on it are "
+                        + "skipped by the subclass proxy of {}", method, targetClass.getName());
+            }
+        }
+    }
+
+    // 只判断是否匹配，不构建通知链，避免为不会被代理的方法创建缓存和耗时指标
+    private static boolean isAdvised(Class<?> targetClass, Method method, List<Advice> advices) {
+        if (method.isAnnotationPresent(MyCacheable.class) || method.isAnnotationPresent(MyCacheEvict.class)) {
+            return true;
+        }
+        for (Advice advice : advices) {
+            if (advice.matches(targetClass, method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 可以直接生成 invokevirtual 调用：没有环绕通知和缓存、不记录耗时和追踪，通知方法不需要 JoinPoint，并且从任何包都能访问
+    private static boolean isDirectCallable(AdviceChain chain) {
+        if (chain.hasAround() || chain.needsJoinPoint() || chain.hasCache() || chain.isTimed()
+                || chain.isTraced()) {
+            return false;
+        }
+        for (Advice advice : chain.getAdvices()) {
+            if (!Modifier.isPublic(advice.getMethod().getModifiers())
+                    || !Modifier.isPublic(advice.getAspect().getClass().getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeConstructor(ClassFileWriter writer, String superName) {
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        code.op(ClassFileWriter.Code.ALOAD, 0)
+                .op2(ClassFileWriter.Code.INVOKESPECIAL, writer.methodRef(superName, "<init>", "()V"))
+                .op(ClassFileWriter.Code.RETURN);
+        code.maxStack = 1;
+        code.maxLocals = 1;
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", code);
+    }
+
+    /*
+     * 前置通知 -> super.method(args) -> 后置通知(倒序)，全部是直接调用
+     * */
+    private static void writeDirectMethod(ClassFileWriter writer, String internalName, String superName,
+                                          Method method, AdviceChain chain, Map<Object, Integer> aspectFields) {
+        String descriptor = Type.methodDescriptor(method);
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        Advice[] advices = chain.getAdvices();
+        for (Advice advice : advices) {
+            if (advice.getType() == Advice.Type.BEFORE) {
+                writeAdviceCall(writer, code, internalName, advice, aspectFields);
+            }
+        }
+        int argSlots = loadArguments(code, method);
+        code.op2(ClassFileWriter.Code.INVOKESPECIAL, writer.methodRef(superName, method.getName(), descriptor));
+        Class<?> returnType = method.getReturnType();
+        // 返回值先存到参数之后的局部变量里，执行完后置通知再返回
+        int resultSlot = 1 + argSlots;
+        if (returnType != void.class) {
+            code.op(Type.storeOpcode(returnType), resultSlot);
+        }
+        for (int i = advices.length - 1; i >= 0; i--) {
+            if (advices[i].getType() == Advice.Type.AFTER) {
+                writeAdviceCall(writer, code, internalName, advices[i], aspectFields);
+            }
+        }
+        if (returnType != void.class) {
+            code.op(Type.loadOpcode(returnType), resultSlot);
+        }
+        code.op(Type.returnOpcode(returnType));
+        code.maxStack = Math.max(2, 1 + argSlots);
+        code.maxLocals = resultSlot + 2;
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, method.getName(), descriptor, code);
+    }
+
+    // this.$$aspectN.advice()，丢弃返回值
+    private static void writeAdviceCall(ClassFileWriter writer, ClassFileWriter.Code code, String internalName,
+                                        Advice advice, Map<Object, Integer> aspectFields) {
+        Method adviceMethod = advice.getMethod();
+        String aspectType = Type.internalName(advice.getAspect().getClass());
+        String fieldDescriptor = "L" + aspectType + ";";
+        Integer index = aspectFields.get(advice.getAspect());
+        if (index == null) {
+            index = aspectFields.size();
+            aspectFields.put(advice.getAspect(), index);
+            writer.addField(ClassFileWriter.ACC_PUBLIC, ASPECT_FIELD + index, fieldDescriptor);
+        }
+        code.op(ClassFileWriter.Code.ALOAD, 0)
+                .op2(ClassFileWriter.Code.GETFIELD, writer.fieldRef(internalName, ASPECT_FIELD + index, fieldDescriptor))
+                .op2(ClassFileWriter.Code.INVOKEVIRTUAL,
+                        writer.methodRef(aspectType, adviceMethod.getName(), Type.methodDescriptor(adviceMethod)));
+        Class<?> returnType = adviceMethod.getReturnType();
+        if (returnType == long.class || returnType == double.class) {
+            code.op(ClassFileWriter.Code.POP2);
+        } else if (returnType != void.class) {
+            code.op(ClassFileWriter.Code.POP);
+        }
+    }
+
+    /*
+     * return (R) this.$$chains[index].invoke(this, new Object[]{args...});
+     * */
+    private static void writeChainMethod(ClassFileWriter writer, String internalName, Method method, int index) {
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        code.op(ClassFileWriter.Code.ALOAD, 0)
+                .op2(ClassFileWriter.Code.GETFIELD, writer.fieldRef(internalName, CHAINS_FIELD, CHAINS_DESCRIPTOR))
+                .op2(ClassFileWriter.Code.SIPUSH, index)
+                .op(ClassFileWriter.Code.AALOAD)
+                .op(ClassFileWriter.Code.ALOAD, 0);
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        code.op2(ClassFileWriter.Code.SIPUSH, parameterTypes.length)
+                .op2(ClassFileWriter.Code.ANEWARRAY, writer.classRef("java/lang/Object"));
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            code.op(ClassFileWriter.Code.DUP).op2(ClassFileWriter.Code.SIPUSH, i).op(Type.loadOpcode(type), slot);
+            if (type.isPrimitive()) {
+                Class<?> wrapper = Type.wrapper(type);
+                code.op2(ClassFileWriter.Code.INVOKESTATIC, writer.methodRef(Type.internalName(wrapper), "valueOf",
+                        MethodType.methodType(wrapper, type).toMethodDescriptorString()));
+            }
+            code.op(ClassFileWriter.Code.AASTORE);
+            slot += Type.slots(type);
+        }
+        code.op2(ClassFileWriter.Code.INVOKEVIRTUAL, writer.methodRef(CHAIN_TYPE, "invoke", CHAIN_INVOKE_DESCRIPTOR));
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            code.op(ClassFileWriter.Code.POP);
+        } else if (returnType.isPrimitive()) {
+            Class<?> wrapper = Type.wrapper(returnType);
+            code.op2(ClassFileWriter.Code.CHECKCAST, writer.classRef(Type.internalName(wrapper)))
+                    .op2(ClassFileWriter.Code.INVOKEVIRTUAL, writer.methodRef(Type.internalName(wrapper),
+                            returnType.getName() + "Value", MethodType.methodType(returnType).toMethodDescriptorString()));
+        } else if (returnType != Object.class) {
+            code.op2(ClassFileWriter.Code.CHECKCAST, writer.classRef(Type.internalName(returnType)));
+        }
+        code.op(Type.returnOpcode(returnType));
+        // chains 元素、this、数组、数组、下标、参数值(long/double 占两格)
+        code.maxStack = 7;
+        code.maxLocals = slot;
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, method.getName(), Type.methodDescriptor(method), code);
+    }
+
+    /*
+     * public R $$super$index(args) { return super.method(args); }，供通知链调用父类方法
+     * */
+    private static void writeSuperMethod(ClassFileWriter writer, String superName, Method method, int index) {
+        String descriptor = Type.methodDescriptor(method);
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        int argSlots = loadArguments(code, method);
+        code.op2(ClassFileWriter.Code.INVOKESPECIAL, writer.methodRef(superName, method.getName(), descriptor))
+                .op(Type.returnOpcode(method.getReturnType()));
+        code.maxStack = Math.max(2, 1 + argSlots);
+        code.maxLocals = 1 + argSlots;
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_SYNTHETIC,
+                SUPER_METHOD + index, descriptor, code);
+    }
+
+    // 依次加载 this 和所有参数，返回参数占用的局部变量槽数
+    private static int loadArguments(ClassFileWriter.Code code, Method method) {
+        code.op(ClassFileWriter.Code.ALOAD, 0);
+        int slot = 1;
+        for (Class<?> type : method.getParameterTypes()) {
+            code.op(Type.loadOpcode(type), slot);
+            slot += Type.slots(type);
+        }
+        return slot - 1;
+    }
+
+    /*
+     * 类型相关的辅助方法：描述符、按类型选择的 load/store/return 指令
+     * */
+    private static class Type {
+
+        static String internalName(Class<?> clazz) {
+            // 对数组类型同样适用：[Ljava.lang.String; -> [Ljava/lang/String;
+            return clazz.getName().replace('.', '/');
+        }
+
+        static String methodDescriptor(Method method) {
+            return MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                    .toMethodDescriptorString();
+        }
+
+        static int slots(Class<?> type) {
+            return type == long.class || type == double.class ? 2 : 1;
+        }
+
+        static int loadOpcode(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return ClassFileWriter.Code.ALOAD;
+            } else if (type == long.class) {
+                return ClassFileWriter.Code.LLOAD;
+            } else if (type == float.class) {
+                return ClassFileWriter.Code.FLOAD;
+            } else if (type == double.class) {
+                return ClassFileWriter.Code.DLOAD;
+            }
+            return ClassFileWriter.Code.ILOAD;
+        }
+
+        static int storeOpcode(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return ClassFileWriter.Code.ASTORE;
+            } else if (type == long.class) {
+                return ClassFileWriter.Code.LSTORE;
+            } else if (type == float.class) {
+                return ClassFileWriter.Code.FSTORE;
+            } else if (type == double.class) {
+                return ClassFileWriter.Code.DSTORE;
+            }
+            return ClassFileWriter.Code.ISTORE;
+        }
+
+        static int returnOpcode(Class<?> type) {
+            if (type == void.class) {
+                return ClassFileWriter.Code.RETURN;
+            } else if (!type.isPrimitive()) {
+                return ClassFileWriter.Code.ARETURN;
+            } else if (type == long.class) {
+                return ClassFileWriter.Code.LRETURN;
+            } else if (type == float.class) {
+                return ClassFileWriter.Code.FRETURN;
+            } else if (type == double.class) {
+                return ClassFileWriter.Code.DRETURN;
+            }
+            return ClassFileWriter.Code.IRETURN;
+        }
+
+        static Class<?> wrapper(Class<?> primitive) {
+            return MethodType.methodType(primitive).wrap().returnType();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.wu.core.cache;
+
+import java.util.Arrays;
+
+/*
+ * 由多个参数(或数组参数)组成的缓存键，按内容比较，哈希值在创建时算好
+ * */
+public final class CacheKey {
+
+    private final Object[] values;
+    private final int hash;
+
+    public CacheKey(Object[] values) {
+        this.values = values;
+        this.hash = Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof CacheKey && hash == ((CacheKey) o).hash
+                && Arrays.deepEquals(values, ((CacheKey) o).values));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.deepToString(values);
+    }
+}
@@ -0,0 +1,55 @@
+package com.wu.core.cache;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 按名字管理 @MyCacheable / @MyCacheEvict 使用的缓存，同名的方法共用一个缓存
+ * */
+public class CacheManager {
+
+    private static final ConcurrentHashMap<String, LruCache<Object, Object>> caches = new ConcurrentHashMap<>();
+    // 注解中没有指定时使用的容量和有效期(毫秒，0 表示不过期)
+    private static int defaultMaxSize = 10000;
+    private static long defaultTtl = 0;
+
+    public static void setDefaults(int maxSize, long ttlMillis) {
+        defaultMaxSize = maxSize;
+        defaultTtl = ttlMillis;
+    }
+
+    /**
+     * 取得名为 name 的缓存，不存在时按给定的配置创建
+     *
+     * @param maxSize   0 表示使用默认容量
+     * @param ttlMillis 0 表示使用默认有效期
+     */
+    public static LruCache<Object, Object> getCache(String name, int maxSize, long ttlMillis) {
+        return caches.computeIfAbsent(name, n -> new LruCache<>(n, maxSize > 0 ? maxSize : defaultMaxSize,
+                ttlMillis > 0 ? ttlMillis : defaultTtl));
+    }
+
+    /**
+     * @return 名为 name 的缓存，不存在时返回 null
+     */
+    public static LruCache<Object, Object> getCache(String name) {
+        return caches.get(name);
+    }
+
+    public static List<CacheStats> stats() {
+        List<CacheStats> stats = new ArrayList<>();
+        for (LruCache<Object, Object> cache : caches.values()) {
+            stats.add(cache.stats());
+        }
+        return stats;
+    }
+
+    public static void logStats(Logger logger) {
+        for (CacheStats stats : stats()) {
+            logger.info("{}", stats);
+        }
+    }
+}
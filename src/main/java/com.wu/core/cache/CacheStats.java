@@ -0,0 +1,66 @@
+package com.wu.core.cache;
+
+/*
+ * 缓存统计的快照，用于调整缓存大小和有效期：命中率低、淘汰多说明缓存太小
+ * */
+public class CacheStats {
+
+    private final String name;
+    private final long hits;
+    private final long misses;
+    // 因容量不足被淘汰的条目数
+    private final long evictions;
+    // 因过期被删除的条目数
+    private final long expirations;
+    private final int size;
+    private final int maxSize;
+
+    CacheStats(String name, long hits, long misses, long evictions, long expirations, int size, int maxSize) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache %s: size=%d/%d hits=%d misses=%d hitRate=%.3f evictions=%d expirations=%d",
+                name, size, maxSize, hits, misses, getHitRate(), evictions, expirations);
+    }
+}
@@ -0,0 +1,76 @@
+package com.wu.core.cache;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+/*
+ * 按方法参数生成缓存键，每个方法在创建代理时生成一次：
+ *   - 不使用参数：所有调用共用一个键
+ *   - 一个非数组参数：参数本身就是键，不分配对象
+ *   - 其他情况：把用到的参数放入 CacheKey
+ * */
+public abstract class KeyGenerator {
+
+    private static final Object EMPTY_KEY = new CacheKey(new Object[0]);
+    // 代表 null 参数
+    private static final Object NULL_KEY = new CacheKey(new Object[]{null});
+
+    public abstract Object generate(Object[] args);
+
+    /**
+     * @param keys 参数名或 p0、p1 这样的下标，为空表示使用全部参数
+     */
+    public static KeyGenerator create(Method method, String[] keys) {
+        Parameter[] parameters = method.getParameters();
+        int[] indexes;
+        if (keys.length == 0) {
+            indexes = new int[parameters.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+        } else {
+            indexes = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                indexes[i] = indexOf(method, parameters, keys[i]);
+            }
+        }
+        if (indexes.length == 0) {
+            return new KeyGenerator() {
+                @Override
+                public Object generate(Object[] args) {
+                    return EMPTY_KEY;
+                }
+            };
+        }
+        if (indexes.length == 1 && !parameters[indexes[0]].getType().isArray()) {
+            int index = indexes[0];
+            return new KeyGenerator() {
+                @Override
+                public Object generate(Object[] args) {
+                    Object arg = args[index];
+                    return arg == null ? NULL_KEY : arg;
+                }
+            };
+        }
+        return new KeyGenerator() {
+            @Override
+            public Object generate(Object[] args) {
+                Object[] values = new Object[indexes.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    values[i] = args[indexes[i]];
+                }
+                return new CacheKey(values);
+            }
+        };
+    }
+
+    private static int indexOf(Method method, Parameter[] parameters, String key) {
+        for (int i = 0; i < parameters.length; i++) {
+            if ((parameters[i].isNamePresent() && parameters[i].getName().equals(key)) || key.equals("p" + i)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("缓存键中的参数 " + key + " 不存在(参数名需要 -parameters 编译，也可以使用 p0、p1): "
+                + method);
+    }
+}
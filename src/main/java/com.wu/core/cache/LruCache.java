@@ -0,0 +1,160 @@
+package com.wu.core.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 有容量上限和有效期的并发缓存：
+ *   - 按键的哈希分成多个段，每段是一个按访问顺序排列的 LinkedHashMap，各自加锁，段之间互不阻塞
+ *   - 容量平均分到各段，段满时淘汰该段中最久没有访问的条目(分段的近似 LRU)
+ *   - 条目在读取时检查是否过期，过期的条目在读到或被淘汰时删除
+ *   - 命中、未命中、淘汰、过期次数用 LongAdder 统计，不增加锁竞争
+ * 不缓存 null 值，需要缓存 null 时由调用者用占位对象代替
+ * */
+public class LruCache<K, V> {
+
+    // 每段至少的条目数，容量小时减少分段，避免 LRU 过于不准确
+    private static final int MIN_SEGMENT_SIZE = 32;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final String name;
+    private final int maxSize;
+    // 有效期(纳秒)，0 表示不过期
+    private final long ttlNanos;
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize   最大条目数
+     * @param ttlMillis 有效期(毫秒)，0 表示不过期
+     */
+    public LruCache(String name, int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于0: " + name);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize) {
+            count <<= 1;
+        }
+        this.segments = newSegments(count);
+        this.mask = count - 1;
+        int segmentSize = (maxSize + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(segmentSize, evictions);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int count) {
+        return (Segment<K, V>[]) new Segment<?, ?>[count];
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & mask];
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        CacheEntry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.expireAt != 0 && System.nanoTime() - entry.expireAt >= 0) {
+                segment.remove(key);
+                entry = null;
+                expirations.increment();
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        CacheEntry<V> entry = new CacheEntry<>(value, ttlNanos == 0 ? 0 : System.nanoTime() + ttlNanos);
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(name, hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size(), maxSize);
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        // 过期时刻(System.nanoTime)，0 表示不过期
+        private final long expireAt;
+
+        CacheEntry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /*
+     * 一个段：按访问顺序排列，超出容量时删除最久没有访问的条目
+     * */
+    private static class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
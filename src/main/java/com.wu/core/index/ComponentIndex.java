@@ -0,0 +1,154 @@
+package com.wu.core.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/*
+ * 编译期生成的组件索引，由 ComponentIndexProcessor 写入 classpath 下的 META-INF/minispring.components
+ * 每行一条记录，字段用空格分隔：
+ *   class <类名> <注解,...>               例如 class com.wu.demo.UserController MyController
+ *   count <类的个数> <类名的校验值>          写在最后，例如 count 3 5f1c2a7e
+ * 其他类型的记录(旧版本生成的 autowired、pointcut、route)忽略
+ * classpath 上有多个索引文件(多个 jar)时全部合并
+ * 使用前由 isComplete 检查，只比较 count 记录和索引文件是否存在，不遍历 class 目录、不读取 class 文件；
+ * 不完整时退回到扫描 class 目录。编译时没有运行注解处理器而新增的类检查不出来，需要重新完整编译
+ * */
+public class ComponentIndex {
+    private static Logger logger = LoggerFactory.getLogger(ComponentIndex.class);
+
+    public static final String LOCATION = "META-INF/minispring.components";
+
+    static final String COMPONENT = "com.wu.annotation.ioc.MyComponent";
+    static final String CONTROLLER = "com.wu.annotation.ioc.MyController";
+    static final String SERVICE = "com.wu.annotation.ioc.MyService";
+    static final String ASPECT = "com.wu.annotation.aop.MyAspect";
+
+    // 记录类型
+    public static final String CLASS = "class";
+    public static final String COUNT = "count";
+
+    private final List<String> classNames;
+    // 索引文件的位置(URL 字符串)
+    private final Set<String> locations;
+    // 所有索引文件的 count 记录都与其中的类一致
+    private final boolean verified;
+
+    private ComponentIndex(List<String> classNames, Set<String> locations, boolean verified) {
+        this.classNames = classNames;
+        this.locations = locations;
+        this.verified = verified;
+    }
+
+    /**
+     * 读取 classpath 上所有的索引文件
+     *
+     * @return 没有索引文件时返回 null，调用方应退回到扫描 class 目录
+     */
+    public static ComponentIndex load(ClassLoader classLoader) throws IOException {
+        Enumeration<URL> urls = classLoader.getResources(LOCATION);
+        if (!urls.hasMoreElements()) {
+            return null;
+        }
+        List<String> classNames = new ArrayList<>();
+        Set<String> locations = new HashSet<>();
+        boolean verified = true;
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            locations.add(url.toString());
+            List<String> names = new ArrayList<>();
+            String count = null;
+            try (InputStream in = url.openStream();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split(" ");
+                    if (CLASS.equals(fields[0]) && fields.length > 1) {
+                        names.add(fields[1]);
+                    } else if (COUNT.equals(fields[0])) {
+                        count = line;
+                    }
+                }
+            }
+            String expected = COUNT + " " + names.size() + " " + checksum(names);
+            if (!expected.equals(count)) {
+                logger.warn("component index {} does not match its count record", url);
+                verified = false;
+            }
+            classNames.addAll(names);
+        }
+        return new ComponentIndex(Collections.unmodifiableList(classNames), locations, verified);
+    }
+
+    /**
+     * 类名的校验值：按类名排序后的 CRC32，十六进制
+     */
+    static String checksum(Collection<String> classNames) {
+        List<String> sorted = new ArrayList<>(classNames);
+        Collections.sort(sorted);
+        CRC32 crc = new CRC32();
+        for (String className : sorted) {
+            crc.update(className.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * 获取指定包(包括子包)下所有带容器注解的类名
+     */
+    public List<String> getClassNames(String packageName) {
+        List<String> result = new ArrayList<>();
+        String prefix = packageName + ".";
+        for (String className : classNames) {
+            if (className.startsWith(prefix)) {
+                result.add(className);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 检查索引是否覆盖了指定包下的所有类，以下情况返回 false：
+     *   - 某个索引文件没有 count 记录，或者与其中的类不一致(旧版本生成、手工修改或被截断)
+     *   - 包所在的某个 class 目录或 jar 中没有索引文件
+     * 只比较索引本身，不遍历 class 目录、不读取 class 文件；索引中已删除的类由调用方加载失败时发现
+     */
+    public boolean isComplete(ClassLoader classLoader, String packageName) throws IOException {
+        if (!verified) {
+            return false;
+        }
+        String path = packageName.replace('.', '/');
+        Enumeration<URL> urls = classLoader.getResources(path);
+        while (urls.hasMoreElements()) {
+            String location = urls.nextElement().toString();
+            int end = location.lastIndexOf(path);
+            if (end < 0) {
+                continue;
+            }
+            if (!locations.contains(location.substring(0, end) + LOCATION)) {
+                logger.warn("component index is missing in {}", location.substring(0, end));
+                return false;
+            }
+        }
+        return true;
+    }
+}
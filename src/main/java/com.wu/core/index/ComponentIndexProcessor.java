@@ -0,0 +1,144 @@
+package com.wu.core.index;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * 编译期注解处理器：把带有容器注解的类写入索引文件
+ * 启动时 ComponentIndex 读取该文件即可得到类列表，不必再遍历 class 目录、逐个 Class.forName
+ * 增量编译时只处理了部分类，已有索引中没有重新编译、依然带有容器注解的类会保留下来
+ * 最后写入一条 count 记录(类的个数和类名的校验值)，启动时只比较这条记录，不再检查 class 文件
+ * 索引文件的格式见 ComponentIndex
+ * */
+@SupportedAnnotationTypes({
+        ComponentIndex.COMPONENT, ComponentIndex.CONTROLLER, ComponentIndex.SERVICE, ComponentIndex.ASPECT
+})
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    // 按类名排序，保证同样的源码生成同样的索引文件
+    private final SortedMap<String, String> records = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+                if (!records.containsKey(className)) {
+                    records.put(className, describe(type, className));
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            // 上一次的索引中的类都去掉了注解时也要重写，清空索引
+            if (mergePreviousIndex() || !records.isEmpty()) {
+                writeIndex();
+            }
+        }
+        // 不"认领"这些注解，其它处理器依然可以处理
+        return false;
+    }
+
+    /*
+     * 生成一个类对应的索引记录
+     * */
+    private String describe(TypeElement type, String className) {
+        List<String> kinds = new ArrayList<>();
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            String name = annotationName(mirror);
+            if (isContainerAnnotation(name)) {
+                kinds.add(name.substring(name.lastIndexOf('.') + 1));
+            }
+        }
+        return ComponentIndex.CLASS + " " + className + " " + String.join(",", kinds);
+    }
+
+    /*
+     * 增量编译：读取上一次生成的索引，其中本次没有处理的类如果依然存在并带有容器注解就保留，
+     * 删除的类或去掉注解的类不再写入；没有上一次的索引时返回 false
+     * */
+    private boolean mergePreviousIndex() {
+        List<String> previous = new ArrayList<>();
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", ComponentIndex.LOCATION);
+            try (Reader in = file.openReader(true); BufferedReader reader = new BufferedReader(in)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split(" ");
+                    if (ComponentIndex.CLASS.equals(fields[0]) && fields.length > 1) {
+                        previous.add(fields[1]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 第一次编译，还没有索引
+            return false;
+        }
+        for (String className : previous) {
+            if (records.containsKey(className)) {
+                continue;
+            }
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(className.replace('$', '.'));
+            if (type != null && hasContainerAnnotation(type)) {
+                records.put(className, describe(type, className));
+            }
+        }
+        return true;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", ComponentIndex.LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# generated by " + getClass().getName() + "\n");
+                for (String line : records.values()) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                writer.write(ComponentIndex.COUNT + " " + records.size() + " "
+                        + ComponentIndex.checksum(records.keySet()) + "\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "无法写入组件索引 " + ComponentIndex.LOCATION + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isContainerAnnotation(String name) {
+        return ComponentIndex.COMPONENT.equals(name) || ComponentIndex.CONTROLLER.equals(name)
+                || ComponentIndex.SERVICE.equals(name) || ComponentIndex.ASPECT.equals(name);
+    }
+
+    private static boolean hasContainerAnnotation(TypeElement type) {
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            if (isContainerAnnotation(annotationName(mirror))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String annotationName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.wu.core.ioc;
+
+import com.wu.annotation.ioc.MyAutoWired;
+import com.wu.annotation.ioc.MyLazy;
+import com.wu.annotation.ioc.MyScope;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * 一个bean的创建计划：用哪个构造器创建、构造器需要哪些依赖、创建后要注入哪些属性
+ * 依赖在 BeanFactory 中解析成具体的bean类，据此构建依赖图，独立的bean可以并行创建
+ * 计划解析完成后可以整体写入启动快照，下次启动直接读回，跳过注解检查和依赖解析
+ * */
+public class BeanDefinition {
+
+    private final Class<?> beanClass;
+    // 标注了 @MyAutoWired 的构造器，没有时使用无参构造器
+    private final Constructor<?> constructor;
+    // 标注了 @MyAutoWired 的属性
+    private final List<Field> autowiredFields = new ArrayList<>();
+    // 构造器参数、属性对应的bean类，找不到对应bean时为null，注入null
+    private Class<?>[] constructorDependencies;
+    private Class<?>[] fieldDependencies;
+    // 对应的构造器参数、属性是否注入懒加载句柄，注入句柄的依赖不参与依赖图
+    private boolean[] lazyConstructorDependencies;
+    private boolean[] lazyFieldDependencies;
+    // 是否延迟到第一次 getBean 时创建，初始为类上是否标注了 @MyLazy，解析依赖后可能被改为启动时创建
+    private boolean lazy;
+    // 作用于这个bean的通知方法，null 表示还没有匹配过，创建时再用切点表达式匹配
+    private List<Method> adviceMethods;
+    // 作用域、对象池大小和放回对象池前调用的方法名，见 @MyScope
+    private String scope = MyScope.SINGLETON;
+    private int poolSize;
+    private String resetMethod = "";
+
+    public BeanDefinition(Class<?> beanClass) {
+        this.beanClass = beanClass;
+        this.constructor = findConstructor(beanClass);
+        this.constructor.setAccessible(true);
+        for (Field field : beanClass.getDeclaredFields()) {
+            if (field.isAnnotationPresent(MyAutoWired.class)) {
+                field.setAccessible(true);
+                autowiredFields.add(field);
+            }
+        }
+        this.lazy = beanClass.isAnnotationPresent(MyLazy.class);
+        MyScope scope = beanClass.getAnnotation(MyScope.class);
+        if (scope != null) {
+            setScope(scope.value(), scope.poolSize(), scope.reset());
+        }
+    }
+
+    /**
+     * 用已经确定的构造器和注入属性创建，不再检查注解，用于从启动快照恢复
+     */
+    public BeanDefinition(Class<?> beanClass, Constructor<?> constructor, List<Field> autowiredFields) {
+        this.beanClass = beanClass;
+        this.constructor = constructor;
+        this.constructor.setAccessible(true);
+        for (Field field : autowiredFields) {
+            field.setAccessible(true);
+            this.autowiredFields.add(field);
+        }
+    }
+
+    private static Constructor<?> findConstructor(Class<?> beanClass) {
+        Constructor<?> found = null;
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(MyAutoWired.class)) {
+                if (found != null) {
+                    throw new IllegalStateException("只能有一个构造器标注 @MyAutoWired: " + beanClass.getName());
+                }
+                found = constructor;
+            }
+        }
+        if (found != null) {
+            return found;
+        }
+        try {
+            return beanClass.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("没有无参构造器，也没有标注 @MyAutoWired 的构造器: " + beanClass.getName(), e);
+        }
+    }
+
+    /**
+     * 启动时不创建，第一次 getBean 时再创建
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * 是否是单例，非单例的bean由 ScopedBean 按作用域创建
+     */
+    public boolean isSingleton() {
+        return MyScope.SINGLETON.equals(scope);
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public String getResetMethod() {
+        return resetMethod;
+    }
+
+    public void setScope(String scope, int poolSize, String resetMethod) {
+        if (!MyScope.SINGLETON.equals(scope) && !MyScope.PROTOTYPE.equals(scope)
+                && !MyScope.REQUEST.equals(scope) && !MyScope.THREAD.equals(scope)) {
+            throw new IllegalStateException("不支持的作用域 " + scope + ": " + beanClass.getName());
+        }
+        this.scope = scope;
+        this.poolSize = poolSize;
+        this.resetMethod = resetMethod;
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    public Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    public List<Field> getAutowiredFields() {
+        return autowiredFields;
+    }
+
+    public Class<?>[] getConstructorDependencies() {
+        return constructorDependencies;
+    }
+
+    public void setConstructorDependencies(Class<?>[] constructorDependencies) {
+        this.constructorDependencies = constructorDependencies;
+    }
+
+    public Class<?>[] getFieldDependencies() {
+        return fieldDependencies;
+    }
+
+    public void setFieldDependencies(Class<?>[] fieldDependencies) {
+        this.fieldDependencies = fieldDependencies;
+    }
+
+    public boolean[] getLazyConstructorDependencies() {
+        return lazyConstructorDependencies;
+    }
+
+    public void setLazyConstructorDependencies(boolean[] lazyConstructorDependencies) {
+        this.lazyConstructorDependencies = lazyConstructorDependencies;
+    }
+
+    public boolean[] getLazyFieldDependencies() {
+        return lazyFieldDependencies;
+    }
+
+    public void setLazyFieldDependencies(boolean[] lazyFieldDependencies) {
+        this.lazyFieldDependencies = lazyFieldDependencies;
+    }
+
+    public List<Method> getAdviceMethods() {
+        return adviceMethods;
+    }
+
+    public void setAdviceMethods(List<Method> adviceMethods) {
+        this.adviceMethods = adviceMethods;
+    }
+}
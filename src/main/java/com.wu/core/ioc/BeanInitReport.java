@@ -0,0 +1,148 @@
+package com.wu.core.ioc;
+
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 记录bean初始化的耗时：每个bean分为"创建"(构造器+代理)和"注入"两个阶段
+ * 每个阶段记下它等待的最后一个前置阶段，从最晚结束的阶段往回追溯就得到启动的关键路径
+ * */
+public class BeanInitReport {
+
+    private static final String CREATE = "create";
+    private static final String INJECT = "inject";
+    // 日志中列出的最慢bean个数
+    private static final int SLOWEST = 10;
+
+    private final long origin = System.nanoTime();
+    private final Map<Class<?>, Phase> created = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Phase> injected = new ConcurrentHashMap<>();
+    private volatile long finishedAt;
+
+    public Phase created(Class<?> beanClass) {
+        return created.computeIfAbsent(beanClass, c -> new Phase(c, CREATE));
+    }
+
+    public Phase injected(Class<?> beanClass) {
+        return injected.computeIfAbsent(beanClass, c -> new Phase(c, INJECT));
+    }
+
+    /**
+     * 阶段开始执行，此时 prerequisites 都已结束
+     */
+    public void begin(Phase phase, List<Phase> prerequisites) {
+        Phase last = null;
+        for (Phase prerequisite : prerequisites) {
+            if (last == null || prerequisite.end > last.end) {
+                last = prerequisite;
+            }
+        }
+        phase.predecessor = last;
+        phase.thread = Thread.currentThread().getName();
+        phase.start = System.nanoTime() - origin;
+    }
+
+    public void end(Phase phase) {
+        phase.end = System.nanoTime() - origin;
+    }
+
+    public void finish() {
+        finishedAt = System.nanoTime() - origin;
+    }
+
+    public Collection<Phase> getPhases() {
+        List<Phase> phases = new ArrayList<>(created.values());
+        phases.addAll(injected.values());
+        return phases;
+    }
+
+    /**
+     * 关键路径：从最晚结束的阶段开始，沿着每个阶段最后等待的前置阶段往回追溯，按时间先后返回
+     */
+    public List<Phase> getCriticalPath() {
+        Phase last = null;
+        for (Phase phase : getPhases()) {
+            if (last == null || phase.end > last.end) {
+                last = phase;
+            }
+        }
+        LinkedList<Phase> path = new LinkedList<>();
+        for (Phase phase = last; phase != null; phase = phase.predecessor) {
+            path.addFirst(phase);
+        }
+        return path;
+    }
+
+    public void log(Logger logger) {
+        Map<Class<?>, Long> beanNanos = new HashMap<>();
+        long totalNanos = 0;
+        for (Phase phase : getPhases()) {
+            beanNanos.merge(phase.beanClass, phase.getDuration(), Long::sum);
+            totalNanos += phase.getDuration();
+        }
+        logger.info("initialized {} beans in {} ms, {} ms spent in beans", beanNanos.size(),
+                millis(finishedAt), millis(totalNanos));
+
+        List<Map.Entry<Class<?>, Long>> slowest = new ArrayList<>(beanNanos.entrySet());
+        slowest.sort(Map.Entry.<Class<?>, Long>comparingByValue().reversed());
+        for (Map.Entry<Class<?>, Long> entry : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+            Phase create = created.get(entry.getKey());
+            Phase inject = injected.get(entry.getKey());
+            logger.info("  {}: {} ms (create {} ms on {}, inject {} ms)", entry.getKey().getName(),
+                    millis(entry.getValue()), millis(create.getDuration()), create.thread, millis(inject.getDuration()));
+        }
+
+        logger.info("critical path:");
+        for (Phase phase : getCriticalPath()) {
+            logger.info("  {} ms -> {} ms  {} {} ({} ms)", millis(phase.start), millis(phase.end),
+                    phase.name, phase.beanClass.getName(), millis(phase.getDuration()));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+
+    /*
+     * bean初始化的一个阶段，时间都是相对于开始初始化时的纳秒数
+     * */
+    public static class Phase {
+        private final Class<?> beanClass;
+        private final String name;
+        private volatile long start;
+        private volatile long end;
+        private volatile Phase predecessor;
+        private volatile String thread;
+
+        Phase(Class<?> beanClass, String name) {
+            this.beanClass = beanClass;
+            this.name = name;
+        }
+
+        public Class<?> getBeanClass() {
+            return beanClass;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+
+        public Phase getPredecessor() {
+            return predecessor;
+        }
+    }
+}
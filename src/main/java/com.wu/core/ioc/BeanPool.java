@@ -0,0 +1,53 @@
+package com.wu.core.ioc;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * 有界的对象池：保存用完的作用域bean，下次使用时直接取出，不再通过反射创建和注入
+ *   - 每个位置保存一个空闲对象，取出和放回都是对一个位置的 compareAndSet，不加锁
+ *   - 从线程 id 对应的位置开始查找，不同线程大多落在不同的位置上，减少竞争
+ * 池满时放回的对象被丢弃，池空时由调用方创建新的对象
+ * */
+public class BeanPool {
+
+    private final AtomicReferenceArray<Object> slots;
+
+    public BeanPool(int size) {
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 取出一个空闲对象，池空时返回null
+     */
+    public Object borrow() {
+        int size = slots.length();
+        int start = start(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            Object bean = slots.get(slot);
+            if (bean != null && slots.compareAndSet(slot, bean, null)) {
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 放回一个对象，池满时返回false
+     */
+    public boolean release(Object bean) {
+        int size = slots.length();
+        int start = start(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (start + i) % size;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, bean)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int start(int size) {
+        return (int) (Thread.currentThread().getId() % size);
+    }
+}
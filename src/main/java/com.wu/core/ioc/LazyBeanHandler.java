@@ -0,0 +1,53 @@
+package com.wu.core.ioc;
+
+import com.wu.core.BeanFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/*
+ * 懒加载句柄：注入到接口类型注入点的JDK动态代理，第一次调用方法时才从 BeanFactory 获取(必要时创建)真正的bean
+ * 句柄本身只有一个字段，没有被使用过的bean不占用启动时间和堆内存
+ * equals/hashCode 按句柄自身判断，不会触发创建
+ * */
+public class LazyBeanHandler implements InvocationHandler {
+
+    private final Class<?> beanClass;
+    private volatile Object target;
+
+    private LazyBeanHandler(Class<?> beanClass) {
+        this.beanClass = beanClass;
+    }
+
+    /**
+     * @param type      注入点的类型，必须是接口
+     * @param beanClass 真正要注入的bean类
+     */
+    public static Object create(Class<?> type, Class<?> beanClass) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new LazyBeanHandler(beanClass));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+        }
+        Object bean = target;
+        if (bean == null) {
+            bean = BeanFactory.getBean(beanClass);
+            target = bean;
+        }
+        try {
+            return method.invoke(bean, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.wu.core.ioc;
+
+import java.util.Arrays;
+
+/*
+ * 一个请求的 request 作用域：保存这个请求用到的 request 作用域bean
+ *   - 请求开始时 begin 在当前线程上设置，请求交给其他线程处理时通过 detach/attach 带过去，和 Tracer 的 traceId 一样
+ *   - handler 返回(或返回的 CompletionStage 完成)后 end，把这个请求创建的对象丢弃或放回对象池
+ * 一个请求通常只用到几个 request 作用域bean，按数组顺序查找，不使用 HashMap
+ * 没有 request 作用域的bean时 begin 返回null，请求不创建任何对象
+ * 同一时刻只应有一个线程在处理一个请求，作用域本身不加锁
+ * */
+public class RequestScope {
+
+    private static final ThreadLocal<RequestScope> current = new ThreadLocal<>();
+    // 有 request 作用域的bean时才为请求创建作用域
+    private static volatile boolean enabled;
+
+    private ScopedBean[] beans;
+    private Object[] instances;
+    private int size;
+    private boolean ended;
+
+    private RequestScope() {
+    }
+
+    /**
+     * 注册了 request 作用域的bean后开启，见 BeanFactory.createBeans
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * 请求开始时调用，在当前线程上开始一个新的作用域
+     *
+     * @return 新的作用域，没有 request 作用域的bean时为null
+     */
+    public static RequestScope begin() {
+        if (!enabled) {
+            return null;
+        }
+        RequestScope scope = new RequestScope();
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * 当前线程不再处理这个请求(交给其他线程继续处理)，返回当前的作用域
+     */
+    public static RequestScope detach() {
+        if (!enabled) {
+            return null;
+        }
+        RequestScope scope = current.get();
+        current.remove();
+        return scope;
+    }
+
+    /**
+     * 在当前线程上继续 scope 所属的请求，返回原来的作用域，处理完后再 attach 回去
+     */
+    public static RequestScope attach(RequestScope scope) {
+        if (!enabled) {
+            return null;
+        }
+        RequestScope previous = current.get();
+        if (scope == null) {
+            current.remove();
+        } else {
+            current.set(scope);
+        }
+        return previous;
+    }
+
+    /**
+     * 请求结束时调用，丢弃或回收这个请求创建的对象
+     *
+     * @param scope begin 的返回值，为null时什么都不做
+     */
+    public static void end(RequestScope scope) {
+        if (scope == null) {
+            return;
+        }
+        if (current.get() == scope) {
+            current.remove();
+        }
+        scope.ended = true;
+        for (int i = 0; i < scope.size; i++) {
+            scope.beans[i].recycle(scope.instances[i]);
+            scope.instances[i] = null;
+        }
+        scope.size = 0;
+    }
+
+    /**
+     * 当前线程上正在处理的请求的作用域，没有时为null
+     */
+    static RequestScope current() {
+        return enabled ? current.get() : null;
+    }
+
+    Object get(ScopedBean bean) {
+        for (int i = 0; i < size; i++) {
+            if (beans[i] == bean) {
+                return instances[i];
+            }
+        }
+        return null;
+    }
+
+    void put(ScopedBean bean, Object instance) {
+        if (ended) {
+            throw new IllegalStateException("请求已经结束，不能再使用 request 作用域的bean: "
+                    + bean.getBeanClass().getName());
+        }
+        if (beans == null) {
+            beans = new ScopedBean[4];
+            instances = new Object[4];
+        } else if (size == beans.length) {
+            beans = Arrays.copyOf(beans, size * 2);
+            instances = Arrays.copyOf(instances, size * 2);
+        }
+        beans[size] = bean;
+        instances[size] = instance;
+        size++;
+    }
+}
@@ -0,0 +1,132 @@
+package com.wu.core.ioc;
+
+import com.wu.annotation.ioc.MyScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/*
+ * 一个非单例bean：按作用域找到或创建当前要使用的对象，见 @MyScope
+ *   - prototype：get 每次返回一个新的对象；注入的句柄每次调用方法时 get 一个对象，调用完 release
+ *   - request：get 返回当前请求的对象(见 RequestScope)，请求结束时回收
+ *   - thread：get 返回当前线程的对象，不回收
+ * 配置了对象池时，prototype 和 request 作用域的对象用完后调用 reset 方法并放回对象池，
+ * 之后优先从对象池取出，不再通过反射调用构造器、注入属性；同一时刻一个对象只被一个调用/请求使用，对象本身不需要加锁
+ * 配置了 reset 方法但被JDK动态代理包装的对象无法调用 reset，不放回对象池
+ * */
+public class ScopedBean {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(ScopedBean.class);
+
+    private final Class<?> beanClass;
+    private final String scope;
+    // 创建并注入一个新的对象(可能是AOP代理)，由 BeanFactory 提供
+    private final Supplier<Object> factory;
+    // 用完的对象，没有配置对象池时为null
+    private final BeanPool pool;
+    // 放回对象池之前调用的方法
+    private final Method resetMethod;
+    private final ThreadLocal<Object> threadBeans;
+
+    public ScopedBean(BeanDefinition definition, Supplier<Object> factory) {
+        this.beanClass = definition.getBeanClass();
+        this.scope = definition.getScope();
+        this.factory = factory;
+        boolean pooled = definition.getPoolSize() > 0 && !MyScope.THREAD.equals(scope);
+        this.pool = pooled ? new BeanPool(definition.getPoolSize()) : null;
+        this.resetMethod = pooled ? findResetMethod(definition) : null;
+        this.threadBeans = MyScope.THREAD.equals(scope) ? ThreadLocal.withInitial(factory) : null;
+    }
+
+    private static Method findResetMethod(BeanDefinition definition) {
+        String name = definition.getResetMethod();
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            Method method = definition.getBeanClass().getMethod(name);
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("没有找到 public 的无参方法 " + name + ": "
+                    + definition.getBeanClass().getName(), e);
+        }
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * 按作用域返回当前要使用的对象，见 BeanFactory.getBean
+     */
+    public Object get() {
+        if (threadBeans != null) {
+            return threadBeans.get();
+        }
+        if (MyScope.PROTOTYPE.equals(scope)) {
+            return newInstance();
+        }
+        RequestScope request = RequestScope.current();
+        if (request == null) {
+            throw new IllegalStateException("当前线程没有正在处理的请求，不能使用 request 作用域的bean: "
+                    + beanClass.getName());
+        }
+        Object bean = request.get(this);
+        if (bean == null) {
+            bean = newInstance();
+            request.put(this, bean);
+        }
+        return bean;
+    }
+
+    /**
+     * 句柄调用完一个方法后归还 get 得到的对象，只有 prototype 作用域的对象在这里回收
+     */
+    void release(Object bean) {
+        if (MyScope.PROTOTYPE.equals(scope)) {
+            recycle(bean);
+        }
+    }
+
+    /**
+     * 对象不再使用：配置了对象池时重置后放回，池满或重置失败时丢弃
+     */
+    void recycle(Object bean) {
+        if (pool == null) {
+            return;
+        }
+        if (resetMethod != null) {
+            if (!beanClass.isInstance(bean)) {
+                return;
+            }
+            try {
+                resetMethod.invoke(bean);
+            } catch (InvocationTargetException e) {
+                logger.warn("failed to reset {}, discarded", beanClass.getName(), e.getCause());
+                return;
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        pool.release(bean);
+    }
+
+    private Object newInstance() {
+        if (pool != null) {
+            Object bean = pool.borrow();
+            if (bean != null) {
+                return bean;
+            }
+        }
+        return factory.get();
+    }
+}
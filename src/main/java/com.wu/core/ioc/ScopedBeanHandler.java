@@ -0,0 +1,48 @@
+package com.wu.core.ioc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/*
+ * 作用域句柄：注入到单例中的JDK动态代理，每次调用方法时按作用域找到真正的对象(见 ScopedBean)，
+ * 单例可以一直持有它，prototype 作用域的对象调用完立即归还，request 作用域的对象属于当前请求
+ * equals/hashCode 按句柄自身判断，不会触发创建
+ * */
+public class ScopedBeanHandler implements InvocationHandler {
+
+    private final ScopedBean scopedBean;
+
+    private ScopedBeanHandler(ScopedBean scopedBean) {
+        this.scopedBean = scopedBean;
+    }
+
+    /**
+     * @param type       注入点的类型，必须是接口
+     * @param scopedBean 真正要注入的bean
+     */
+    public static Object create(Class<?> type, ScopedBean scopedBean) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new ScopedBeanHandler(scopedBean));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+        }
+        Object bean = scopedBean.get();
+        try {
+            return method.invoke(bean, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            scopedBean.release(bean);
+        }
+    }
+}
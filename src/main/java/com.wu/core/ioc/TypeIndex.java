@@ -0,0 +1,113 @@
+package com.wu.core.ioc;
+
+import com.wu.annotation.ioc.MyComponent;
+import com.wu.annotation.ioc.MyController;
+import com.wu.annotation.ioc.MyPrimary;
+import com.wu.annotation.ioc.MyService;
+
+import java.util.*;
+
+/*
+ * 类型索引：启动时构建一次，记录每个类型(bean类本身、父类以及实现的所有接口)可以注入哪些bean
+ * 依赖注入时按类型直接查表，不再遍历整个IOC容器；候选bean按扫描顺序保存，解析结果与容器的存储顺序无关
+ * 有多个候选时依次按 @MyQualifier 指定的名字、@MyPrimary、类型本身就是bean 来决定，仍然无法决定时报错
+ * */
+public class TypeIndex {
+
+    // key/value=类型/可以赋值给该类型的bean类
+    private final Map<Class<?>, List<Class<?>>> candidates = new HashMap<>();
+    // key/value=bean类/bean的名字
+    private final Map<Class<?>, String> names = new HashMap<>();
+
+    public TypeIndex(Collection<Class<?>> beanClasses) {
+        for (Class<?> beanClass : beanClasses) {
+            names.put(beanClass, beanName(beanClass));
+            for (Class<?> type : superTypes(beanClass)) {
+                candidates.computeIfAbsent(type, k -> new ArrayList<>()).add(beanClass);
+            }
+        }
+    }
+
+    /**
+     * bean的名字：@MyComponent / @MyService / @MyController 的 value，没有时为首字母小写的类名
+     */
+    public static String beanName(Class<?> beanClass) {
+        String name = "";
+        if (beanClass.isAnnotationPresent(MyComponent.class)) {
+            name = beanClass.getAnnotation(MyComponent.class).value();
+        } else if (beanClass.isAnnotationPresent(MyService.class)) {
+            name = beanClass.getAnnotation(MyService.class).value();
+        } else if (beanClass.isAnnotationPresent(MyController.class)) {
+            name = beanClass.getAnnotation(MyController.class).value();
+        }
+        if (!name.isEmpty()) {
+            return name;
+        }
+        String simpleName = beanClass.getSimpleName();
+        return Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1);
+    }
+
+    // beanClass 本身、所有父类(不包括Object)和所有接口
+    private static Set<Class<?>> superTypes(Class<?> beanClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        queue.add(beanClass);
+        while (!queue.isEmpty()) {
+            Class<?> type = queue.poll();
+            if (type == Object.class || !types.add(type)) {
+                continue;
+            }
+            if (type.getSuperclass() != null) {
+                queue.add(type.getSuperclass());
+            }
+            queue.addAll(Arrays.asList(type.getInterfaces()));
+        }
+        return types;
+    }
+
+    public List<Class<?>> getCandidates(Class<?> type) {
+        return candidates.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * 找出注入到 type 类型注入点的bean类
+     *
+     * @param type           注入点的类型
+     * @param qualifier      @MyQualifier 指定的名字，没有时为null
+     * @param injectionPoint 注入点的描述，用于报错
+     * @return bean类，没有候选且没有指定名字时返回null
+     */
+    public Class<?> resolve(Class<?> type, String qualifier, String injectionPoint) {
+        List<Class<?>> list = getCandidates(type);
+        if (qualifier != null) {
+            for (Class<?> candidate : list) {
+                if (names.get(candidate).equals(qualifier)) {
+                    return candidate;
+                }
+            }
+            throw new IllegalStateException("找不到名为 " + qualifier + " 的 " + type.getName()
+                    + " 类型的bean，位于 " + injectionPoint);
+        }
+        if (list.size() <= 1) {
+            return list.isEmpty() ? null : list.get(0);
+        }
+        Class<?> primary = null;
+        for (Class<?> candidate : list) {
+            if (candidate.isAnnotationPresent(MyPrimary.class)) {
+                if (primary != null) {
+                    throw new IllegalStateException("有多个 @MyPrimary 的 " + type.getName()
+                            + " 类型的bean: " + list + "，位于 " + injectionPoint);
+                }
+                primary = candidate;
+            }
+        }
+        if (primary != null) {
+            return primary;
+        }
+        if (list.contains(type)) {
+            return type;
+        }
+        throw new IllegalStateException("有多个 " + type.getName() + " 类型的bean: " + list
+                + "，需要用 @MyQualifier 指定或在其中一个上标注 @MyPrimary，位于 " + injectionPoint);
+    }
+}
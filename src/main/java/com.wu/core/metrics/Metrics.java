@@ -0,0 +1,230 @@
+package com.wu.core.metrics;
+
+import com.wu.core.cache.CacheManager;
+import com.wu.core.cache.CacheStats;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/*
+ * 框架内置的指标，在创建 handler、通知链时注册，请求中直接在拿到的对象上记录，不再按名字查找：
+ *   - minispring_http_request_duration_seconds{route}：每个路由的处理耗时，包括异步完成的请求
+ *   - minispring_http_request_errors_total{route}：参数绑定失败、handler 抛出异常或超时的请求数
+ *   - minispring_http_rejected_total{reason}：404、405、超过并发限制或速率被拒绝的请求数
+ *   - minispring_concurrency_limit{route}：标注了 @MyBulkhead 的路由当前的并发上限
+ *   - minispring_method_duration_seconds{method}：被切面或缓存代理的方法的耗时，methodMetrics=true 时才记录
+ *   - minispring_init_phase_seconds{phase}：启动时每个阶段的耗时
+ *   - minispring_cache_*{cache}：@MyCacheable 缓存的统计
+ * 通过 writePrometheus 输出 Prometheus 文本格式
+ * */
+public class Metrics {
+
+    public static final String REQUEST_DURATION = "minispring_http_request_duration_seconds";
+    public static final String REQUEST_ERRORS = "minispring_http_request_errors_total";
+    public static final String REJECTED = "minispring_http_rejected_total";
+    public static final String METHOD_DURATION = "minispring_method_duration_seconds";
+    public static final String INIT_PHASE = "minispring_init_phase_seconds";
+    public static final String CONCURRENCY_LIMIT = "minispring_concurrency_limit";
+
+    // 输出的分位数
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    // 按名字排序，输出时顺序固定
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * 取得(不存在时创建)一个耗时直方图，同名同标签的调用返回同一个对象
+     */
+    public static Histogram histogram(String name, String help, String label, String value) {
+        return (Histogram) family(name, help, Type.SUMMARY).get(label, value, Histogram::new);
+    }
+
+    public static LongAdder counter(String name, String help, String label, String value) {
+        return (LongAdder) family(name, help, Type.COUNTER).get(label, value, LongAdder::new);
+    }
+
+    /**
+     * 注册一个输出时才取值的 gauge，同名同标签再次注册时替换取值方式
+     */
+    public static void gauge(String name, String help, String label, String value, DoubleSupplier supplier) {
+        ((Gauge) family(name, help, Type.GAUGE).get(label, value, Gauge::new)).supplier = supplier;
+    }
+
+    /**
+     * 记录启动阶段 phase 的耗时
+     *
+     * @param start 阶段开始时的 System.nanoTime()
+     * @return 当前时间，作为下一个阶段的开始时间
+     */
+    public static long initPhase(String phase, long start) {
+        long now = System.nanoTime();
+        Gauge gauge = (Gauge) family(INIT_PHASE, "Duration of each framework startup phase", Type.GAUGE)
+                .get("phase", phase, Gauge::new);
+        gauge.value = (now - start) / NANOS_PER_SECOND;
+        return now;
+    }
+
+    private static Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (family.type != type) {
+            throw new IllegalStateException("指标 " + name + " 已经注册为 " + family.type.text);
+        }
+        return family;
+    }
+
+    /**
+     * 以 Prometheus 文本格式(0.0.4)输出所有指标
+     */
+    public static void writePrometheus(Appendable out) throws IOException {
+        for (Family family : families.values()) {
+            family.write(out);
+        }
+        writeCacheStats(out);
+    }
+
+    private static void writeCacheStats(Appendable out) throws IOException {
+        List<CacheStats> stats = CacheManager.stats();
+        if (stats.isEmpty()) {
+            return;
+        }
+        writeHeader(out, "minispring_cache_size", "Number of entries in the cache", "gauge");
+        for (CacheStats s : stats) {
+            writeSample(out, "minispring_cache_size", "cache", s.getName(), null, s.getSize());
+        }
+        writeHeader(out, "minispring_cache_hits_total", "Cache lookups that found a value", "counter");
+        for (CacheStats s : stats) {
+            writeSample(out, "minispring_cache_hits_total", "cache", s.getName(), null, s.getHits());
+        }
+        writeHeader(out, "minispring_cache_misses_total", "Cache lookups that invoked the method", "counter");
+        for (CacheStats s : stats) {
+            writeSample(out, "minispring_cache_misses_total", "cache", s.getName(), null, s.getMisses());
+        }
+        writeHeader(out, "minispring_cache_evictions_total", "Entries removed because the cache was full",
+                "counter");
+        for (CacheStats s : stats) {
+            writeSample(out, "minispring_cache_evictions_total", "cache", s.getName(), null, s.getEvictions());
+        }
+        writeHeader(out, "minispring_cache_expirations_total", "Entries removed because they expired", "counter");
+        for (CacheStats s : stats) {
+            writeSample(out, "minispring_cache_expirations_total", "cache", s.getName(), null,
+                    s.getExpirations());
+        }
+    }
+
+    private static void writeHeader(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeSample(Appendable out, String name, String label, String value, String quantile,
+                                    double sample) throws IOException {
+        out.append(name).append('{').append(label).append("=\"");
+        escape(out, value);
+        out.append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ");
+        if (sample == (long) sample) {
+            out.append(Long.toString((long) sample));
+        } else {
+            out.append(Double.toString(sample));
+        }
+        out.append('\n');
+    }
+
+    // 标签值中的 \ " 换行需要转义
+    private static void escape(Appendable out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static class Gauge {
+        private volatile double value;
+        // 不为null时输出它的当前值
+        private volatile DoubleSupplier supplier;
+
+        double get() {
+            DoubleSupplier supplier = this.supplier;
+            return supplier != null ? supplier.getAsDouble() : value;
+        }
+    }
+
+    /*
+     * 同名的一组指标，只有一个标签，按标签值排序
+     * */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private volatile String label;
+        private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Object get(String label, String value, Supplier<Object> factory) {
+            synchronized (this) {
+                if (this.label == null) {
+                    this.label = label;
+                } else if (!this.label.equals(label)) {
+                    throw new IllegalStateException("指标 " + name + " 的标签是 " + this.label);
+                }
+            }
+            return metrics.computeIfAbsent(value, v -> factory.get());
+        }
+
+        void write(Appendable out) throws IOException {
+            if (metrics.isEmpty()) {
+                return;
+            }
+            writeHeader(out, name, help, type.text);
+            for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+                Object metric = entry.getValue();
+                if (metric instanceof LongAdder) {
+                    writeSample(out, name, label, entry.getKey(), null, ((LongAdder) metric).sum());
+                } else if (metric instanceof Gauge) {
+                    writeSample(out, name, label, entry.getKey(), null, ((Gauge) metric).get());
+                } else {
+                    writeSummary(out, entry.getKey(), ((Histogram) metric).snapshot());
+                }
+            }
+        }
+
+        private void writeSummary(Appendable out, String value, Histogram.Snapshot snapshot) throws IOException {
+            for (double quantile : QUANTILES) {
+                writeSample(out, name, label, value, Double.toString(quantile),
+                        snapshot.getValue(quantile) / NANOS_PER_SECOND);
+            }
+            writeSample(out, name + "_sum", label, value, null, snapshot.getSum() / NANOS_PER_SECOND);
+            writeSample(out, name + "_count", label, value, null, snapshot.getCount());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.wu.core.scan;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * 直接解析 .class 文件的字节，读取类名和类上的运行时注解(RuntimeVisibleAnnotations)
+ * 不经过类加载器，因此不会触发类的加载和初始化
+ * class 文件结构参考 JVM 规范第 4 章
+ * */
+public class ClassMetadataReader {
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final byte[] bytes;
+    // 常量池中每一项在 bytes 中的起始位置(指向 tag 之后)
+    private int[] constantOffsets;
+    private int pos;
+
+    private ClassMetadataReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param bytes .class 文件的内容
+     * @return 类名(全限定名，用 . 分隔)及类上注解的描述符，如 Lcom/wu/annotation/ioc/MyService;
+     */
+    public static ClassMetadata read(byte[] bytes) throws IOException {
+        return new ClassMetadataReader(bytes).parse();
+    }
+
+    private ClassMetadata parse() throws IOException {
+        if (u4() != 0xCAFEBABE) {
+            throw new IOException("不是合法的 class 文件");
+        }
+        pos += 4; // minor_version, major_version
+        readConstantPool();
+        pos += 2; // access_flags
+        // this_class 指向 CONSTANT_Class，其内容才是类名对应的 Utf8 索引
+        String className = utf8(u2At(constantOffsets[u2()])).replace('/', '.');
+        pos += 2; // super_class
+        int interfacesCount = u2();
+        pos += 2 * interfacesCount; // interfaces
+        skipMembers(); // fields
+        skipMembers(); // methods
+        List<String> annotations = Collections.emptyList();
+        int attributesCount = u2();
+        for (int i = 0; i < attributesCount; i++) {
+            String name = utf8(u2());
+            int length = u4();
+            int end = pos + length;
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+                annotations = readAnnotationTypes();
+            }
+            pos = end;
+        }
+        return new ClassMetadata(className, annotations);
+    }
+
+    private void readConstantPool() throws IOException {
+        int count = u2();
+        constantOffsets = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = bytes[pos++] & 0xFF;
+            constantOffsets[i] = pos;
+            switch (tag) {
+                case 1: // Utf8
+                    pos += 2 + u2At(pos);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    pos += 2;
+                    break;
+                case 15: // MethodHandle
+                    pos += 3;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    pos += 4;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    pos += 8;
+                    i++; // 占两个常量池位置
+                    break;
+                default:
+                    throw new IOException("未知的常量池类型: " + tag);
+            }
+        }
+    }
+
+    // 跳过 fields 或 methods 表
+    private void skipMembers() {
+        int count = u2();
+        for (int i = 0; i < count; i++) {
+            pos += 6; // access_flags, name_index, descriptor_index
+            int attributesCount = u2();
+            for (int j = 0; j < attributesCount; j++) {
+                pos += 2; // attribute_name_index
+                int length = u4();
+                pos += length;
+            }
+        }
+    }
+
+    private List<String> readAnnotationTypes() throws IOException {
+        int count = u2();
+        List<String> types = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            types.add(utf8(u2()));
+            skipElementValuePairs();
+        }
+        return types;
+    }
+
+    private void skipElementValuePairs() {
+        int pairs = u2();
+        for (int i = 0; i < pairs; i++) {
+            pos += 2; // element_name_index
+            skipElementValue();
+        }
+    }
+
+    private void skipElementValue() {
+        int tag = bytes[pos++];
+        switch (tag) {
+            case 'e': // 枚举：type_name_index, const_name_index
+                pos += 4;
+                break;
+            case '@': // 嵌套注解
+                pos += 2;
+                skipElementValuePairs();
+                break;
+            case '[': // 数组
+                int count = u2();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+                break;
+            default: // 基本类型、String、Class：都是一个常量池索引
+                pos += 2;
+        }
+    }
+
+    private String utf8(int index) throws IOException {
+        int offset = constantOffsets[index];
+        int length = u2At(offset);
+        // 常量池使用的是"改良版"UTF-8，交给 DataInputStream.readUTF 解码
+        return new DataInputStream(new ByteArrayInputStream(bytes, offset, length + 2)).readUTF();
+    }
+
+    private int u2() {
+        int value = u2At(pos);
+        pos += 2;
+        return value;
+    }
+
+    private int u2At(int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private int u4() {
+        int value = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+                | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+        pos += 4;
+        return value;
+    }
+
+    /*
+     * 解析结果
+     * */
+    public static class ClassMetadata {
+        private final String className;
+        private final List<String> annotationDescriptors;
+
+        ClassMetadata(String className, List<String> annotationDescriptors) {
+            this.className = className;
+            this.annotationDescriptors = annotationDescriptors;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public List<String> getAnnotationDescriptors() {
+            return annotationDescriptors;
+        }
+    }
+}
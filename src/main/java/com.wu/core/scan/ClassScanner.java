@@ -0,0 +1,199 @@
+package com.wu.core.scan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/*
+ * 类路径扫描器：
+ *   - 同时支持 class 目录和 jar 包(包括把应用打成一个 fat jar 的情况)
+ *   - 用 ClassMetadataReader 直接读取 .class 字节里的注解，不加载类
+ *   - 目录按子目录、jar 按条目分片，交给 fork/join 线程池并行处理
+ * 只有带有容器注解的类才会通过 Class.forName 加载
+ * */
+public class ClassScanner {
+    private static Logger logger = LoggerFactory.getLogger(ClassScanner.class);
+
+    // 需要交给容器处理的注解(class 文件中的描述符形式)
+    private static final Set<String> CONTAINER_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "Lcom/wu/annotation/ioc/MyComponent;",
+            "Lcom/wu/annotation/ioc/MyController;",
+            "Lcom/wu/annotation/ioc/MyService;",
+            "Lcom/wu/annotation/aop/MyAspect;"
+    ));
+    // jar 中每个任务最多处理的条目数
+    private static final int JAR_BATCH_SIZE = 64;
+
+    private final ClassLoader classLoader;
+    private final ForkJoinPool pool;
+
+    public ClassScanner(ClassLoader classLoader) {
+        this(classLoader, ForkJoinPool.commonPool());
+    }
+
+    public ClassScanner(ClassLoader classLoader, ForkJoinPool pool) {
+        this.classLoader = classLoader;
+        this.pool = pool;
+    }
+
+    /**
+     * 扫描指定包(包括子包)下所有带容器注解的类，按类名排序后返回
+     */
+    public List<Class<?>> scan(String packageName) throws IOException, ClassNotFoundException {
+        String path = packageName.replace('.', '/');
+        SortedSet<String> classNames = new TreeSet<>();
+        // 同一个包可能分布在多个 class 目录或 jar 中
+        Enumeration<URL> urls = classLoader.getResources(path);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                File dir = new File(URLDecoder.decode(url.getFile(), StandardCharsets.UTF_8));
+                classNames.addAll(pool.invoke(new DirectoryTask(dir)));
+            } else if ("jar".equals(url.getProtocol())) {
+                classNames.addAll(scanJar((JarURLConnection) url.openConnection(), path));
+            } else {
+                logger.warn("unsupported classpath location {}", url);
+            }
+        }
+
+        List<Class<?>> classes = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            classes.add(Class.forName(className, true, classLoader));
+        }
+        return classes;
+    }
+
+    private List<String> scanJar(JarURLConnection connection, String path) throws IOException {
+        connection.setUseCaches(false);
+        try (JarFile jarFile = connection.getJarFile()) {
+            List<JarEntry> entries = new ArrayList<>();
+            String prefix = path + "/";
+            Enumeration<JarEntry> enumeration = jarFile.entries();
+            while (enumeration.hasMoreElements()) {
+                JarEntry entry = enumeration.nextElement();
+                if (!entry.isDirectory() && entry.getName().startsWith(prefix) && isClassFile(entry.getName())) {
+                    entries.add(entry);
+                }
+            }
+            return pool.invoke(new JarTask(jarFile, entries, 0, entries.size()));
+        }
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.endsWith("module-info.class")
+                && !name.endsWith("package-info.class");
+    }
+
+    /**
+     * 读取 class 文件中的注解，带有容器注解时返回类名，否则返回 null
+     */
+    private static String candidate(byte[] bytes, String source) {
+        try {
+            ClassMetadataReader.ClassMetadata metadata = ClassMetadataReader.read(bytes);
+            for (String annotation : metadata.getAnnotationDescriptors()) {
+                if (CONTAINER_ANNOTATIONS.contains(annotation)) {
+                    return metadata.getClassName();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("skip unreadable class file {}: {}", source, e.toString());
+        }
+        return null;
+    }
+
+    /*
+     * 扫描一个目录：子目录各自 fork 一个任务，当前目录下的 class 文件在本任务中读取
+     * */
+    private static class DirectoryTask extends RecursiveTask<List<String>> {
+        private final File dir;
+
+        DirectoryTask(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<String> compute() {
+            File[] files = dir.listFiles();
+            List<String> result = new ArrayList<>();
+            if (files == null) {
+                return result;
+            }
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(file);
+                    task.fork();
+                    subTasks.add(task);
+                } else if (isClassFile(file.getName())) {
+                    try {
+                        String className = candidate(Files.readAllBytes(file.toPath()), file.getPath());
+                        if (className != null) {
+                            result.add(className);
+                        }
+                    } catch (IOException e) {
+                        logger.warn("skip unreadable class file {}: {}", file, e.toString());
+                    }
+                }
+            }
+            for (DirectoryTask task : subTasks) {
+                result.addAll(task.join());
+            }
+            return result;
+        }
+    }
+
+    /*
+     * 扫描 jar 中 [from, to) 范围内的条目，超过 JAR_BATCH_SIZE 时对半拆分
+     * */
+    private static class JarTask extends RecursiveTask<List<String>> {
+        private final JarFile jarFile;
+        private final List<JarEntry> entries;
+        private final int from;
+        private final int to;
+
+        JarTask(JarFile jarFile, List<JarEntry> entries, int from, int to) {
+            this.jarFile = jarFile;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (to - from > JAR_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                JarTask left = new JarTask(jarFile, entries, from, middle);
+                left.fork();
+                List<String> result = new JarTask(jarFile, entries, middle, to).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            List<String> result = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                JarEntry entry = entries.get(i);
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    String className = candidate(in.readAllBytes(), entry.getName());
+                    if (className != null) {
+                        result.add(className);
+                    }
+                } catch (IOException e) {
+                    logger.warn("skip unreadable class file {}: {}", entry.getName(), e.toString());
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.wu.core.trace;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+
+/*
+ * 保存 span 的环形缓冲，所有数组在创建时分配，写满后覆盖最旧的 span
+ *   - 写入：getAndAdd 取得一个位置，按 seqlock 的方式先把序号标成奇数(正在写)，写完字段后标成偶数，不加锁也不分配对象
+ *   - 读取：序号是奇数或者读完字段后序号变了，说明这个位置正在被覆盖，丢弃
+ * 平台线程各自使用一个缓冲，写入没有竞争；虚拟线程数量太多，按线程 id 分散写到几个共享的缓冲中
+ * */
+final class SpanRing {
+
+    private static final VarHandle CURSOR;
+    private static final VarHandle SEQ = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        try {
+            CURSOR = MethodHandles.lookup().findVarHandle(SpanRing.class, "cursor", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int mask;
+    // 每个位置的序号：0 表示没有写过，奇数表示正在写
+    private final long[] seqs;
+    private final long[] traceIds;
+    private final int[] names;
+    private final long[] starts;
+    private final long[] durations;
+    private final long[] threadIds;
+    // 已经分配出去的位置数，通过 CURSOR 原子地增加
+    @SuppressWarnings("unused")
+    private volatile long cursor;
+    // 独占这个缓冲的线程，共享的缓冲为null
+    private final WeakReference<Thread> owner;
+    private final long threadId;
+    private final String threadName;
+
+    SpanRing(int capacity, Thread owner) {
+        this.mask = capacity - 1;
+        this.seqs = new long[capacity];
+        this.traceIds = new long[capacity];
+        this.names = new int[capacity];
+        this.starts = new long[capacity];
+        this.durations = new long[capacity];
+        this.threadIds = new long[capacity];
+        this.owner = owner == null ? null : new WeakReference<>(owner);
+        this.threadId = owner == null ? 0 : owner.getId();
+        this.threadName = owner == null ? null : owner.getName();
+    }
+
+    void record(long traceId, int name, long start, long duration, long threadId) {
+        long index = (long) CURSOR.getAndAdd(this, 1L);
+        int slot = (int) (index & mask);
+        long seq = index * 2 + 2;
+        SEQ.setOpaque(seqs, slot, seq - 1);
+        VarHandle.storeStoreFence();
+        traceIds[slot] = traceId;
+        names[slot] = name;
+        starts[slot] = start;
+        durations[slot] = duration;
+        threadIds[slot] = threadId;
+        SEQ.setRelease(seqs, slot, seq);
+    }
+
+    /**
+     * 依次读出缓冲中完整的 span，正在被覆盖的跳过
+     */
+    void forEach(SpanVisitor visitor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            long seq = (long) SEQ.getAcquire(seqs, slot);
+            if (seq == 0 || (seq & 1) != 0) {
+                continue;
+            }
+            long traceId = traceIds[slot];
+            int name = names[slot];
+            long start = starts[slot];
+            long duration = durations[slot];
+            long threadId = threadIds[slot];
+            VarHandle.loadLoadFence();
+            if ((long) SEQ.getOpaque(seqs, slot) != seq) {
+                continue;
+            }
+            visitor.visit(traceId, name, start, duration, threadId);
+        }
+    }
+
+    /**
+     * 独占的线程已经结束，缓冲不会再有新的 span
+     */
+    boolean isAbandoned() {
+        if (owner == null) {
+            return false;
+        }
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    interface SpanVisitor {
+        void visit(long traceId, int name, long start, long duration, long threadId);
+    }
+}
@@ -0,0 +1,366 @@
+package com.wu.core.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * 请求追踪：记录一个请求在各个阶段(参数提取、getBean、切面通知、目标方法)花费的时间
+ *   - 请求开始时按 traceSampleRate 采样，采中的请求在当前线程上设置 traceId，之后这个线程上的各阶段记录 span
+ *   - span 的名字在创建 handler、通知链时注册成 int，记录时只写几个 long 到线程自己的环形缓冲(SpanRing)，
+ *     不加锁、不分配对象；请求异步完成时通过 detach/attach 把 traceId 带到其他线程
+ *   - 请求结束时耗时超过 traceSlowThreshold 的 traceId 记入慢请求列表，
+ *     导出时从所有缓冲中找出这些请求的 span，输出 Chrome trace-event 格式的 JSON(chrome://tracing、Perfetto 可以打开)
+ *   - 关闭追踪(traceSampleRate=0)时不注册名字，各阶段只比较一次名字是否为0
+ * 缓冲写满后覆盖最旧的 span，只能导出最近的慢请求
+ * */
+public class Tracer {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    public static final String REQUEST = "request";
+    public static final String BIND = "bind";
+    public static final String HANDLER = "handler";
+    public static final String BEAN = "bean";
+    public static final String ADVICE = "advice";
+    public static final String METHOD = "method";
+
+    // 保留的慢请求 traceId 数
+    private static final int SLOW_TRACES = 256;
+    // 导出时间戳的起点
+    private static final long BASE_NANOS = System.nanoTime();
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private static volatile boolean enabled;
+    private static volatile double sampleRate;
+    private static volatile long slowThreshold;
+    private static volatile int bufferSize = 1024;
+
+    // 注册的 span 名字，下标就是名字的 id，0 不使用；写时复制，导出时读取
+    private static volatile String[] categories = {null};
+    private static volatile String[] names = {null};
+    private static final Map<String, Integer> nameIds = new HashMap<>();
+
+    private static final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Tracer::newContext);
+    // 所有平台线程的缓冲，以及虚拟线程共享的缓冲
+    private static final Queue<SpanRing> rings = new ConcurrentLinkedQueue<>();
+    private static volatile SpanRing[] sharedRings = new SpanRing[0];
+    private static final AtomicLongArray slowTraces = new AtomicLongArray(SLOW_TRACES);
+    private static final AtomicLong slowCursor = new AtomicLong();
+
+    /**
+     * 设置采样和缓冲，需要在创建 bean 和 handler 之前调用，之后不能再开启或关闭
+     *
+     * @param rate          采样率 0~1，0 表示关闭
+     * @param slowMillis    耗时达到这个值(毫秒)的请求才能导出，0 表示导出所有采样的请求
+     * @param spansPerThread 每个线程的缓冲能保存的 span 数，向上取 2 的幂
+     */
+    public static void configure(double rate, long slowMillis, int spansPerThread) {
+        sampleRate = Math.min(1, rate);
+        slowThreshold = slowMillis * 1_000_000;
+        bufferSize = Integer.highestOneBit(Math.max(16, spansPerThread - 1) << 1);
+        enabled = rate > 0;
+        if (enabled) {
+            SpanRing[] shared = new SpanRing[Runtime.getRuntime().availableProcessors()];
+            for (int i = 0; i < shared.length; i++) {
+                shared[i] = new SpanRing(bufferSize, null);
+            }
+            sharedRings = shared;
+            logger.info("tracing {}% of requests, keeping traces slower than {} ms", rate * 100, slowMillis);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 注册一个 span 名字，同样的名字返回同一个 id；关闭追踪时返回 0，记录时直接跳过
+     */
+    public static int register(String category, String name) {
+        if (!enabled) {
+            return 0;
+        }
+        synchronized (nameIds) {
+            String key = category + ' ' + name;
+            Integer id = nameIds.get(key);
+            if (id != null) {
+                return id;
+            }
+            int next = names.length;
+            String[] newCategories = Arrays.copyOf(categories, next + 1);
+            String[] newNames = Arrays.copyOf(names, next + 1);
+            newCategories[next] = category;
+            newNames[next] = name;
+            categories = newCategories;
+            names = newNames;
+            nameIds.put(key, next);
+            return next;
+        }
+    }
+
+    /**
+     * 请求开始时调用，采中时在当前线程上开始一个新的追踪
+     *
+     * @return traceId，没有采中或关闭追踪时为 0
+     */
+    public static long startTrace() {
+        if (!enabled) {
+            return 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampleRate < 1 && random.nextDouble() >= sampleRate) {
+            return 0;
+        }
+        long traceId = random.nextLong();
+        if (traceId == 0) {
+            traceId = 1;
+        }
+        contexts.get().traceId = traceId;
+        return traceId;
+    }
+
+    /**
+     * 请求结束时调用，记录整个请求的 span；耗时超过阈值时记入慢请求列表
+     *
+     * @param traceId startTrace 的返回值，为 0 时什么都不做
+     * @param name    请求 span 的名字
+     * @param start   请求开始时的 System.nanoTime()
+     */
+    public static void endTrace(long traceId, int name, long start) {
+        if (traceId == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        Context context = contexts.get();
+        context.ring.record(traceId, name, start, duration, context.threadId);
+        if (context.traceId == traceId) {
+            context.traceId = 0;
+        }
+        if (duration >= slowThreshold) {
+            slowTraces.set((int) (slowCursor.getAndIncrement() % SLOW_TRACES), traceId);
+        }
+    }
+
+    /**
+     * 当前线程不再记录 span(请求交给其他线程继续处理)，返回当前的 traceId
+     */
+    public static long detach() {
+        if (!enabled) {
+            return 0;
+        }
+        Context context = contexts.get();
+        long traceId = context.traceId;
+        context.traceId = 0;
+        return traceId;
+    }
+
+    /**
+     * 在当前线程上继续 traceId 的追踪，返回原来的 traceId，处理完后再 attach 回去
+     */
+    public static long attach(long traceId) {
+        if (!enabled) {
+            return 0;
+        }
+        Context context = contexts.get();
+        long previous = context.traceId;
+        context.traceId = traceId;
+        return previous;
+    }
+
+    /**
+     * 开始一个 span
+     *
+     * @param name 注册时得到的名字 id
+     * @return 开始时间，关闭追踪或当前线程没有在追踪时返回 0
+     */
+    public static long begin(int name) {
+        if (name == 0) {
+            return 0;
+        }
+        return contexts.get().traceId == 0 ? 0 : System.nanoTime();
+    }
+
+    /**
+     * 结束一个 span
+     *
+     * @param start begin 的返回值，为 0 时什么都不做
+     */
+    public static void end(int name, long start) {
+        if (start == 0) {
+            return;
+        }
+        Context context = contexts.get();
+        if (context.traceId != 0) {
+            context.ring.record(context.traceId, name, start, System.nanoTime() - start, context.threadId);
+        }
+    }
+
+    /**
+     * 以 trace-event 格式输出最近的慢请求
+     */
+    public static void writeTraceEvents(Appendable out) throws IOException {
+        Set<Long> slow = new HashSet<>();
+        for (int i = 0; i < SLOW_TRACES; i++) {
+            long traceId = slowTraces.get(i);
+            if (traceId != 0) {
+                slow.add(traceId);
+            }
+        }
+        String[] categories = Tracer.categories;
+        String[] names = Tracer.names;
+        out.append("{\"traceEvents\":[");
+        boolean[] first = {true};
+        for (SpanRing ring : rings) {
+            if (ring.getThreadName() != null) {
+                separate(out, first);
+                out.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":")
+                        .append(Long.toString(ring.getThreadId())).append(",\"args\":{\"name\":\"");
+                escape(out, ring.getThreadName());
+                out.append("\"}}");
+            }
+        }
+        SpanRing.SpanVisitor visitor = (traceId, name, start, duration, threadId) -> {
+            if (!slow.contains(traceId) || name <= 0 || name >= names.length) {
+                return;
+            }
+            try {
+                separate(out, first);
+                out.append("{\"name\":\"");
+                escape(out, names[name]);
+                out.append("\",\"cat\":\"").append(categories[name]).append("\",\"ph\":\"X\",\"ts\":");
+                appendMicros(out, start - BASE_NANOS);
+                out.append(",\"dur\":");
+                appendMicros(out, duration);
+                out.append(",\"pid\":1,\"tid\":").append(Long.toString(threadId))
+                        .append(",\"args\":{\"trace\":\"").append(Long.toHexString(traceId)).append("\"}}");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            for (SpanRing ring : rings) {
+                ring.forEach(visitor);
+            }
+            for (SpanRing ring : sharedRings) {
+                ring.forEach(visitor);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.append("],\"displayTimeUnit\":\"ms\"}");
+    }
+
+    /**
+     * 把最近的慢请求写到文件，用于关闭时保存
+     */
+    public static void writeFile(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeTraceEvents(writer);
+        }
+    }
+
+    private static void separate(Appendable out, boolean[] first) throws IOException {
+        if (first[0]) {
+            first[0] = false;
+        } else {
+            out.append(',');
+        }
+    }
+
+    // 纳秒写成带三位小数的微秒
+    private static void appendMicros(Appendable out, long nanos) throws IOException {
+        out.append(Long.toString(nanos / 1000)).append('.');
+        long fraction = Math.abs(nanos % 1000);
+        if (fraction < 100) {
+            out.append('0');
+        }
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(Long.toString(fraction));
+    }
+
+    // JSON 字符串中的 \ " 和控制字符需要转义
+    private static void escape(Appendable out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static Context newContext() {
+        Thread thread = Thread.currentThread();
+        SpanRing ring;
+        if (isVirtual(thread)) {
+            SpanRing[] shared = sharedRings;
+            ring = shared[(int) (thread.getId() % shared.length)];
+        } else {
+            // 线程池回收的线程不会再写入，去掉它们的缓冲
+            rings.removeIf(SpanRing::isAbandoned);
+            ring = new SpanRing(bufferSize, thread);
+            rings.add(ring);
+        }
+        return new Context(ring, thread.getId());
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                    MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /*
+     * 线程的追踪状态，只由这个线程读写
+     * */
+    private static class Context {
+        private final SpanRing ring;
+        private final long threadId;
+        // 当前在追踪的请求，0 表示没有
+        private long traceId;
+
+        Context(SpanRing ring, long threadId) {
+            this.ring = ring;
+            this.threadId = threadId;
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package com.wu.demo;
 
 import com.wu.annotation.aop.MyAfter;
+import com.wu.annotation.aop.MyAround;
 import com.wu.annotation.aop.MyAspect;
 import com.wu.annotation.aop.MyBefore;
 import com.wu.annotation.aop.MyPointcut;
 import com.wu.annotation.ioc.MyComponent;
+import com.wu.core.aop.JoinPoint;
 
 @MyAspect
 @MyComponent
 public class UserAop {
 
-    @MyPointcut("com.wu.demo.UserServiceImpl.findAll()")
+    @MyPointcut("execution(* com.wu.demo..*Service*.find*(..))")
     public void mypointcut(){
 
     }
@@ -25,4 +27,12 @@ public class UserAop {
         System.out.println("after...");
     }
 
+    @MyAround("mypointcut()")
+    public Object around(JoinPoint joinPoint) throws Throwable {
+        System.out.println("around start...");
+        Object result = joinPoint.proceed();
+        System.out.println("around end...");
+        return result;
+    }
+
 }
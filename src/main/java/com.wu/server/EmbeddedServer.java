@@ -0,0 +1,281 @@
+package com.wu.server;
+
+import com.wu.servlet.MyDispatcherServlet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 不依赖 Servlet 容器的内嵌 HTTP/1.1 服务器，基于 NIO selector，支持 keep-alive 和请求流水线
+ *   - 一个 accept 线程接收连接，按轮询分配给 serverIoThreads 个 EventLoop，连接的读写和解析都在 EventLoop 上完成
+ *   - 解析好的请求适配成 HttpServletRequest/HttpServletResponse 交给 MyDispatcherServlet，
+ *     因此路由、参数绑定、异步处理和指标与部署在容器中时完全一致
+ *   - handler 在 worker 线程池上执行，serverWorkerThreads 为负数时直接在 EventLoop 线程上执行(只适合不阻塞的 handler)
+ * 不支持 session、multipart 和 TLS
+ *
+ * 启动：java com.wu.server.EmbeddedServer [classpath:application.properties]
+ * */
+public class EmbeddedServer {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(EmbeddedServer.class);
+
+    private static final String DEFAULT_LOCATION = "classpath:application.properties";
+
+    private final String location;
+    private final Properties p = new Properties();
+    private int port;
+    private int maxHeaderSize;
+    private long maxRequestSize;
+    private long idleTimeout;
+    private long asyncTimeout;
+
+    private MyDispatcherServlet servlet;
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] loops;
+    private Thread acceptor;
+    // 执行 handler 的线程池，null 表示在 EventLoop 线程上执行
+    private ExecutorService workers;
+    // 异步处理的超时检查
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public EmbeddedServer() {
+        this(DEFAULT_LOCATION);
+    }
+
+    /**
+     * @param location 配置文件位置，格式和 web.xml 中的 contextConfigLocation 相同
+     */
+    public EmbeddedServer(String location) {
+        this.location = location;
+    }
+
+    public static void main(String[] args) throws Exception {
+        EmbeddedServer server = new EmbeddedServer(args.length > 0 ? args[0] : DEFAULT_LOCATION);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "minispring-shutdown"));
+        server.start();
+    }
+
+    /*
+     * 启动服务器：
+     *   1. 读取服务器配置
+     *   2. 初始化 MyDispatcherServlet(扫描、创建 bean、解析路由)
+     *   3. 绑定端口
+     *   4. 启动 EventLoop、worker 线程池和 accept 线程
+     * */
+    public void start() throws IOException {
+        long start = System.nanoTime();
+        //1、读取服务器配置，和 MyDispatcherServlet 使用同一个配置文件
+        doLoadConfig();
+        port = Integer.parseInt(p.getProperty("serverPort", "8080"));
+        maxHeaderSize = Integer.parseInt(p.getProperty("serverMaxHeaderSize", "8192"));
+        maxRequestSize = Long.parseLong(p.getProperty("serverMaxRequestSize", "10485760"));
+        idleTimeout = Long.parseLong(p.getProperty("serverIdleTimeout", "60000"));
+        asyncTimeout = Long.parseLong(p.getProperty("asyncTimeout", "30000"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        int ioThreads = Integer.parseInt(p.getProperty("serverIoThreads", "0"));
+        int workerThreads = Integer.parseInt(p.getProperty("serverWorkerThreads", "0"));
+
+        //2、初始化 servlet，走和容器中相同的启动流程
+        servlet = new MyDispatcherServlet();
+        servlet.init(new EmbeddedServletConfig(location));
+
+        //3、先绑定端口，端口被占用时不启动任何线程
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+
+        //4、启动线程
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("minispring-timer"));
+        if (workerThreads >= 0) {
+            workers = Executors.newFixedThreadPool(workerThreads == 0 ? cores * 2 : workerThreads,
+                    daemonThreads("minispring-worker"));
+        }
+        running = true;
+        loops = new EventLoop[ioThreads > 0 ? ioThreads : cores];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, "minispring-io-" + i);
+            loops[i].start();
+        }
+        acceptor = new Thread(this::accept, "minispring-acceptor");
+        acceptor.start();
+        logger.info("embedded server started on port {} in {} ms ({} io threads, {} worker threads)", port,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), loops.length,
+                workers == null ? 0 : workerThreads == 0 ? cores * 2 : workerThreads);
+    }
+
+    /*
+     * 停止接收新连接，关闭所有连接和线程，然后销毁 servlet
+     * */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverChannel.close();
+            acceptor.join();
+            for (EventLoop loop : loops) {
+                loop.stop();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+        scheduler.shutdownNow();
+        servlet.destroy();
+        logger.info("embedded server stopped");
+    }
+
+    /**
+     * 实际监听的端口，serverPort=0 时由系统分配
+     */
+    public int getPort() {
+        return port;
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * 在 worker 线程上执行一个请求，同步处理的请求在 service 返回后完成，
+     * 开始了异步处理的请求在 AsyncContext.complete 时完成
+     * */
+    void service(ServerRequest request) {
+        ServerResponse response = request.getResponse();
+        try {
+            servlet.service(request, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!request.isAsyncStarted()) {
+                response.reset();
+                response.setStatus(500);
+                response.getWriter().println("500 internal server error!");
+            }
+        }
+        if (request.isAsyncStarted()) {
+            ((ServerAsyncContext) request.getAsyncContext()).scheduleTimeout();
+        } else {
+            request.getConnection().complete(request);
+        }
+    }
+
+    void execute(Runnable task) {
+        if (workers == null) {
+            task.run();
+        } else {
+            workers.execute(task);
+        }
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    /*
+     * 从 classpath 读取配置文件，location 的格式为 classpath:application.properties
+     * */
+    private void doLoadConfig() throws IOException {
+        String path = location.substring(location.indexOf(":") + 1);
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("找不到配置文件 " + location);
+            }
+            p.load(in);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return run -> {
+            Thread thread = new Thread(run, prefix + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /*
+     * 只提供 contextConfigLocation 参数的 ServletConfig，代替 web.xml
+     * */
+    private static class EmbeddedServletConfig implements ServletConfig {
+        private final String location;
+
+        EmbeddedServletConfig(String location) {
+            this.location = location;
+        }
+
+        @Override
+        public String getServletName() {
+            return "dispatcherServlet";
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return null;
+        }
+
+        @Override
+        public String getInitParameter(String name) {
+            return "contextConfigLocation".equals(name) ? location : null;
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames() {
+            return Collections.enumeration(Collections.singletonList("contextConfigLocation"));
+        }
+    }
+}
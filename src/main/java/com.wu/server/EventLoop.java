@@ -0,0 +1,125 @@
+package com.wu.server;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 一个 selector 线程，负责分配给它的连接的所有读写
+ * 其他线程通过 execute 提交任务(注册新连接、发送处理完的响应)，任务在下一轮 select 返回后执行
+ * 每秒检查一次空闲超时的连接
+ * */
+class EventLoop implements Runnable {
+
+    private final EmbeddedServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final long idleNanos;
+    private volatile boolean running = true;
+
+    EventLoop(EmbeddedServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(server.getIdleTimeout());
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * 在 EventLoop 线程上执行任务，已经在该线程上时直接执行
+     */
+    void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new HttpConnection(server, this, channel, key));
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        long lastIdleCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(1000);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handle(key);
+                }
+                long now = System.nanoTime();
+                if (idleNanos > 0 && now - lastIdleCheck > TimeUnit.SECONDS.toNanos(1)) {
+                    lastIdleCheck = now;
+                    for (SelectionKey key : selector.keys()) {
+                        ((HttpConnection) key.attachment()).closeIfIdle(now, idleNanos);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((HttpConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        HttpConnection connection = (HttpConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            // 客户端断开连接
+            connection.close();
+        }
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+}
@@ -0,0 +1,54 @@
+package com.wu.server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * 写队列中的一段文件内容，用 FileChannel.transferTo 发送(Linux 上是 sendfile，不经过用户态缓冲)
+ * 通道可写时尽量多写，写不完的部分等下次可写时继续
+ * */
+class FileRegion {
+
+    private final FileChannel file;
+    private long position;
+    private final long end;
+
+    FileRegion(Path path, long position, long count) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        this.position = position;
+        this.end = position + count;
+    }
+
+    long count() {
+        return end - position;
+    }
+
+    /**
+     * @return 是否已经全部发送
+     */
+    boolean transferTo(SocketChannel channel) throws IOException {
+        while (position < end) {
+            long written = file.transferTo(position, end - position, channel);
+            if (written <= 0) {
+                // 文件被截断时 transferTo 一直返回 0，不再等待
+                if (position >= file.size()) {
+                    throw new IOException("文件在发送过程中被截断");
+                }
+                return false;
+            }
+            position += written;
+        }
+        return true;
+    }
+
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
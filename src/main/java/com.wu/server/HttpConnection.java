@@ -0,0 +1,260 @@
+package com.wu.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/*
+ * 一个 TCP 连接，读写和解析都在所属 EventLoop 的线程上进行：
+ *   - 读到的字节交给 HttpRequestParser 增量解析，解析出一个请求后交给 worker 线程执行
+ *   - 同一时间只处理一个请求：请求执行期间停止读取(背压)，响应写完后再解析缓冲区中剩下的字节，
+ *     因此流水线上的请求按顺序响应
+ *   - 写不完的响应留在写队列中，等通道可写时继续写；队列中除了 ByteBuffer 还可以是 FileRegion(静态文件)
+ *   - 请求格式错误时返回对应的状态码后关闭连接
+ * complete 可以在任意线程上调用，响应在 worker 线程上编码好后再交给 EventLoop 发送
+ * */
+class HttpConnection {
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final EmbeddedServer server;
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer readBuffer;
+    private final HttpRequestParser parser;
+    // 待发送的 ByteBuffer 和 FileRegion
+    private final ArrayDeque<Object> writeQueue = new ArrayDeque<>();
+    // 正在执行的请求，null 表示空闲
+    private ServerRequest current;
+    // 当前请求已经发送过 100 Continue
+    private boolean continueSent;
+    // 客户端已经关闭了输出
+    private boolean inputClosed;
+    // 写完队列中的响应后关闭连接
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private long lastActive = System.nanoTime();
+
+    HttpConnection(EmbeddedServer server, EventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.readBuffer = ByteBuffer.allocate(Math.max(16 * 1024, server.getMaxHeaderSize() + 1024));
+        this.parser = new HttpRequestParser(server.getMaxHeaderSize(), server.getMaxRequestSize());
+    }
+
+    EmbeddedServer getServer() {
+        return server;
+    }
+
+    InetSocketAddress getRemoteAddress() {
+        try {
+            return (InetSocketAddress) channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    void onReadable() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            inputClosed = true;
+        } else {
+            lastActive = System.nanoTime();
+        }
+        process();
+    }
+
+    void onWritable() throws IOException {
+        flush();
+        if (!closed && current == null && !closeAfterWrite) {
+            process();
+        }
+    }
+
+    /**
+     * 空闲(没有正在执行的请求，也没有待发送的响应)超过 idleNanos 时关闭连接
+     */
+    void closeIfIdle(long now, long idleNanos) {
+        if (current == null && writeQueue.isEmpty() && now - lastActive > idleNanos) {
+            close();
+        }
+    }
+
+    /*
+     * 从读缓冲区中解析请求，解析出一个就交给 worker 执行，执行完之前不再解析下一个
+     * */
+    private void process() throws IOException {
+        if (current != null || closed || closeAfterWrite) {
+            updateInterest();
+            return;
+        }
+        HttpRequestParser.ParsedRequest request;
+        readBuffer.flip();
+        try {
+            request = parser.parse(readBuffer);
+        } catch (HttpException e) {
+            readBuffer.position(readBuffer.limit());
+            sendErrorAndClose(e.getStatus(), e.getMessage());
+            return;
+        } finally {
+            readBuffer.compact();
+        }
+        if (request != null) {
+            dispatch(request);
+            return;
+        }
+        if (!readBuffer.hasRemaining()) {
+            // 请求头的长度由解析器限制，只有 chunk 大小这样的行才会把缓冲区占满
+            sendErrorAndClose(400, "line too long");
+            return;
+        }
+        if (inputClosed) {
+            closeAfterWrite = true;
+            flush();
+            return;
+        }
+        if (!continueSent && parser.isWaitingForContinue()) {
+            continueSent = true;
+            writeQueue.add(ByteBuffer.wrap(CONTINUE));
+            flush();
+            return;
+        }
+        updateInterest();
+    }
+
+    private void dispatch(HttpRequestParser.ParsedRequest parsed) {
+        continueSent = false;
+        ServerResponse response = new ServerResponse();
+        ServerRequest request = new ServerRequest(parsed, this, response);
+        current = request;
+        updateInterest();
+        server.execute(() -> server.service(request));
+    }
+
+    /**
+     * 请求处理完成，编码响应后交给 EventLoop 发送，然后继续解析流水线上的下一个请求
+     */
+    void complete(ServerRequest request) {
+        boolean keepAlive = request.isKeepAlive() && server.isRunning();
+        boolean head = "HEAD".equals(request.getMethod());
+        ByteBuffer out = request.getResponse().encode(keepAlive, "HTTP/1.0".equals(request.getProtocol()), head);
+        FileRegion file = request.getResponse().getFileRegion();
+        if (file != null && head) {
+            file.close();
+            file = null;
+        }
+        FileRegion body = file;
+        loop.execute(() -> {
+            if (closed || current != request) {
+                if (body != null) {
+                    body.close();
+                }
+                return;
+            }
+            current = null;
+            writeQueue.add(out);
+            if (body != null) {
+                writeQueue.add(body);
+            }
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            try {
+                flush();
+                if (!closed && !closeAfterWrite) {
+                    process();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        });
+    }
+
+    private void sendErrorAndClose(int status, String message) throws IOException {
+        ServerResponse response = new ServerResponse();
+        response.sendError(status, status + " " + ServerResponse.reason(status) + ": " + message);
+        writeQueue.add(response.encode(false, false, false));
+        closeAfterWrite = true;
+        flush();
+    }
+
+    private void flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            Object head = writeQueue.peek();
+            boolean done;
+            if (head instanceof FileRegion) {
+                done = ((FileRegion) head).transferTo(channel);
+            } else {
+                channel.write((ByteBuffer) head);
+                done = !((ByteBuffer) head).hasRemaining();
+            }
+            if (!done) {
+                updateInterest();
+                return;
+            }
+            if (head instanceof FileRegion) {
+                ((FileRegion) head).close();
+            }
+            writeQueue.poll();
+            lastActive = System.nanoTime();
+        }
+        if (closeAfterWrite) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    /*
+     * 有待发送的响应时关注可写，空闲并且缓冲区还有空间时关注可读
+     * */
+    private void updateInterest() {
+        if (closed || !key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (!writeQueue.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (current == null && !closeAfterWrite && !inputClosed && readBuffer.hasRemaining()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        for (Object pending : writeQueue) {
+            if (pending instanceof FileRegion) {
+                ((FileRegion) pending).close();
+            }
+        }
+        writeQueue.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.wu.server;
+
+/*
+ * 请求格式错误或超过限制，连接返回对应的状态码后关闭
+ * */
+class HttpException extends Exception {
+
+    private final int status;
+
+    HttpException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+}
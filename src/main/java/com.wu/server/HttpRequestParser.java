@@ -0,0 +1,313 @@
+package com.wu.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * 增量的 HTTP/1.1 请求解析器，一个连接一个：每次有新数据到达时对读缓冲区调用 parse，
+ * 解析出一个完整的请求(包括请求体)时返回它，数据不够时返回 null 并保留已解析的状态
+ *   - 请求体支持 Content-Length 和 Transfer-Encoding: chunked
+ *   - 请求行和请求头总长度超过 maxHeaderSize 返回 431，请求体超过 maxBodySize 返回 413
+ * 解析完一个请求后缓冲区中剩下的字节属于下一个请求(流水线)，下次调用 parse 时继续解析
+ * */
+class HttpRequestParser {
+
+    private static final int REQUEST_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILERS = 6;
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final int maxHeaderSize;
+    private final long maxBodySize;
+
+    private int state = REQUEST_LINE;
+    // 当前请求已经读到的请求行和请求头的字节数
+    private int headerBytes;
+    private String method;
+    private String target;
+    private String protocol;
+    private List<String[]> headers;
+    // Content-Length 的请求体
+    private byte[] body;
+    private int bodyRead;
+    // chunked 的请求体
+    private ByteArrayOutputStream chunks;
+    private long chunkRemaining;
+
+    HttpRequestParser(int maxHeaderSize, long maxBodySize) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * @param in 读模式的缓冲区，解析过的字节会被消费掉
+     * @return 完整的请求，数据不够时返回 null
+     */
+    ParsedRequest parse(ByteBuffer in) throws HttpException {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (line.isEmpty()) {
+                        // 请求之间允许有空行
+                        headerBytes = 0;
+                        continue;
+                    }
+                    parseRequestLine(line);
+                    headers = new ArrayList<>();
+                    state = HEADERS;
+                    break;
+                }
+                case HEADERS: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (!line.isEmpty()) {
+                        headers.add(parseHeader(line));
+                        break;
+                    }
+                    ParsedRequest request = startBody();
+                    if (request != null) {
+                        return request;
+                    }
+                    break;
+                }
+                case BODY: {
+                    int n = Math.min(in.remaining(), body.length - bodyRead);
+                    in.get(body, bodyRead, n);
+                    bodyRead += n;
+                    if (bodyRead < body.length) {
+                        return null;
+                    }
+                    return finish(body);
+                }
+                case CHUNK_SIZE: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    chunkRemaining = parseChunkSize(line);
+                    // 不做加法，chunk 大小接近 Long.MAX_VALUE 时加法会溢出
+                    if (chunkRemaining > maxBodySize - chunks.size()) {
+                        throw new HttpException(413, "request body exceeds " + maxBodySize + " bytes");
+                    }
+                    state = chunkRemaining == 0 ? TRAILERS : CHUNK_DATA;
+                    break;
+                }
+                case CHUNK_DATA: {
+                    int n = (int) Math.min(in.remaining(), chunkRemaining);
+                    if (in.hasArray()) {
+                        chunks.write(in.array(), in.arrayOffset() + in.position(), n);
+                        in.position(in.position() + n);
+                    } else {
+                        byte[] bytes = new byte[n];
+                        in.get(bytes);
+                        chunks.write(bytes, 0, n);
+                    }
+                    chunkRemaining -= n;
+                    if (chunkRemaining > 0) {
+                        return null;
+                    }
+                    state = CHUNK_END;
+                    break;
+                }
+                case CHUNK_END: {
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (!line.isEmpty()) {
+                        throw new HttpException(400, "chunk data is not followed by CRLF");
+                    }
+                    state = CHUNK_SIZE;
+                    break;
+                }
+                case TRAILERS: {
+                    // 尾部的请求头忽略
+                    String line = readLine(in);
+                    if (line == null) {
+                        return null;
+                    }
+                    if (line.isEmpty()) {
+                        return finish(chunks.toByteArray());
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("未知的状态 " + state);
+            }
+        }
+    }
+
+    /**
+     * 请求头已经解析完、请求体还没有读完，并且客户端发送了 Expect: 100-continue
+     */
+    boolean isWaitingForContinue() {
+        return (state == BODY || state == CHUNK_SIZE || state == CHUNK_DATA)
+                && "100-continue".equalsIgnoreCase(header("Expect"));
+    }
+
+    private ParsedRequest startBody() throws HttpException {
+        String transferEncoding = header("Transfer-Encoding");
+        String contentLength = header("Content-Length");
+        if (transferEncoding != null) {
+            if (contentLength != null) {
+                throw new HttpException(400, "both Transfer-Encoding and Content-Length are present");
+            }
+            if (!"chunked".equalsIgnoreCase(transferEncoding.trim())) {
+                throw new HttpException(501, "unsupported transfer encoding " + transferEncoding);
+            }
+            chunks = new ByteArrayOutputStream();
+            state = CHUNK_SIZE;
+            return null;
+        }
+        long length = 0;
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                length = -1;
+            }
+            if (length < 0) {
+                throw new HttpException(400, "invalid Content-Length " + contentLength);
+            }
+        }
+        if (length > maxBodySize) {
+            throw new HttpException(413, "request body exceeds " + maxBodySize + " bytes");
+        }
+        if (length == 0) {
+            return finish(NO_BODY);
+        }
+        body = new byte[(int) length];
+        bodyRead = 0;
+        state = BODY;
+        return null;
+    }
+
+    private ParsedRequest finish(byte[] requestBody) {
+        ParsedRequest request = new ParsedRequest(method, target, protocol, headers, requestBody);
+        state = REQUEST_LINE;
+        headerBytes = 0;
+        headers = null;
+        body = null;
+        chunks = null;
+        return request;
+    }
+
+    private void parseRequestLine(String line) throws HttpException {
+        int first = line.indexOf(' ');
+        int last = line.lastIndexOf(' ');
+        if (first <= 0 || last == first) {
+            throw new HttpException(400, "malformed request line");
+        }
+        method = line.substring(0, first);
+        target = line.substring(first + 1, last);
+        protocol = line.substring(last + 1);
+        if (!protocol.equals("HTTP/1.1") && !protocol.equals("HTTP/1.0")) {
+            throw new HttpException(505, "unsupported protocol " + protocol);
+        }
+        if (target.isEmpty() || target.indexOf(' ') >= 0) {
+            throw new HttpException(400, "malformed request target");
+        }
+    }
+
+    private static String[] parseHeader(String line) throws HttpException {
+        int colon = line.indexOf(':');
+        if (colon <= 0 || line.charAt(0) == ' ' || line.charAt(0) == '\t') {
+            throw new HttpException(400, "malformed header");
+        }
+        return new String[]{line.substring(0, colon).trim(), line.substring(colon + 1).trim()};
+    }
+
+    private long parseChunkSize(String line) throws HttpException {
+        int end = line.indexOf(';');
+        String size = (end < 0 ? line : line.substring(0, end)).trim();
+        try {
+            long value = Long.parseLong(size, 16);
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "invalid chunk size " + size);
+        }
+    }
+
+    private String header(String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    // 读取一行(去掉 CRLF)，没有完整的一行时返回 null，不消费缓冲区
+    private String readLine(ByteBuffer in) throws HttpException {
+        int start = in.position();
+        int limit = in.limit();
+        for (int i = start; i < limit; i++) {
+            if (in.get(i) == '\n') {
+                int end = i > start && in.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[end - start];
+                in.get(bytes);
+                in.position(i + 1);
+                countHeaderBytes(i + 1 - start);
+                return new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+        countHeaderBytes(0);
+        if (headerBytes + (limit - start) > maxHeaderSize && isHeaderState()) {
+            throw new HttpException(431, "request header exceeds " + maxHeaderSize + " bytes");
+        }
+        return null;
+    }
+
+    private void countHeaderBytes(int n) throws HttpException {
+        if (!isHeaderState()) {
+            return;
+        }
+        headerBytes += n;
+        if (headerBytes > maxHeaderSize) {
+            throw new HttpException(431, "request header exceeds " + maxHeaderSize + " bytes");
+        }
+    }
+
+    private boolean isHeaderState() {
+        return state == REQUEST_LINE || state == HEADERS;
+    }
+
+    /*
+     * 一个完整的请求
+     * */
+    static class ParsedRequest {
+        final String method;
+        final String target;
+        final String protocol;
+        final List<String[]> headers;
+        final byte[] body;
+
+        ParsedRequest(String method, String target, String protocol, List<String[]> headers, byte[] body) {
+            this.method = method;
+            this.target = target;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.wu.server;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * 内嵌服务器的异步处理：complete 时把响应交给连接发送，可以在任意线程上调用
+ * 超时由服务器的定时线程触发，依次回调 AsyncListener.onTimeout，监听器都没有完成请求时返回 503
+ * 不支持 dispatch(没有 Servlet 容器的转发机制)
+ * */
+class ServerAsyncContext implements AsyncContext {
+
+    private final ServerRequest request;
+    private final ServletRequest servletRequest;
+    private final ServletResponse servletResponse;
+    private final List<AsyncListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile long timeout;
+    private volatile ScheduledFuture<?> timeoutTask;
+
+    ServerAsyncContext(ServerRequest request, ServletRequest servletRequest, ServletResponse servletResponse) {
+        this.request = request;
+        this.servletRequest = servletRequest;
+        this.servletResponse = servletResponse;
+        this.timeout = request.getConnection().getServer().getAsyncTimeout();
+    }
+
+    /**
+     * 开始计时，在 service 方法返回后调用，超时时间以此时的 setTimeout 为准
+     */
+    void scheduleTimeout() {
+        if (timeout > 0 && !completed.get()) {
+            timeoutTask = request.getConnection().getServer().schedule(this::onTimeout, timeout);
+            if (completed.get()) {
+                timeoutTask.cancel(false);
+            }
+        }
+    }
+
+    private void onTimeout() {
+        if (completed.get()) {
+            return;
+        }
+        AsyncEvent event = new AsyncEvent(this, servletRequest, servletResponse);
+        for (AsyncListener listener : listeners) {
+            try {
+                listener.onTimeout(event);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!completed.get()) {
+            ServerResponse response = request.getResponse();
+            response.reset();
+            response.setStatus(503);
+            response.getWriter().print("503 request timeout!");
+            complete();
+        }
+    }
+
+    boolean isCompleted() {
+        return completed.get();
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return servletRequest;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return servletResponse;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return servletRequest == request && servletResponse == request.getResponse();
+    }
+
+    @Override
+    public void dispatch() {
+        throw new UnsupportedOperationException("内嵌服务器不支持 AsyncContext.dispatch");
+    }
+
+    @Override
+    public void dispatch(String path) {
+        throw new UnsupportedOperationException("内嵌服务器不支持 AsyncContext.dispatch");
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        throw new UnsupportedOperationException("内嵌服务器不支持 AsyncContext.dispatch");
+    }
+
+    @Override
+    public void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledFuture<?> task = timeoutTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        AsyncEvent event = new AsyncEvent(this, servletRequest, servletResponse);
+        for (AsyncListener listener : listeners) {
+            try {
+                listener.onComplete(event);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        request.getConnection().complete(request);
+    }
+
+    @Override
+    public void start(Runnable run) {
+        request.getConnection().getServer().execute(run);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest servletRequest,
+                            ServletResponse servletResponse) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+}
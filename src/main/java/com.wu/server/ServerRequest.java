@@ -0,0 +1,608 @@
+package com.wu.server;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * 内嵌服务器的请求：把解析好的 HTTP 请求适配成 HttpServletRequest，交给 MyDispatcherServlet 处理
+ * 只实现框架和普通 handler 会用到的部分，没有 session、cookie 解析、multipart
+ *   - 请求体在调用 handler 之前已经完整读入，getInputStream 直接从内存读取，
+ *     ReadListener 在设置时立即回调(数据已经全部可读)
+ *   - 参数来自查询字符串，以及 application/x-www-form-urlencoded 的请求体
+ * */
+class ServerRequest implements HttpServletRequest {
+
+    private final HttpRequestParser.ParsedRequest request;
+    private final HttpConnection connection;
+    private final ServerResponse response;
+    private final String requestURI;
+    private final String queryString;
+    private Map<String, String[]> parameters;
+    private Map<String, Object> attributes;
+    private String characterEncoding;
+    private ServerAsyncContext asyncContext;
+    private boolean inputUsed;
+
+    ServerRequest(HttpRequestParser.ParsedRequest request, HttpConnection connection, ServerResponse response) {
+        this.request = request;
+        this.connection = connection;
+        this.response = response;
+        String target = request.target;
+        int query = target.indexOf('?');
+        this.requestURI = query < 0 ? target : target.substring(0, query);
+        this.queryString = query < 0 ? null : target.substring(query + 1);
+    }
+
+    ServerResponse getResponse() {
+        return response;
+    }
+
+    HttpConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * 按 HTTP 版本和 Connection 请求头判断响应后是否保持连接
+     */
+    boolean isKeepAlive() {
+        String connectionHeader = getHeader("Connection");
+        if ("HTTP/1.0".equals(request.protocol)) {
+            return connectionHeader != null && connectionHeader.equalsIgnoreCase("keep-alive");
+        }
+        return connectionHeader == null || !connectionHeader.equalsIgnoreCase("close");
+    }
+
+    @Override
+    public String getAuthType() {
+        return null;
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return null;
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("无法解析的日期请求头 " + name + ": " + value);
+        }
+    }
+
+    @Override
+    public String getHeader(String name) {
+        for (String[] header : request.headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        List<String> values = new ArrayList<>();
+        for (String[] header : request.headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                values.add(header[1]);
+            }
+        }
+        return Collections.enumeration(values);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String[] header : request.headers) {
+            names.add(header[0]);
+        }
+        return Collections.enumeration(names);
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value == null ? -1 : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public String getMethod() {
+        return request.method;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return null;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return null;
+    }
+
+    @Override
+    public String getContextPath() {
+        return "";
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return null;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return null;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        String host = getHeader("Host");
+        return new StringBuffer("http://").append(host != null ? host : getLocalName()).append(requestURI);
+    }
+
+    @Override
+    public String getServletPath() {
+        return requestURI;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        if (create) {
+            throw new UnsupportedOperationException("内嵌服务器不支持 session");
+        }
+        return null;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    @Override
+    public String changeSessionId() {
+        throw new IllegalStateException("没有 session");
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return false;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    @Override
+    public boolean authenticate(HttpServletResponse response) {
+        return false;
+    }
+
+    @Override
+    public void login(String username, String password) {
+        throw new UnsupportedOperationException("内嵌服务器不支持登录");
+    }
+
+    @Override
+    public void logout() {
+    }
+
+    @Override
+    public Collection<Part> getParts() {
+        throw new UnsupportedOperationException("内嵌服务器不支持 multipart");
+    }
+
+    @Override
+    public Part getPart(String name) {
+        throw new UnsupportedOperationException("内嵌服务器不支持 multipart");
+    }
+
+    @Override
+    public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) {
+        throw new UnsupportedOperationException("内嵌服务器不支持协议升级");
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return attributes == null ? Collections.emptyEnumeration() : Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        if (characterEncoding != null) {
+            return characterEncoding;
+        }
+        String contentType = getContentType();
+        if (contentType != null) {
+            int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (index >= 0) {
+                return contentType.substring(index + 8).trim();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) throws UnsupportedEncodingException {
+        if (!Charset.isSupported(env)) {
+            throw new UnsupportedEncodingException(env);
+        }
+        this.characterEncoding = env;
+    }
+
+    @Override
+    public int getContentLength() {
+        return request.body.length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return request.body.length;
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        inputUsed = true;
+        return new BodyInputStream(request.body);
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null ? null : values[0];
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return getParameterMap().get(name);
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        if (parameters == null) {
+            parameters = parseParameters();
+        }
+        return parameters;
+    }
+
+    private Map<String, String[]> parseParameters() {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        Charset charset = charset();
+        if (queryString != null) {
+            parseForm(queryString, charset, values);
+        }
+        String contentType = getContentType();
+        // 方法已经读取了请求体时不再按表单解析
+        if (!inputUsed && contentType != null
+                && contentType.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded")) {
+            parseForm(new String(request.body, StandardCharsets.ISO_8859_1), charset, values);
+        }
+        Map<String, String[]> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static void parseForm(String form, Charset charset, Map<String, List<String>> values) {
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = decode(eq < 0 ? pair : pair.substring(0, eq), charset);
+            String value = eq < 0 ? "" : decode(pair.substring(eq + 1), charset);
+            values.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+        }
+    }
+
+    private static String decode(String text, Charset charset) {
+        if (text.indexOf('%') < 0 && text.indexOf('+') < 0) {
+            return text;
+        }
+        try {
+            return URLDecoder.decode(text, charset);
+        } catch (IllegalArgumentException e) {
+            // 不合法的转义原样保留
+            return text;
+        }
+    }
+
+    private Charset charset() {
+        String encoding = getCharacterEncoding();
+        if (encoding != null && Charset.isSupported(encoding)) {
+            return Charset.forName(encoding);
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol;
+    }
+
+    @Override
+    public String getScheme() {
+        return "http";
+    }
+
+    @Override
+    public String getServerName() {
+        String host = getHeader("Host");
+        if (host == null) {
+            return getLocalName();
+        }
+        int colon = host.lastIndexOf(':');
+        return colon > 0 && host.indexOf(']') < colon ? host.substring(0, colon) : host;
+    }
+
+    @Override
+    public int getServerPort() {
+        return getLocalPort();
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        inputUsed = true;
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(request.body), charset()));
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        InetSocketAddress address = connection.getRemoteAddress();
+        return address == null ? null : address.getAddress().getHostAddress();
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return getRemoteAddr();
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        if (o == null) {
+            removeAttribute(name);
+            return;
+        }
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        attributes.put(name, o);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        if (attributes != null) {
+            attributes.remove(name);
+        }
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+    }
+
+    @Override
+    public boolean isSecure() {
+        return false;
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        return null;
+    }
+
+    @Override
+    @Deprecated
+    public String getRealPath(String path) {
+        return null;
+    }
+
+    @Override
+    public int getRemotePort() {
+        InetSocketAddress address = connection.getRemoteAddress();
+        return address == null ? -1 : address.getPort();
+    }
+
+    @Override
+    public String getLocalName() {
+        InetSocketAddress address = connection.getLocalAddress();
+        return address == null ? null : address.getHostString();
+    }
+
+    @Override
+    public String getLocalAddr() {
+        InetSocketAddress address = connection.getLocalAddress();
+        return address == null ? null : address.getAddress().getHostAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        InetSocketAddress address = connection.getLocalAddress();
+        return address == null ? -1 : address.getPort();
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        return startAsync(this, response);
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        if (asyncContext != null) {
+            throw new IllegalStateException("已经开始异步处理");
+        }
+        asyncContext = new ServerAsyncContext(this, servletRequest, servletResponse);
+        return asyncContext;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return asyncContext != null;
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return true;
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        if (asyncContext == null) {
+            throw new IllegalStateException("没有开始异步处理");
+        }
+        return asyncContext;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return isAsyncStarted() ? DispatcherType.ASYNC : DispatcherType.REQUEST;
+    }
+
+    /*
+     * 从内存读取请求体，数据总是可读：设置 ReadListener 时立即回调 onDataAvailable 和 onAllDataRead
+     * */
+    private static class BodyInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+
+        BodyInputStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                if (!isFinished()) {
+                    readListener.onDataAvailable();
+                }
+                readListener.onAllDataRead();
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return in.available();
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.wu.server;
+
+import com.wu.servlet.resource.ZeroCopyResponse;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ * 内嵌服务器的响应：handler 写出的内容先缓存在内存中，请求处理完成后加上状态行和响应头一次性发送，
+ * 因此总是带 Content-Length，不使用 chunked
+ * 通过 sendFile 指定的文件不读入内存，由连接在响应头之后用 transferTo 直接发送
+ * 没有指定字符集时文本内容按 UTF-8 编码
+ * */
+class ServerResponse implements HttpServletResponse, ZeroCopyResponse {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME;
+    // Date 响应头每秒只格式化一次
+    private static volatile String cachedDate;
+    private static volatile long cachedDateSecond;
+
+    private final BodyOutputStream out = new BodyOutputStream();
+    private PrintWriter writer;
+    // 响应头，每项是 {name, value}
+    private final List<String[]> headers = new ArrayList<>();
+    private int status = SC_OK;
+    private String contentType;
+    private String characterEncoding;
+    private Locale locale = Locale.getDefault();
+    private boolean committed;
+    // setContentLength 设置的长度，只在 HEAD 请求(没有响应体)时使用
+    private long contentLength = -1;
+    // sendFile 指定的响应体，null 表示响应体在 out 中
+    private FileRegion fileRegion;
+
+    /**
+     * 把状态行、响应头和响应体编码成要发送的字节
+     *
+     * @param keepAlive 响应后是否保持连接
+     * @param http10    请求是 HTTP/1.0，保持连接时需要显式声明
+     * @param head      HEAD 请求，不发送响应体
+     */
+    ByteBuffer encode(boolean keepAlive, boolean http10, boolean head) {
+        if (writer != null) {
+            writer.flush();
+        }
+        committed = true;
+        StringBuilder text = new StringBuilder(128);
+        text.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        text.append("Date: ").append(date()).append("\r\n");
+        if (contentType != null) {
+            text.append("Content-Type: ").append(getContentTypeWithCharset()).append("\r\n");
+        }
+        for (String[] header : headers) {
+            text.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        // 304 和 204 没有响应体，不发送 Content-Length
+        if (!containsHeader("Content-Length") && status != SC_NOT_MODIFIED && status != SC_NO_CONTENT) {
+            long length = fileRegion != null ? fileRegion.count() : head && contentLength >= 0 ? contentLength : out.count;
+            text.append("Content-Length: ").append(length).append("\r\n");
+        }
+        if (!keepAlive) {
+            text.append("Connection: close\r\n");
+        } else if (http10) {
+            text.append("Connection: keep-alive\r\n");
+        }
+        text.append("\r\n");
+        byte[] headerBytes = text.toString().getBytes(StandardCharsets.ISO_8859_1);
+        int bodyLength = head || fileRegion != null ? 0 : out.count;
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes.length + bodyLength);
+        buffer.put(headerBytes).put(out.bytes, 0, bodyLength);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void sendFile(Path file, long position, long count) throws IOException {
+        checkNotCommitted();
+        resetBuffer();
+        fileRegion = new FileRegion(file, position, count);
+    }
+
+    FileRegion getFileRegion() {
+        return fileRegion;
+    }
+
+    private static String date() {
+        long second = System.currentTimeMillis() / 1000;
+        String date = cachedDate;
+        if (date == null || second != cachedDateSecond) {
+            date = DATE_FORMAT.format(ZonedDateTime.now(ZoneOffset.UTC));
+            cachedDate = date;
+            cachedDateSecond = second;
+        }
+        return date;
+    }
+
+    private String getContentTypeWithCharset() {
+        if (contentType.toLowerCase(Locale.ROOT).contains("charset=")
+                || (characterEncoding == null && !isText(contentType))) {
+            return contentType;
+        }
+        return contentType + ";charset=" + getCharacterEncoding();
+    }
+
+    private static boolean isText(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml");
+    }
+
+    static String reason(int status) {
+        switch (status) {
+            case 100:
+                return "Continue";
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 202:
+                return "Accepted";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 301:
+                return "Moved Permanently";
+            case 302:
+                return "Found";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 406:
+                return "Not Acceptable";
+            case 408:
+                return "Request Timeout";
+            case 411:
+                return "Length Required";
+            case 413:
+                return "Payload Too Large";
+            case 416:
+                return "Range Not Satisfiable";
+            case 429:
+                return "Too Many Requests";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            case 505:
+                return "HTTP Version Not Supported";
+            default:
+                return status < 400 ? "OK" : "Error";
+        }
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        StringBuilder value = new StringBuilder(cookie.getName()).append('=').append(cookie.getValue());
+        if (cookie.getPath() != null) {
+            value.append("; Path=").append(cookie.getPath());
+        }
+        if (cookie.getMaxAge() >= 0) {
+            value.append("; Max-Age=").append(cookie.getMaxAge());
+        }
+        if (cookie.isHttpOnly()) {
+            value.append("; HttpOnly");
+        }
+        addHeader("Set-Cookie", value.toString());
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return getHeader(name) != null;
+    }
+
+    @Override
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+        checkNotCommitted();
+        resetBuffer();
+        status = sc;
+        setContentType("text/plain");
+        if (msg != null) {
+            getWriter().print(msg);
+        }
+    }
+
+    @Override
+    public void sendError(int sc) {
+        sendError(sc, sc + " " + reason(sc));
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        checkNotCommitted();
+        resetBuffer();
+        status = SC_FOUND;
+        setHeader("Location", location);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        setHeader(name, DATE_FORMAT.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(date), ZoneOffset.UTC)));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        addHeader(name, DATE_FORMAT.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(date), ZoneOffset.UTC)));
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            setContentType(value);
+            return;
+        }
+        removeHeader(name);
+        if (value != null) {
+            headers.add(new String[]{name, value});
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            setContentType(value);
+            return;
+        }
+        headers.add(new String[]{name, value});
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, Integer.toString(value));
+    }
+
+    private void removeHeader(String name) {
+        for (Iterator<String[]> iterator = headers.iterator(); iterator.hasNext(); ) {
+            if (iterator.next()[0].equalsIgnoreCase(name)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(int sc, String sm) {
+        status = sc;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return "Content-Type".equalsIgnoreCase(name) ? contentType : null;
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        List<String> values = new ArrayList<>();
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                values.add(header[1]);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String[] header : headers) {
+            names.add(header[0]);
+        }
+        return names;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding != null ? characterEncoding : StandardCharsets.UTF_8.name();
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (writer == null) {
+            Charset charset = Charset.isSupported(getCharacterEncoding())
+                    ? Charset.forName(getCharacterEncoding()) : StandardCharsets.UTF_8;
+            writer = new PrintWriter(new OutputStreamWriter(out, charset), false);
+        }
+        return writer;
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        if (writer == null) {
+            characterEncoding = charset;
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        contentLength = len;
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        contentLength = len;
+    }
+
+    @Override
+    public void setContentType(String type) {
+        if (type == null) {
+            contentType = null;
+            return;
+        }
+        int index = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index >= 0 && writer == null) {
+            String charset = type.substring(index + 8).trim();
+            int end = charset.indexOf(';');
+            characterEncoding = end < 0 ? charset : charset.substring(0, end).trim();
+        }
+        contentType = type;
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+    }
+
+    @Override
+    public int getBufferSize() {
+        return out.bytes.length;
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        checkNotCommitted();
+        if (writer != null) {
+            writer.flush();
+        }
+        out.count = 0;
+        if (fileRegion != null) {
+            fileRegion.close();
+            fileRegion = null;
+        }
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    @Override
+    public void reset() {
+        resetBuffer();
+        headers.clear();
+        status = SC_OK;
+        contentType = null;
+    }
+
+    private void checkNotCommitted() {
+        if (committed) {
+            throw new IllegalStateException("响应已经发送");
+        }
+    }
+
+    @Override
+    public void setLocale(Locale loc) {
+        this.locale = loc;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /*
+     * 缓存响应体的输出流
+     * */
+    private static class BodyOutputStream extends ServletOutputStream {
+        private byte[] bytes = new byte[256];
+        private int count;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException e) {
+                writeListener.onError(e);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -1,8 +1,27 @@
 package com.wu.servlet;
 
 import com.wu.core.BeanFactory;
+import com.wu.core.aop.AdviceChain;
+import com.wu.core.cache.CacheManager;
+import com.wu.core.index.ComponentIndex;
+import com.wu.core.ioc.RequestScope;
+import com.wu.core.metrics.Metrics;
+import com.wu.core.scan.ClassScanner;
+import com.wu.core.trace.Tracer;
+import com.wu.servlet.async.AsyncDispatch;
+import com.wu.servlet.async.VirtualThreads;
+import com.wu.servlet.batch.BatchDispatcher;
+import com.wu.servlet.bind.BindException;
+import com.wu.servlet.bind.BodyTooLargeException;
+import com.wu.servlet.bind.RequestBodyResolver;
+import com.wu.servlet.handler.HandlerInvoker;
 import com.wu.servlet.handler.HandlerManager;
 import com.wu.servlet.handler.MappingHandler;
+import com.wu.servlet.handler.RouteMatch;
+import com.wu.servlet.refresh.ContainerRefresher;
+import com.wu.servlet.resource.StaticResourceHandler;
+import com.wu.servlet.snapshot.ClasspathFingerprint;
+import com.wu.servlet.snapshot.StartupSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,12 +33,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.JarURLConnection;
-import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /*
@@ -36,6 +55,30 @@ public class MyDispatcherServlet extends HttpServlet {
     private Properties p = new Properties();
     //保存所有被扫描到的类
     private List<Class<?>> classList = new ArrayList<>();
+    //异步处理的默认超时时间(毫秒)
+    private long asyncTimeout = 30000;
+    //限制同时处理的请求数，null 表示不限制
+    private Semaphore inFlight;
+    //在虚拟线程上执行 handler，null 表示在容器线程上执行
+    private ExecutorService handlerExecutor;
+    //输出 Prometheus 指标的路径，null 表示不输出
+    private String metricsPath;
+    //静态资源，null 表示没有配置
+    private StaticResourceHandler staticResources;
+    //运行时刷新的路径(POST)，null 表示不支持刷新
+    private String refreshPath;
+    private ContainerRefresher refresher;
+    //批量请求，null 表示没有配置 batchPath
+    private BatchDispatcher batchDispatcher;
+    //导出慢请求追踪的路径，null 表示不导出；关闭时写入追踪的文件，null 表示不写
+    private String tracePath;
+    private Path traceFile;
+    //没有进入 handler 就被拒绝的请求数
+    private final LongAdder notFound = rejected("not_found");
+    private final LongAdder methodNotAllowed = rejected("method_not_allowed");
+    private final LongAdder unavailable = rejected("unavailable");
+    private final LongAdder rateLimited = rejected("rate_limited");
+    private final LongAdder concurrencyLimited = rejected("concurrency_limited");
 
 
     public MyDispatcherServlet(){
@@ -45,23 +88,85 @@ public class MyDispatcherServlet extends HttpServlet {
     /*
     * init方法，启动时会自动执行，所有需要启动执行的方法都在这里调用，包括：
     *   - 加载配置文件
+    *   - 读取启动快照(配置了 startupSnapshot 时)，快照有效时跳过扫描和解析，否则启动成功后写入新的快照
     *   - 扫描注解标注的类
     *   - 初始化扫描到的类，将实例保存到IOC容器上
     *   - 依赖注入：处理@Autowired
     *   - 保存所有ulr和方法的映射关系
+    *   - 配置了 staticPath 时在路由之前处理静态资源
+    *   - 配置了 refreshPath 时准备运行时刷新
+    *   - 配置了 batchPath 时接收批量请求
+    * 每个阶段的耗时记录在 minispring_init_phase_seconds 中
     * */
     @Override
     public void init(ServletConfig config){
 
         try {
+            long start = System.nanoTime();
             //1、加载配置文件：通过ServletConfig参数可以获取web.xml里关于DispatcherServlet的配置信息
             doLoadConfig(config.getInitParameter(LOCATION));
-            //2、扫描指定包的所有类到classNames中
-            doScanner(p.getProperty("scanPackage"));
-            //3、初始化所有实例到IOC容器中，并完成依赖注入和AOP切入：交给beanFactory完成
-            BeanFactory.initBean(classList);
-            //4、保存url和方法的映射关系
-            HandlerManager.resolveMappingHandler(classList);
+            start = Metrics.initPhase("load_config", start);
+            //2、读取启动快照，快照有效时直接使用其中的类、创建计划和路由，跳过下面的扫描和解析
+            String snapshotPath = p.getProperty("startupSnapshot", "").trim();
+            Path snapshotFile = snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+            byte[] fingerprint = null;
+            StartupSnapshot snapshot = null;
+            if (snapshotFile != null) {
+                fingerprint = ClasspathFingerprint.compute(this.getClass().getClassLoader(), p, snapshotFile);
+                snapshot = doLoadSnapshot(snapshotFile, fingerprint);
+            }
+            //3、扫描指定包的所有类到classList中：优先读取编译期生成的组件索引，没有索引时再扫描class目录
+            String scanPackage = p.getProperty("scanPackage");
+            if (snapshot != null) {
+                classList.addAll(snapshot.getClassList());
+            } else if (!doLoadIndex(scanPackage)) {
+                doScanner(scanPackage);
+            }
+            start = Metrics.initPhase("scan", start);
+            //4、初始化所有实例到IOC容器中，并完成依赖注入和AOP切入：交给beanFactory完成
+            BeanFactory.setProxyMode(p.getProperty("aopProxy", BeanFactory.PROXY_AUTO));
+            BeanFactory.setInitThreads(Integer.parseInt(p.getProperty("beanInitThreads", "0")));
+            CacheManager.setDefaults(Integer.parseInt(p.getProperty("cacheMaxSize", "10000")),
+                    Long.parseLong(p.getProperty("cacheTtl", "0")));
+            AdviceChain.setTimed(Boolean.parseBoolean(p.getProperty("methodMetrics", "false")));
+            doInitTracing();
+            if (snapshot != null) {
+                BeanFactory.createBeans(snapshot.getDefinitions());
+            } else {
+                BeanFactory.initBean(classList);
+            }
+            start = Metrics.initPhase("init_bean", start);
+            //5、保存url和方法的映射关系
+            HandlerManager.setInvokerType(p.getProperty("handlerInvoker", HandlerInvoker.METHOD_HANDLE));
+            if (snapshot != null) {
+                List<MappingHandler> handlers = new ArrayList<>(snapshot.getRoutes().size());
+                for (StartupSnapshot.Route route : snapshot.getRoutes()) {
+                    handlers.add(HandlerManager.createHandler(route.getController(), route.getMethod(),
+                            route.getUri(), route.getHttpMethods()));
+                }
+                HandlerManager.register(handlers);
+            } else {
+                HandlerManager.resolveMappingHandler(classList);
+            }
+            Metrics.initPhase("resolve_mapping_handler", start);
+            //6、异步处理和并发限制
+            doInitAsync();
+            //7、指标输出路径，为空时不输出；静态资源
+            String path = p.getProperty("metricsPath", "").trim();
+            metricsPath = path.isEmpty() ? null : path;
+            staticResources = StaticResourceHandler.create(p, this.getClass().getClassLoader());
+            //8、启动成功并且没有使用快照时写入新的快照，下次启动使用
+            if (snapshotFile != null && snapshot == null) {
+                doWriteSnapshot(snapshotFile, fingerprint);
+            }
+            //9、运行时刷新，记录当前 class 文件的状态
+            path = p.getProperty("refreshPath", "").trim();
+            if (!path.isEmpty()) {
+                refreshPath = path;
+                refresher = new ContainerRefresher(this.getClass().getClassLoader(), scanPackage, classList);
+            }
+            //10、批量请求
+            batchDispatcher = BatchDispatcher.create(p);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -71,6 +176,38 @@ public class MyDispatcherServlet extends HttpServlet {
         }
     }
 
+    /*
+    * 读取启动快照，快照不存在、已经过期或损坏时返回null，按正常流程启动后会重新写入
+    * */
+    private StartupSnapshot doLoadSnapshot(Path file, byte[] fingerprint) {
+        try {
+            StartupSnapshot snapshot = StartupSnapshot.read(file, fingerprint, this.getClass().getClassLoader());
+            if (snapshot == null) {
+                logger.info("startup snapshot {} is missing or stale, resolving from scratch", file);
+            } else {
+                logger.info("loaded startup snapshot {}: {} classes, {} beans, {} routes", file,
+                        snapshot.getClassList().size(), snapshot.getDefinitions().size(), snapshot.getRoutes().size());
+            }
+            return snapshot;
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            logger.warn("ignoring unreadable startup snapshot {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /*
+    * 把这次启动解析出的类、创建计划和路由写入启动快照，写入失败不影响启动
+    * */
+    private void doWriteSnapshot(Path file, byte[] fingerprint) {
+        try {
+            StartupSnapshot.write(file, fingerprint, classList, BeanFactory.getBeanDefinitions(),
+                    HandlerManager.getMappingHandlers());
+            logger.info("wrote startup snapshot {}", file);
+        } catch (IOException e) {
+            logger.warn("failed to write startup snapshot {}: {}", file, e.toString());
+        }
+    }
+
     /*
     * 从web.xml中指定的位置读取配置文件
     * */
@@ -95,52 +232,348 @@ public class MyDispatcherServlet extends HttpServlet {
     }
 
     /*
-    * 递归扫描指定包下的所有类，通过反射获取全限定类名的class对象，保存到classList中
+    * 读取异步处理相关的配置：
+    *   - handlerThreads：container(默认)在容器线程上执行 handler；virtual 在虚拟线程上执行，释放容器线程
+    *   - asyncTimeout：异步处理的默认超时时间
+    *   - maxInFlight：同时处理的最大请求数，包括异步处理中的请求
+    *   - maxBodySize：@MyRequestBody 请求体的默认大小限制
     * */
-    private void doScanner(String packageName){
-        //将所有的包路径转换为文件路径:因为是从输出的文件夹里读取的
-        String path = "/" + packageName.replaceAll("\\.", "/");
-        URL url = this.getClass().getClassLoader().getResource(path);
-        File dir = new File(url.getFile());
-        for(File file : dir.listFiles()){
-            //如果是文件夹，继续递归
-            if(file.isDirectory()){
-                doScanner(packageName + "." + file.getName());
-            } else{
-                //根据.class文件构造对应的全限定类名
-                //例如：packageName=com.wu.demo，文件名为：UserAop.class，className=com.wu.demo.UserAop
-                String className = packageName + "." + file.getName().replaceAll(".class", "").trim();
-                try {
-                    //通过全限定类名获取它的Class对象，存入classList
-                    classList.add(Class.forName(className));
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                }
+    private void doInitAsync() {
+        asyncTimeout = Long.parseLong(p.getProperty("asyncTimeout", "30000"));
+        int maxInFlight = Integer.parseInt(p.getProperty("maxInFlight", "0"));
+        if (maxInFlight > 0) {
+            inFlight = new Semaphore(maxInFlight);
+        }
+        RequestBodyResolver.setDefaultMaxSize(Long.parseLong(p.getProperty("maxBodySize", "1048576")));
+        if ("virtual".equals(p.getProperty("handlerThreads", "container"))) {
+            handlerExecutor = VirtualThreads.newExecutor();
+            if (handlerExecutor == null) {
+                logger.warn("virtual threads are not supported by this JDK, handlers run on container threads");
+            } else {
+                logger.info("handlers run on virtual threads");
+            }
+        }
+    }
+
+    /*
+    * 读取追踪相关的配置，需要在创建 bean 和 handler 之前完成：
+    *   - traceSampleRate：采样率，0 表示关闭追踪
+    *   - traceSlowThreshold：耗时达到这个值(毫秒)的请求才导出
+    *   - traceBufferSize：每个线程保存的 span 数
+    *   - tracePath / traceFile：导出慢请求的路径和关闭时写入的文件
+    * */
+    private void doInitTracing() {
+        Tracer.configure(Double.parseDouble(p.getProperty("traceSampleRate", "0")),
+                Long.parseLong(p.getProperty("traceSlowThreshold", "100")),
+                Integer.parseInt(p.getProperty("traceBufferSize", "1024")));
+        if (!Tracer.isEnabled()) {
+            return;
+        }
+        String path = p.getProperty("tracePath", "").trim();
+        tracePath = path.isEmpty() ? null : path;
+        String file = p.getProperty("traceFile", "").trim();
+        traceFile = file.isEmpty() ? null : Paths.get(file);
+    }
+
+    @Override
+    public void destroy() {
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdown();
+        }
+        if (batchDispatcher != null) {
+            batchDispatcher.shutdown();
+        }
+        // 缓存的命中率、淘汰次数，用于调整缓存大小
+        CacheManager.logStats(logger);
+        if (traceFile != null) {
+            try {
+                Tracer.writeFile(traceFile);
+                logger.info("wrote slow request traces to {}", traceFile);
+            } catch (IOException e) {
+                logger.warn("failed to write traces to {}: {}", traceFile, e.toString());
+            }
+        }
+    }
+
+    /*
+    * 从组件索引(META-INF/minispring.components)中读取指定包下带容器注解的类，保存到classList中
+    * 返回false表示没有可用的索引或索引已经过期，需要退回到扫描class目录
+    * */
+    private boolean doLoadIndex(String packageName) throws IOException {
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        ComponentIndex index = ComponentIndex.load(classLoader);
+        if (index == null) {
+            return false;
+        }
+        List<String> classNames = index.getClassNames(packageName);
+        if (classNames.isEmpty()) {
+            return false;
+        }
+        // 索引与 count 记录不一致或某个 class 目录中没有索引时改为扫描；删除了的类在下面加载时发现
+        if (!index.isComplete(classLoader, packageName)) {
+            logger.warn("component index is stale, scanning package {}", packageName);
+            return false;
+        }
+        List<Class<?>> classes = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            try {
+                classes.add(Class.forName(className));
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.warn("component index lists unloadable class {}, scanning package {}", className, packageName);
+                return false;
             }
         }
+        classList.addAll(classes);
+        logger.info("loaded {} classes from component index", classNames.size());
+        return true;
+    }
+
+    /*
+    * 扫描指定包下(包括子包、目录和jar)带有容器注解的类，保存到classList中
+    * 注解直接从.class字节中读取，只有需要交给容器处理的类才会被加载
+    * */
+    private void doScanner(String packageName) throws IOException, ClassNotFoundException {
+        List<Class<?>> classes = new ClassScanner(this.getClass().getClassLoader()).scan(packageName);
+        classList.addAll(classes);
+        logger.info("scanned {} classes in package {}", classes.size(), packageName);
     }
 
 
+    private static LongAdder rejected(String reason) {
+        return Metrics.counter(Metrics.REJECTED, "Requests rejected before reaching a handler", "reason", reason);
+    }
+
+    /*
+    * HttpServlet 只把 GET/POST 交给 doGet/doPost，PUT、DELETE 等在路由之前就返回 405，
+    * 这里让 HEAD、OPTIONS、TRACE 之外的所有请求方法都经过同一个路由查找，请求方法不匹配时由路由返回 405
+    * */
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String method = req.getMethod();
+        if ("POST".equals(method)) {
+            doPost(req, resp);
+        } else if ("HEAD".equals(method) || "OPTIONS".equals(method) || "TRACE".equals(method)) {
+            super.service(req, resp);
+        } else {
+            doGet(req, resp);
+        }
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        for (MappingHandler mappingHandler : HandlerManager.mappingHandlerList) {
-            // 遍历所有的handler，在它的handle方法里做uri匹配
-            // 如果某个 handler 可以处理(返回true)，则返回即可
+        long start = System.nanoTime();
+        if (metricsPath != null && metricsPath.equals(req.getRequestURI())) {
+            writeMetrics(resp);
+            return;
+        }
+        if (tracePath != null && tracePath.equals(req.getRequestURI())) {
+            writeTraces(resp);
+            return;
+        }
+        // 静态资源在路由之前处理，不是静态资源的请求只多一次前缀比较
+        if (staticResources != null && staticResources.handle(req, resp)) {
+            return;
+        }
+        // 通过路由索引直接找到对应的 handler，不再遍历所有的 handler 做 uri 匹配
+        RouteMatch match = HandlerManager.lookup(req.getMethod(), req.getRequestURI());
+        if (match == null) {
+            notFound.increment();
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            resp.getWriter().println("404 not found!");
+            return;
+        }
+        MappingHandler mappingHandler = match.getHandler();
+        if (mappingHandler == null) {
+            methodNotAllowed.increment();
+            resp.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            resp.getWriter().println("405 method not allowed!");
+            return;
+        }
+        // 超过并发限制时直接拒绝，不占用处理线程
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            unavailable.increment();
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.getWriter().println("503 service unavailable!");
+            return;
+        }
+        // 路由上的 @MyBulkhead、@MyRateLimit，拒绝时同样不执行 handler
+        int rejectedStatus = mappingHandler.tryAcquire();
+        if (rejectedStatus != 0) {
+            releaseInFlight();
+            writeLimited(resp, rejectedStatus);
+            return;
+        }
+        // 采中的请求从这里开始记录 span，异步处理时由 AsyncDispatch 带到其他线程
+        long traceId = Tracer.startTrace();
+        // 有 request 作用域的bean时为请求开始作用域，同样由 AsyncDispatch 带到其他线程
+        RequestScope requestScope = RequestScope.begin();
+        // 返回 CompletionStage 的 handler、需要读取请求体的 handler，或虚拟线程模式下的所有 handler，
+        // 通过 AsyncContext 异步完成，容器线程立即返回
+        RequestBodyResolver body = mappingHandler.getBodyResolver();
+        if (handlerExecutor != null || mappingHandler.isAsync() || body != null) {
+            long timeout = mappingHandler.getTimeout() > 0 ? mappingHandler.getTimeout() : asyncTimeout;
+            AsyncDispatch dispatch;
             try {
-                if (mappingHandler.handle(req, resp)) {
-                    resp.getWriter().println("success!");
-                    return;
-                }
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                e.printStackTrace();
+                dispatch = AsyncDispatch.start(req, resp, mappingHandler, timeout, this::releaseInFlight, start);
+            } catch (IllegalStateException e) {
+                Tracer.detach();
+                RequestScope.end(requestScope);
+                mappingHandler.cancel();
+                releaseInFlight();
+                throw e;
             }
+            if (body != null) {
+                dispatch.readBody(body, handlerExecutor, match.getPathVariables());
+            } else if (handlerExecutor != null) {
+                dispatch.invokeOn(handlerExecutor, match.getPathVariables());
+            } else {
+                dispatch.invoke(match.getPathVariables());
+            }
+            return;
+        }
+        boolean failed = true;
+        try {
+            mappingHandler.handle(req, resp, match.getPathVariables());
+            failed = false;
+        } catch (BindException e) {
+            writeBindError(resp, e);
+        } catch (InvocationTargetException e) {
+            // 方法中读取 InputStream、Iterator 类型的请求体时出错
+            if (e.getCause() instanceof BindException) {
+                writeBindError(resp, (BindException) e.getCause());
+            } else {
+                writeServerError(resp, e.getCause());
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            // RuntimeException 包括写出返回值时序列化失败，如对象循环引用超过嵌套深度
+            writeServerError(resp, e);
+        } finally {
+            mappingHandler.recordRequest(start, failed);
+            Tracer.endTrace(traceId, mappingHandler.getTraceName(), start);
+            RequestScope.end(requestScope);
+            releaseInFlight();
+        }
+    }
+
+    /*
+    * 以 Prometheus 文本格式输出所有指标
+    * */
+    private void writeMetrics(HttpServletResponse resp) throws IOException {
+        StringBuilder text = new StringBuilder(4096);
+        Metrics.writePrometheus(text);
+        resp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        resp.getWriter().write(text.toString());
+    }
+
+    /*
+    * 以 trace-event JSON 输出最近的慢请求
+    * */
+    private void writeTraces(HttpServletResponse resp) throws IOException {
+        StringBuilder json = new StringBuilder(65536);
+        Tracer.writeTraceEvents(json);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().write(json.toString());
+    }
+
+    /*
+    * 缺少必需的参数、参数类型不对返回 400，请求体过大返回 413
+    * */
+    private void writeBindError(HttpServletResponse resp, BindException e) throws IOException {
+        if (e instanceof BodyTooLargeException) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().println("413 payload too large: " + e.getMessage());
+        } else {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().println("400 bad request: " + e.getMessage());
         }
-        resp.getWriter().println("404 not found!");
+    }
 
+    /*
+    * handler 抛出异常或返回值无法写出时返回 500，和异步处理时 AsyncDispatch.fail 的响应一致；
+    * 响应已经提交时状态码无法再修改
+    * */
+    private void writeServerError(HttpServletResponse resp, Throwable e) throws IOException {
+        e.printStackTrace();
+        if (resp.isCommitted()) {
+            return;
+        }
+        resp.reset();
+        resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        resp.getWriter().println("500 internal server error!");
+    }
+
+    /*
+    * 超过路由的速率返回 429，超过路由的并发上限返回 503
+    * */
+    private void writeLimited(HttpServletResponse resp, int status) throws IOException {
+        resp.setStatus(status);
+        if (status == 429) {
+            rateLimited.increment();
+            resp.setHeader("Retry-After", "1");
+            resp.getWriter().println("429 too many requests!");
+        } else {
+            concurrencyLimited.increment();
+            resp.getWriter().println("503 service unavailable!");
+        }
+    }
+
+    private void releaseInFlight() {
+        if (inFlight != null) {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 重新加载变化的 Controller 并替换路由，见 ContainerRefresher
+     */
+    public ContainerRefresher.Result refresh() throws Exception {
+        if (refresher == null) {
+            throw new IllegalStateException("没有配置 refreshPath，不支持运行时刷新");
+        }
+        return refresher.refresh();
+    }
+
+    /*
+    * 输出刷新结果，刷新失败时返回 500，路由保持不变
+    * */
+    private void writeRefresh(HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain; charset=utf-8");
+        try {
+            resp.getWriter().write(refresh().toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().println("500 refresh failed: " + e);
+        }
+    }
+
+    /*
+    * 批量请求整体占用一个 maxInFlight 名额，其中的子请求只受各自路由上的限制
+    * */
+    private void doBatch(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            unavailable.increment();
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.getWriter().println("503 service unavailable!");
+            return;
+        }
+        try {
+            batchDispatcher.handle(req, resp);
+        } finally {
+            releaseInFlight();
+        }
     }
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (refreshPath != null && refreshPath.equals(req.getRequestURI())) {
+            writeRefresh(resp);
+            return;
+        }
+        if (batchDispatcher != null && batchDispatcher.getPath().equals(req.getRequestURI())) {
+            doBatch(req, resp);
+            return;
+        }
         doGet(req, resp);
     }
 }
@@ -0,0 +1,227 @@
+package com.wu.servlet.async;
+
+import com.wu.core.ioc.RequestScope;
+import com.wu.core.trace.Tracer;
+import com.wu.servlet.bind.BindException;
+import com.wu.servlet.bind.BodyTooLargeException;
+import com.wu.servlet.bind.RequestBodyResolver;
+import com.wu.servlet.handler.MappingHandler;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * 一个异步处理中的请求：通过 AsyncContext 释放容器线程，在其他线程上写出响应
+ *   - handler 返回 CompletionStage 时，在它完成的线程上写出结果
+ *   - 虚拟线程模式下，handler 本身在虚拟线程上执行
+ *   - 有 @MyRequestBody 参数时，先非阻塞地读完请求体再调用 handler
+ * 正常完成、出错和超时只有最先发生的一个会写响应，之后调用 AsyncContext.complete 并执行 onFinish
+ * 请求被追踪时，traceId 从容器线程上取下，在调用 handler 的线程上继续记录 span
+ * */
+public class AsyncDispatch implements AsyncListener {
+
+    private final AsyncContext context;
+    private final MappingHandler handler;
+    // 请求处理结束后执行，用于释放并发请求数
+    private final Runnable onFinish;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    // 请求开始的时间，响应写出后记录这个路由的处理耗时
+    private final long startNanos;
+    // 请求的 traceId，没有追踪时为 0
+    private final long traceId;
+    // 请求的 request 作用域，没有 request 作用域的bean时为null，handler 完成后结束
+    private final RequestScope requestScope;
+
+    private AsyncDispatch(AsyncContext context, MappingHandler handler, Runnable onFinish, long startNanos) {
+        this.context = context;
+        this.handler = handler;
+        this.onFinish = onFinish;
+        this.startNanos = startNanos;
+        this.traceId = Tracer.detach();
+        this.requestScope = RequestScope.detach();
+    }
+
+    /**
+     * 开始异步处理
+     *
+     * @param timeout    超时时间(毫秒)，超时后返回 503
+     * @param startNanos 请求开始时的 System.nanoTime()
+     * @throws IllegalStateException 容器不支持异步(web.xml 中没有配置 async-supported)
+     */
+    public static AsyncDispatch start(HttpServletRequest req, HttpServletResponse res, MappingHandler handler,
+                                      long timeout, Runnable onFinish, long startNanos) {
+        AsyncContext context = req.startAsync(req, res);
+        context.setTimeout(timeout);
+        AsyncDispatch dispatch = new AsyncDispatch(context, handler, onFinish, startNanos);
+        context.addListener(dispatch);
+        return dispatch;
+    }
+
+    /**
+     * 通过 ReadListener 读取并绑定请求体，读完后在 executor 上(为null时在容器回调的线程上)调用 handler
+     */
+    public void readBody(RequestBodyResolver body, Executor executor, Map<String, String> pathVariables) {
+        Runnable next = executor != null ? () -> invokeOn(executor, pathVariables) : () -> invoke(pathVariables);
+        try {
+            BodyReader.start(this, context.getRequest(), body, next);
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 在 executor(虚拟线程)上调用 handler
+     */
+    public void invokeOn(Executor executor, Map<String, String> pathVariables) {
+        try {
+            executor.execute(() -> invoke(pathVariables));
+        } catch (RejectedExecutionException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 在当前线程上调用 handler，返回 CompletionStage 时等它完成后再写出结果
+     */
+    public void invoke(Map<String, String> pathVariables) {
+        Object result;
+        long previousTrace = traceId == 0 ? 0 : Tracer.attach(traceId);
+        RequestScope previousScope = requestScope == null ? null : RequestScope.attach(requestScope);
+        try {
+            result = handler.invoke(context.getRequest(), context.getResponse(), pathVariables);
+        } catch (InvocationTargetException e) {
+            fail(e.getCause());
+            RequestScope.end(requestScope);
+            return;
+        } catch (Throwable e) {
+            fail(e);
+            RequestScope.end(requestScope);
+            return;
+        } finally {
+            if (traceId != 0) {
+                Tracer.attach(previousTrace);
+            }
+            if (requestScope != null) {
+                RequestScope.attach(previousScope);
+            }
+        }
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, error) -> {
+                if (error != null) {
+                    fail(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                } else {
+                    complete(value);
+                }
+                RequestScope.end(requestScope);
+            });
+        } else {
+            complete(result);
+            RequestScope.end(requestScope);
+        }
+    }
+
+    private void complete(Object value) {
+        if (!finished.compareAndSet(false, true)) {
+            // 已经超时并返回了 503
+            return;
+        }
+        boolean failed = false;
+        try {
+            handler.writeResponse(context.getRequest(), context.getResponse(), value);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // 返回值无法序列化，如对象循环引用超过嵌套深度
+            failed = true;
+            e.printStackTrace();
+            HttpServletResponse res = (HttpServletResponse) context.getResponse();
+            if (!res.isCommitted()) {
+                res.reset();
+                res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                try {
+                    res.getWriter().println("500 internal server error!");
+                } catch (IOException ignored) {
+                    // 连接已经断开
+                }
+            }
+        } finally {
+            finish(failed);
+        }
+    }
+
+    void fail(Throwable error) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        HttpServletResponse res = (HttpServletResponse) context.getResponse();
+        try {
+            if (error instanceof BodyTooLargeException) {
+                res.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                res.getWriter().println("413 payload too large: " + error.getMessage());
+            } else if (error instanceof BindException) {
+                res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                res.getWriter().println("400 bad request: " + error.getMessage());
+            } else if (error instanceof RejectedExecutionException) {
+                res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                res.getWriter().println("503 service unavailable!");
+            } else {
+                error.printStackTrace();
+                res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                res.getWriter().println("500 internal server error!");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            finish(true);
+        }
+    }
+
+    private void finish(boolean failed) {
+        try {
+            context.complete();
+        } finally {
+            handler.recordRequest(startNanos, failed);
+            Tracer.endTrace(traceId, handler.getTraceName(), startNanos);
+            onFinish.run();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            HttpServletResponse res = (HttpServletResponse) context.getResponse();
+            res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            res.getWriter().println("503 request timeout!");
+        } finally {
+            finish(true);
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        Throwable error = event.getThrowable();
+        fail(error != null ? error : new IllegalStateException("异步处理出错"));
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
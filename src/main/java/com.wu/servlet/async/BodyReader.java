@@ -0,0 +1,96 @@
+package com.wu.servlet.async;
+
+import com.wu.servlet.bind.BodyParser;
+import com.wu.servlet.bind.RequestBodyResolver;
+import com.wu.servlet.json.BufferPool;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import java.io.IOException;
+
+/*
+ * 通过 Servlet 3.1 的 ReadListener 非阻塞地读取请求体：容器在有数据可读时回调，
+ * 每次读出当前可读的数据交给 BodyParser 边读边解析，数据没到时不占用线程
+ * 读完后把绑定好的值放入请求属性，再执行 next(调用 handler)；出错时交给 AsyncDispatch 返回错误响应
+ * */
+class BodyReader implements ReadListener {
+
+    private final AsyncDispatch dispatch;
+    private final ServletRequest req;
+    private final ServletInputStream in;
+    private final BodyParser parser;
+    private final Runnable next;
+    private byte[] buffer = BufferPool.acquire();
+    private boolean failed;
+
+    private BodyReader(AsyncDispatch dispatch, ServletRequest req, ServletInputStream in, BodyParser parser,
+                       Runnable next) {
+        this.dispatch = dispatch;
+        this.req = req;
+        this.in = in;
+        this.parser = parser;
+        this.next = next;
+    }
+
+    static void start(AsyncDispatch dispatch, ServletRequest req, RequestBodyResolver body, Runnable next)
+            throws IOException {
+        body.checkContentLength(req);
+        ServletInputStream in = req.getInputStream();
+        in.setReadListener(new BodyReader(dispatch, req, in, body.newParser(), next));
+    }
+
+    @Override
+    public void onDataAvailable() {
+        if (failed) {
+            return;
+        }
+        try {
+            int n;
+            // isReady 返回 false 后容器会在有新数据时再次回调
+            while (in.isReady() && (n = in.read(buffer)) != -1) {
+                parser.feed(buffer, 0, n);
+            }
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (failed) {
+            return;
+        }
+        release();
+        Object value;
+        try {
+            value = parser.finish();
+        } catch (RuntimeException e) {
+            abort(e);
+            return;
+        }
+        RequestBodyResolver.setBody(req, value);
+        next.run();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        abort(t);
+    }
+
+    private void abort(Throwable error) {
+        if (failed) {
+            return;
+        }
+        failed = true;
+        release();
+        dispatch.fail(error);
+    }
+
+    private void release() {
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
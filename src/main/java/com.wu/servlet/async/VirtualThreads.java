@@ -0,0 +1,25 @@
+package com.wu.servlet.async;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * 虚拟线程支持：项目按 Java 13 编译，不能直接引用 Java 21 的 API，通过反射创建每个任务一个虚拟线程的线程池
+ * */
+public class VirtualThreads {
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor()，当前 JDK 不支持虚拟线程时返回 null
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Java 19/20 未开启预览特性时抛出 UnsupportedOperationException
+            return null;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.wu.servlet.batch;
+
+import com.wu.core.ioc.RequestScope;
+import com.wu.core.trace.Tracer;
+import com.wu.servlet.async.VirtualThreads;
+import com.wu.servlet.bind.BindException;
+import com.wu.servlet.bind.BodyParser;
+import com.wu.servlet.bind.BodyTooLargeException;
+import com.wu.servlet.bind.RequestBodyResolver;
+import com.wu.servlet.handler.HandlerManager;
+import com.wu.servlet.handler.MappingHandler;
+import com.wu.servlet.handler.ResponseWriter;
+import com.wu.servlet.handler.RouteMatch;
+import com.wu.servlet.json.BufferPool;
+import com.wu.servlet.json.JsonOutput;
+import com.wu.servlet.json.JsonSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 批量请求：POST batchPath，请求体是子请求的数组(见 BatchItem)，响应是按相同顺序排列的结果数组：
+ *   [{"status": 200, "body": ...}, ...]
+ * 子请求的响应是 JSON 时 body 原样嵌入，其他内容作为字符串，没有内容时为 null
+ *   - 子请求在进程内通过 HandlerManager 的路由直接调用 handler，不经过静态资源、指标等路径，也不能再嵌套批量请求
+ *   - 同一批量请求中最多同时执行 batchParallelism 个子请求，一个的 handler 返回后再开始下一个，
+ *     超时的子请求在 handler 返回前仍然占用名额；
+ *     子请求在虚拟线程上执行，JDK 不支持虚拟线程时在 ForkJoinPool 上通过 managedBlock 执行，handler 阻塞时线程池补充线程
+ *   - 每个子请求的超时时间从批量请求开始时计算，超时返回 503，排队中超时的子请求不再执行；
+ *     因此整个批量请求最多等待 batchTimeout
+ *   - 子请求数超过 batchMaxItems 时整个批量请求返回 400
+ *   - 路由上的 @MyRateLimit、@MyBulkhead 对子请求同样生效，被拒绝的子请求返回 429/503，不影响其他子请求
+ * 请求线程读取请求体后等待所有子请求完成，再一次性写出响应
+ * */
+public class BatchDispatcher {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(BatchDispatcher.class);
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final Result TIMEOUT = Result.text(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "503 request timeout!");
+
+    private final String path;
+    private final int maxItems;
+    private final int parallelism;
+    private final long timeout;
+    private final ExecutorService executor;
+
+    private BatchDispatcher(String path, int maxItems, int parallelism, long timeout, ExecutorService executor) {
+        this.path = path;
+        this.maxItems = maxItems;
+        this.parallelism = parallelism;
+        this.timeout = timeout;
+        this.executor = executor;
+    }
+
+    /**
+     * 按配置创建，没有配置 batchPath 时返回 null
+     */
+    public static BatchDispatcher create(Properties p) {
+        String path = p.getProperty("batchPath", "").trim();
+        if (path.isEmpty()) {
+            return null;
+        }
+        int maxItems = Integer.parseInt(p.getProperty("batchMaxItems", "50"));
+        int parallelism = Integer.parseInt(p.getProperty("batchParallelism", "8"));
+        long timeout = Long.parseLong(p.getProperty("batchTimeout", "5000"));
+        if (maxItems <= 0 || parallelism <= 0 || timeout <= 0) {
+            throw new IllegalStateException("batchMaxItems、batchParallelism、batchTimeout 必须大于0");
+        }
+        int threads = Integer.parseInt(p.getProperty("batchThreads", "0"));
+        ExecutorService executor = threads > 0 ? null : VirtualThreads.newExecutor();
+        if (executor == null) {
+            // asyncMode 按提交顺序执行
+            executor = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            logger.info("batch requests on {}: sub-requests run on a fork/join pool", path);
+        } else {
+            logger.info("batch requests on {}: sub-requests run on virtual threads", path);
+        }
+        return new BatchDispatcher(path, maxItems, parallelism, timeout, executor);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 执行一个批量请求，所有子请求完成或超时后写出合并的响应
+     */
+    public void handle(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        BatchItem[] items;
+        try {
+            items = readItems(req);
+        } catch (BodyTooLargeException e) {
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            resp.getWriter().println("413 payload too large: " + e.getMessage());
+            return;
+        } catch (BindException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().println("400 bad request: " + e.getMessage());
+            return;
+        }
+        if (items.length > maxItems) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().println("400 bad request: 子请求数 " + items.length + " 超过上限 " + maxItems);
+            return;
+        }
+        Result[] results = new Batch(req, resp, items).execute();
+        writeResults(resp, results);
+    }
+
+    private BatchItem[] readItems(HttpServletRequest req) throws IOException {
+        long maxSize = RequestBodyResolver.getDefaultMaxSize();
+        if (req.getContentLengthLong() > maxSize) {
+            throw new BodyTooLargeException(maxSize);
+        }
+        BodyParser parser = BodyParser.create(BatchItem[].class, maxSize);
+        byte[] buffer = BufferPool.acquire();
+        try {
+            InputStream in = req.getInputStream();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                parser.feed(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+        return (BatchItem[]) parser.finish();
+    }
+
+    private void writeResults(HttpServletResponse resp, Result[] results) throws IOException {
+        resp.setContentType(ResponseWriter.JSON);
+        JsonOutput out = new JsonOutput(resp.getOutputStream());
+        try {
+            out.writeByte('[');
+            for (int i = 0; i < results.length; i++) {
+                Result result = results[i];
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                out.writeAscii("{\"status\":");
+                out.writeLong(result.status);
+                out.writeAscii(",\"body\":");
+                if (result.body.length == 0) {
+                    out.writeNull();
+                } else if (result.json) {
+                    out.writeRaw(result.body);
+                } else {
+                    out.writeString(new String(result.body, StandardCharsets.UTF_8));
+                }
+                out.writeByte('}');
+            }
+            out.writeByte(']');
+            out.flush();
+        } finally {
+            out.release();
+        }
+    }
+
+    /*
+     * 一个批量请求的执行状态：每个子请求对应一个 CompletableFuture，开始时就设置好超时，
+     * 结果完成(包括超时)时计入 remaining；任意一个子请求的 handler 返回后才开始下一个还没有开始的子请求
+     * */
+    private class Batch {
+        private final HttpServletRequest req;
+        private final HttpServletResponse resp;
+        private final BatchItem[] items;
+        private final CompletableFuture<Result>[] results;
+        // 下一个要开始的子请求
+        private final AtomicInteger next = new AtomicInteger();
+        private final CountDownLatch remaining;
+
+        Batch(HttpServletRequest req, HttpServletResponse resp, BatchItem[] items) {
+            this.req = req;
+            this.resp = resp;
+            this.items = items;
+            this.results = newResults(items.length);
+            this.remaining = new CountDownLatch(items.length);
+        }
+
+        Result[] execute() {
+            for (int i = 0; i < items.length; i++) {
+                long itemTimeout = items[i] == null || items[i].getTimeout() <= 0 ? timeout
+                        : Math.min(items[i].getTimeout(), timeout);
+                results[i] = new CompletableFuture<Result>().completeOnTimeout(TIMEOUT, itemTimeout, TimeUnit.MILLISECONDS);
+                results[i].whenComplete((result, error) -> remaining.countDown());
+            }
+            for (int i = 0; i < Math.min(parallelism, items.length); i++) {
+                launchNext();
+            }
+            // 每个子请求都有超时，最多等待 batchTimeout
+            try {
+                remaining.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Result[] values = new Result[items.length];
+            for (int i = 0; i < items.length; i++) {
+                values[i] = results[i].getNow(TIMEOUT);
+            }
+            return values;
+        }
+
+        @SuppressWarnings("unchecked")
+        private CompletableFuture<Result>[] newResults(int length) {
+            return (CompletableFuture<Result>[]) new CompletableFuture<?>[length];
+        }
+
+        private void launchNext() {
+            while (true) {
+                int index = next.getAndIncrement();
+                if (index >= items.length) {
+                    return;
+                }
+                // 排队时已经超时的子请求不再执行
+                if (results[index].isDone()) {
+                    continue;
+                }
+                try {
+                    executor.execute(() -> runBlocking(index));
+                } catch (RejectedExecutionException e) {
+                    results[index].complete(Result.text(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                            "503 service unavailable!"));
+                    continue;
+                }
+                return;
+            }
+        }
+
+        /*
+         * handler 可能阻塞(数据库、远程调用)，在 ForkJoinPool 上阻塞时由线程池补充线程，其他子请求不会因此排队；
+         * 在虚拟线程上直接执行
+         * */
+        private void runBlocking(int index) {
+            SubRequestBlocker blocker = new SubRequestBlocker(index);
+            try {
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // 子请求超时时结果已经完成，但 handler 返回前不释放名额，避免同时执行的子请求超过 batchParallelism
+                if (!blocker.async) {
+                    launchNext();
+                }
+            }
+        }
+
+        private class SubRequestBlocker implements ForkJoinPool.ManagedBlocker {
+            private final int index;
+            private boolean done;
+            // handler 返回了 CompletionStage，由它完成时开始下一个子请求
+            private boolean async;
+
+            SubRequestBlocker(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public boolean block() {
+                async = run(index);
+                done = true;
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return done;
+            }
+        }
+
+        /**
+         * 执行一个子请求，handler 返回 CompletionStage 时返回 true，由它完成时开始下一个子请求
+         */
+        private boolean run(int index) {
+            CompletableFuture<Result> result = results[index];
+            BatchItem item = items[index];
+            if (item == null || item.getUri() == null || !item.getUri().startsWith("/")) {
+                result.complete(Result.text(HttpServletResponse.SC_BAD_REQUEST, "400 bad request: 缺少 uri"));
+                return false;
+            }
+            SubRequest subReq;
+            try {
+                byte[] body = item.getBody() == null ? EMPTY
+                        : JsonSerializer.toJson(item.getBody()).getBytes(StandardCharsets.UTF_8);
+                subReq = new SubRequest(req, item.getMethod(), item.getUri(), item.getParams(), body);
+            } catch (RuntimeException e) {
+                result.complete(Result.text(HttpServletResponse.SC_BAD_REQUEST, "400 bad request: " + e.getMessage()));
+                return false;
+            }
+            RouteMatch match = HandlerManager.lookup(subReq.getMethod(), subReq.getRequestURI());
+            if (match == null) {
+                result.complete(Result.text(HttpServletResponse.SC_NOT_FOUND, "404 not found!"));
+                return false;
+            }
+            MappingHandler handler = match.getHandler();
+            if (handler == null) {
+                result.complete(Result.text(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "405 method not allowed!"));
+                return false;
+            }
+            int rejectedStatus = handler.tryAcquire();
+            if (rejectedStatus == 429) {
+                result.complete(Result.text(rejectedStatus, "429 too many requests!"));
+                return false;
+            } else if (rejectedStatus != 0) {
+                result.complete(Result.text(rejectedStatus, "503 service unavailable!"));
+                return false;
+            }
+            long start = System.nanoTime();
+            // 每个子请求单独采样和追踪
+            long traceId = Tracer.startTrace();
+            // 每个子请求也有自己的 request 作用域
+            RequestScope requestScope = RequestScope.begin();
+            SubResponse subResp = new SubResponse(resp);
+            Object value;
+            try {
+                value = handler.invoke(subReq, subResp, match.getPathVariables());
+            } catch (InvocationTargetException e) {
+                RequestScope.end(requestScope);
+                fail(result, handler, subResp, start, traceId, e.getCause());
+                return false;
+            } catch (Throwable e) {
+                RequestScope.end(requestScope);
+                fail(result, handler, subResp, start, traceId, e);
+                return false;
+            } finally {
+                Tracer.detach();
+                RequestScope.detach();
+            }
+            if (value instanceof CompletionStage) {
+                ((CompletionStage<?>) value).whenComplete((v, error) -> {
+                    try {
+                        RequestScope.end(requestScope);
+                        if (error != null) {
+                            fail(result, handler, subResp, start, traceId,
+                                    error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                        } else {
+                            complete(result, handler, subReq, subResp, start, traceId, v);
+                        }
+                    } finally {
+                        launchNext();
+                    }
+                });
+                return true;
+            }
+            RequestScope.end(requestScope);
+            complete(result, handler, subReq, subResp, start, traceId, value);
+            return false;
+        }
+
+        private void complete(CompletableFuture<Result> result, MappingHandler handler, SubRequest subReq,
+                              SubResponse subResp, long start, long traceId, Object value) {
+            boolean failed = true;
+            try {
+                handler.writeResponse(subReq, subResp, value);
+                failed = false;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                subResp.reset();
+                subResp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                subResp.getWriter().println("500 internal server error!");
+            } finally {
+                handler.recordRequest(start, failed);
+                Tracer.endTrace(traceId, handler.getTraceName(), start);
+            }
+            result.complete(Result.of(subResp));
+        }
+
+        private void fail(CompletableFuture<Result> result, MappingHandler handler, SubResponse subResp, long start,
+                          long traceId, Throwable error) {
+            subResp.reset();
+            PrintWriter writer = subResp.getWriter();
+            if (error instanceof BodyTooLargeException) {
+                subResp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                writer.println("413 payload too large: " + error.getMessage());
+            } else if (error instanceof BindException) {
+                subResp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                writer.println("400 bad request: " + error.getMessage());
+            } else {
+                error.printStackTrace();
+                subResp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                writer.println("500 internal server error!");
+            }
+            handler.recordRequest(start, true);
+            Tracer.endTrace(traceId, handler.getTraceName(), start);
+            result.complete(Result.of(subResp));
+        }
+    }
+
+    /*
+     * 一个子请求的结果，在子请求完成时从 SubResponse 中取出
+     * */
+    private static class Result {
+        private final int status;
+        private final boolean json;
+        private final byte[] body;
+
+        private Result(int status, boolean json, byte[] body) {
+            this.status = status;
+            this.json = json;
+            this.body = body;
+        }
+
+        static Result of(SubResponse response) {
+            String contentType = response.getContentType();
+            boolean json = contentType != null && contentType.toLowerCase(Locale.ROOT).contains("json");
+            return new Result(response.getStatus(), json, response.toByteArray());
+        }
+
+        static Result text(int status, String text) {
+            return new Result(status, false, text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
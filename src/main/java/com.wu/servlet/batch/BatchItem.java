@@ -0,0 +1,37 @@
+package com.wu.servlet.batch;
+
+import java.util.Map;
+
+/*
+ * 批量请求中的一个子请求，由请求体的 JSON 绑定而来：
+ *   {"method": "GET", "uri": "/user/1?x=1", "params": {"name": "a", "ids": [1, 2]}, "body": {...}, "timeout": 500}
+ * method 默认 GET；params 的值是数组时作为同名的多个参数；body 重新序列化成 JSON 作为子请求的请求体
+ * */
+public class BatchItem {
+    private String method;
+    private String uri;
+    private Map<String, Object> params;
+    private Object body;
+    // 这个子请求的超时时间(毫秒)，0 表示使用 batchTimeout，不能超过 batchTimeout
+    private long timeout;
+
+    public String getMethod() {
+        return method == null || method.isEmpty() ? "GET" : method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+}
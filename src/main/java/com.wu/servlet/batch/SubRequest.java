@@ -0,0 +1,287 @@
+package com.wu.servlet.batch;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 批量请求中的一个子请求：方法、uri、参数和请求体来自 BatchItem，请求头(Accept、认证信息等)沿用批量请求本身的
+ *   - 请求体是 BatchItem.body 重新序列化的 JSON，Content-Type 和 Content-Length 按它返回
+ *   - 属性保存在子请求自己的 Map 中，读取时找不到再读批量请求的属性，各子请求之间互不影响
+ *   - 不支持异步，子请求在批量请求的线程池上同步执行
+ * */
+class SubRequest extends HttpServletRequestWrapper {
+
+    private static final String JSON = "application/json;charset=UTF-8";
+
+    private final String method;
+    private final String uri;
+    private final String queryString;
+    private final Map<String, String[]> parameters;
+    private final byte[] body;
+    // 可能在执行子请求的线程和超时的线程上同时访问
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private boolean inputUsed;
+
+    SubRequest(HttpServletRequest request, String method, String uri, Map<String, Object> params, byte[] body) {
+        super(request);
+        this.method = method.toUpperCase(Locale.ROOT);
+        int question = uri.indexOf('?');
+        this.uri = question < 0 ? uri : uri.substring(0, question);
+        this.queryString = question < 0 || question == uri.length() - 1 ? null : uri.substring(question + 1);
+        this.parameters = parseParameters(queryString, params);
+        this.body = body;
+    }
+
+    private static Map<String, String[]> parseParameters(String queryString, Map<String, Object> params) {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        if (queryString != null) {
+            for (String pair : queryString.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int eq = pair.indexOf('=');
+                String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+                String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+                values.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+            }
+        }
+        if (params != null) {
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                List<String> list = values.computeIfAbsent(entry.getKey(), n -> new ArrayList<>(1));
+                Object value = entry.getValue();
+                if (value instanceof Collection) {
+                    for (Object element : (Collection<?>) value) {
+                        list.add(String.valueOf(element));
+                    }
+                } else if (value != null) {
+                    list.add(String.valueOf(value));
+                }
+            }
+        }
+        Map<String, String[]> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static String decode(String text) {
+        if (text.indexOf('%') < 0 && text.indexOf('+') < 0) {
+            return text;
+        }
+        try {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // 不合法的转义原样保留
+            return text;
+        }
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        StringBuffer url = new StringBuffer();
+        url.append(getScheme()).append("://").append(getServerName()).append(':').append(getServerPort()).append(uri);
+        return url;
+    }
+
+    @Override
+    public String getServletPath() {
+        return uri;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return null;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = parameters.get(name);
+        return values == null ? null : values.clone();
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return parameters;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        Object value = attributes.get(name);
+        return value != null ? value : super.getAttribute(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        Set<String> names = new LinkedHashSet<>(attributes.keySet());
+        names.addAll(Collections.list(super.getAttributeNames()));
+        return Collections.enumeration(names);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    @Override
+    public String getContentType() {
+        return body.length == 0 ? null : JSON;
+    }
+
+    @Override
+    public int getContentLength() {
+        return body.length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return body.length;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return StandardCharsets.UTF_8.name();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        if ("Content-Type".equalsIgnoreCase(name)) {
+            return getContentType();
+        }
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            return String.valueOf(body.length);
+        }
+        return super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        if ("Content-Type".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)) {
+            String value = getHeader(name);
+            return Collections.enumeration(value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+        }
+        return super.getHeaders(name);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        if (inputUsed) {
+            throw new IllegalStateException("子请求的请求体只能读取一次");
+        }
+        inputUsed = true;
+        return new BodyInputStream(body);
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        throw new IllegalStateException("批量请求中的子请求不支持异步处理");
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        throw new IllegalStateException("批量请求中的子请求不支持异步处理");
+    }
+
+    /*
+     * 从内存读取请求体，数据总是可读
+     * */
+    private static class BodyInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+
+        BodyInputStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("批量请求中的子请求不支持异步读取");
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return in.available();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.wu.servlet.bind;
+
+import com.wu.annotation.mvc.MyPathVariable;
+import com.wu.annotation.mvc.MyRequestBody;
+import com.wu.annotation.mvc.MyRequestParam;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.lang.reflect.*;
+import java.util.*;
+
+/*
+ * 一个 handler 方法参数的取值方式，注册 handler 时按参数的注解和类型创建一次：
+ *   - @MyPathVariable：路径变量，转换成简单类型
+ *   - @MyRequestParam：简单类型、数组/List/Set、POJO
+ *   - @MyRequestBody：JSON 请求体，见 RequestBodyResolver
+ *   - ServletRequest / ServletResponse 类型的参数直接传入当前请求和响应
+ * 转换器、默认值都在创建时准备好，请求到来时只执行取值和转换
+ * */
+public abstract class ArgumentResolver {
+
+    /**
+     * @throws BindException 缺少必需的参数或参数值无法转换
+     */
+    public abstract Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables);
+
+    public static ArgumentResolver create(Parameter parameter) {
+        Class<?> type = parameter.getType();
+        if (parameter.isAnnotationPresent(MyRequestBody.class)) {
+            return RequestBodyResolver.forParameter(parameter);
+        }
+        if (parameter.isAnnotationPresent(MyPathVariable.class)) {
+            String name = parameter.getAnnotation(MyPathVariable.class).value();
+            return new PathVariableResolver(name, simpleConverter(type, parameter), type);
+        }
+        if (parameter.isAnnotationPresent(MyRequestParam.class)) {
+            MyRequestParam param = parameter.getAnnotation(MyRequestParam.class);
+            String name = param.value();
+            if (Converters.forClass(type) == null && !isMultiValue(type)) {
+                return PojoResolver.create(type, name.isEmpty() ? "" : name + ".", new HashSet<>());
+            }
+            if (name.isEmpty()) {
+                if (!parameter.isNamePresent()) {
+                    throw new IllegalStateException("@MyRequestParam 需要指定参数名(或使用 -parameters 编译): " + parameter);
+                }
+                name = parameter.getName();
+            }
+            return forRequestParam(name, type, parameter.getParameterizedType(), param.required(),
+                    param.defaultValue(), param.separator(), type.isPrimitive());
+        }
+        if (ServletRequest.class.isAssignableFrom(type)) {
+            return new ArgumentResolver() {
+                @Override
+                public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+                    return req;
+                }
+            };
+        }
+        if (ServletResponse.class.isAssignableFrom(type)) {
+            return new ArgumentResolver() {
+                @Override
+                public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+                    return res;
+                }
+            };
+        }
+        throw new IllegalStateException("参数需要 @MyRequestParam、@MyPathVariable 或 @MyRequestBody 注解: "
+                + parameter + "，位于 " + parameter.getDeclaringExecutable());
+    }
+
+    /**
+     * @param separator        数组/集合类型的参数只有一个值时用它拆分，为空时不拆分
+     * @param zeroForPrimitive 基本类型的参数缺失时传入0/false，而不是null
+     */
+    private static ArgumentResolver forRequestParam(String name, Class<?> type, Type genericType, boolean required,
+                                                    String defaultValue, String separator, boolean zeroForPrimitive) {
+        if (isMultiValue(type)) {
+            return new MultiValueResolver(name, type, genericType, required, defaultValue, separator);
+        }
+        Converter converter = Converters.forClass(type);
+        Object missingValue = null;
+        if (!MyRequestParam.NO_DEFAULT.equals(defaultValue)) {
+            // 默认值在注册时就转换好
+            missingValue = convert(name, converter, defaultValue, type);
+        } else if (zeroForPrimitive) {
+            missingValue = Array.get(Array.newInstance(type, 1), 0);
+        }
+        boolean failIfMissing = required && MyRequestParam.NO_DEFAULT.equals(defaultValue);
+        return new ValueResolver(name, converter, type, failIfMissing, missingValue);
+    }
+
+    private static boolean isMultiValue(Class<?> type) {
+        return type.isArray() || Collection.class.isAssignableFrom(type);
+    }
+
+    private static Converter simpleConverter(Class<?> type, Object source) {
+        Converter converter = Converters.forClass(type);
+        if (converter == null) {
+            throw new IllegalStateException("不支持的参数类型 " + type.getName() + ": " + source);
+        }
+        return converter;
+    }
+
+    static Object convert(String name, Converter converter, String text, Class<?> type) {
+        try {
+            return converter.convert(text);
+        } catch (IllegalArgumentException e) {
+            throw new BindException("参数 " + name + " 的值 '" + text + "' 无法转换为 " + type.getSimpleName(), e);
+        }
+    }
+
+    private static class PathVariableResolver extends ArgumentResolver {
+        private final String name;
+        private final Converter converter;
+        private final Class<?> type;
+
+        PathVariableResolver(String name, Converter converter, Class<?> type) {
+            this.name = name;
+            this.converter = converter;
+            this.type = type;
+        }
+
+        @Override
+        public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+            String text = pathVariables.get(name);
+            if (text == null) {
+                throw new BindException("缺少路径变量 " + name);
+            }
+            Object value = convert(name, converter, text, type);
+            // 基本类型不能传入 null，否则调用方法时抛出 NullPointerException
+            if (value == null && type.isPrimitive()) {
+                throw new BindException("路径变量 " + name + " 的值 '" + text + "' 无法转换为 " + type.getSimpleName());
+            }
+            return value;
+        }
+    }
+
+    /*
+     * 单个值的请求参数
+     * */
+    private static class ValueResolver extends ArgumentResolver {
+        private final String name;
+        private final Converter converter;
+        private final Class<?> type;
+        private final boolean required;
+        // 请求中没有该参数时的取值：转换好的默认值、基本类型的0值或null
+        private final Object missingValue;
+
+        ValueResolver(String name, Converter converter, Class<?> type, boolean required, Object missingValue) {
+            this.name = name;
+            this.converter = converter;
+            this.type = type;
+            this.required = required;
+            this.missingValue = missingValue;
+        }
+
+        @Override
+        public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+            String text = req.getParameter(name);
+            if (text == null || (text.isEmpty() && type != String.class)) {
+                if (required) {
+                    throw new BindException("缺少参数 " + name);
+                }
+                return missingValue;
+            }
+            return convert(name, converter, text, type);
+        }
+    }
+
+    /*
+     * 多个值的请求参数：?id=1&id=2，绑定到数组、List 或 Set
+     * 指定了 separator 时只有一个值也会被拆分，如 separator="," 时 ?id=1,2
+     * */
+    private static class MultiValueResolver extends ArgumentResolver {
+        private final String name;
+        private final Class<?> type;
+        private final Class<?> elementType;
+        private final Converter converter;
+        private final boolean required;
+        // 转换好的默认值元素，每次请求复制到新的集合中，避免被 Controller 修改后影响其他请求
+        private final Object[] defaultElements;
+        // 拆分单个值的分隔符，为空时不拆分
+        private final String separator;
+
+        MultiValueResolver(String name, Class<?> type, Type genericType, boolean required, String defaultValue,
+                           String separator) {
+            this.name = name;
+            this.type = type;
+            this.separator = separator;
+            this.elementType = elementType(type, genericType);
+            this.converter = simpleConverter(elementType, name);
+            if (!type.isArray()) {
+                // 提前检查集合类型是否支持
+                newCollection(type);
+            }
+            if (MyRequestParam.NO_DEFAULT.equals(defaultValue)) {
+                this.required = required;
+                this.defaultElements = null;
+            } else {
+                this.required = false;
+                this.defaultElements = convertAll(defaultValue.isEmpty() ? new String[0]
+                        : split(defaultValue, separator.isEmpty() ? "," : separator));
+            }
+        }
+
+        private static Class<?> elementType(Class<?> type, Type genericType) {
+            if (type.isArray()) {
+                return type.getComponentType();
+            }
+            if (genericType instanceof ParameterizedType) {
+                Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+                if (argument instanceof Class) {
+                    return (Class<?>) argument;
+                }
+            }
+            return String.class;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Collection<Object> newCollection(Class<?> type) {
+            if (type.isAssignableFrom(ArrayList.class)) {
+                return new ArrayList<>();
+            }
+            if (type.isAssignableFrom(LinkedHashSet.class)) {
+                return new LinkedHashSet<>();
+            }
+            if (type.isAssignableFrom(TreeSet.class)) {
+                return new TreeSet<>();
+            }
+            throw new IllegalStateException("不支持的集合类型 " + type.getName());
+        }
+
+        // 按字面的分隔符拆分，不当作正则表达式，保留空的元素
+        private static String[] split(String value, String separator) {
+            List<String> parts = new ArrayList<>();
+            int start = 0;
+            int end;
+            while ((end = value.indexOf(separator, start)) >= 0) {
+                parts.add(value.substring(start, end));
+                start = end + separator.length();
+            }
+            parts.add(value.substring(start));
+            return parts.toArray(new String[0]);
+        }
+
+        private Object[] convertAll(String[] values) {
+            Object[] elements = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                elements[i] = convert(name, converter, values[i], elementType);
+            }
+            return elements;
+        }
+
+        @Override
+        public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+            String[] values = req.getParameterValues(name);
+            Object[] elements;
+            if (values == null || values.length == 0) {
+                if (required) {
+                    throw new BindException("缺少参数 " + name);
+                }
+                if (defaultElements == null) {
+                    return null;
+                }
+                elements = defaultElements;
+            } else {
+                if (values.length == 1 && !separator.isEmpty() && values[0].contains(separator)) {
+                    values = split(values[0], separator);
+                }
+                elements = convertAll(values);
+            }
+            if (type.isArray()) {
+                Object array = Array.newInstance(elementType, elements.length);
+                for (int i = 0; i < elements.length; i++) {
+                    Array.set(array, i, elements[i]);
+                }
+                return array;
+            }
+            Collection<Object> collection = newCollection(type);
+            Collections.addAll(collection, elements);
+            return collection;
+        }
+    }
+
+    /*
+     * POJO：用无参构造器创建对象，每个属性按 前缀+属性名 绑定请求参数，属性也可以是 POJO
+     * 请求中没有的属性保持对象创建时的值
+     * */
+    private static class PojoResolver extends ArgumentResolver {
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+        private final ArgumentResolver[] resolvers;
+
+        private PojoResolver(Constructor<?> constructor, Field[] fields, ArgumentResolver[] resolvers) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.resolvers = resolvers;
+        }
+
+        /**
+         * @param resolving 正在处理的类型，属性类型循环引用时不再展开
+         */
+        static PojoResolver create(Class<?> type, String prefix, Set<Class<?>> resolving) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("绑定请求参数的类需要无参构造器: " + type.getName(), e);
+            }
+            resolving.add(type);
+            List<Field> fields = new ArrayList<>();
+            List<ArgumentResolver> resolvers = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    String name = prefix + field.getName();
+                    ArgumentResolver resolver;
+                    if (Converters.forClass(fieldType) != null || isMultiValue(fieldType)) {
+                        resolver = forRequestParam(name, fieldType, field.getGenericType(), false,
+                                MyRequestParam.NO_DEFAULT, "", false);
+                    } else if (!fieldType.isInterface() && !fieldType.getName().startsWith("java.")
+                            && !resolving.contains(fieldType)) {
+                        resolver = create(fieldType, name + ".", resolving);
+                    } else {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                    resolvers.add(resolver);
+                }
+            }
+            resolving.remove(type);
+            return new PojoResolver(constructor, fields.toArray(new Field[0]),
+                    resolvers.toArray(new ArgumentResolver[0]));
+        }
+
+        @Override
+        public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+            try {
+                Object pojo = constructor.newInstance();
+                for (int i = 0; i < fields.length; i++) {
+                    Object value = resolvers[i].resolve(req, res, pathVariables);
+                    if (value != null) {
+                        fields[i].set(pojo, value);
+                    }
+                }
+                return pojo;
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("创建参数对象失败: " + constructor.getDeclaringClass().getName(),
+                        e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("创建参数对象失败: " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+    }
+}
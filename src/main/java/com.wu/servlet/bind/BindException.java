@@ -0,0 +1,15 @@
+package com.wu.servlet.bind;
+
+/*
+ * 请求参数绑定失败：缺少必需的参数，或参数值无法转换成方法参数的类型，对应 400 响应
+ * */
+public class BindException extends IllegalArgumentException {
+
+    public BindException(String message) {
+        super(message);
+    }
+
+    public BindException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
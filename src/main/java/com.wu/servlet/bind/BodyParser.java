@@ -0,0 +1,62 @@
+package com.wu.servlet.bind;
+
+import com.wu.servlet.json.JsonBinder;
+import com.wu.servlet.json.JsonException;
+import com.wu.servlet.json.JsonParser;
+
+import java.lang.reflect.Type;
+
+/*
+ * 一次请求的请求体解析：收到的字节分块传入 feed，边收边解析并绑定，全部收到后调用 finish 得到参数值
+ * 超过大小限制抛出 BodyTooLargeException，JSON 错误和类型不匹配抛出 BindException
+ * */
+public class BodyParser {
+
+    private final JsonBinder binder;
+    private final JsonParser parser;
+    private final long maxSize;
+    private final boolean required;
+    private long received;
+
+    BodyParser(JsonBinder binder, long maxSize, boolean required) {
+        this.binder = binder;
+        this.parser = new JsonParser(binder);
+        this.maxSize = maxSize;
+        this.required = required;
+    }
+
+    /**
+     * 不对应方法参数的请求体解析(如批量请求)，请求体不能为空
+     */
+    public static BodyParser create(Type type, long maxSize) {
+        return new BodyParser(new JsonBinder(type), maxSize, true);
+    }
+
+    public void feed(byte[] buffer, int offset, int length) {
+        received += length;
+        if (received > maxSize) {
+            throw new BodyTooLargeException(maxSize);
+        }
+        try {
+            parser.feed(buffer, offset, length);
+        } catch (JsonException e) {
+            throw RequestBodyResolver.bindError(e);
+        }
+    }
+
+    /**
+     * @return 绑定的参数值，请求体为空或为 null 时返回 null
+     */
+    public Object finish() {
+        try {
+            parser.finish();
+        } catch (JsonException e) {
+            throw RequestBodyResolver.bindError(e);
+        }
+        Object value = binder.isComplete() ? binder.getResult() : null;
+        if (value == null && required) {
+            throw new BindException("缺少请求体");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,11 @@
+package com.wu.servlet.bind;
+
+/*
+ * 请求体超过了大小限制，对应 413 响应
+ * */
+public class BodyTooLargeException extends BindException {
+
+    public BodyTooLargeException(long maxSize) {
+        super("请求体超过 " + maxSize + " 字节");
+    }
+}
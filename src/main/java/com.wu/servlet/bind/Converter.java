@@ -0,0 +1,13 @@
+package com.wu.servlet.bind;
+
+/*
+ * 把请求中的字符串转换成方法参数需要的类型，注册 handler 时按参数类型选定，请求到来时直接调用
+ * */
+public interface Converter {
+
+    /**
+     * @param text 非null的字符串
+     * @throws IllegalArgumentException 无法转换
+     */
+    Object convert(String text);
+}
@@ -0,0 +1,95 @@
+package com.wu.servlet.bind;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * 按类型查找 Converter：String、基本类型及其包装类、枚举
+ * 其他类型(集合、数组、POJO)由 ArgumentResolver 组合这些转换器完成
+ * */
+public class Converters {
+
+    private static final Map<Class<?>, Converter> CONVERTERS = new HashMap<>();
+
+    static {
+        CONVERTERS.put(String.class, text -> text);
+        Converter intConverter = text -> Integer.parseInt(text.trim());
+        CONVERTERS.put(int.class, intConverter);
+        CONVERTERS.put(Integer.class, intConverter);
+        Converter longConverter = text -> Long.parseLong(text.trim());
+        CONVERTERS.put(long.class, longConverter);
+        CONVERTERS.put(Long.class, longConverter);
+        Converter shortConverter = text -> Short.parseShort(text.trim());
+        CONVERTERS.put(short.class, shortConverter);
+        CONVERTERS.put(Short.class, shortConverter);
+        Converter byteConverter = text -> Byte.parseByte(text.trim());
+        CONVERTERS.put(byte.class, byteConverter);
+        CONVERTERS.put(Byte.class, byteConverter);
+        Converter doubleConverter = text -> Double.parseDouble(text.trim());
+        CONVERTERS.put(double.class, doubleConverter);
+        CONVERTERS.put(Double.class, doubleConverter);
+        Converter floatConverter = text -> Float.parseFloat(text.trim());
+        CONVERTERS.put(float.class, floatConverter);
+        CONVERTERS.put(Float.class, floatConverter);
+        Converter booleanConverter = Converters::parseBoolean;
+        CONVERTERS.put(boolean.class, booleanConverter);
+        CONVERTERS.put(Boolean.class, booleanConverter);
+        Converter charConverter = text -> {
+            if (text.length() != 1) {
+                throw new IllegalArgumentException("不是单个字符");
+            }
+            return text.charAt(0);
+        };
+        CONVERTERS.put(char.class, charConverter);
+        CONVERTERS.put(Character.class, charConverter);
+    }
+
+    /**
+     * @return type 对应的转换器，不是简单类型时返回null
+     */
+    public static Converter forClass(Class<?> type) {
+        Converter converter = CONVERTERS.get(type);
+        if (converter == null && type.isEnum()) {
+            converter = enumConverter(type);
+        }
+        return converter;
+    }
+
+    // 枚举按名字查表，名字不区分大小写
+    private static Converter enumConverter(Class<?> type) {
+        Map<String, Object> constants = new HashMap<>();
+        for (Object constant : type.getEnumConstants()) {
+            String name = ((Enum<?>) constant).name();
+            constants.put(name, constant);
+            constants.putIfAbsent(name.toUpperCase(Locale.ROOT), constant);
+        }
+        return text -> {
+            Object constant = constants.get(text);
+            if (constant == null) {
+                constant = constants.get(text.trim().toUpperCase(Locale.ROOT));
+            }
+            if (constant == null) {
+                throw new IllegalArgumentException("不是 " + type.getSimpleName() + " 的取值");
+            }
+            return constant;
+        };
+    }
+
+    private static Boolean parseBoolean(String text) {
+        switch (text.trim().toLowerCase(Locale.ROOT)) {
+            case "true":
+            case "1":
+            case "on":
+            case "yes":
+                return Boolean.TRUE;
+            case "false":
+            case "0":
+            case "off":
+            case "no":
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException("不是布尔值");
+        }
+    }
+}
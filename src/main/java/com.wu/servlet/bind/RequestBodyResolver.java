@@ -0,0 +1,185 @@
+package com.wu.servlet.bind;
+
+import com.wu.annotation.mvc.MyRequestBody;
+import com.wu.servlet.json.BufferPool;
+import com.wu.servlet.json.JsonBinder;
+import com.wu.servlet.json.JsonException;
+import com.wu.servlet.json.JsonIterator;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * @MyRequestBody 参数：
+ *   - InputStream：请求体的输入流，超过大小限制时读取会抛出 BodyTooLargeException
+ *   - Iterator：逐个解析请求体中的元素
+ *   - 其他类型：请求体按 JSON 绑定。DispatcherServlet 在调用方法前通过 ReadListener 非阻塞地读完请求体，
+ *     绑定好的值放在请求属性中；没有预先读取时(如直接调用 handler)在当前线程上阻塞读取
+ * */
+public class RequestBodyResolver extends ArgumentResolver {
+
+    // 保存预先读取的请求体的请求属性
+    public static final String BODY_ATTRIBUTE = RequestBodyResolver.class.getName() + ".BODY";
+    // 请求属性中代表请求体为空
+    private static final Object EMPTY = new Object();
+    // 全局的请求体大小限制(字节)
+    private static long defaultMaxSize = 1024 * 1024;
+
+    private final Type type;
+    private final boolean stream;
+    private final boolean iterator;
+    private final boolean required;
+    // 0 表示使用全局配置，负数表示不限制
+    private final long maxSize;
+
+    private RequestBodyResolver(Type type, boolean stream, boolean iterator, boolean required, long maxSize) {
+        this.type = type;
+        this.stream = stream;
+        this.iterator = iterator;
+        this.required = required;
+        this.maxSize = maxSize;
+    }
+
+    public static void setDefaultMaxSize(long maxSize) {
+        defaultMaxSize = maxSize;
+    }
+
+    /**
+     * 全局的请求体大小限制，不限制时返回 Long.MAX_VALUE
+     */
+    public static long getDefaultMaxSize() {
+        return defaultMaxSize < 0 ? Long.MAX_VALUE : defaultMaxSize;
+    }
+
+    static RequestBodyResolver forParameter(Parameter parameter) {
+        MyRequestBody body = parameter.getAnnotation(MyRequestBody.class);
+        Class<?> type = parameter.getType();
+        if (InputStream.class.isAssignableFrom(type)) {
+            return new RequestBodyResolver(type, true, false, body.required(), body.maxSize());
+        }
+        if (type == Iterator.class) {
+            Type elementType = Object.class;
+            if (parameter.getParameterizedType() instanceof ParameterizedType) {
+                elementType = ((ParameterizedType) parameter.getParameterizedType()).getActualTypeArguments()[0];
+            }
+            return new RequestBodyResolver(elementType, false, true, body.required(), body.maxSize());
+        }
+        return new RequestBodyResolver(parameter.getParameterizedType(), false, false, body.required(),
+                body.maxSize());
+    }
+
+    /**
+     * 是否需要在调用方法前读完并绑定请求体，InputStream 和 Iterator 参数由方法自己读取
+     */
+    public boolean isBuffered() {
+        return !stream && !iterator;
+    }
+
+    public long getMaxSize() {
+        long size = maxSize == 0 ? defaultMaxSize : maxSize;
+        return size < 0 ? Long.MAX_VALUE : size;
+    }
+
+    /**
+     * 请求头中声明的长度已经超过限制时直接拒绝，不读取请求体
+     *
+     * @throws BodyTooLargeException
+     */
+    public void checkContentLength(ServletRequest req) {
+        if (req.getContentLengthLong() > getMaxSize()) {
+            throw new BodyTooLargeException(getMaxSize());
+        }
+    }
+
+    public BodyParser newParser() {
+        return new BodyParser(new JsonBinder(type), getMaxSize(), required);
+    }
+
+    /**
+     * 保存预先读取并绑定好的请求体
+     */
+    public static void setBody(ServletRequest req, Object value) {
+        req.setAttribute(BODY_ATTRIBUTE, value == null ? EMPTY : value);
+    }
+
+    @Override
+    public Object resolve(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) {
+        checkContentLength(req);
+        if (isBuffered()) {
+            Object body = req.getAttribute(BODY_ATTRIBUTE);
+            if (body == null) {
+                body = readBlocking(req);
+            }
+            return body == EMPTY ? null : body;
+        }
+        InputStream in;
+        try {
+            in = new LimitedInputStream(req.getInputStream(), getMaxSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (stream) {
+            return in;
+        }
+        return new BindingIterator(new JsonIterator(in, type));
+    }
+
+    private Object readBlocking(ServletRequest req) {
+        BodyParser parser = newParser();
+        byte[] buffer = BufferPool.acquire();
+        try {
+            InputStream in = req.getInputStream();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                parser.feed(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            BufferPool.release(buffer);
+        }
+        Object value = parser.finish();
+        return value == null ? EMPTY : value;
+    }
+
+    static BindException bindError(JsonException e) {
+        return new BindException("请求体解析失败: " + e.getMessage(), e);
+    }
+
+    /*
+     * 把解析错误转换成 BindException，在方法中抛出时同样返回 400
+     * */
+    private static class BindingIterator implements Iterator<Object> {
+        private final Iterator<Object> iterator;
+
+        BindingIterator(Iterator<Object> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return iterator.hasNext();
+            } catch (JsonException e) {
+                throw bindError(e);
+            }
+        }
+
+        @Override
+        public Object next() {
+            try {
+                return iterator.next();
+            } catch (JsonException e) {
+                throw bindError(e);
+            }
+        }
+    }
+}
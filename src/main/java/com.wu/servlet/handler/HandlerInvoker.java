@@ -0,0 +1,80 @@
+package com.wu.servlet.handler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/*
+ * 调用 @RequestMapping 方法的执行器，在注册 MappingHandler 时就绑定好 Controller 实例，
+ * 请求到来时不再查找 bean，直接调用
+ *   - reflection：Method.invoke
+ *   - methodHandle：绑定了 Controller 实例、参数展开为 Object[] 的 MethodHandle，JIT 可以内联
+ * */
+public abstract class HandlerInvoker {
+
+    public static final String REFLECTION = "reflection";
+    public static final String METHOD_HANDLE = "methodHandle";
+
+    /**
+     * @param args 方法参数，长度和方法的参数个数一致
+     * @return 方法返回值，void 方法返回 null
+     * @throws InvocationTargetException 方法本身抛出的异常被包装在其中
+     */
+    public abstract Object invoke(Object[] args) throws IllegalAccessException, InvocationTargetException;
+
+    /**
+     * @param type       REFLECTION 或 METHOD_HANDLE
+     * @param method     被调用的方法
+     * @param controller 方法所属的 Controller 实例
+     */
+    public static HandlerInvoker create(String type, Method method, Object controller) throws IllegalAccessException {
+        method.setAccessible(true);
+        if (REFLECTION.equals(type)) {
+            return new ReflectiveInvoker(method, controller);
+        }
+        return new MethodHandleInvoker(method, controller);
+    }
+
+    private static class ReflectiveInvoker extends HandlerInvoker {
+        private final Method method;
+        private final Object controller;
+
+        ReflectiveInvoker(Method method, Object controller) {
+            this.method = method;
+            this.controller = controller;
+        }
+
+        @Override
+        public Object invoke(Object[] args) throws IllegalAccessException, InvocationTargetException {
+            return method.invoke(controller, args);
+        }
+    }
+
+    private static class MethodHandleInvoker extends HandlerInvoker {
+        // 类型固定为 (Object[])Object，可以用 invokeExact 调用
+        private final MethodHandle handle;
+
+        MethodHandleInvoker(Method method, Object controller) throws IllegalAccessException {
+            int count = method.getParameterCount();
+            MethodHandle target = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                target = target.bindTo(controller);
+            }
+            this.handle = target.asType(MethodType.genericMethodType(count))
+                    .asSpreader(Object[].class, count);
+        }
+
+        @Override
+        public Object invoke(Object[] args) throws InvocationTargetException {
+            try {
+                return (Object) handle.invokeExact(args);
+            } catch (Throwable e) {
+                // 和 Method.invoke 保持一致，方法抛出的异常统一包装成 InvocationTargetException
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+}
@@ -2,44 +2,144 @@ package com.wu.servlet.handler;
 
 import com.wu.annotation.ioc.MyController;
 import com.wu.annotation.mvc.MyRequestMapping;
-import com.wu.annotation.mvc.MyRequestParam;
+import com.wu.core.BeanFactory;
+import com.wu.servlet.bind.ArgumentResolver;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
+/*
+ * 管理所有的 MappingHandler 和路由索引
+ * 处理器列表和路由索引构建完成后不再修改，注册和刷新时整体构建一份新的再原子替换(写时复制)：
+ * 请求分发时读到的总是完整的一份，正在处理的请求继续使用它查找到的旧处理器，不受替换影响
+ * */
 public class HandlerManager {
 
-    // 类中各 @RequestMapping 注解修饰的方法对应的 MappingHandler 的集合
-    public static List<MappingHandler> mappingHandlerList = new ArrayList<>();
+    // 当前生效的处理器列表和路由索引
+    private static final AtomicReference<Routes> routes = new AtomicReference<>(new Routes(Collections.emptyList()));
+    // 调用 @RequestMapping 方法的方式：HandlerInvoker.METHOD_HANDLE 或 HandlerInvoker.REFLECTION
+    private static String invokerType = HandlerInvoker.METHOD_HANDLE;
 
-    public static void resolveMappingHandler(List<Class<?>> classList) {
+    public static void setInvokerType(String type) {
+        invokerType = type;
+    }
+
+    public static void resolveMappingHandler(List<Class<?>> classList) throws IllegalAccessException {
+        List<MappingHandler> handlers = new ArrayList<>();
         //只处理标注@MyController的类
-        classList.stream().filter(aClass -> aClass.isAnnotationPresent(MyController.class))
-                .forEach(HandlerManager::parseHandlerFromController);
+        for (Class<?> aClass : classList) {
+            if (aClass.isAnnotationPresent(MyController.class)) {
+                handlers.addAll(createHandlers(aClass, BeanFactory.getBean(aClass)));
+            }
+        }
+        register(handlers);
     }
 
-    private static void parseHandlerFromController(Class<?> aClass) {
+    /**
+     * 根据请求方法和请求路径查找处理器
+     *
+     * @return 找不到路径时返回 null；路径存在但请求方法不匹配时返回 handler 为 null 的 RouteMatch
+     */
+    public static RouteMatch lookup(String httpMethod, String uri) {
+        return routes.get().table.lookup(httpMethod, uri);
+    }
+
+    /**
+     * 当前生效的所有处理器，不可修改
+     */
+    public static List<MappingHandler> getMappingHandlers() {
+        return routes.get().handlers;
+    }
+
+    /**
+     * 在当前的处理器之外追加注册一批处理器
+     */
+    public static void register(List<MappingHandler> handlers) {
+        replaceHandlers(Collections.emptySet(), handlers);
+    }
+
+    /**
+     * 去掉 removedControllers 中的 Controller 的所有处理器，加上 added，构建新的路由索引后原子替换
+     * 新的路由有冲突时抛出异常，当前的路由保持不变
+     */
+    public static void replaceHandlers(Collection<Class<?>> removedControllers, List<MappingHandler> added) {
+        while (true) {
+            Routes current = routes.get();
+            List<MappingHandler> handlers = new ArrayList<>(current.handlers.size() + added.size());
+            for (MappingHandler handler : current.handlers) {
+                if (!removedControllers.contains(handler.getController())) {
+                    handlers.add(handler);
+                }
+            }
+            handlers.addAll(added);
+            if (routes.compareAndSet(current, new Routes(handlers))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 为 Controller 上所有 @RequestMapping 方法创建处理器，还没有注册
+     *
+     * @param controller Controller 实例，创建时直接绑定到执行器上
+     */
+    public static List<MappingHandler> createHandlers(Class<?> aClass, Object controller)
+            throws IllegalAccessException {
+        List<MappingHandler> handlers = new ArrayList<>();
         Method[] methods = aClass.getDeclaredMethods();
         // 只处理包含了 @RequestMapping 注解的方法
         for (Method method : methods) {
             if (method.isAnnotationPresent(MyRequestMapping.class)) {
                 // 获取赋值 @RequestMapping 注解的值，也就是客户端请求的路径，注意，uri不包括协议名和主机名
-                String uri = aClass.getDeclaredAnnotation(MyRequestMapping.class).value();//类上的请求路径
-                uri += method.getDeclaredAnnotation(MyRequestMapping.class).value();//方法上的请求路径
-                // 存放@RequestParam注解的参数，value就是请求域里的变量名，和method方法的参数名可能不完全一致
-                List<String> params = new ArrayList<>();
-                for (Parameter parameter : method.getParameters()) {
-                    if (parameter.isAnnotationPresent(MyRequestParam.class)) {
-                        params.add(parameter.getAnnotation(MyRequestParam.class).value());
-                    }
+                MyRequestMapping methodMapping = method.getDeclaredAnnotation(MyRequestMapping.class);
+                String uri = "";
+                if (aClass.isAnnotationPresent(MyRequestMapping.class)) {
+                    uri = aClass.getDeclaredAnnotation(MyRequestMapping.class).value();//类上的请求路径
                 }
+                uri += methodMapping.value();//方法上的请求路径
+                handlers.add(createHandler(aClass, method, uri, methodMapping.method(), controller));
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * 创建一个处理器，路径和请求方法已经解析好，从启动快照恢复路由时直接调用
+     */
+    public static MappingHandler createHandler(Class<?> aClass, Method method, String uri, String[] httpMethods)
+            throws IllegalAccessException {
+        // Controller 实例在 BeanFactory.initBean 之后就不再变化，注册时直接绑定到执行器上
+        return createHandler(aClass, method, uri, httpMethods, BeanFactory.getBean(aClass));
+    }
+
+    private static MappingHandler createHandler(Class<?> aClass, Method method, String uri, String[] httpMethods,
+                                                Object controller) throws IllegalAccessException {
+        // 每个参数的取值方式(请求参数、路径变量、请求/响应对象)和类型转换在注册时确定
+        Parameter[] parameters = method.getParameters();
+        ArgumentResolver[] resolvers = new ArgumentResolver[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            resolvers[i] = ArgumentResolver.create(parameters[i]);
+        }
+        HandlerInvoker invoker = HandlerInvoker.create(invokerType, method, controller);
+        return new MappingHandler(uri, httpMethods, aClass, method, invoker, resolvers);
+    }
+
+    /*
+     * 一份不可修改的路由：处理器列表和由它构建的路由索引
+     * */
+    private static class Routes {
+        private final List<MappingHandler> handlers;
+        private final RouteTable table = new RouteTable();
 
-                // List.toArray() 方法传入与 List.size() 恰好一样大的数组，可以提高效率
-                String[] paramsStr = params.toArray(new String[params.size()]);
-                MappingHandler mappingHandler = new MappingHandler(uri, aClass, method, paramsStr);
-                HandlerManager.mappingHandlerList.add(mappingHandler);
+        Routes(List<MappingHandler> handlers) {
+            this.handlers = Collections.unmodifiableList(handlers);
+            for (MappingHandler handler : handlers) {
+                table.register(handler);
             }
         }
     }
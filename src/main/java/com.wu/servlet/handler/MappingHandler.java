@@ -1,56 +1,298 @@
 package com.wu.servlet.handler;
 
-import com.wu.core.BeanFactory;
+import com.wu.annotation.mvc.MyBulkhead;
+import com.wu.annotation.mvc.MyRateLimit;
+import com.wu.annotation.mvc.MyRequestMapping;
+import com.wu.core.metrics.Histogram;
+import com.wu.core.metrics.Metrics;
+import com.wu.core.trace.Tracer;
+import com.wu.servlet.bind.ArgumentResolver;
+import com.wu.servlet.bind.RequestBodyResolver;
+import com.wu.servlet.limit.ConcurrencyLimiter;
+import com.wu.servlet.limit.RateLimiter;
 
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
 * 该类实例对应一个@RequestMapping修饰的方法，提供handle方法用于执行。
+* uri 的匹配交给 RouteTable 完成，这里只负责提取参数并调用方法
+* 每个参数的取值和类型转换在注册时就确定为 ArgumentResolver，参数数组按线程复用，请求时不再分配
 * */
 public class MappingHandler {
     private String uri;
+    private String[] httpMethods;
     private Class<?> controller;
     private Method method;
-    private String[] args;
+    // 注册时就绑定了 Controller 实例的方法执行器
+    private HandlerInvoker invoker;
+    // 每个方法参数的取值方式
+    private ArgumentResolver[] resolvers;
+    // 按线程复用的参数数组
+    private ThreadLocal<ArgumentBuffer> argumentBuffers;
+    // uri 中按出现顺序排列的路径变量名
+    private String[] pathVariableNames;
+    // 精确匹配时复用的查找结果，避免每次请求都创建对象
+    private RouteMatch exactMatch;
+    // 方法返回 CompletionStage(如 CompletableFuture)，需要异步完成响应
+    private boolean async;
+    // 异步处理的超时时间(毫秒)，0 表示使用全局配置
+    private long timeout;
+    // 需要在调用方法前读完并绑定请求体的参数，没有时为null
+    private RequestBodyResolver bodyResolver;
+    // 这个路由的处理耗时和出错次数
+    private Histogram latency;
+    private LongAdder errors;
+    // 路由上的限流(@MyRateLimit)和并发限制(@MyBulkhead)，没有时为null
+    private RateLimiter rateLimiter;
+    private ConcurrencyLimiter concurrencyLimiter;
+    // 整个请求、参数提取和方法调用的 span 名字，不追踪时为0
+    private int traceName;
+    private int bindTraceName;
+    private int handlerTraceName;
 
     /**
-     * @param uri        如 /getSalary.json
+     * @param uri              如 /getSalary.json，也可以是 /user/{id}
+     * @param httpMethods      允许的请求方法，为空表示不限
      * @param controller
      * @param method
-     * @param args
+     * @param invoker          调用 method 的执行器
+     * @param resolvers        每个方法参数的取值方式，和方法参数一一对应
      */
-    MappingHandler(String uri, Class<?> controller, Method method, String[] args) {
+    MappingHandler(String uri, String[] httpMethods, Class<?> controller, Method method, HandlerInvoker invoker,
+                   ArgumentResolver[] resolvers) {
         this.uri = uri;
+        this.httpMethods = httpMethods;
         this.controller = controller;
         this.method = method;
-        this.args = args;
+        this.invoker = invoker;
+        this.resolvers = resolvers;
+        this.argumentBuffers = ThreadLocal.withInitial(() -> new ArgumentBuffer(resolvers.length));
+        this.pathVariableNames = parsePathVariableNames(uri);
+        this.exactMatch = new RouteMatch(this, Collections.emptyMap());
+        this.async = method != null && CompletionStage.class.isAssignableFrom(method.getReturnType());
+        this.timeout = method != null && method.isAnnotationPresent(MyRequestMapping.class)
+                ? method.getAnnotation(MyRequestMapping.class).timeout() : 0;
+        for (ArgumentResolver resolver : resolvers) {
+            if (resolver instanceof RequestBodyResolver) {
+                if (bodyResolver != null) {
+                    throw new IllegalStateException("只能有一个 @MyRequestBody 参数: " + method);
+                }
+                bodyResolver = (RequestBodyResolver) resolver;
+            }
+        }
+        if (bodyResolver != null && !bodyResolver.isBuffered()) {
+            // InputStream、Iterator 参数由方法自己读取
+            bodyResolver = null;
+        }
+        String route = httpMethods == null || httpMethods.length == 0 ? uri
+                : String.join(",", httpMethods) + " " + uri;
+        this.latency = Metrics.histogram(Metrics.REQUEST_DURATION, "Time to handle a request, by route",
+                "route", route);
+        this.errors = Metrics.counter(Metrics.REQUEST_ERRORS, "Requests that failed binding, threw or timed out",
+                "route", route);
+        this.traceName = Tracer.register(Tracer.REQUEST, route);
+        this.bindTraceName = Tracer.register(Tracer.BIND, route);
+        if (method != null) {
+            this.handlerTraceName = Tracer.register(Tracer.HANDLER,
+                    method.getDeclaringClass().getName() + "." + method.getName());
+        }
+        MyRateLimit rateLimit = findAnnotation(controller, method, MyRateLimit.class);
+        if (rateLimit != null) {
+            int burst = rateLimit.burst() > 0 ? rateLimit.burst() : (int) Math.max(1, Math.ceil(rateLimit.value()));
+            this.rateLimiter = new RateLimiter(rateLimit.value(), burst);
+        }
+        MyBulkhead bulkhead = findAnnotation(controller, method, MyBulkhead.class);
+        if (bulkhead != null) {
+            ConcurrencyLimiter limiter = ConcurrencyLimiter.create(bulkhead);
+            this.concurrencyLimiter = limiter;
+            Metrics.gauge(Metrics.CONCURRENCY_LIMIT, "Current concurrency limit of a route with @MyBulkhead",
+                    "route", route, limiter::getLimit);
+        }
+    }
+
+    // 方法上的注解优先，其次是 Controller 上的
+    private static <A extends Annotation> A findAnnotation(Class<?> controller, Method method, Class<A> type) {
+        A annotation = method == null ? null : method.getAnnotation(type);
+        if (annotation == null && controller != null) {
+            annotation = controller.getAnnotation(type);
+        }
+        return annotation;
     }
 
-    public boolean handle(ServletRequest req, ServletResponse res) throws
+    /**
+     * 按路由上的 @MyBulkhead、@MyRateLimit 决定是否执行这个请求，不阻塞
+     *
+     * @return 0 表示可以执行，处理完成时由 recordRequest 释放名额，不执行时调用 cancel；
+     * 否则是拒绝时的状态码：超过速率返回 429，超过并发上限返回 503
+     */
+    public int tryAcquire() {
+        if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+            return 503;
+        }
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.cancel();
+            }
+            return 429;
+        }
+        return 0;
+    }
+
+    /**
+     * tryAcquire 成功后没有执行请求(如开始异步处理失败)，释放并发名额
+     */
+    public void cancel() {
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.cancel();
+        }
+    }
+
+    /**
+     * 同步处理：调用方法并写出返回值
+     */
+    public void handle(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) throws
             IllegalAccessException, InvocationTargetException, IOException {
-        String servletUri = ((HttpServletRequest) req).getRequestURI();
-        //判断uri是否匹配
-        if (!uri.equals(servletUri)) {
-            return false;
+        writeResponse(req, res, invoke(req, res, pathVariables));
+    }
+
+    /**
+     * 提取参数并调用方法，返回方法的返回值，异步方法返回的是 CompletionStage
+     */
+    public Object invoke(ServletRequest req, ServletResponse res, Map<String, String> pathVariables) throws
+            IllegalAccessException, InvocationTargetException {
+        // 先按注册时确定的方式提取并转换每个参数，绑定失败时抛出 BindException
+        ArgumentBuffer buffer = argumentBuffers.get();
+        // 同一线程上嵌套调用同一个 handler 时(如在 Controller 中再次分发请求)，参数数组正在使用，另外分配
+        Object[] parameters = buffer.inUse ? new Object[resolvers.length] : buffer.args;
+        boolean borrowed = parameters == buffer.args;
+        buffer.inUse = true;
+        Object response;
+        try {
+            long traceStart = Tracer.begin(bindTraceName);
+            try {
+                for (int i = 0; i < resolvers.length; i++) {
+                    parameters[i] = resolvers[i].resolve(req, res, pathVariables);
+                }
+            } finally {
+                Tracer.end(bindTraceName, traceStart);
+            }
+            // Controller 实例已经绑定在 invoker 上，直接调用，参数在调用时已经复制，调用结束后数组可以复用
+            traceStart = Tracer.begin(handlerTraceName);
+            try {
+                response = invoker.invoke(parameters);
+            } finally {
+                Tracer.end(handlerTraceName, traceStart);
+            }
+        } finally {
+            if (borrowed) {
+                // 清空引用，避免复用的数组让请求对象无法回收
+                Arrays.fill(parameters, null);
+                buffer.inUse = false;
+            }
         }
-        // 如果本 MappingHandler 对应请求 uri 的 uri，
-        // 先根据方法参数名，提取 request 中的参数值
-        Object[] parameters = new Object[args.length];
-        for (int i = 0; i < args.length; i++) {
-            parameters[i] = req.getParameter(args[i]);
+
+        return response;
+    }
+
+    /**
+     * 按请求的 Accept 写出方法的返回值(异步方法是 CompletionStage 完成时的结果)
+     */
+    public void writeResponse(ServletRequest req, ServletResponse res, Object response) throws IOException {
+        ResponseWriter.write(req, res, response);
+    }
+
+    /**
+     * 记录一次请求的处理耗时，同步请求在 handle 返回后、异步请求在写出响应后调用
+     *
+     * @param start  请求开始时的 System.nanoTime()
+     * @param failed 请求是否出错
+     */
+    public void recordRequest(long start, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed);
+        if (failed) {
+            errors.increment();
+        }
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.release(elapsed, failed);
         }
+    }
+
+    /**
+     * 整个请求的 span 名字，见 Tracer.endTrace
+     */
+    public int getTraceName() {
+        return traceName;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public RequestBodyResolver getBodyResolver() {
+        return bodyResolver;
+    }
 
-        // 获取对应 Controller 类实例以调用方法
-        Object ctroller = BeanFactory.getBean(controller);
-        Object response = method.invoke(ctroller, parameters);
+    public String getUri() {
+        return uri;
+    }
+
+    public String[] getHttpMethods() {
+        return httpMethods;
+    }
+
+    public Class<?> getController() {
+        return controller;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
 
-        res.getWriter().println(response.toString());
+    String[] getPathVariableNames() {
+        return pathVariableNames;
+    }
 
-        return true;
+    RouteMatch getExactMatch() {
+        return exactMatch;
+    }
+
+    /*
+     * 一个线程上复用的参数数组
+     * */
+    private static class ArgumentBuffer {
+        private final Object[] args;
+        private boolean inUse;
+
+        ArgumentBuffer(int size) {
+            this.args = new Object[size];
+        }
+    }
+
+    // 解析 uri 中的 {name}
+    private static String[] parsePathVariableNames(String uri) {
+        List<String> names = new ArrayList<>();
+        for (String segment : RouteTable.split(uri)) {
+            if (RouteTable.isVariable(segment)) {
+                names.add(segment.substring(1, segment.length() - 1));
+            }
+        }
+        return names.toArray(new String[names.size()]);
     }
 }
@@ -0,0 +1,63 @@
+package com.wu.servlet.handler;
+
+import com.wu.servlet.json.JsonOutput;
+import com.wu.servlet.json.JsonSerializer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/*
+ * 按请求的 Accept 头决定返回值的写出格式：
+ *   - 返回值是字符串时原样写成 text/plain
+ *   - 其他返回值在接受 JSON 时(没有 Accept、*\/*、application/*、application/json)序列化成 JSON，
+ *     只接受 text/plain 时写成 toString，都不接受时返回 406
+ * 内容都以 UTF-8 字节直接写到 getOutputStream，不经过字符流和中间 String
+ * */
+public class ResponseWriter {
+
+    public static final String JSON = "application/json;charset=UTF-8";
+    public static final String TEXT = "text/plain;charset=UTF-8";
+
+    public static void write(ServletRequest req, ServletResponse res, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String accept = req instanceof HttpServletRequest ? ((HttpServletRequest) req).getHeader("Accept") : null;
+        if (value instanceof CharSequence) {
+            writeText(res, (CharSequence) value);
+        } else if (acceptsJson(accept)) {
+            res.setContentType(JSON);
+            JsonSerializer.write(value, res.getOutputStream());
+        } else if (acceptsText(accept)) {
+            writeText(res, value.toString());
+        } else if (res instanceof HttpServletResponse) {
+            ((HttpServletResponse) res).setStatus(HttpServletResponse.SC_NOT_ACCEPTABLE);
+            writeText(res, "406 not acceptable!");
+        }
+    }
+
+    private static void writeText(ServletResponse res, CharSequence text) throws IOException {
+        res.setContentType(TEXT);
+        ServletOutputStream stream = res.getOutputStream();
+        JsonOutput out = new JsonOutput(stream);
+        try {
+            out.writeText(text);
+            out.flush();
+        } finally {
+            out.release();
+        }
+    }
+
+    static boolean acceptsJson(String accept) {
+        return accept == null || accept.isEmpty() || accept.contains("*/*") || accept.contains("application/*")
+                || accept.contains("json");
+    }
+
+    static boolean acceptsText(String accept) {
+        return accept.contains("text/plain") || accept.contains("text/*");
+    }
+}
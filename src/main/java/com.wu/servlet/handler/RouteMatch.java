@@ -0,0 +1,31 @@
+package com.wu.servlet.handler;
+
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * 路由查找结果：命中的处理器以及从请求路径中解析出的路径变量
+ * */
+public class RouteMatch {
+    // 路径存在但请求方法不匹配
+    static final RouteMatch METHOD_NOT_ALLOWED = new RouteMatch(null, Collections.emptyMap());
+
+    private final MappingHandler handler;
+    private final Map<String, String> pathVariables;
+
+    RouteMatch(MappingHandler handler, Map<String, String> pathVariables) {
+        this.handler = handler;
+        this.pathVariables = pathVariables;
+    }
+
+    /**
+     * @return 命中的处理器，请求方法不匹配时为 null
+     */
+    public MappingHandler getHandler() {
+        return handler;
+    }
+
+    public Map<String, String> getPathVariables() {
+        return pathVariables;
+    }
+}
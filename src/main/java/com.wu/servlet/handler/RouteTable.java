@@ -0,0 +1,261 @@
+package com.wu.servlet.handler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * 路由索引：由 HandlerManager 构建，构建完成后只读(需要变化时整体重建)，请求到来时按路径查找 MappingHandler
+ *   - 不含变量和通配符的路径放在精确匹配的 HashMap 中，一次哈希即可命中
+ *   - 含 {var}、*、** 的路径按 "/" 分段放入前缀树，匹配耗时只与路径段数有关，和路由数量无关
+ * {var}、*、** 必须占据一个完整的路径段，"*.html"、"{id}.json" 这样的部分匹配不支持，注册时抛出异常
+ * 每个路径下再按请求方法区分处理器，没有限定请求方法的处理器作为兜底，HEAD 请求没有对应的处理器时使用 GET 的处理器
+ * */
+public class RouteTable {
+
+    // 精确匹配的路由：key=完整路径
+    private final Map<String, MethodHandlers> exactRoutes = new HashMap<>();
+    // 含路径变量和通配符的路由
+    private final Node root = new Node();
+
+    /**
+     * 注册一个处理器，同一路径同一请求方法重复注册、路径段中部分使用变量或通配符时抛出异常
+     */
+    public void register(MappingHandler handler) {
+        String pattern = handler.getUri();
+        String[] segments = split(pattern);
+        if (!isPattern(segments)) {
+            exactRoutes.computeIfAbsent(normalize(segments), k -> new MethodHandlers())
+                    .add(handler, pattern);
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("**".equals(segment)) {
+                // ** 匹配剩余的所有路径段，因此只允许出现在末尾
+                if (i != segments.length - 1) {
+                    throw new IllegalStateException("** 只能出现在路径末尾: " + pattern);
+                }
+                if (node.catchAllChild == null) {
+                    node.catchAllChild = new Node();
+                }
+                node = node.catchAllChild;
+            } else if ("*".equals(segment)) {
+                if (node.wildcardChild == null) {
+                    node.wildcardChild = new Node();
+                }
+                node = node.wildcardChild;
+            } else if (isVariable(segment)) {
+                if (node.variableChild == null) {
+                    node.variableChild = new Node();
+                }
+                node = node.variableChild;
+            } else if (segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0 || segment.indexOf('}') >= 0) {
+                throw new IllegalStateException("路径变量和通配符必须占据完整的路径段: " + pattern);
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+        if (node.handlers == null) {
+            node.handlers = new MethodHandlers();
+        }
+        node.handlers.add(handler, pattern);
+    }
+
+    /**
+     * 根据请求方法和请求路径查找处理器
+     *
+     * @return 找不到路径时返回 null；路径存在但请求方法不匹配时返回 handler 为 null 的 RouteMatch
+     */
+    public RouteMatch lookup(String httpMethod, String path) {
+        // 1、精确匹配
+        MethodHandlers exact = exactRoutes.get(path);
+        if (exact == null && path.length() > 1 && path.endsWith("/")) {
+            exact = exactRoutes.get(path.substring(0, path.length() - 1));
+        }
+        if (exact != null) {
+            MappingHandler handler = exact.get(httpMethod);
+            return handler != null ? handler.getExactMatch() : RouteMatch.METHOD_NOT_ALLOWED;
+        }
+        // 2、前缀树匹配：优先级为 字面量 > {var} > * > **
+        String[] segments = split(path);
+        Search search = new Search(httpMethod, segments);
+        search.match(root, 0, 0);
+        if (search.handler != null) {
+            return new RouteMatch(search.handler, search.pathVariables());
+        }
+        return search.methodNotAllowed ? RouteMatch.METHOD_NOT_ALLOWED : null;
+    }
+
+    // 路径是否包含变量或通配符
+    private static boolean isPattern(String[] segments) {
+        for (String segment : segments) {
+            if (segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 整个路径段是一个 {var}
+    static boolean isVariable(String segment) {
+        int len = segment.length();
+        return len > 2 && segment.charAt(0) == '{' && segment.charAt(len - 1) == '}'
+                && segment.indexOf('{', 1) < 0 && segment.indexOf('}') == len - 1 && segment.indexOf('*') < 0;
+    }
+
+    private static String normalize(String[] segments) {
+        if (segments.length == 0) {
+            return "/";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String segment : segments) {
+            sb.append('/').append(segment);
+        }
+        return sb.toString();
+    }
+
+    // 按 "/" 切分路径，忽略空段
+    static String[] split(String path) {
+        int count = 0;
+        int len = path.length();
+        for (int i = 0; i < len; ) {
+            int next = path.indexOf('/', i);
+            if (next < 0) {
+                next = len;
+            }
+            if (next > i) {
+                count++;
+            }
+            i = next + 1;
+        }
+        String[] segments = new String[count];
+        int n = 0;
+        for (int i = 0; i < len; ) {
+            int next = path.indexOf('/', i);
+            if (next < 0) {
+                next = len;
+            }
+            if (next > i) {
+                segments[n++] = path.substring(i, next);
+            }
+            i = next + 1;
+        }
+        return segments;
+    }
+
+    /*
+     * 前缀树节点
+     * */
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node variableChild;
+        private Node wildcardChild;
+        private Node catchAllChild;
+        private MethodHandlers handlers;
+    }
+
+    /*
+     * 一次前缀树查找的状态：深度优先回溯，记录沿途路径变量的值
+     * */
+    private static class Search {
+        private final String httpMethod;
+        private final String[] segments;
+        private final String[] values;
+        private MappingHandler handler;
+        private boolean methodNotAllowed;
+
+        Search(String httpMethod, String[] segments) {
+            this.httpMethod = httpMethod;
+            this.segments = segments;
+            this.values = new String[segments.length];
+        }
+
+        boolean match(Node node, int index, int varCount) {
+            if (index == segments.length) {
+                if (accept(node.handlers)) {
+                    return true;
+                }
+                // "/files/**" 同样匹配 "/files"
+                return node.catchAllChild != null && accept(node.catchAllChild.handlers);
+            }
+            String segment = segments[index];
+            Node child = node.children.get(segment);
+            if (child != null && match(child, index + 1, varCount)) {
+                return true;
+            }
+            if (node.variableChild != null) {
+                values[varCount] = segment;
+                if (match(node.variableChild, index + 1, varCount + 1)) {
+                    return true;
+                }
+            }
+            if (node.wildcardChild != null && match(node.wildcardChild, index + 1, varCount)) {
+                return true;
+            }
+            return node.catchAllChild != null && accept(node.catchAllChild.handlers);
+        }
+
+        private boolean accept(MethodHandlers handlers) {
+            if (handlers == null) {
+                return false;
+            }
+            MappingHandler found = handlers.get(httpMethod);
+            if (found == null) {
+                methodNotAllowed = true;
+                return false;
+            }
+            handler = found;
+            return true;
+        }
+
+        Map<String, String> pathVariables() {
+            String[] names = handler.getPathVariableNames();
+            if (names.length == 0) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> variables = new LinkedHashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                variables.put(names[i], values[i]);
+            }
+            return variables;
+        }
+    }
+
+    /*
+     * 同一路径下按请求方法区分的处理器
+     * */
+    private static class MethodHandlers {
+        private final Map<String, MappingHandler> byMethod = new HashMap<>(4);
+        // 未限定请求方法的处理器
+        private MappingHandler any;
+
+        void add(MappingHandler handler, String pattern) {
+            String[] methods = handler.getHttpMethods();
+            if (methods.length == 0) {
+                if (any != null) {
+                    throw new IllegalStateException("重复的请求映射: " + pattern);
+                }
+                any = handler;
+                return;
+            }
+            for (String method : methods) {
+                if (byMethod.putIfAbsent(method.toUpperCase(Locale.ROOT), handler) != null) {
+                    throw new IllegalStateException("重复的请求映射: " + method + " " + pattern);
+                }
+            }
+        }
+
+        MappingHandler get(String httpMethod) {
+            MappingHandler handler = byMethod.get(httpMethod);
+            // HEAD 和 GET 的处理相同，只是不输出响应体(由 HttpServlet.doHead 丢弃)
+            if (handler == null && "HEAD".equals(httpMethod)) {
+                handler = byMethod.get("GET");
+            }
+            return handler != null ? handler : any;
+        }
+    }
+}
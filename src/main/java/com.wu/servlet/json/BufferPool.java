@@ -0,0 +1,27 @@
+package com.wu.servlet.json;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+ * 写响应用的字节缓冲池：所有线程共用，不依赖 ThreadLocal，虚拟线程下同样有效
+ * 池满时归还的缓冲直接丢弃，池空时新建
+ * */
+public class BufferPool {
+
+    public static final int BUFFER_SIZE = 8192;
+    // 最多保留的缓冲个数
+    private static final int MAX_POOLED = 256;
+
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    public static byte[] acquire() {
+        byte[] buffer = POOL.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    public static void release(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE) {
+            POOL.offer(buffer);
+        }
+    }
+}
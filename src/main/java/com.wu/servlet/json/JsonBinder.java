@@ -0,0 +1,466 @@
+package com.wu.servlet.json;
+
+import com.wu.servlet.bind.Converter;
+import com.wu.servlet.bind.Converters;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/*
+ * 把 JsonParser 的事件直接绑定成目标类型的对象，不生成中间的 Map/List 树：
+ *   - 对象绑定到 Map(键按键类型转换)或普通类(无参构造器创建，属性按名字设置，未知属性忽略)
+ *   - 数组绑定到 List/Set/Collection 或 Java 数组，元素类型取自泛型参数
+ *   - 字符串、数字、布尔按目标类型转换，目标为 Object 时得到 Map/List/String/Long/Double/Boolean
+ * 普通类的绑定计划(构造器和每个属性的 MethodHandle)每个类只生成一次
+ * 类型不匹配时抛出 JsonException
+ * */
+public class JsonBinder implements JsonHandler {
+
+    private static final ClassValue<BeanPlan> PLANS = new ClassValue<BeanPlan>() {
+        @Override
+        protected BeanPlan computeValue(Class<?> type) {
+            return BeanPlan.create(type);
+        }
+    };
+
+    // 跳过未知属性的值，无状态，可以共用
+    private static final Frame SKIP = new Frame() {
+        @Override
+        Type valueType() {
+            return null;
+        }
+
+        @Override
+        void add(Object value) {
+        }
+
+        @Override
+        Object end() {
+            return null;
+        }
+    };
+
+    private final Type type;
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private Object result;
+    private boolean complete;
+
+    public JsonBinder(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * 顶层的值是否已经完整绑定
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    // 下一个值的目标类型，为null表示跳过
+    private Type expectedType() {
+        return frames.isEmpty() ? type : frames.peek().valueType();
+    }
+
+    private void deliver(Object value) {
+        if (frames.isEmpty()) {
+            result = value;
+            complete = true;
+        } else {
+            frames.peek().add(value);
+        }
+    }
+
+    @Override
+    public void startObject() {
+        Type t = expectedType();
+        if (t == null) {
+            frames.push(SKIP);
+            return;
+        }
+        Class<?> raw = rawClass(t);
+        if (raw == Object.class || Map.class.isAssignableFrom(raw)) {
+            frames.push(new MapFrame(newMap(raw), typeArgument(t, 0), typeArgument(t, 1)));
+        } else if (isBean(raw)) {
+            frames.push(new BeanFrame(PLANS.get(raw)));
+        } else {
+            throw new JsonException("JSON 对象无法转换为 " + t.getTypeName());
+        }
+    }
+
+    @Override
+    public void endObject() {
+        deliver(frames.pop().end());
+    }
+
+    @Override
+    public void key(String name) {
+        frames.peek().key(name);
+    }
+
+    @Override
+    public void startArray() {
+        Type t = expectedType();
+        if (t == null) {
+            frames.push(SKIP);
+            return;
+        }
+        Class<?> raw = rawClass(t);
+        if (raw.isArray()) {
+            Type componentType = t instanceof GenericArrayType
+                    ? ((GenericArrayType) t).getGenericComponentType() : raw.getComponentType();
+            frames.push(new CollectionFrame(new ArrayList<>(), componentType, raw.getComponentType()));
+        } else if (raw == Object.class || raw.isAssignableFrom(ArrayList.class)) {
+            frames.push(new CollectionFrame(new ArrayList<>(), typeArgument(t, 0), null));
+        } else if (Collection.class.isAssignableFrom(raw)) {
+            frames.push(new CollectionFrame(newCollection(raw, t), typeArgument(t, 0), null));
+        } else {
+            throw new JsonException("JSON 数组无法转换为 " + t.getTypeName());
+        }
+    }
+
+    @Override
+    public void endArray() {
+        deliver(frames.pop().end());
+    }
+
+    @Override
+    public void string(String value) {
+        Type t = expectedType();
+        deliver(t == null ? null : convert(t, value, false));
+    }
+
+    @Override
+    public void number(String text) {
+        Type t = expectedType();
+        deliver(t == null ? null : convert(t, text, true));
+    }
+
+    @Override
+    public void bool(boolean value) {
+        Type t = expectedType();
+        if (t == null) {
+            deliver(null);
+            return;
+        }
+        Class<?> raw = rawClass(t);
+        if (raw == boolean.class || raw == Boolean.class || raw == Object.class) {
+            deliver(value);
+        } else if (raw == String.class) {
+            deliver(String.valueOf(value));
+        } else {
+            throw new JsonException("布尔值无法转换为 " + t.getTypeName());
+        }
+    }
+
+    @Override
+    public void nullValue() {
+        deliver(null);
+    }
+
+    private static Object convert(Type t, String text, boolean number) {
+        Class<?> raw = rawClass(t);
+        if (raw == String.class || raw == CharSequence.class || (raw == Object.class && !number)) {
+            return text;
+        }
+        if (number && (raw == Object.class || raw == Number.class)) {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    return new BigInteger(text);
+                }
+            }
+            return Double.parseDouble(text);
+        }
+        try {
+            if (raw == BigDecimal.class) {
+                return new BigDecimal(text.trim());
+            }
+            if (raw == BigInteger.class) {
+                return new BigInteger(text.trim());
+            }
+            Converter converter = Converters.forClass(raw);
+            if (converter != null) {
+                return converter.convert(text);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new JsonException("'" + text + "' 无法转换为 " + t.getTypeName(), e);
+        }
+        throw new JsonException((number ? "数字" : "字符串") + " '" + text + "' 无法转换为 " + t.getTypeName());
+    }
+
+    private static Class<?> rawClass(Type t) {
+        if (t instanceof Class) {
+            return (Class<?>) t;
+        }
+        if (t instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) t).getRawType();
+        }
+        if (t instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) t).getGenericComponentType()), 0).getClass();
+        }
+        if (t instanceof WildcardType) {
+            return rawClass(((WildcardType) t).getUpperBounds()[0]);
+        }
+        // 类型变量无法确定具体类型
+        return Object.class;
+    }
+
+    // 泛型参数，没有时为 Object
+    private static Type typeArgument(Type t, int index) {
+        if (t instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) t).getActualTypeArguments();
+            if (index < arguments.length) {
+                return arguments[index];
+            }
+        }
+        return Object.class;
+    }
+
+    private static boolean isBean(Class<?> raw) {
+        return !raw.isInterface() && !raw.isPrimitive() && !raw.isArray() && !raw.isEnum()
+                && !Modifier.isAbstract(raw.getModifiers()) && !raw.getName().startsWith("java.");
+    }
+
+    private static Map<Object, Object> newMap(Class<?> raw) {
+        if (raw.isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>();
+        }
+        if (raw.isAssignableFrom(TreeMap.class)) {
+            return new TreeMap<>();
+        }
+        throw new JsonException("不支持的 Map 类型 " + raw.getName());
+    }
+
+    private static Collection<Object> newCollection(Class<?> raw, Type t) {
+        if (raw.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>();
+        }
+        if (raw.isAssignableFrom(TreeSet.class)) {
+            return new TreeSet<>();
+        }
+        if (raw.isAssignableFrom(ArrayDeque.class)) {
+            return new ArrayDeque<>();
+        }
+        throw new JsonException("不支持的集合类型 " + t.getTypeName());
+    }
+
+    /*
+     * 正在绑定的一个对象或数组
+     * */
+    private abstract static class Frame {
+        // 下一个值的目标类型，为null表示跳过
+        abstract Type valueType();
+
+        void key(String name) {
+        }
+
+        abstract void add(Object value);
+
+        abstract Object end();
+    }
+
+    private static class MapFrame extends Frame {
+        private final Map<Object, Object> map;
+        // 键不是字符串时的转换器
+        private final Converter keyConverter;
+        private final Type keyType;
+        private final Type valueType;
+        private String key;
+
+        MapFrame(Map<Object, Object> map, Type keyType, Type valueType) {
+            this.map = map;
+            Class<?> rawKey = rawClass(keyType);
+            this.keyConverter = rawKey == String.class || rawKey == Object.class ? null : Converters.forClass(rawKey);
+            if (keyConverter == null && rawKey != String.class && rawKey != Object.class) {
+                throw new JsonException("不支持的 Map 键类型 " + keyType.getTypeName());
+            }
+            this.keyType = keyType;
+            this.valueType = valueType;
+        }
+
+        @Override
+        Type valueType() {
+            return valueType;
+        }
+
+        @Override
+        void key(String name) {
+            key = name;
+        }
+
+        @Override
+        void add(Object value) {
+            if (keyConverter == null) {
+                map.put(key, value);
+                return;
+            }
+            try {
+                map.put(keyConverter.convert(key), value);
+            } catch (IllegalArgumentException e) {
+                throw new JsonException("键 '" + key + "' 无法转换为 " + keyType.getTypeName(), e);
+            }
+        }
+
+        @Override
+        Object end() {
+            return map;
+        }
+    }
+
+    private static class CollectionFrame extends Frame {
+        private final Collection<Object> elements;
+        private final Type elementType;
+        // 绑定到 Java 数组时的元素类型，否则为null
+        private final Class<?> arrayType;
+
+        CollectionFrame(Collection<Object> elements, Type elementType, Class<?> arrayType) {
+            this.elements = elements;
+            this.elementType = elementType;
+            this.arrayType = arrayType;
+        }
+
+        @Override
+        Type valueType() {
+            return elementType;
+        }
+
+        @Override
+        void add(Object value) {
+            elements.add(value);
+        }
+
+        @Override
+        Object end() {
+            if (arrayType == null) {
+                return elements;
+            }
+            Object array = Array.newInstance(arrayType, elements.size());
+            int i = 0;
+            for (Object element : elements) {
+                if (element != null || !arrayType.isPrimitive()) {
+                    Array.set(array, i, element);
+                }
+                i++;
+            }
+            return array;
+        }
+    }
+
+    private static class BeanFrame extends Frame {
+        private final BeanPlan plan;
+        private final Object bean;
+        // 当前属性，未知属性为null
+        private Setter setter;
+
+        BeanFrame(BeanPlan plan) {
+            this.plan = plan;
+            this.bean = plan.newInstance();
+        }
+
+        @Override
+        Type valueType() {
+            return setter == null ? null : setter.type;
+        }
+
+        @Override
+        void key(String name) {
+            setter = plan.setters.get(name);
+        }
+
+        @Override
+        void add(Object value) {
+            if (setter != null && (value != null || !setter.primitive)) {
+                setter.set(bean, value);
+            }
+        }
+
+        @Override
+        Object end() {
+            return bean;
+        }
+    }
+
+    /*
+     * 一个类的绑定计划
+     * */
+    private static class BeanPlan {
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private final Map<String, Setter> setters;
+
+        private BeanPlan(Class<?> type, MethodHandle constructor, Map<String, Setter> setters) {
+            this.type = type;
+            this.constructor = constructor;
+            this.setters = setters;
+        }
+
+        static BeanPlan create(Class<?> type) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+                Map<String, Setter> setters = new HashMap<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    MethodHandles.Lookup fieldLookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+                                || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                            continue;
+                        }
+                        // 子类的属性优先
+                        setters.putIfAbsent(field.getName(), new Setter(field.getGenericType(),
+                                field.getType().isPrimitive(), fieldLookup.unreflectSetter(field)));
+                    }
+                }
+                return new BeanPlan(type, constructor, setters);
+            } catch (NoSuchMethodException e) {
+                throw new JsonException("绑定 JSON 的类需要无参构造器: " + type.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new JsonException("无法访问 " + type.getName(), e);
+            }
+        }
+
+        Object newInstance() {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("创建 " + type.getName() + " 失败", e);
+            }
+        }
+    }
+
+    private static class Setter {
+        private final Type type;
+        private final boolean primitive;
+        private final MethodHandle handle;
+
+        Setter(Type type, boolean primitive, MethodHandle handle) {
+            this.type = type;
+            this.primitive = primitive;
+            this.handle = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        void set(Object bean, Object value) {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
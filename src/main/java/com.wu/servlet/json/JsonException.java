@@ -0,0 +1,15 @@
+package com.wu.servlet.json;
+
+/*
+ * JSON 格式错误，或 JSON 值无法转换成目标类型
+ * */
+public class JsonException extends IllegalArgumentException {
+
+    public JsonException(String message) {
+        super(message);
+    }
+
+    public JsonException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
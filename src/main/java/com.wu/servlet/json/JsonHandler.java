@@ -0,0 +1,27 @@
+package com.wu.servlet.json;
+
+/*
+ * JsonParser 解析出的事件，按在 JSON 中出现的顺序回调
+ * */
+public interface JsonHandler {
+
+    void startObject();
+
+    void endObject();
+
+    // 对象中的属性名，之后紧跟属性值的事件
+    void key(String name);
+
+    void startArray();
+
+    void endArray();
+
+    void string(String value);
+
+    // 数字的原始文本，由接收方按需要的类型转换，不丢失精度
+    void number(String text);
+
+    void bool(boolean value);
+
+    void nullValue();
+}
@@ -0,0 +1,157 @@
+package com.wu.servlet.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * 从输入流中逐个读出元素：顶层是数组时返回数组的每个元素，否则返回每个顶层值(NDJSON)
+ * 每次只读一个缓冲大小的数据并解析，内存中只有已解析但还没有被取走的元素，适合批量导入的大请求体
+ * 读取是阻塞的，在调用 hasNext/next 的线程上进行
+ * */
+public class JsonIterator implements Iterator<Object>, JsonHandler {
+
+    // 队列中代表 null 元素
+    private static final Object NULL = new Object();
+
+    private final InputStream in;
+    private final Type elementType;
+    private final JsonParser parser = new JsonParser(this, true);
+    private final ArrayDeque<Object> ready = new ArrayDeque<>();
+    private byte[] buffer = BufferPool.acquire();
+    private boolean eof;
+    // 是否已经开始解析第一个顶层值
+    private boolean started;
+    // 是否在顶层数组中
+    private boolean inArray;
+    // 正在绑定的元素
+    private JsonBinder element;
+
+    public JsonIterator(InputStream in, Type elementType) {
+        this.in = in;
+        this.elementType = elementType;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (ready.isEmpty() && !eof) {
+            fill();
+        }
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object value = ready.poll();
+        return value == NULL ? null : value;
+    }
+
+    private void fill() {
+        int n;
+        try {
+            n = in.read(buffer);
+        } catch (IOException e) {
+            release();
+            throw new UncheckedIOException(e);
+        }
+        if (n < 0) {
+            release();
+            parser.finish();
+        } else if (n > 0) {
+            parser.feed(buffer, 0, n);
+        }
+    }
+
+    private void release() {
+        eof = true;
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private JsonBinder element() {
+        started = true;
+        if (element == null) {
+            element = new JsonBinder(elementType);
+        }
+        return element;
+    }
+
+    private void elementDone() {
+        if (element.isComplete()) {
+            Object value = element.getResult();
+            ready.add(value == null ? NULL : value);
+            element = null;
+        }
+    }
+
+    @Override
+    public void startObject() {
+        element().startObject();
+        elementDone();
+    }
+
+    @Override
+    public void endObject() {
+        element.endObject();
+        elementDone();
+    }
+
+    @Override
+    public void key(String name) {
+        element.key(name);
+    }
+
+    @Override
+    public void startArray() {
+        if (!started) {
+            started = true;
+            inArray = true;
+            return;
+        }
+        element().startArray();
+        elementDone();
+    }
+
+    @Override
+    public void endArray() {
+        if (element == null && inArray) {
+            inArray = false;
+            return;
+        }
+        element.endArray();
+        elementDone();
+    }
+
+    @Override
+    public void string(String value) {
+        element().string(value);
+        elementDone();
+    }
+
+    @Override
+    public void number(String text) {
+        element().number(text);
+        elementDone();
+    }
+
+    @Override
+    public void bool(boolean value) {
+        element().bool(value);
+        elementDone();
+    }
+
+    @Override
+    public void nullValue() {
+        element().nullValue();
+        elementDone();
+    }
+}
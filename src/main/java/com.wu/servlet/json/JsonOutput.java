@@ -0,0 +1,222 @@
+package com.wu.servlet.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * 直接向 OutputStream 写 UTF-8 字节的 JSON 输出：字符串逐字符转义和编码到池化的缓冲中，
+ * 数字直接写成 ASCII 数字，缓冲写满就交给底层输出流，不产生中间 String
+ * 用完后必须调用 release 归还缓冲
+ * */
+public class JsonOutput {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+    // 写一个字符最多需要的字节数：\\uXXXX 或 4 字节 UTF-8
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int position;
+
+    public JsonOutput(OutputStream out) {
+        this.out = out;
+        this.buffer = BufferPool.acquire();
+    }
+
+    public void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    public void writeRaw(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flush();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    public void writeNull() throws IOException {
+        writeRaw(NULL);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeRaw(value ? TRUE : FALSE);
+    }
+
+    public void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        if (buffer.length - position < 20) {
+            flush();
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    public void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // JSON 不能表示 NaN 和无穷大
+            writeNull();
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    public void writeFloat(float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeNull();
+        } else if (value == (long) value && Math.abs(value) < 1e7f) {
+            writeLong((long) value);
+        } else {
+            writeAscii(Float.toString(value));
+        }
+    }
+
+    /**
+     * 写只包含 ASCII 字符、不需要转义的内容，如数字
+     */
+    public void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    /**
+     * 写带引号、转义过的 JSON 字符串
+     */
+    public void writeString(CharSequence text) throws IOException {
+        writeByte('"');
+        write(text, true);
+        writeByte('"');
+    }
+
+    /**
+     * 写不转义的纯文本，编码为 UTF-8
+     */
+    public void writeText(CharSequence text) throws IOException {
+        write(text, false);
+    }
+
+    private void write(CharSequence text, boolean escape) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.length - position < MAX_CHAR_BYTES) {
+                flush();
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c < 0x20 || c == '"' || c == '\\')) {
+                    writeEscape(c);
+                } else {
+                    buffer[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符无法编码为 UTF-8
+                if (escape) {
+                    writeUnicodeEscape(c);
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writeEscape(char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+                buffer[position++] = '"';
+                break;
+            case '\\':
+                buffer[position++] = '\\';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            default:
+                position--;
+                writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xf];
+        buffer[position++] = HEX[(c >> 8) & 0xf];
+        buffer[position++] = HEX[(c >> 4) & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+    }
+
+    /**
+     * 把缓冲中的内容写到底层输出流
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * 归还缓冲，之后不能再使用
+     */
+    public void release() {
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.wu.servlet.json;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * 增量(推送式)的 JSON 解析器：字节按到达的顺序分块传入 feed，解析出的事件立即回调给 JsonHandler
+ * 字符串、数字、true/false/null 可以跨越两次 feed，解析器只保存当前未完成的一个词，不缓存整个输入
+ * 字符串按 UTF-8 解码；multipleValues 为 true 时允许多个顶层值(如 NDJSON，每行一个 JSON)
+ * 所有错误抛出 JsonException
+ * */
+public class JsonParser {
+
+    // 最大嵌套层数
+    private static final int MAX_DEPTH = 512;
+
+    // 期待一个值
+    private static final int VALUE = 0;
+    // '{' 之后，期待属性名或 '}'
+    private static final int FIRST_KEY = 1;
+    // ',' 之后，期待属性名
+    private static final int KEY = 2;
+    // 属性名之后，期待 ':'
+    private static final int COLON = 3;
+    // 一个值之后，期待 ',' 或结束符
+    private static final int AFTER_VALUE = 4;
+    // '[' 之后，期待值或 ']'
+    private static final int FIRST_ELEMENT = 5;
+    private static final int STRING = 6;
+    private static final int ESCAPE = 7;
+    private static final int UNICODE = 8;
+    private static final int NUMBER = 9;
+    private static final int LITERAL = 10;
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private final JsonHandler handler;
+    private final boolean multipleValues;
+    private int state = VALUE;
+    // 每一层容器是否是对象
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    // 已经处理的字节数，用于错误信息
+    private long position;
+
+    // 当前字符串(未解码的 UTF-8 字节)或数字的内容
+    private byte[] bytes = new byte[64];
+    private int byteCount;
+    // 字符串中出现转义时，已解码的内容
+    private StringBuilder chars;
+    private boolean escaped;
+    private boolean stringIsKey;
+    private int unicode;
+    private int unicodeDigits;
+    private byte[] literal;
+    private int literalIndex;
+
+    public JsonParser(JsonHandler handler) {
+        this(handler, false);
+    }
+
+    public JsonParser(JsonHandler handler, boolean multipleValues) {
+        this.handler = handler;
+        this.multipleValues = multipleValues;
+    }
+
+    public void feed(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (state == STRING) {
+                // 字符串中的普通字节批量复制
+                int start = i;
+                while (i < end) {
+                    byte b = buffer[i];
+                    if (b == '"' || b == '\\' || (b >= 0 && b < 0x20)) {
+                        break;
+                    }
+                    i++;
+                }
+                append(buffer, start, i - start);
+                position += i - start;
+                if (i == end) {
+                    break;
+                }
+            }
+            position++;
+            consume(buffer[i++]);
+        }
+    }
+
+    /**
+     * 输入结束：结束末尾的数字，检查 JSON 是否完整
+     */
+    public void finish() {
+        if (state == NUMBER) {
+            endNumber();
+        }
+        // VALUE 状态且没有嵌套时输入为空，交给 handler 判断是否允许
+        if (depth > 0 || (state != AFTER_VALUE && state != VALUE)) {
+            throw error("JSON 不完整");
+        }
+    }
+
+    private void consume(byte b) {
+        switch (state) {
+            case VALUE:
+            case FIRST_ELEMENT:
+                if (isWhitespace(b)) {
+                    return;
+                }
+                if (b == ']' && state == FIRST_ELEMENT) {
+                    endContainer(false);
+                    return;
+                }
+                startValue(b);
+                return;
+            case FIRST_KEY:
+            case KEY:
+                if (isWhitespace(b)) {
+                    return;
+                }
+                if (b == '}' && state == FIRST_KEY) {
+                    endContainer(true);
+                } else if (b == '"') {
+                    startString(true);
+                } else {
+                    throw error("需要属性名");
+                }
+                return;
+            case COLON:
+                if (isWhitespace(b)) {
+                    return;
+                }
+                if (b != ':') {
+                    throw error("需要 ':'");
+                }
+                state = VALUE;
+                return;
+            case AFTER_VALUE:
+                if (isWhitespace(b)) {
+                    return;
+                }
+                if (depth == 0) {
+                    if (!multipleValues) {
+                        throw error("JSON 结束后还有多余的内容");
+                    }
+                    state = VALUE;
+                    startValue(b);
+                } else if (b == ',') {
+                    state = objects[depth - 1] ? KEY : VALUE;
+                } else if (b == '}' && objects[depth - 1]) {
+                    endContainer(true);
+                } else if (b == ']' && !objects[depth - 1]) {
+                    endContainer(false);
+                } else {
+                    throw error("需要 ',' 或结束符");
+                }
+                return;
+            case STRING:
+                if (b == '"') {
+                    endString();
+                } else if (b == '\\') {
+                    decodeBytes();
+                    escaped = true;
+                    state = ESCAPE;
+                } else {
+                    throw error("字符串中有未转义的控制字符");
+                }
+                return;
+            case ESCAPE:
+                consumeEscape(b);
+                return;
+            case UNICODE:
+                int digit = Character.digit(b, 16);
+                if (digit < 0) {
+                    throw error("\\u 后需要4位十六进制数");
+                }
+                unicode = unicode * 16 + digit;
+                if (++unicodeDigits == 4) {
+                    chars.append((char) unicode);
+                    state = STRING;
+                }
+                return;
+            case NUMBER:
+                if ((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                    append(b);
+                    return;
+                }
+                endNumber();
+                // 结束数字的字节属于后面的内容
+                consume(b);
+                return;
+            case LITERAL:
+                if (b != literal[literalIndex++]) {
+                    throw error("无法识别的值");
+                }
+                if (literalIndex == literal.length) {
+                    if (literal == NULL) {
+                        handler.nullValue();
+                    } else {
+                        handler.bool(literal == TRUE);
+                    }
+                    endValue();
+                }
+                return;
+            default:
+                throw new IllegalStateException("未知的状态 " + state);
+        }
+    }
+
+    private void startValue(byte b) {
+        switch (b) {
+            case '{':
+                push(true);
+                handler.startObject();
+                state = FIRST_KEY;
+                return;
+            case '[':
+                push(false);
+                handler.startArray();
+                state = FIRST_ELEMENT;
+                return;
+            case '"':
+                startString(false);
+                return;
+            case 't':
+                startLiteral(TRUE);
+                return;
+            case 'f':
+                startLiteral(FALSE);
+                return;
+            case 'n':
+                startLiteral(NULL);
+                return;
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    byteCount = 0;
+                    append(b);
+                    state = NUMBER;
+                    return;
+                }
+                throw error("无法识别的值");
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == MAX_DEPTH) {
+            throw error("嵌套超过 " + MAX_DEPTH + " 层");
+        }
+        if (depth == objects.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(objects, 0, grown, 0, depth);
+            objects = grown;
+        }
+        objects[depth++] = object;
+    }
+
+    private void endContainer(boolean object) {
+        depth--;
+        if (object) {
+            handler.endObject();
+        } else {
+            handler.endArray();
+        }
+        endValue();
+    }
+
+    private void endValue() {
+        state = AFTER_VALUE;
+    }
+
+    private void startString(boolean key) {
+        stringIsKey = key;
+        byteCount = 0;
+        escaped = false;
+        if (chars != null) {
+            chars.setLength(0);
+        }
+        state = STRING;
+    }
+
+    private void startLiteral(byte[] expected) {
+        literal = expected;
+        literalIndex = 1;
+        state = LITERAL;
+    }
+
+    private void consumeEscape(byte b) {
+        char c;
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                c = (char) b;
+                break;
+            case 'b':
+                c = '\b';
+                break;
+            case 'f':
+                c = '\f';
+                break;
+            case 'n':
+                c = '\n';
+                break;
+            case 'r':
+                c = '\r';
+                break;
+            case 't':
+                c = '\t';
+                break;
+            case 'u':
+                unicode = 0;
+                unicodeDigits = 0;
+                state = UNICODE;
+                return;
+            default:
+                throw error("无效的转义字符");
+        }
+        chars.append(c);
+        state = STRING;
+    }
+
+    private void endString() {
+        String value;
+        if (escaped) {
+            decodeBytes();
+            value = chars.toString();
+        } else {
+            value = new String(bytes, 0, byteCount, StandardCharsets.UTF_8);
+        }
+        if (stringIsKey) {
+            handler.key(value);
+            state = COLON;
+        } else {
+            handler.string(value);
+            endValue();
+        }
+    }
+
+    // 把已收到的字节解码后放入 chars，只在转义符和字符串结尾处调用，这时不会截断多字节字符
+    private void decodeBytes() {
+        if (chars == null) {
+            chars = new StringBuilder();
+        }
+        if (byteCount > 0) {
+            chars.append(new String(bytes, 0, byteCount, StandardCharsets.UTF_8));
+            byteCount = 0;
+        }
+    }
+
+    private void endNumber() {
+        if (!isNumber(bytes, byteCount)) {
+            throw error("无效的数字");
+        }
+        handler.number(new String(bytes, 0, byteCount, StandardCharsets.ISO_8859_1));
+        endValue();
+    }
+
+    // -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+    private static boolean isNumber(byte[] text, int length) {
+        int i = 0;
+        if (i < length && text[i] == '-') {
+            i++;
+        }
+        if (i < length && text[i] == '0') {
+            i++;
+        } else {
+            int start = i;
+            while (i < length && isDigit(text[i])) {
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && text[i] == '.') {
+            int start = ++i;
+            while (i < length && isDigit(text[i])) {
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && (text[i] == 'e' || text[i] == 'E')) {
+            i++;
+            if (i < length && (text[i] == '+' || text[i] == '-')) {
+                i++;
+            }
+            int start = i;
+            while (i < length && isDigit(text[i])) {
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private void append(byte b) {
+        if (byteCount == bytes.length) {
+            grow(byteCount + 1);
+        }
+        bytes[byteCount++] = b;
+    }
+
+    private void append(byte[] buffer, int offset, int length) {
+        if (byteCount + length > bytes.length) {
+            grow(byteCount + length);
+        }
+        System.arraycopy(buffer, offset, bytes, byteCount, length);
+        byteCount += length;
+    }
+
+    private void grow(int minCapacity) {
+        byte[] grown = new byte[Math.max(minCapacity, bytes.length * 2)];
+        System.arraycopy(bytes, 0, grown, 0, byteCount);
+        bytes = grown;
+    }
+
+    private JsonException error(String message) {
+        return new JsonException(message + "，位于第 " + position + " 个字节");
+    }
+}
@@ -0,0 +1,403 @@
+package com.wu.servlet.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * 不依赖运行时反射的 JSON 序列化：每个类第一次序列化时生成一次写出计划并缓存在 ClassValue 中
+ *   - 字符串、数字、布尔、枚举、字符直接写出，Map 写成对象，数组和 Iterable 写成数组
+ *   - 其他 JDK 类型(日期、UUID等)写成 toString 的字符串
+ *   - 其他类按属性写成对象：属性(包括父类的，不包括 static、transient)的读取用 MethodHandle，
+ *     基本类型属性按确切类型读取，不装箱；属性名连同引号、冒号预先编码成字节
+ * 输出经 JsonOutput 以 UTF-8 字节写到输出流，集合元素逐个写出，大列表不会在堆上生成完整的 JSON 字符串
+ * */
+public class JsonSerializer {
+
+    // 最大嵌套层数，超过时认为存在循环引用
+    private static final int MAX_DEPTH = 256;
+
+    private static final ClassValue<ValueWriter> WRITERS = new ClassValue<ValueWriter>() {
+        @Override
+        protected ValueWriter computeValue(Class<?> type) {
+            return createWriter(type);
+        }
+    };
+
+    /*
+     * 一个类的写出计划
+     * */
+    interface ValueWriter {
+        void write(Object value, JsonOutput out, int depth) throws IOException;
+    }
+
+    /**
+     * 把 value 序列化后写到 out，写完后不关闭 out
+     */
+    public static void write(Object value, OutputStream out) throws IOException {
+        JsonOutput output = new JsonOutput(out);
+        try {
+            write(value, output);
+            output.flush();
+        } finally {
+            output.release();
+        }
+    }
+
+    public static void write(Object value, JsonOutput out) throws IOException {
+        writeValue(value, out, 0);
+    }
+
+    public static String toJson(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(value, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static void writeValue(Object value, JsonOutput out, int depth) throws IOException {
+        if (value == null) {
+            out.writeNull();
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalStateException("对象嵌套超过 " + MAX_DEPTH + " 层，可能存在循环引用: "
+                    + value.getClass().getName());
+        }
+        WRITERS.get(value.getClass()).write(value, out, depth);
+    }
+
+    private static ValueWriter createWriter(Class<?> type) {
+        if (CharSequence.class.isAssignableFrom(type)) {
+            return (value, out, depth) -> out.writeString((CharSequence) value);
+        }
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == java.util.concurrent.atomic.AtomicInteger.class
+                || type == java.util.concurrent.atomic.AtomicLong.class) {
+            return (value, out, depth) -> out.writeLong(((Number) value).longValue());
+        }
+        if (type == Double.class) {
+            return (value, out, depth) -> out.writeDouble((Double) value);
+        }
+        if (type == Float.class) {
+            return (value, out, depth) -> out.writeFloat((Float) value);
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            // BigDecimal、BigInteger 等
+            return (value, out, depth) -> out.writeAscii(value.toString());
+        }
+        if (type == Boolean.class) {
+            return (value, out, depth) -> out.writeBoolean((Boolean) value);
+        }
+        if (type == Character.class) {
+            return (value, out, depth) -> out.writeString(String.valueOf((char) (Character) value));
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return (value, out, depth) -> out.writeString(((Enum<?>) value).name());
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return JsonSerializer::writeMap;
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            return JsonSerializer::writeIterable;
+        }
+        if (type == Optional.class) {
+            return (value, out, depth) -> writeValue(((Optional<?>) value).orElse(null), out, depth);
+        }
+        if (type.isArray()) {
+            return arrayWriter(type.getComponentType());
+        }
+        if (type == Object.class) {
+            return (value, out, depth) -> out.writeRaw(new byte[]{'{', '}'});
+        }
+        String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")) {
+            return (value, out, depth) -> out.writeString(value.toString());
+        }
+        return BeanWriter.create(type);
+    }
+
+    private static void writeMap(Object value, JsonOutput out, int depth) throws IOException {
+        out.writeByte('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            if (!first) {
+                out.writeByte(',');
+            }
+            first = false;
+            Object key = entry.getKey();
+            out.writeString(key instanceof CharSequence ? (CharSequence) key : String.valueOf(key));
+            out.writeByte(':');
+            writeValue(entry.getValue(), out, depth + 1);
+        }
+        out.writeByte('}');
+    }
+
+    private static void writeIterable(Object value, JsonOutput out, int depth) throws IOException {
+        out.writeByte('[');
+        boolean first = true;
+        for (Object element : (Iterable<?>) value) {
+            if (!first) {
+                out.writeByte(',');
+            }
+            first = false;
+            writeValue(element, out, depth + 1);
+        }
+        out.writeByte(']');
+    }
+
+    private static ValueWriter arrayWriter(Class<?> componentType) {
+        if (componentType == int.class) {
+            return (value, out, depth) -> {
+                int[] array = (int[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType == long.class) {
+            return (value, out, depth) -> {
+                long[] array = (long[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType == double.class) {
+            return (value, out, depth) -> {
+                double[] array = (double[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeDouble(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (componentType == char.class) {
+            return (value, out, depth) -> out.writeString(new String((char[]) value));
+        }
+        if (componentType.isPrimitive()) {
+            // byte、short、float、boolean 数组较少见，逐个装箱写出
+            return (value, out, depth) -> {
+                int length = Array.getLength(value);
+                out.writeByte('[');
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    writeValue(Array.get(value, i), out, depth + 1);
+                }
+                out.writeByte(']');
+            };
+        }
+        return (value, out, depth) -> {
+            Object[] array = (Object[]) value;
+            out.writeByte('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                writeValue(array[i], out, depth + 1);
+            }
+            out.writeByte(']');
+        };
+    }
+
+    /*
+     * 按属性写成 JSON 对象
+     * */
+    private static class BeanWriter implements ValueWriter {
+        private final Property[] properties;
+
+        private BeanWriter(Property[] properties) {
+            this.properties = properties;
+        }
+
+        static BeanWriter create(Class<?> type) {
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+            }
+            List<Property> properties = new ArrayList<>();
+            for (Class<?> c : hierarchy) {
+                MethodHandles.Lookup lookup;
+                try {
+                    lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("无法读取 " + c.getName() + " 的属性", e);
+                }
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    try {
+                        properties.add(Property.create(field, lookup.unreflectGetter(field)));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("无法读取属性 " + field, e);
+                    }
+                }
+            }
+            return new BeanWriter(properties.toArray(new Property[0]));
+        }
+
+        @Override
+        public void write(Object value, JsonOutput out, int depth) throws IOException {
+            out.writeByte('{');
+            for (int i = 0; i < properties.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                Property property = properties[i];
+                out.writeRaw(property.name);
+                try {
+                    property.write(value, out, depth + 1);
+                } catch (IOException | RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            out.writeByte('}');
+        }
+    }
+
+    /*
+     * 一个属性：预先编码好的 "name": 和按属性类型选择的读取、写出方式
+     * */
+    private abstract static class Property {
+        final byte[] name;
+        final MethodHandle getter;
+
+        Property(Field field, MethodHandle getter, Class<?> readType) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            JsonOutput out = new JsonOutput(bytes);
+            try {
+                out.writeString(field.getName());
+                out.writeByte(':');
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                out.release();
+            }
+            this.name = bytes.toByteArray();
+            this.getter = getter.asType(MethodType.methodType(readType, Object.class));
+        }
+
+        static Property create(Field field, MethodHandle getter) {
+            Class<?> type = field.getType();
+            if (type == int.class || type == long.class || type == short.class || type == byte.class) {
+                return new LongProperty(field, getter);
+            }
+            if (type == double.class) {
+                return new DoubleProperty(field, getter);
+            }
+            if (type == float.class) {
+                return new FloatProperty(field, getter);
+            }
+            if (type == boolean.class) {
+                return new BooleanProperty(field, getter);
+            }
+            if (type == char.class) {
+                return new CharProperty(field, getter);
+            }
+            return new ObjectProperty(field, getter);
+        }
+
+        abstract void write(Object bean, JsonOutput out, int depth) throws Throwable;
+    }
+
+    private static class LongProperty extends Property {
+        LongProperty(Field field, MethodHandle getter) {
+            super(field, getter, long.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            out.writeLong((long) getter.invokeExact(bean));
+        }
+    }
+
+    private static class DoubleProperty extends Property {
+        DoubleProperty(Field field, MethodHandle getter) {
+            super(field, getter, double.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            out.writeDouble((double) getter.invokeExact(bean));
+        }
+    }
+
+    private static class FloatProperty extends Property {
+        FloatProperty(Field field, MethodHandle getter) {
+            super(field, getter, float.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            out.writeFloat((float) getter.invokeExact(bean));
+        }
+    }
+
+    private static class BooleanProperty extends Property {
+        BooleanProperty(Field field, MethodHandle getter) {
+            super(field, getter, boolean.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            out.writeBoolean((boolean) getter.invokeExact(bean));
+        }
+    }
+
+    private static class CharProperty extends Property {
+        CharProperty(Field field, MethodHandle getter) {
+            super(field, getter, char.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            out.writeString(String.valueOf((char) getter.invokeExact(bean)));
+        }
+    }
+
+    private static class ObjectProperty extends Property {
+        ObjectProperty(Field field, MethodHandle getter) {
+            super(field, getter, Object.class);
+        }
+
+        @Override
+        void write(Object bean, JsonOutput out, int depth) throws Throwable {
+            writeValue((Object) getter.invokeExact(bean), out, depth);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.wu.servlet.limit;
+
+import com.wu.annotation.mvc.MyBulkhead;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 路由的并发限制(@MyBulkhead)：请求执行前 tryAcquire，处理完成(包括异步完成和超时)后 release
+ *   - fixed：固定的并发上限，相当于只做 tryAcquire 的信号量
+ *   - adaptive：GradientLimiter，根据测得的延迟调整并发上限
+ * 判断和计数都用 CAS 完成，不加锁
+ * */
+public abstract class ConcurrencyLimiter {
+
+    // 正在处理的请求数
+    protected final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 正在处理的请求数小于当前上限时占用一个名额
+     */
+    public boolean tryAcquire() {
+        int limit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                onAcquire(current + 1, limit);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求处理完成，释放名额
+     *
+     * @param elapsedNanos 请求的处理耗时
+     * @param failed       请求是否出错
+     */
+    public void release(long elapsedNanos, boolean failed) {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 占用名额后没有执行请求(如被其他限制拒绝)，只释放名额，不记录耗时
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 当前的并发上限
+     */
+    public abstract int getLimit();
+
+    protected void onAcquire(int inFlight, int limit) {
+    }
+
+    public static ConcurrencyLimiter create(MyBulkhead bulkhead) {
+        if (bulkhead.value() <= 0) {
+            throw new IllegalStateException("@MyBulkhead 的并发上限必须大于0: " + bulkhead.value());
+        }
+        return bulkhead.adaptive() ? new GradientLimiter(bulkhead.value()) : new FixedLimiter(bulkhead.value());
+    }
+
+    private static class FixedLimiter extends ConcurrencyLimiter {
+        private final int limit;
+
+        FixedLimiter(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int getLimit() {
+            return limit;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.wu.servlet.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 根据延迟梯度调整并发上限(参考 Vegas 和 Netflix concurrency-limits 的 gradient 算法)：
+ *   - 每个采样窗口(至少 MIN_WINDOW 且至少 MIN_SAMPLES 个请求)计算平均延迟 shortRtt；
+ *     noLoadRtt 是各窗口 shortRtt 的最小值，代表没有排队时的延迟，每个窗口缓慢上浮，延迟整体变化后能重新找到基准
+ *   - gradient = TOLERANCE * noLoadRtt / shortRtt，限制在 [0.5, 1]：延迟没有明显上升时为 1，
+ *     请求开始排队、延迟上升时小于 1
+ *   - 新上限 = 当前上限 * gradient + sqrt(当前上限)，再和当前上限做平滑；请求数没有用到上限的一半时不提高上限
+ *   - 从较小的上限开始，先测到没有排队时的延迟再逐渐提高
+ * 请求线程只做 CAS 和 LongAdder 累加；窗口结束后由抢到窗口的那个线程计算新的上限，不加锁
+ * 窗口切换时和累加并发的少量样本可能被算到下一个窗口，不影响结果
+ * */
+class GradientLimiter extends ConcurrencyLimiter {
+
+    private static final long MIN_WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MIN_SAMPLES = 10;
+    // 允许的延迟上升比例，在这个范围内不降低上限
+    private static final double TOLERANCE = 1.5;
+    // noLoadRtt 每个窗口上浮的比例
+    private static final double NO_LOAD_RTT_DRIFT = 0.01;
+    // 初始的并发上限(不超过最大值)
+    private static final int INITIAL_LIMIT = 10;
+    // 新上限的平滑系数
+    private static final double SMOOTHING = 0.2;
+
+    private final int maxLimit;
+    // 当前上限的估计值，只由窗口结束时抢到窗口的线程修改
+    private volatile double estimate;
+    private volatile int limit;
+    private volatile double noLoadRtt;
+    // 窗口内的请求数达到过上限的一半
+    private volatile boolean saturated;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+
+    GradientLimiter(int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.estimate = Math.min(maxLimit, INITIAL_LIMIT);
+        this.limit = (int) estimate;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    protected void onAcquire(int inFlight, int limit) {
+        // 已经是 true 时不再写，避免每个请求都写同一个缓存行
+        if (!saturated && inFlight * 2 >= limit) {
+            saturated = true;
+        }
+    }
+
+    @Override
+    public void release(long elapsedNanos, boolean failed) {
+        super.release(elapsedNanos, failed);
+        rttSum.add(elapsedNanos);
+        samples.increment();
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= MIN_WINDOW && samples.sum() >= MIN_SAMPLES && windowStart.compareAndSet(start, now)) {
+            update();
+        }
+    }
+
+    private void update() {
+        long count = samples.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        if (count == 0 || sum == 0) {
+            return;
+        }
+        double shortRtt = (double) sum / count;
+        double noLoadRtt = this.noLoadRtt == 0 ? shortRtt : Math.min(shortRtt, this.noLoadRtt * (1 + NO_LOAD_RTT_DRIFT));
+        this.noLoadRtt = noLoadRtt;
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadRtt / shortRtt));
+        double current = estimate;
+        double next = current * gradient + Math.sqrt(current);
+        if (!saturated && next > current) {
+            next = current;
+        }
+        next = current * (1 - SMOOTHING) + next * SMOOTHING;
+        next = Math.max(1, Math.min(maxLimit, next));
+        saturated = false;
+        estimate = next;
+        limit = (int) next;
+    }
+}
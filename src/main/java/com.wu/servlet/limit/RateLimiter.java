@@ -0,0 +1,84 @@
+package com.wu.servlet.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * 分段的令牌桶，每段用 GCRA(通用信元速率算法)实现：只保存一个"理论到达时间" tat，
+ * 每取一个令牌 tat 后移一个间隔，tat 超前当前时间超过桶容量对应的时间时拒绝，一次 CAS 完成判断和扣减
+ *   - 速率和容量平均分到各段，容量不能整除时余下的令牌分给前几段，各段容量之和等于配置的容量；
+ *     线程先在自己的段上取令牌，避免所有线程竞争同一个变量
+ *   - 自己的段没有令牌时依次尝试其他段，所有段都没有令牌才拒绝，总速率仍然是配置的速率
+ * 整个过程不加锁
+ * */
+public class RateLimiter {
+
+    // 相邻两段在数组中间隔 8 个 long(64 字节)，避免伪共享
+    private static final int PADDING = 8;
+
+    private final int stripes;
+    private final AtomicLongArray tats;
+    // 每段产生一个令牌的间隔(纳秒)
+    private final long interval;
+    // 每段的 tat 最多可以超前当前时间多少(纳秒)，即该段容量减一个令牌对应的时间
+    private final long[] tolerances;
+
+    /**
+     * @param permitsPerSecond 每秒允许的请求数
+     * @param burst            桶的容量
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxStripes 最多分成几段，实际段数不超过容量，保证每段至少能容纳一个令牌
+     */
+    RateLimiter(double permitsPerSecond, int burst, int maxStripes) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalStateException("限流的速率和容量必须大于0: " + permitsPerSecond + ", " + burst);
+        }
+        this.stripes = Math.max(1, Math.min(maxStripes, burst));
+        this.tats = new AtomicLongArray(stripes * PADDING);
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) * stripes / permitsPerSecond));
+        this.tolerances = new long[stripes];
+        // 开始时桶是满的
+        long now = System.nanoTime();
+        for (int i = 0; i < stripes; i++) {
+            int capacity = burst / stripes + (i < burst % stripes ? 1 : 0);
+            tolerances[i] = (capacity - 1) * interval;
+            tats.set(i * PADDING, now - tolerances[i] - interval);
+        }
+    }
+
+    /**
+     * 取一个令牌，没有令牌时立即返回 false
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        int home = (int) (Thread.currentThread().getId() % stripes);
+        for (int i = 0; i < stripes; i++) {
+            int stripe = home + i;
+            if (tryAcquire(stripe < stripes ? stripe : stripe - stripes, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryAcquire(int stripe, long now) {
+        int index = stripe * PADDING;
+        long tolerance = tolerances[stripe];
+        while (true) {
+            long tat = tats.get(index);
+            // 桶里有令牌时 tat 落后于当前时间，从当前时间开始计算
+            long next = (tat - now < 0 ? now : tat) + interval;
+            if (next - now > tolerance + interval) {
+                return false;
+            }
+            if (tats.compareAndSet(index, tat, next)) {
+                return true;
+            }
+        }
+    }
+}
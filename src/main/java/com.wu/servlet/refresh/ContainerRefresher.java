@@ -0,0 +1,247 @@
+package com.wu.servlet.refresh;
+
+import com.wu.annotation.ioc.MyController;
+import com.wu.core.BeanFactory;
+import com.wu.core.ioc.BeanDefinition;
+import com.wu.core.scan.ClassMetadataReader;
+import com.wu.servlet.handler.HandlerManager;
+import com.wu.servlet.handler.MappingHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/*
+ * 运行时增量刷新容器，不重启应用：
+ *   - 记录扫描包下每个 class 文件的大小和修改时间，刷新时只比较文件属性，找出变化的类(内部类归到所在的顶层类)
+ *   - 变化的 Controller 用新的类加载器重新加载，只为它们创建新的bean(包括AOP代理)和处理器，
+ *     依赖的 Service 等直接使用容器中现有的bean
+ *   - 新的路由索引构建完成后原子替换，已经查找到旧处理器的请求继续在旧的 Controller 上执行完
+ *   - 删除的 Controller(或去掉了 @MyController)，其路由和bean一起移除
+ * 只支持 class 目录，jar 中的类不检查；Service、切面和其他类的变化无法在运行时替换(已经注入到其他bean中)，
+ * 刷新结果中列为需要重启，在重启前每次刷新都会继续报告
+ * */
+public class ContainerRefresher {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(ContainerRefresher.class);
+
+    private static final String CONTROLLER = "L" + MyController.class.getName().replace('.', '/') + ";";
+
+    private final ClassLoader classLoader;
+    private final String packagePath;
+    // 包含扫描包的 class 目录
+    private final List<Path> roots = new ArrayList<>();
+    // key/value=顶层类名/它的所有 class 文件的"大小 修改时间"
+    private Map<String, Map<Path, String>> stamps;
+    // key/value=类名/当前生效的 Controller 类
+    private final Map<String, Class<?>> controllers = new HashMap<>();
+
+    /**
+     * @param classLoader 加载应用的类加载器
+     * @param scanPackage 扫描的包
+     * @param classList   启动时扫描到的类
+     */
+    public ContainerRefresher(ClassLoader classLoader, String scanPackage, List<Class<?>> classList) throws IOException {
+        this.classLoader = classLoader;
+        this.packagePath = scanPackage.replace('.', '/');
+        Enumeration<URL> urls = classLoader.getResources(packagePath);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                try {
+                    roots.add(Paths.get(url.toURI()));
+                } catch (URISyntaxException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                logger.warn("refresh does not watch {}", url);
+            }
+        }
+        for (Class<?> aClass : classList) {
+            if (aClass.isAnnotationPresent(MyController.class)) {
+                controllers.put(aClass.getName(), aClass);
+            }
+        }
+        stamps = scan();
+    }
+
+    /*
+     * 刷新：
+     *   1. 比较 class 文件的属性，找出变化的顶层类，分成重新加载、新增、删除和需要重启的
+     *   2. 用新的类加载器加载重新加载和新增的 Controller
+     *   3. 为它们创建bean、注入依赖(还没有放入IOC容器)，再创建处理器
+     *   4. 原子替换路由，最后把新的bean放入IOC容器
+     * 任何一步失败时抛出异常，路由和IOC容器保持不变，下次刷新会重试
+     * */
+    public synchronized Result refresh() throws Exception {
+        //1、找出变化的类
+        Map<String, Map<Path, String>> current = scan();
+        Set<String> changed = new TreeSet<>();
+        for (String name : current.keySet()) {
+            if (!current.get(name).equals(stamps.get(name))) {
+                changed.add(name);
+            }
+        }
+        for (String name : stamps.keySet()) {
+            if (!current.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        Result result = new Result();
+        Map<String, Path> classFiles = new HashMap<>();
+        for (String name : changed) {
+            Map<Path, String> files = current.get(name);
+            if (files != null && isController(files.keySet(), name)) {
+                (controllers.containsKey(name) ? result.reloaded : result.added).add(name);
+                for (Path file : files.keySet()) {
+                    classFiles.put(className(file), file);
+                }
+            } else if (controllers.containsKey(name)) {
+                result.removed.add(name);
+            } else {
+                result.restartRequired.add(name);
+            }
+        }
+        if (result.reloaded.isEmpty() && result.added.isEmpty() && result.removed.isEmpty()) {
+            return result;
+        }
+        //2、加载新的类
+        RefreshClassLoader loader = new RefreshClassLoader(classLoader, classFiles);
+        List<Class<?>> classes = new ArrayList<>();
+        for (String name : result.reloaded) {
+            classes.add(Class.forName(name, true, loader));
+        }
+        for (String name : result.added) {
+            classes.add(Class.forName(name, true, loader));
+        }
+        Set<Class<?>> replaced = new HashSet<>();
+        for (String name : result.reloaded) {
+            replaced.add(controllers.get(name));
+        }
+        for (String name : result.removed) {
+            replaced.add(controllers.get(name));
+        }
+        //3、创建bean和处理器
+        Map<BeanDefinition, Object> prepared = BeanFactory.prepareBeans(classes, replaced);
+        try {
+            List<MappingHandler> handlers = new ArrayList<>();
+            for (Map.Entry<BeanDefinition, Object> entry : prepared.entrySet()) {
+                handlers.addAll(HandlerManager.createHandlers(entry.getKey().getBeanClass(), entry.getValue()));
+            }
+            //4、替换路由，路由冲突时抛出异常
+            HandlerManager.replaceHandlers(replaced, handlers);
+        } catch (Exception e) {
+            BeanFactory.discardBeans(prepared);
+            throw e;
+        }
+        BeanFactory.commitBeans(prepared, replaced);
+        // 只更新已经生效的类的文件属性，需要重启的类保持原样
+        for (String name : result.removed) {
+            controllers.remove(name);
+        }
+        for (Class<?> aClass : classes) {
+            controllers.put(aClass.getName(), aClass);
+        }
+        Map<String, Map<Path, String>> updated = new HashMap<>(stamps);
+        for (String name : changed) {
+            if (result.restartRequired.contains(name)) {
+                continue;
+            }
+            if (current.containsKey(name)) {
+                updated.put(name, current.get(name));
+            } else {
+                updated.remove(name);
+            }
+        }
+        stamps = updated;
+        logger.info("refreshed controllers: {}", result.toString().replace('\n', ' ').trim());
+        return result;
+    }
+
+    // 顶层类的 class 文件中带有 @MyController 注解
+    private boolean isController(Set<Path> files, String name) throws IOException {
+        for (Path file : files) {
+            if (className(file).equals(name)) {
+                return ClassMetadataReader.read(Files.readAllBytes(file)).getAnnotationDescriptors().contains(CONTROLLER);
+            }
+        }
+        return false;
+    }
+
+    // 所有 class 目录下扫描包中的 class 文件，按顶层类分组
+    private Map<String, Map<Path, String>> scan() throws IOException {
+        Map<String, Map<Path, String>> result = new HashMap<>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    String fileName = file.getFileName().toString();
+                    if (attributes.isRegularFile() && fileName.endsWith(".class") && !fileName.equals("package-info.class")) {
+                        String name = className(file);
+                        int inner = name.indexOf('$');
+                        result.computeIfAbsent(inner < 0 ? name : name.substring(0, inner), k -> new HashMap<>())
+                                .put(file, attributes.size() + " " + attributes.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return result;
+    }
+
+    // class 文件对应的类名
+    private String className(Path file) {
+        for (Path root : roots) {
+            if (file.startsWith(root)) {
+                String relative = root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/");
+                String name = packagePath + "/" + relative.substring(0, relative.length() - ".class".length());
+                return name.replace('/', '.');
+            }
+        }
+        throw new IllegalStateException("不在扫描包中的 class 文件: " + file);
+    }
+
+    /*
+     * 一次刷新的结果，都是顶层类名
+     * */
+    public static class Result {
+        private final List<String> reloaded = new ArrayList<>();
+        private final List<String> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final List<String> restartRequired = new ArrayList<>();
+
+        public List<String> getReloaded() {
+            return reloaded;
+        }
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public List<String> getRestartRequired() {
+            return restartRequired;
+        }
+
+        @Override
+        public String toString() {
+            return "reloaded: " + reloaded + "\nadded: " + added + "\nremoved: " + removed
+                    + "\nrestart required: " + restartRequired + "\n";
+        }
+    }
+}
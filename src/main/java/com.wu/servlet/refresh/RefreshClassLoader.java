@@ -0,0 +1,50 @@
+package com.wu.servlet.refresh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/*
+ * 加载重新编译后的 Controller：指定的类(包括内部类)由自己从 class 文件定义，其余的类交给父加载器(原来的应用类加载器)
+ * 每次刷新使用一个新的加载器，旧的类在不再被引用后随加载器一起被回收
+ * 注意：新的类和原来同一个包中的类不属于同一个运行时包，不能互相访问包级私有的成员
+ * */
+class RefreshClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    // key/value=类名/class文件
+    private final Map<String, Path> classFiles;
+
+    RefreshClassLoader(ClassLoader parent, Map<String, Path> classFiles) {
+        super("minispring-refresh", parent);
+        this.classFiles = classFiles;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Path file = classFiles.get(name);
+        if (file == null) {
+            return super.loadClass(name, resolve);
+        }
+        // 子优先：不委托给父加载器，否则得到的还是旧的类
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    byte[] bytes = Files.readAllBytes(file);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.wu.servlet.resource;
+
+import com.wu.core.cache.LruCache;
+import com.wu.servlet.json.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 静态资源：请求路径以 staticPath 开头时，依次在 staticLocations 的目录中查找文件，在路由之前处理
+ *   - 文件的元数据(长度、修改时间、ETag、Content-Type、是否有 .gz 版本)缓存在 LRU 中，
+ *     不超过 staticCacheFileSize 的小文件连同内容一起缓存；缓存的条目每隔 staticCacheCheck 毫秒重新检查一次文件属性
+ *   - 大文件在内嵌服务器中用 FileChannel.transferTo 直接发送(ZeroCopyResponse)，在其他容器中内存映射后分块写出
+ *   - 客户端接受 gzip 并且存在 xxx.gz 时发送预压缩的版本
+ *   - 支持单个区间的 Range 请求(206/416)和 If-Range，多个区间时返回整个文件
+ *   - If-None-Match/If-Modified-Since 匹配时返回 304
+ * 只处理 GET 和 HEAD，找不到文件时交给路由处理；路径中以 . 开头的段(包括 ..)一律找不到，不能访问目录外和隐藏文件
+ * */
+public class StaticResourceHandler {
+    //日志工具
+    private static Logger logger = LoggerFactory.getLogger(StaticResourceHandler.class);
+
+    // 内存映射后每次写出的最大字节数
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html;charset=utf-8");
+        CONTENT_TYPES.put("htm", "text/html;charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css;charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript;charset=utf-8");
+        CONTENT_TYPES.put("mjs", "application/javascript;charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json;charset=utf-8");
+        CONTENT_TYPES.put("map", "application/json;charset=utf-8");
+        CONTENT_TYPES.put("txt", "text/plain;charset=utf-8");
+        CONTENT_TYPES.put("xml", "application/xml;charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("webp", "image/webp");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("woff", "font/woff");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+        CONTENT_TYPES.put("ttf", "font/ttf");
+        CONTENT_TYPES.put("wasm", "application/wasm");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("zip", "application/zip");
+        CONTENT_TYPES.put("mp4", "video/mp4");
+        CONTENT_TYPES.put("mp3", "audio/mpeg");
+    }
+
+    private final String prefix;
+    private final List<Path> locations;
+    private final LruCache<String, Resource> cache;
+    private final int cacheFileSize;
+    private final long checkNanos;
+
+    /**
+     * @param prefix        静态资源的请求路径前缀，如 /static/
+     * @param locations     查找文件的目录，按顺序查找
+     * @param cacheSize     缓存的最大文件数
+     * @param cacheFileSize 连同内容一起缓存的文件的最大字节数
+     * @param checkMillis   缓存的条目重新检查文件属性的间隔(毫秒)
+     */
+    public StaticResourceHandler(String prefix, List<Path> locations, int cacheSize, int cacheFileSize,
+                                 long checkMillis) {
+        this.prefix = prefix;
+        this.locations = locations;
+        this.cache = new LruCache<>("static-resources", cacheSize, 0);
+        this.cacheFileSize = cacheFileSize;
+        this.checkNanos = TimeUnit.MILLISECONDS.toNanos(checkMillis);
+    }
+
+    /**
+     * 按配置创建，没有配置 staticPath 或所有目录都不存在时返回 null
+     * staticLocations 中的每一项是 classpath:目录 或 file:目录，classpath 中只支持 class 目录，不支持 jar
+     */
+    public static StaticResourceHandler create(Properties p, ClassLoader classLoader) throws URISyntaxException {
+        String prefix = p.getProperty("staticPath", "").trim();
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        if (!prefix.endsWith("/")) {
+            prefix += "/";
+        }
+        List<Path> locations = new ArrayList<>();
+        for (String location : p.getProperty("staticLocations", "classpath:static/").split(",")) {
+            location = location.trim();
+            Path dir = null;
+            if (location.startsWith("classpath:")) {
+                URL url = classLoader.getResource(location.substring("classpath:".length()));
+                if (url != null && "file".equals(url.getProtocol())) {
+                    dir = Paths.get(url.toURI());
+                } else if (url != null) {
+                    logger.warn("static location {} is not a directory: {}", location, url);
+                }
+            } else if (!location.isEmpty()) {
+                dir = Paths.get(location.startsWith("file:") ? location.substring("file:".length()) : location);
+            }
+            if (dir != null && Files.isDirectory(dir)) {
+                locations.add(dir.toAbsolutePath().normalize());
+            }
+        }
+        if (locations.isEmpty()) {
+            return null;
+        }
+        logger.info("serving static resources {} from {}", prefix, locations);
+        return new StaticResourceHandler(prefix, locations,
+                Integer.parseInt(p.getProperty("staticCacheSize", "1000")),
+                Integer.parseInt(p.getProperty("staticCacheFileSize", "65536")),
+                Long.parseLong(p.getProperty("staticCacheCheck", "1000")));
+    }
+
+    /**
+     * 处理静态资源请求
+     *
+     * @return false 表示不是静态资源(路径不匹配、不是 GET/HEAD 或找不到文件)，交给路由处理
+     */
+    public boolean handle(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String uri = req.getRequestURI();
+        if (!uri.startsWith(prefix)) {
+            return false;
+        }
+        String method = req.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            return false;
+        }
+        Resource resource = lookup(uri.substring(prefix.length()));
+        if (resource == null) {
+            return false;
+        }
+        String range = req.getHeader("Range");
+        boolean gzip = resource.gzip != null && range == null && acceptsGzip(req.getHeader("Accept-Encoding"));
+        Variant variant = gzip ? resource.gzip : resource.identity;
+        resp.setContentType(resource.contentType);
+        resp.setHeader("ETag", variant.etag);
+        resp.setHeader("Last-Modified", variant.lastModifiedText);
+        resp.setHeader("Accept-Ranges", "bytes");
+        if (resource.gzip != null) {
+            resp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        if (notModified(req, variant)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        long start = 0;
+        long length = variant.length;
+        if (range != null && ifRangeMatches(req, variant)) {
+            long[] bounds = parseRange(range, variant.length);
+            if (bounds != null && bounds.length == 0) {
+                resp.setHeader("Content-Range", "bytes */" + variant.length);
+                resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return true;
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                length = bounds[1] - bounds[0] + 1;
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + variant.length);
+            }
+        }
+        resp.setContentLengthLong(length);
+        if (!head && length > 0) {
+            send(variant, start, length, resp);
+        }
+        return true;
+    }
+
+    /*
+     * 写出文件 [start, start + length) 的内容：缓存了内容时直接写，否则优先零拷贝，最后退回内存映射
+     * */
+    private void send(Variant variant, long start, long length, HttpServletResponse resp) throws IOException {
+        if (variant.content != null) {
+            resp.getOutputStream().write(variant.content, (int) start, (int) length);
+            return;
+        }
+        ServletResponse target = resp;
+        while (target instanceof ServletResponseWrapper) {
+            target = ((ServletResponseWrapper) target).getResponse();
+        }
+        if (target instanceof ZeroCopyResponse) {
+            ((ZeroCopyResponse) target).sendFile(variant.path, start, length);
+            return;
+        }
+        ServletOutputStream out = resp.getOutputStream();
+        byte[] buffer = BufferPool.acquire();
+        try (FileChannel channel = FileChannel.open(variant.path, StandardOpenOption.READ)) {
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_CHUNK, end - position));
+                while (mapped.hasRemaining()) {
+                    int n = Math.min(buffer.length, mapped.remaining());
+                    mapped.get(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+                position += mapped.capacity();
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /*
+     * 查找文件，缓存中的条目超过检查间隔时重新读取文件属性，文件变化时重新加载
+     * */
+    private Resource lookup(String relative) throws IOException {
+        Resource resource = cache.get(relative);
+        long now = System.nanoTime();
+        if (resource != null) {
+            if (now - resource.checkedAt < checkNanos) {
+                return resource;
+            }
+            if (resource.isCurrent()) {
+                resource.checkedAt = now;
+                return resource;
+            }
+            cache.remove(relative);
+        }
+        resource = load(relative);
+        if (resource != null) {
+            resource.checkedAt = now;
+            cache.put(relative, resource);
+        }
+        return resource;
+    }
+
+    private Resource load(String relative) throws IOException {
+        String path;
+        try {
+            // 请求路径是百分号编码的
+            path = new URI(relative).getPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        for (String segment : path.split("/")) {
+            if (segment.startsWith(".") || segment.indexOf('\\') >= 0) {
+                return null;
+            }
+        }
+        for (Path root : locations) {
+            Path file = root.resolve(path).normalize();
+            if (!file.startsWith(root)) {
+                return null;
+            }
+            Variant identity = loadVariant(file, "");
+            if (identity != null) {
+                Variant gzip = loadVariant(file.resolveSibling(file.getFileName() + ".gz"), "-gz");
+                return new Resource(contentType(file.getFileName().toString()), identity, gzip);
+            }
+        }
+        return null;
+    }
+
+    private Variant loadVariant(Path file, String etagSuffix) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        byte[] content = null;
+        if (attributes.size() <= cacheFileSize) {
+            content = Files.readAllBytes(file);
+            if (content.length != attributes.size()) {
+                // 读取期间文件被修改，不缓存内容
+                content = null;
+            }
+        }
+        return new Variant(file, attributes.size(), lastModified, etagSuffix, content);
+    }
+
+    private static String contentType(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return type != null ? type : "application/octet-stream";
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /*
+     * 有 If-None-Match 时只比较 ETag(弱比较)，否则比较 If-Modified-Since(精确到秒)
+     * */
+    private static boolean notModified(HttpServletRequest req, Variant variant) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(variant.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long since = dateHeader(req, "If-Modified-Since");
+        return since >= 0 && variant.lastModified / 1000 <= since / 1000;
+    }
+
+    /*
+     * 没有 If-Range，或 If-Range 和当前的 ETag/修改时间一致时 Range 才生效
+     * */
+    private static boolean ifRangeMatches(HttpServletRequest req, Variant variant) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"")) {
+            return ifRange.trim().equals(variant.etag);
+        }
+        long date = dateHeader(req, "If-Range");
+        return date >= 0 && variant.lastModified / 1000 == date / 1000;
+    }
+
+    private static long dateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析单个区间的 Range：bytes=a-b、bytes=a-、bytes=-n
+     *
+     * @return {起始, 结束(包含)}；格式不支持(包括多个区间)时返回 null，表示忽略 Range；区间不可满足时返回空数组
+     */
+    static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 最后 n 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (!last.isEmpty()) {
+                    long requestedEnd = Long.parseLong(last);
+                    if (requestedEnd < start) {
+                        return null;
+                    }
+                    end = Math.min(requestedEnd, end);
+                }
+            }
+            if (start < 0 || start >= length) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /*
+     * 一个静态文件，可能有预压缩的 .gz 版本
+     * */
+    private static class Resource {
+        private final String contentType;
+        private final Variant identity;
+        private final Variant gzip;
+        // 上次检查文件属性的时间
+        private volatile long checkedAt;
+
+        Resource(String contentType, Variant identity, Variant gzip) {
+            this.contentType = contentType;
+            this.identity = identity;
+            this.gzip = gzip;
+        }
+
+        // 文件和 .gz 文件的长度、修改时间都没有变化
+        boolean isCurrent() throws IOException {
+            return identity.isCurrent() && (gzip == null ? !Files.exists(gzipPath()) : gzip.isCurrent());
+        }
+
+        private Path gzipPath() {
+            return identity.path.resolveSibling(identity.path.getFileName() + ".gz");
+        }
+    }
+
+    private static class Variant {
+        private final Path path;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+        // 格式化好的 Last-Modified，请求时不再格式化日期
+        private final String lastModifiedText;
+        // 小文件的内容，null 表示每次从文件发送
+        private final byte[] content;
+
+        Variant(Path path, long length, long lastModified, String etagSuffix, byte[] content) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + etagSuffix + "\"";
+            this.lastModifiedText = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneOffset.UTC));
+            this.content = content;
+        }
+
+        boolean isCurrent() throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.isRegularFile() && attributes.size() == length
+                        && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+    }
+}
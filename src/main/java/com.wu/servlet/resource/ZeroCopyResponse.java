@@ -0,0 +1,17 @@
+package com.wu.servlet.resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/*
+ * 能直接把文件内容发送到连接上的响应(如内嵌服务器用 FileChannel.transferTo 实现，数据不经过用户态)
+ * 其他容器中的响应不实现这个接口，静态资源退回到内存映射后写出到输出流
+ * */
+public interface ZeroCopyResponse {
+
+    /**
+     * 用文件 [position, position + count) 的内容作为响应体，响应头发送后再发送，Content-Length 为 count
+     * 调用后不能再向输出流写入内容
+     */
+    void sendFile(Path file, long position, long count) throws IOException;
+}
@@ -0,0 +1,115 @@
+package com.wu.servlet.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * classpath 的指纹，用来判断启动快照是否还有效：
+ *   - 类加载器(及其父加载器)中的 URLClassLoader 的所有目录和 jar，以及 java.class.path
+ *   - jar 记录路径、大小和修改时间；目录记录其下每个 .class 文件和 META-INF 下文件的相对路径、大小和修改时间，
+ *     只读取文件属性，不读取内容；目录中的日志等其他文件不影响启动计划，不参与计算
+ *   - 配置文件的所有配置项
+ * 任何一个类被重新编译、增删 jar 或修改配置，指纹都会改变
+ * */
+public class ClasspathFingerprint {
+
+    /**
+     * @param classLoader 加载应用的类加载器
+     * @param config      配置项
+     * @param exclude     不参与计算的文件(快照文件本身)，可以为 null
+     * @return SHA-256 摘要
+     */
+    public static byte[] compute(ClassLoader classLoader, Properties config, Path exclude) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Path excluded = exclude == null ? null : exclude.toAbsolutePath().normalize();
+        for (Path root : roots(classLoader)) {
+            if (Files.isDirectory(root)) {
+                update(digest, "dir " + root);
+                for (String entry : listDirectory(root, excluded)) {
+                    update(digest, entry);
+                }
+            } else if (Files.isRegularFile(root)) {
+                BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class);
+                update(digest, "jar " + root + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis());
+            }
+        }
+        for (String name : new TreeSet<>(config.stringPropertyNames())) {
+            update(digest, "config " + name + "=" + config.getProperty(name));
+        }
+        return digest.digest();
+    }
+
+    // 所有 classpath 根，按类加载器从子到父的顺序
+    private static Set<Path> roots(ClassLoader classLoader) {
+        Set<Path> roots = new LinkedHashSet<>();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        try {
+                            roots.add(Paths.get(url.toURI()).toAbsolutePath().normalize());
+                        } catch (URISyntaxException | IllegalArgumentException e) {
+                            roots.add(Paths.get(url.getPath()).toAbsolutePath().normalize());
+                        }
+                    }
+                }
+            }
+        }
+        for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                roots.add(Paths.get(path).toAbsolutePath().normalize());
+            }
+        }
+        return roots;
+    }
+
+    // 目录下每个相关文件的"相对路径 大小 修改时间"，排序后与遍历顺序无关；遍历时直接得到文件属性，每个文件只读取一次
+    private static List<String> listDirectory(Path root, Path excluded) throws IOException {
+        List<String> entries = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                Path relative = root.relativize(file);
+                if (attributes.isRegularFile() && isRelevant(relative) && !file.equals(excluded)) {
+                    entries.add(relative + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private static boolean isRelevant(Path relative) {
+        return relative.toString().endsWith(".class") || relative.startsWith("META-INF");
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+}
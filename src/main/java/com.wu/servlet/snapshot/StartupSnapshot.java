@@ -0,0 +1,382 @@
+package com.wu.servlet.snapshot;
+
+import com.wu.core.ioc.BeanDefinition;
+import com.wu.servlet.handler.MappingHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 启动快照：第一次启动成功后把解析好的启动计划写成一个紧凑的二进制文件，之后的启动直接读回，
+ * 跳过读取索引/扫描目录、注解检查、依赖解析、切点匹配和路由注解解析，包括：
+ *   - classList：扫描到的类
+ *   - 每个bean的创建计划：构造器、注入的属性、每个注入点对应的bean类、是否注入懒加载句柄、是否懒加载、作用域、作用于它的通知方法
+ *   - 路由：Controller 类、方法、uri 和请求方法
+ * 快照记录写入时的 classpath 指纹(见 ClasspathFingerprint)，指纹不一致时忽略快照，重新解析并覆盖
+ *
+ * 文件格式(DataOutputStream)：
+ *   int 魔数, int 版本, 指纹(short 长度 + 字节)
+ *   类名表：int 个数, 每个 UTF 类名；之后所有的类都用它在表中的下标(int)表示，-1 表示 null
+ *   classList：int 个数, 每个类的下标
+ *   bean：int 个数, 每个 {类, boolean 懒加载, UTF 作用域, int 对象池大小, UTF reset 方法名, 构造器参数类型列表, 属性名列表,
+ *         构造器依赖列表, 构造器懒加载标记列表, 属性依赖列表, 属性懒加载标记列表, 通知方法列表(个数 -1 表示没有匹配过)}
+ *   路由：int 个数, 每个 {Controller 类, 方法, UTF uri, 请求方法列表}
+ *   方法都写成 {声明类, UTF 方法名, 参数类型列表}
+ * */
+public class StartupSnapshot {
+
+    private static final int MAGIC = 0x4D534E50;
+    // 格式变化时修改，旧版本的快照会被忽略
+    private static final int VERSION = 2;
+
+    private final List<Class<?>> classList;
+    private final List<BeanDefinition> definitions;
+    private final List<Route> routes;
+
+    private StartupSnapshot(List<Class<?>> classList, List<BeanDefinition> definitions, List<Route> routes) {
+        this.classList = classList;
+        this.definitions = definitions;
+        this.routes = routes;
+    }
+
+    public List<Class<?>> getClassList() {
+        return classList;
+    }
+
+    public List<BeanDefinition> getDefinitions() {
+        return definitions;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param fingerprint 当前的 classpath 指纹
+     * @return 快照不存在、版本或指纹不一致时返回 null
+     * @throws IOException                  快照文件损坏
+     * @throws ReflectiveOperationException 快照中的类或成员已经不存在
+     */
+    public static StartupSnapshot read(Path file, byte[] fingerprint, ClassLoader classLoader)
+            throws IOException, ReflectiveOperationException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            byte[] recorded = new byte[in.readUnsignedShort()];
+            in.readFully(recorded);
+            if (!Arrays.equals(recorded, fingerprint)) {
+                return null;
+            }
+            return new Reader(in, classLoader).read();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 写入快照：先写到临时文件再替换，并发启动的实例不会读到写了一半的文件
+     */
+    public static void write(Path file, byte[] fingerprint, List<Class<?>> classList,
+                             List<BeanDefinition> definitions, List<MappingHandler> handlers) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeShort(fingerprint.length);
+                out.write(fingerprint);
+                new Writer(out).write(classList, definitions, handlers);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     * 快照中的一个路由
+     * */
+    public static class Route {
+        private final Class<?> controller;
+        private final Method method;
+        private final String uri;
+        private final String[] httpMethods;
+
+        Route(Class<?> controller, Method method, String uri, String[] httpMethods) {
+            this.controller = controller;
+            this.method = method;
+            this.uri = uri;
+            this.httpMethods = httpMethods;
+        }
+
+        public Class<?> getController() {
+            return controller;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String[] getHttpMethods() {
+            return httpMethods;
+        }
+    }
+
+    /*
+     * 先收集所有用到的类生成类名表，再写各部分
+     * */
+    private static class Writer {
+        private final DataOutputStream out;
+        private final Map<Class<?>, Integer> classes = new LinkedHashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(List<Class<?>> classList, List<BeanDefinition> definitions, List<MappingHandler> handlers)
+                throws IOException {
+            collect(classList, definitions, handlers);
+            out.writeInt(classes.size());
+            for (Class<?> type : classes.keySet()) {
+                out.writeUTF(type.getName());
+            }
+            writeClasses(classList);
+            out.writeInt(definitions.size());
+            for (BeanDefinition definition : definitions) {
+                writeClass(definition.getBeanClass());
+                out.writeBoolean(definition.isLazy());
+                out.writeUTF(definition.getScope());
+                out.writeInt(definition.getPoolSize());
+                out.writeUTF(definition.getResetMethod());
+                writeClasses(Arrays.asList(definition.getConstructor().getParameterTypes()));
+                List<Field> fields = definition.getAutowiredFields();
+                out.writeInt(fields.size());
+                for (Field field : fields) {
+                    out.writeUTF(field.getName());
+                }
+                writeClasses(Arrays.asList(definition.getConstructorDependencies()));
+                writeFlags(definition.getLazyConstructorDependencies());
+                writeClasses(Arrays.asList(definition.getFieldDependencies()));
+                writeFlags(definition.getLazyFieldDependencies());
+                List<Method> adviceMethods = definition.getAdviceMethods();
+                if (adviceMethods == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(adviceMethods.size());
+                    for (Method method : adviceMethods) {
+                        writeMethod(method);
+                    }
+                }
+            }
+            out.writeInt(handlers.size());
+            for (MappingHandler handler : handlers) {
+                writeClass(handler.getController());
+                writeMethod(handler.getMethod());
+                out.writeUTF(handler.getUri());
+                String[] httpMethods = handler.getHttpMethods();
+                out.writeInt(httpMethods == null ? -1 : httpMethods.length);
+                if (httpMethods != null) {
+                    for (String httpMethod : httpMethods) {
+                        out.writeUTF(httpMethod);
+                    }
+                }
+            }
+        }
+
+        private void collect(List<Class<?>> classList, List<BeanDefinition> definitions,
+                             List<MappingHandler> handlers) {
+            classList.forEach(this::add);
+            for (BeanDefinition definition : definitions) {
+                add(definition.getBeanClass());
+                Arrays.asList(definition.getConstructor().getParameterTypes()).forEach(this::add);
+                Arrays.asList(definition.getConstructorDependencies()).forEach(this::add);
+                Arrays.asList(definition.getFieldDependencies()).forEach(this::add);
+                if (definition.getAdviceMethods() != null) {
+                    definition.getAdviceMethods().forEach(this::addMethod);
+                }
+            }
+            for (MappingHandler handler : handlers) {
+                add(handler.getController());
+                addMethod(handler.getMethod());
+            }
+        }
+
+        private void addMethod(Method method) {
+            add(method.getDeclaringClass());
+            Arrays.asList(method.getParameterTypes()).forEach(this::add);
+        }
+
+        private void add(Class<?> type) {
+            if (type != null) {
+                classes.putIfAbsent(type, classes.size());
+            }
+        }
+
+        private void writeClass(Class<?> type) throws IOException {
+            out.writeInt(type == null ? -1 : classes.get(type));
+        }
+
+        private void writeClasses(List<Class<?>> types) throws IOException {
+            out.writeInt(types.size());
+            for (Class<?> type : types) {
+                writeClass(type);
+            }
+        }
+
+        private void writeFlags(boolean[] flags) throws IOException {
+            out.writeInt(flags.length);
+            for (boolean flag : flags) {
+                out.writeBoolean(flag);
+            }
+        }
+
+        private void writeMethod(Method method) throws IOException {
+            writeClass(method.getDeclaringClass());
+            out.writeUTF(method.getName());
+            writeClasses(Arrays.asList(method.getParameterTypes()));
+        }
+    }
+
+    /*
+     * 按写入的顺序读回，类通过 classLoader 加载(不初始化)，成员通过名字和参数类型直接取得
+     * */
+    private static class Reader {
+        private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+        static {
+            for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class,
+                    long.class, float.class, double.class, void.class}) {
+                PRIMITIVES.put(type.getName(), type);
+            }
+        }
+
+        private final DataInputStream in;
+        private final ClassLoader classLoader;
+        private Class<?>[] classes;
+
+        Reader(DataInputStream in, ClassLoader classLoader) {
+            this.in = in;
+            this.classLoader = classLoader;
+        }
+
+        StartupSnapshot read() throws IOException, ReflectiveOperationException {
+            classes = new Class<?>[in.readInt()];
+            for (int i = 0; i < classes.length; i++) {
+                String name = in.readUTF();
+                Class<?> primitive = PRIMITIVES.get(name);
+                classes[i] = primitive != null ? primitive : Class.forName(name, false, classLoader);
+            }
+            List<Class<?>> classList = readClasses();
+            int beanCount = in.readInt();
+            List<BeanDefinition> definitions = new ArrayList<>(beanCount);
+            for (int i = 0; i < beanCount; i++) {
+                Class<?> beanClass = readClass();
+                boolean lazy = in.readBoolean();
+                String scope = in.readUTF();
+                int poolSize = in.readInt();
+                String resetMethod = in.readUTF();
+                Constructor<?> constructor = beanClass.getDeclaredConstructor(readClasses().toArray(new Class<?>[0]));
+                int fieldCount = in.readInt();
+                List<Field> fields = new ArrayList<>(fieldCount);
+                for (int j = 0; j < fieldCount; j++) {
+                    fields.add(beanClass.getDeclaredField(in.readUTF()));
+                }
+                BeanDefinition definition = new BeanDefinition(beanClass, constructor, fields);
+                definition.setLazy(lazy);
+                definition.setScope(scope, poolSize, resetMethod);
+                definition.setConstructorDependencies(readClasses().toArray(new Class<?>[0]));
+                definition.setLazyConstructorDependencies(readFlags());
+                definition.setFieldDependencies(readClasses().toArray(new Class<?>[0]));
+                definition.setLazyFieldDependencies(readFlags());
+                int adviceCount = in.readInt();
+                if (adviceCount >= 0) {
+                    List<Method> adviceMethods = new ArrayList<>(adviceCount);
+                    for (int j = 0; j < adviceCount; j++) {
+                        adviceMethods.add(readMethod());
+                    }
+                    definition.setAdviceMethods(adviceMethods);
+                }
+                definitions.add(definition);
+            }
+            int routeCount = in.readInt();
+            List<Route> routes = new ArrayList<>(routeCount);
+            for (int i = 0; i < routeCount; i++) {
+                Class<?> controller = readClass();
+                Method method = readMethod();
+                String uri = in.readUTF();
+                int httpMethodCount = in.readInt();
+                String[] httpMethods = null;
+                if (httpMethodCount >= 0) {
+                    httpMethods = new String[httpMethodCount];
+                    for (int j = 0; j < httpMethodCount; j++) {
+                        httpMethods[j] = in.readUTF();
+                    }
+                }
+                routes.add(new Route(controller, method, uri, httpMethods));
+            }
+            return new StartupSnapshot(classList, definitions, routes);
+        }
+
+        private Class<?> readClass() throws IOException {
+            int index = in.readInt();
+            return index < 0 ? null : classes[index];
+        }
+
+        private List<Class<?>> readClasses() throws IOException {
+            int count = in.readInt();
+            List<Class<?>> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(readClass());
+            }
+            return list;
+        }
+
+        private boolean[] readFlags() throws IOException {
+            boolean[] flags = new boolean[in.readInt()];
+            for (int i = 0; i < flags.length; i++) {
+                flags[i] = in.readBoolean();
+            }
+            return flags;
+        }
+
+        private Method readMethod() throws IOException, NoSuchMethodException {
+            Class<?> declaringClass = readClass();
+            String name = in.readUTF();
+            return declaringClass.getDeclaredMethod(name, readClasses().toArray(new Class<?>[0]));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.wu.core.aop;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PointcutExpressionTest {
+
+    public interface Repo {
+        String find(String id);
+    }
+
+    public static class Base implements Repo {
+        @Override
+        public String find(String id) {
+            return id;
+        }
+
+        public void save(String name, int version) {
+        }
+    }
+
+    public static class Child extends Base {
+        @Override
+        @Deprecated
+        public String find(String id) {
+            return id;
+        }
+
+        public void save(String name, int version, long time) {
+        }
+
+        public void extra() {
+        }
+    }
+
+    // 始终匹配 Child.find / 始终不匹配任何方法
+    private static final String T = "execution(* *.find(..))";
+    private static final String F = "execution(* *.nothing(..))";
+
+    @Test
+    public void executionTypeMatchesWhereTheMethodIsDeclared() throws NoSuchMethodException {
+        // Child.find 覆盖了 Base 中声明的方法，extra 是 Child 新增的
+        assertTrue(matches("execution(* Base.*(..))", Child.class, method(Child.class, "find", String.class)));
+        assertFalse(matches("execution(* Base.*(..))", Child.class, method(Child.class, "extra")));
+        // 接口中声明的方法
+        assertTrue(matches("execution(* Repo.find(..))", Child.class, method(Child.class, "find", String.class)));
+        assertFalse(matches("execution(* Repo.*(..))", Child.class,
+                method(Child.class, "save", String.class, int.class)));
+        // + 包括子类型，子类新增的方法也匹配
+        assertTrue(matches("execution(* Base+.*(..))", Child.class, method(Child.class, "extra")));
+        assertTrue(matches("execution(* com.wu..PointcutExpressionTest$Child.extra())", Child.class,
+                method(Child.class, "extra")));
+        assertFalse(matches("execution(* com.other..*.*(..))", Child.class, method(Child.class, "extra")));
+    }
+
+    @Test
+    public void executionClassFilterUsesTheHierarchy() {
+        assertTrue(PointcutExpression.compile("execution(* Repo.*(..))").matchesClass(Child.class));
+        assertFalse(PointcutExpression.compile("execution(* Child.*(..))").matchesClass(Base.class));
+    }
+
+    @Test
+    public void executionMatchesParametersAndReturnType() throws NoSuchMethodException {
+        Method two = method(Child.class, "save", String.class, int.class);
+        Method three = method(Child.class, "save", String.class, int.class, long.class);
+        Method none = method(Child.class, "extra");
+        assertTrue(matches("execution(* *.save(String, int))", Child.class, two));
+        assertFalse(matches("execution(* *.save(String, int))", Child.class, three));
+        assertTrue(matches("execution(* *.save(String, ..))", Child.class, three));
+        assertTrue(matches("execution(* *.save(.., long))", Child.class, three));
+        assertFalse(matches("execution(* *.save(.., long))", Child.class, two));
+        assertTrue(matches("execution(* *.save(*, int))", Child.class, two));
+        assertTrue(matches("execution(* *.save(java.lang.String, int, ..))", Child.class, two));
+        assertTrue(matches("execution(* *.*())", Child.class, none));
+        assertFalse(matches("execution(* *.*())", Child.class, two));
+        assertTrue(matches("execution(void *.sa*(..))", Child.class, two));
+        assertFalse(matches("execution(String *.save(..))", Child.class, two));
+        assertTrue(matches("execution(public String *.find(String))", Child.class,
+                method(Child.class, "find", String.class)));
+    }
+
+    @Test
+    public void operatorPrecedence() throws NoSuchMethodException {
+        Method find = method(Child.class, "find", String.class);
+        // && 比 || 优先：T || (T && F)
+        assertTrue(matches(T + " || " + T + " && " + F, Child.class, find));
+        assertFalse(matches("(" + T + " || " + T + ") && " + F, Child.class, find));
+        // ! 比 && 和 || 优先
+        assertFalse(matches("!" + T + " && " + F, Child.class, find));
+        assertTrue(matches("!" + F + " || " + T, Child.class, find));
+        assertTrue(matches("!" + T + " || " + T, Child.class, find));
+        assertFalse(matches("!(" + F + " || " + T + ")", Child.class, find));
+        assertTrue(matches("!!" + T, Child.class, find));
+    }
+
+    @Test
+    public void otherDesignators() throws NoSuchMethodException {
+        Method find = method(Child.class, "find", String.class);
+        assertTrue(matches("@annotation(java.lang.Deprecated)", Child.class, find));
+        assertFalse(matches("@annotation(java.lang.Deprecated)", Base.class, method(Base.class, "find", String.class)));
+        assertTrue(matches("within(com.wu.core..*)", Child.class, find));
+        assertFalse(matches("within(com.wu.demo..*)", Child.class, find));
+        // 原来的写法：全限定类名.方法名()，不限制参数
+        assertTrue(matches("com.wu.core.aop.PointcutExpressionTest$Child.find()", Child.class, find));
+    }
+
+    @Test
+    public void namedPointcutReferences() throws NoSuchMethodException {
+        Map<String, String> named = new HashMap<>();
+        named.put("finders", T);
+        named.put("notFinders", "!finders()");
+        ClassLoader loader = getClass().getClassLoader();
+        Method find = method(Child.class, "find", String.class);
+        assertTrue(PointcutExpression.compile("finders()", named, loader).matches(Child.class, find));
+        assertFalse(PointcutExpression.compile("notFinders()", named, loader).matches(Child.class, find));
+
+        named.put("a", "b()");
+        named.put("b", "a()");
+        assertMalformed("a()", named);
+        assertMalformed("missing()", named);
+    }
+
+    @Test
+    public void malformedExpressionsAreRejected() {
+        Map<String, String> none = new HashMap<>();
+        assertMalformed("", none);
+        assertMalformed("execution(* *.find(..)", none);
+        assertMalformed("execution(* *.find)", none);
+        assertMalformed("execution(find())", none);
+        assertMalformed("execution(volatile * *.find())", none);
+        assertMalformed(T + " &&", none);
+        assertMalformed(T + " ||", none);
+        assertMalformed(T + " extra", none);
+        assertMalformed("(" + T, none);
+        assertMalformed("!", none);
+        assertMalformed("@annotation(java.lang.String)", none);
+        assertMalformed("@annotation(com.wu.NoSuchAnnotation)", none);
+    }
+
+    private static void assertMalformed(String expression, Map<String, String> named) {
+        try {
+            PointcutExpression.compile(expression, named, PointcutExpressionTest.class.getClassLoader());
+            fail("expected IllegalArgumentException for " + expression);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static boolean matches(String expression, Class<?> targetClass, Method method) {
+        return PointcutExpression.compile(expression).matches(targetClass, method);
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+        return type.getMethod(name, parameterTypes);
+    }
+}
@@ -0,0 +1,60 @@
+package com.wu.core.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ComponentIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexMatchingItsCountIsComplete() throws IOException {
+        String checksum = ComponentIndex.checksum(Arrays.asList("com.x.B", "com.x.A"));
+        ComponentIndex index = ComponentIndex.load(loader(
+                "class com.x.A MyService\nclass com.x.B MyController\ncount 2 " + checksum + "\n"));
+        assertEquals(Arrays.asList("com.x.A", "com.x.B"), index.getClassNames("com.x"));
+        assertTrue(index.isComplete(index.getClass().getClassLoader(), "com.x"));
+    }
+
+    @Test
+    public void indexNotMatchingItsCountIsIncomplete() throws IOException {
+        String checksum = ComponentIndex.checksum(Arrays.asList("com.x.A", "com.x.B"));
+        ComponentIndex index = ComponentIndex.load(loader("class com.x.A MyService\ncount 2 " + checksum + "\n"));
+        assertFalse(index.isComplete(index.getClass().getClassLoader(), "com.x"));
+    }
+
+    @Test
+    public void indexWithoutCountIsIncomplete() throws IOException {
+        ComponentIndex index = ComponentIndex.load(loader("class com.x.A MyService\n"));
+        assertFalse(index.isComplete(index.getClass().getClassLoader(), "com.x"));
+    }
+
+    @Test
+    public void checksumIgnoresOrder() {
+        assertEquals(ComponentIndex.checksum(Arrays.asList("a", "b", "c")),
+                ComponentIndex.checksum(Arrays.asList("c", "a", "b")));
+    }
+
+    // 只包含一个索引文件的 classloader
+    private ClassLoader loader(String content) throws IOException {
+        File root = folder.newFolder();
+        File file = new File(root, ComponentIndex.LOCATION);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+    }
+}
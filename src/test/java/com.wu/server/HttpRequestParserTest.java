@@ -0,0 +1,117 @@
+package com.wu.server;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class HttpRequestParserTest {
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void chunkSizeNearLongMaxIsRejected() throws HttpException {
+        HttpRequestParser parser = new HttpRequestParser(8192, 1024);
+        ByteBuffer in = bytes("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "1\r\na\r\n7fffffffffffffff\r\n");
+        try {
+            parser.parse(in);
+            fail("expected 413");
+        } catch (HttpException e) {
+            assertEquals(413, e.getStatus());
+        }
+    }
+
+    @Test
+    public void chunkedBodyOverLimitIsRejected() throws HttpException {
+        HttpRequestParser parser = new HttpRequestParser(8192, 4);
+        try {
+            parser.parse(bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\n"));
+            fail("expected 413");
+        } catch (HttpException e) {
+            assertEquals(413, e.getStatus());
+        }
+    }
+
+    @Test
+    public void chunkedBodyUpToLimitIsAccepted() throws HttpException {
+        HttpRequestParser parser = new HttpRequestParser(8192, 5);
+        HttpRequestParser.ParsedRequest request = parser.parse(
+                bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n"));
+        assertNotNull(request);
+        assertEquals("abcde", new String(request.body, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void contentLengthOverLimitIsRejected() {
+        HttpRequestParser parser = new HttpRequestParser(8192, 4);
+        try {
+            parser.parse(bytes("POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\n"));
+            fail("expected 413");
+        } catch (HttpException e) {
+            assertEquals(413, e.getStatus());
+        }
+    }
+
+    @Test
+    public void requestSplitAtEveryByteIsParsed() throws HttpException {
+        String text = "POST /users?id=1 HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4;ext=1\r\nwiki\r\n5\r\npedia\r\n0\r\nTrailer: x\r\n\r\n";
+        byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+        HttpRequestParser parser = new HttpRequestParser(8192, 1024);
+        // 每次多给一个字节，模拟数据分多次到达
+        ByteBuffer in = ByteBuffer.allocate(data.length);
+        HttpRequestParser.ParsedRequest request = null;
+        for (int i = 0; i < data.length; i++) {
+            in.put(data[i]);
+            in.flip();
+            request = parser.parse(in);
+            in.compact();
+            if (i < data.length - 1) {
+                assertNull("request completed early at byte " + i, request);
+            }
+        }
+        assertNotNull(request);
+        assertEquals("POST", request.method);
+        assertEquals("/users?id=1", request.target);
+        assertEquals("wikipedia", new String(request.body, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void pipelinedRequestsAreParsedInOrder() throws HttpException {
+        HttpRequestParser parser = new HttpRequestParser(8192, 1024);
+        ByteBuffer in = bytes("POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "GET /b HTTP/1.1\r\n\r\n"
+                + "POST /c HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n1\r\nz\r\n0\r\n\r\n");
+        HttpRequestParser.ParsedRequest first = parser.parse(in);
+        HttpRequestParser.ParsedRequest second = parser.parse(in);
+        HttpRequestParser.ParsedRequest third = parser.parse(in);
+        assertEquals("/a", first.target);
+        assertArrayEquals("abc".getBytes(StandardCharsets.ISO_8859_1), first.body);
+        assertEquals("/b", second.target);
+        assertEquals(0, second.body.length);
+        assertEquals("/c", third.target);
+        assertArrayEquals("z".getBytes(StandardCharsets.ISO_8859_1), third.body);
+        assertNull(parser.parse(in));
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    public void headerOverLimitIsRejected() {
+        HttpRequestParser parser = new HttpRequestParser(32, 1024);
+        try {
+            parser.parse(bytes("GET / HTTP/1.1\r\nX-Long: 0123456789012345678901234567890\r\n\r\n"));
+            fail("expected 431");
+        } catch (HttpException e) {
+            assertEquals(431, e.getStatus());
+        }
+    }
+}
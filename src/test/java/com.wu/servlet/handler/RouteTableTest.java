@@ -0,0 +1,58 @@
+package com.wu.servlet.handler;
+
+import com.wu.servlet.bind.ArgumentResolver;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RouteTableTest {
+
+    private static MappingHandler handler(String uri, String... methods) {
+        return new MappingHandler(uri, methods, null, null, null, new ArgumentResolver[0]);
+    }
+
+    @Test
+    public void headFallsBackToGet() {
+        RouteTable table = new RouteTable();
+        MappingHandler get = handler("/users", "GET");
+        MappingHandler pattern = handler("/users/{id}", "get");
+        table.register(get);
+        table.register(pattern);
+        assertSame(get, table.lookup("HEAD", "/users").getHandler());
+        assertSame(pattern, table.lookup("HEAD", "/users/7").getHandler());
+        assertEquals("7", table.lookup("HEAD", "/users/7").getPathVariables().get("id"));
+    }
+
+    @Test
+    public void explicitHeadHandlerWins() {
+        RouteTable table = new RouteTable();
+        MappingHandler get = handler("/users", "GET");
+        MappingHandler head = handler("/users", "HEAD");
+        table.register(get);
+        table.register(head);
+        assertSame(head, table.lookup("HEAD", "/users").getHandler());
+    }
+
+    @Test
+    public void otherMethodsAreNotAllowed() {
+        RouteTable table = new RouteTable();
+        table.register(handler("/users", "GET"));
+        assertNull(table.lookup("POST", "/users").getHandler());
+        assertNull(table.lookup("GET", "/missing"));
+    }
+
+    @Test
+    public void partialSegmentPatternsAreRejected() {
+        for (String uri : new String[]{"/files/*.html", "/users/{id}.json", "/a/{x}-{y}", "/b/{}"}) {
+            try {
+                new RouteTable().register(handler(uri));
+                fail("expected IllegalStateException for " + uri);
+            } catch (IllegalStateException expected) {
+                // 注册时拒绝
+            }
+        }
+    }
+}
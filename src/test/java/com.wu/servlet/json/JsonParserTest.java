@@ -0,0 +1,272 @@
+package com.wu.servlet.json;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonParserTest {
+
+    public static class User {
+        String name;
+        int age;
+        boolean active;
+        double score;
+        List<String> tags;
+    }
+
+    @Test
+    public void multiByteCharactersSplitAcrossChunks() {
+        // 2、3、4 字节的 UTF-8 字符，每个切分位置都要试到
+        String json = "{\"name\":\"é中😀\",\"tags\":[\"a€b\"]}";
+        for (byte[][] chunks : splits(json)) {
+            User user = (User) bind(User.class, chunks);
+            assertEquals("é中😀", user.name);
+            assertEquals(Arrays.asList("a€b"), user.tags);
+        }
+    }
+
+    @Test
+    public void escapesSplitAcrossChunks() {
+        String json = "[\"\\u0041\\u4e2d\\ud83d\\ude00\",\"x\\n\\\"\\\\\\/y\",\"中\\t文\"]";
+        for (byte[][] chunks : splits(json)) {
+            String[] values = (String[]) bind(String[].class, chunks);
+            assertArrayEquals(new String[]{"A中😀", "x\n\"\\/y", "中\t文"}, values);
+        }
+    }
+
+    @Test
+    public void numbersAndLiteralsSplitAcrossChunks() {
+        String json = "{\"age\":12345,\"score\":-1.25e+2,\"active\":true,\"name\":null,\"tags\":[]}";
+        for (byte[][] chunks : splits(json)) {
+            User user = (User) bind(User.class, chunks);
+            assertEquals(12345, user.age);
+            assertEquals(-125.0, user.score, 0);
+            assertTrue(user.active);
+            assertNull(user.name);
+            assertTrue(user.tags.isEmpty());
+        }
+        // 顶层的数字只有在 finish 时才能确定结束
+        for (byte[][] chunks : splits("9007199254740993")) {
+            assertEquals(9007199254740993L, bind(Object.class, chunks));
+        }
+        for (byte[][] chunks : splits("false")) {
+            assertEquals(false, bind(Boolean.class, chunks));
+        }
+    }
+
+    @Test
+    public void nullIntoPrimitiveFieldKeepsDefault() {
+        User user = (User) bind(User.class, chunk("{\"age\":null,\"active\":null,\"score\":null}"));
+        assertEquals(0, user.age);
+        assertFalse(user.active);
+        assertEquals(0.0, user.score, 0);
+        int[] values = (int[]) bind(int[].class, chunk("[1,null,3]"));
+        assertArrayEquals(new int[]{1, 0, 3}, values);
+    }
+
+    @Test
+    public void unknownPropertiesAreSkipped() {
+        User user = (User) bind(User.class, chunk("{\"extra\":{\"a\":[1,{\"b\":null}]},\"age\":7}"));
+        assertEquals(7, user.age);
+    }
+
+    @Test
+    public void objectValuesBindToMapsAndLists() {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) bind(Object.class, chunk("{\"a\":[1,2.5,\"x\"],\"b\":{}}"));
+        assertEquals(Arrays.asList(1L, 2.5, "x"), map.get("a"));
+        assertTrue(((Map<?, ?>) map.get("b")).isEmpty());
+    }
+
+    @Test
+    public void trailingGarbageIsRejected() {
+        assertRejected("{} x");
+        assertRejected("[1]]");
+        assertRejected("1 2");
+        assertRejected("truex");
+    }
+
+    @Test
+    public void multipleValuesAreAcceptedWhenEnabled() {
+        StringBuilder events = new StringBuilder();
+        JsonParser parser = new JsonParser(new Recorder(events), true);
+        byte[] input = "{\"a\":1}\n[true]\n2".getBytes(StandardCharsets.UTF_8);
+        parser.feed(input, 0, input.length);
+        parser.finish();
+        assertEquals("{ a 1 } [ true ] 2 ", events.toString());
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        assertRejected("{\"a\":1");
+        assertRejected("[1,]");
+        assertRejected("{\"a\" 1}");
+        assertRejected("{a:1}");
+        assertRejected("\"abc");
+        assertRejected("\"a\u0001b\"");
+        assertRejected("\"\\x\"");
+        assertRejected("\"\\u12g4\"");
+        assertRejected("01");
+        assertRejected("1.");
+        assertRejected("-");
+        assertRejected("1e+");
+        assertRejected("nul");
+        assertRejected("tru e");
+    }
+
+    @Test
+    public void emptyInputProducesNoValue() {
+        JsonBinder binder = new JsonBinder(Object.class);
+        JsonParser parser = new JsonParser(binder);
+        parser.feed(" \n".getBytes(StandardCharsets.UTF_8), 0, 2);
+        // 空输入是否允许由调用方决定
+        parser.finish();
+        assertFalse(binder.isComplete());
+    }
+
+    @Test
+    public void nestingDeeperThanLimitIsRejected() {
+        assertEquals(1, ((List<?>) nested(512)).size());
+        try {
+            nested(513);
+            fail("expected JsonException");
+        } catch (JsonException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("512"));
+        }
+    }
+
+    @Test
+    public void typeMismatchIsRejected() {
+        try {
+            bind(User.class, chunk("{\"age\":\"abc\"}"));
+            fail("expected JsonException");
+        } catch (JsonException expected) {
+        }
+        try {
+            bind(User.class, chunk("[1]"));
+            fail("expected JsonException");
+        } catch (JsonException expected) {
+        }
+    }
+
+    // 嵌套 depth 层的数组，最内层是 0
+    private static Object nested(int depth) {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append('[');
+        }
+        json.append('0');
+        for (int i = 0; i < depth; i++) {
+            json.append(']');
+        }
+        return bind(Object.class, chunk(json.toString()));
+    }
+
+    private static void assertRejected(String json) {
+        for (byte[][] chunks : splits(json)) {
+            try {
+                bind(Object.class, chunks);
+                fail("expected JsonException for " + json);
+            } catch (JsonException expected) {
+            }
+        }
+    }
+
+    private static Object bind(Type type, byte[][] chunks) {
+        JsonBinder binder = new JsonBinder(type);
+        JsonParser parser = new JsonParser(binder);
+        for (byte[] chunk : chunks) {
+            parser.feed(chunk, 0, chunk.length);
+        }
+        parser.finish();
+        if (!binder.isComplete()) {
+            throw new JsonException("没有值");
+        }
+        return binder.getResult();
+    }
+
+    private static byte[][] chunk(String json) {
+        return new byte[][]{json.getBytes(StandardCharsets.UTF_8)};
+    }
+
+    // 完整输入、每个位置切成两块、每个字节一块
+    private static byte[][][] splits(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        byte[][][] result = new byte[bytes.length + 2][][];
+        result[0] = new byte[][]{bytes};
+        for (int i = 0; i < bytes.length; i++) {
+            result[i + 1] = new byte[][]{Arrays.copyOfRange(bytes, 0, i), Arrays.copyOfRange(bytes, i, bytes.length)};
+        }
+        byte[][] single = new byte[bytes.length][];
+        for (int i = 0; i < bytes.length; i++) {
+            single[i] = new byte[]{bytes[i]};
+        }
+        result[bytes.length + 1] = single;
+        return result;
+    }
+
+    // 把事件记录成空格分隔的文本
+    private static class Recorder implements JsonHandler {
+        private final StringBuilder events;
+
+        Recorder(StringBuilder events) {
+            this.events = events;
+        }
+
+        @Override
+        public void startObject() {
+            events.append("{ ");
+        }
+
+        @Override
+        public void endObject() {
+            events.append("} ");
+        }
+
+        @Override
+        public void key(String name) {
+            events.append(name).append(' ');
+        }
+
+        @Override
+        public void startArray() {
+            events.append("[ ");
+        }
+
+        @Override
+        public void endArray() {
+            events.append("] ");
+        }
+
+        @Override
+        public void string(String value) {
+            events.append(value).append(' ');
+        }
+
+        @Override
+        public void number(String text) {
+            events.append(text).append(' ');
+        }
+
+        @Override
+        public void bool(boolean value) {
+            events.append(value).append(' ');
+        }
+
+        @Override
+        public void nullValue() {
+            events.append("null ");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.wu.servlet.limit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RateLimiterTest {
+
+    // 速率很低，测试期间不会补充令牌
+    private static final double SLOW_RATE = 0.001;
+
+    @Test
+    public void burstNotDivisibleByStripesIsExact() {
+        // 10 个令牌分到 8 段：前 2 段各 2 个，其余各 1 个
+        assertEquals(10, drain(new RateLimiter(SLOW_RATE, 10, 8)));
+        assertEquals(7, drain(new RateLimiter(SLOW_RATE, 7, 4)));
+    }
+
+    @Test
+    public void burstDivisibleByStripesIsExact() {
+        assertEquals(16, drain(new RateLimiter(SLOW_RATE, 16, 8)));
+    }
+
+    @Test
+    public void burstSmallerThanStripesUsesOneTokenPerStripe() {
+        assertEquals(3, drain(new RateLimiter(SLOW_RATE, 3, 8)));
+    }
+
+    @Test
+    public void everyBurstIsExactOnThisHost() {
+        for (int burst = 1; burst <= 50; burst++) {
+            assertEquals(burst, drain(new RateLimiter(SLOW_RATE, burst)));
+        }
+    }
+
+    // 取空整个桶，返回取到的令牌数
+    private static int drain(RateLimiter limiter) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+}